@@ -0,0 +1,37 @@
+package com.example.tmdt.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String PRODUCT_CACHE = "products";
+
+    @Value("${app.cache.products.maximum-size:10000}")
+    private long productCacheMaximumSize;
+
+    @Value("${app.cache.products.expire-after-write:10m}")
+    private Duration productCacheExpireAfterWrite;
+
+    @Bean
+    public CacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(PRODUCT_CACHE);
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(productCacheMaximumSize)
+                .expireAfterWrite(productCacheExpireAfterWrite)
+                .recordStats());
+        // Không cache giá trị null (sản phẩm không tồn tại)
+        cacheManager.setAllowNullValues(false);
+        return cacheManager;
+    }
+}
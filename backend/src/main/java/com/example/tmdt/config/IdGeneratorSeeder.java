@@ -0,0 +1,48 @@
+package com.example.tmdt.config;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Orders and order items take their ids in blocks from the {@code id_generators} table
+ * (pooled {@code @TableGenerator}) instead of AUTO_INCREMENT, so Hibernate knows the ids
+ * before inserting and can send the INSERTs as JDBC batches. On startup each generator
+ * is moved past the largest id already in its table, so rows created while the tables
+ * still used AUTO_INCREMENT are never reused.
+ */
+@Component
+public class IdGeneratorSeeder {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+
+    public static final String TABLE = "id_generators";
+    public static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Phụ thuộc EntityManagerFactory để bảng id_generators đã được Hibernate tạo trước khi seed
+    @Autowired
+    public IdGeneratorSeeder(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void seed() {
+        seed("orders", "orders");
+        seed("order_items", "order_items");
+    }
+
+    private void seed(String generator, String table) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        long nextValue = maxId + ALLOCATION_SIZE + 1;
+        jdbcTemplate.update("INSERT INTO " + TABLE + " (gen_name, next_val) VALUES (?, ?) " +
+                "ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, VALUES(next_val))", generator, nextValue);
+        log.debug("Id generator {} starts above {}", generator, maxId);
+    }
+}
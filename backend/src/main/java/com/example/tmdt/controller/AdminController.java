@@ -4,16 +4,24 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
 
 import com.example.tmdt.model.*;
 import com.example.tmdt.service.CategoryService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -27,6 +35,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.util.StringUtils;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -34,13 +43,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 
-import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.payload.request.BulkStatusUpdateRequest;
+import com.example.tmdt.payload.response.BulkStatusResult;
+import com.example.tmdt.repository.OrderSpecifications;
 import com.example.tmdt.repository.ProductRepository;
 import com.example.tmdt.repository.UserRepository;
 import com.example.tmdt.repository.CouponRepository;
+import com.example.tmdt.service.DashboardMetricsService;
+import com.example.tmdt.service.OrderExportService;
+import com.example.tmdt.service.OrderQueryService;
 import com.example.tmdt.service.OrderService;
 import java.time.LocalDateTime;
+import com.example.tmdt.service.ProductSalesRollupService;
 import com.example.tmdt.service.ProductService;
+import com.example.tmdt.service.inventory.HotSkuInventory;
 import com.example.tmdt.repository.CategoryRepository;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -56,11 +72,10 @@ import com.example.tmdt.service.CategoryService;
 @RequestMapping("/admin")
 @PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
-    @Autowired
-    private UserRepository userRepository;
+    private static final DateTimeFormatter EXPORT_FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
     @Autowired
-    private OrderRepository orderRepository;
+    private UserRepository userRepository;
 
     @Autowired
     private ProductRepository productRepository;
@@ -77,6 +92,24 @@ public class AdminController {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ProductSalesRollupService productSalesRollupService;
+
+    @Autowired
+    private HotSkuInventory hotSkuInventory;
+
+    @Autowired
+    private OrderQueryService orderQueryService;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private DashboardMetricsService dashboardMetricsService;
+
     @Autowired
     private final CategoryService categoryService;
 
@@ -86,80 +119,78 @@ public class AdminController {
         this.categoryService = categoryService;
     }
 
-    @GetMapping("/dashboard")
-    public ResponseEntity<Map<String, Object>> getDashboardSummary() {
+    /**
+     * Thống kê hit/miss của các cache (Caffeine)
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
         Map<String, Object> response = new HashMap<>();
-        
-        // Count totals
-        long totalUsers = userRepository.count();
-        long totalOrders = orderRepository.count();
-        long totalProducts = productRepository.count();
-        
-        // Calculate total revenue
-        List<Order> orders = orderRepository.findAll();
-        List<Object[]> orderItems=orderRepository.findItemWithOrder();
-        double totalRevenue = orders.stream()
-                .filter(order -> order.getStatus() == Order.OrderStatus.DELIVERED)
-                .mapToDouble(order -> order.getTotalAmount().doubleValue())
-                .sum();
-        
-        // Get all orders instead of just recent 5
-        List<Map<String, Object>> allOrders = orders.stream()
-                .map(order -> {
-                    Map<String, Object> orderMap = new HashMap<>();
-                    orderMap.put("id", order.getId());
-                    orderMap.put("customerName", order.getUser().getFullName());
-                    orderMap.put("amount", order.getTotalAmount());
-                    orderMap.put("status", order.getStatus().name());
-                    orderMap.put("date", order.getCreatedAt().toString());
-                    return orderMap;
-                })
-                .collect(Collectors.toList());
-        
-        // Get top selling products
-        List<Map<String, Object>> productPerformance = productRepository.findAll().stream()
-                .sorted((p1, p2) -> p1.getStock().compareTo(p2.getStock()))
-                .map(product -> {
-                    Map<String, Object> productMap = new HashMap<>();
-                    productMap.put("id", product.getId());
-                    productMap.put("name", product.getName());
-                    productMap.put("stock", product.getStock());
-                    productMap.put("sales", 0); // This would need to be calculated from order data
-                    // Thêm thông tin giá và danh mục sản phẩm
-                    productMap.put("price", product.getPrice());
-                    productMap.put("category", product.getCategory() != null ? product.getCategory().getName() : "Không phân loại");
-                    // Tính doanh thu giả định (số lượng bán * giá)
-                    productMap.put("revenue", 0);
-                    productMap.put("sales", 0);
-                    return productMap;
-                })
-                .collect(Collectors.toList());
-        List<Map<String,Object>> totalOrderItem=orderItems.stream()
-                .map(obj -> {
-                    OrderItem orderItem = (OrderItem) obj[0];
-                    Order order = (Order) obj[1];
-                    Map<String , Object> orderMap = new HashMap<>();
-                    orderMap.put("id", orderItem.getProduct().getId());
-                    orderMap.put("date", order.getCreatedAt().toString());
-                    orderMap.put("productName", orderItem.getProduct().getName());
-                    orderMap.put("orderId", order.getId());
-                    orderMap.put("category", orderItem.getProduct().getCategory().getName());
-                    orderMap.put("imageUrl", orderItem.getProduct().getImageUrl());
-                    orderMap.put("stock", orderItem.getProduct().getPrice());
-                    orderMap.put("quantity", orderItem.getQuantity());
-                    return orderMap;
-                })
-                .collect(Collectors.toList());
-
-        response.put("totalOrderItem",totalOrderItem);
-        response.put("totalUsers", totalUsers);
-        response.put("totalOrders", totalOrders);
-        response.put("totalProducts", totalProducts);
-        response.put("totalRevenue", totalRevenue);
-        response.put("recentOrders", allOrders); // Use all orders instead of just recent 5
-        response.put("productPerformance", productPerformance);
-        
-        return new ResponseEntity<>(response, HttpStatus.OK);
+        for (String cacheName : cacheManager.getCacheNames()) {
+            org.springframework.cache.Cache cache = cacheManager.getCache(cacheName);
+            if (!(cache instanceof CaffeineCache)) {
+                continue;
+            }
+            com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+            CacheStats stats = nativeCache.stats();
+
+            Map<String, Object> cacheStats = new HashMap<>();
+            cacheStats.put("size", nativeCache.estimatedSize());
+            cacheStats.put("hitCount", stats.hitCount());
+            cacheStats.put("missCount", stats.missCount());
+            cacheStats.put("hitRate", stats.hitRate());
+            cacheStats.put("evictionCount", stats.evictionCount());
+            cacheStats.put("averageLoadPenaltyMs", stats.averageLoadPenalty() / 1_000_000.0);
+            response.put(cacheName, cacheStats);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Tính lại bảng tổng hợp doanh số theo tháng từ toàn bộ đơn hàng
+     */
+    @PostMapping("/reports/sales-monthly/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildMonthlySales() {
+        int rows = productSalesRollupService.rebuild();
+        return ResponseEntity.ok(Map.of("message", "Rebuilt monthly sales rollup", "rows", rows));
+    }
+
+    /**
+     * Bật/tắt chế độ flash sale (tồn kho trong bộ nhớ, ghi DB theo lô) cho một sản phẩm
+     */
+    @PutMapping("/products/{id}/hot-sku")
+    public ResponseEntity<Map<String, Object>> updateHotSku(@PathVariable Long id, @RequestParam boolean enabled) {
+        if (enabled) {
+            hotSkuInventory.enable(id);
+        } else {
+            hotSkuInventory.disable(id);
+        }
+        return ResponseEntity.ok(Map.of("message", enabled ? "Hot SKU mode enabled" : "Hot SKU mode disabled",
+                "productId", id));
+    }
+
+    /**
+     * Dashboard figures, read from precomputed aggregates: all-time totals, the figures
+     * of the requested month (the current one by default) and the latest orders.
+     */
+    @GetMapping("/dashboard")
+    public ResponseEntity<Map<String, Object>> getDashboardSummary(@RequestParam(required = false) Integer year,
+                                                                   @RequestParam(required = false) Integer month) {
+        LocalDateTime now = LocalDateTime.now();
+        int summaryYear = year != null ? year : now.getYear();
+        int summaryMonth = month != null ? month : now.getMonthValue();
+        if (summaryMonth < 1 || summaryMonth > 12) {
+            return ResponseEntity.badRequest().body(Map.of("message", "month must be between 1 and 12"));
+        }
+        return ResponseEntity.ok(dashboardMetricsService.getSummary(summaryYear, summaryMonth));
+    }
+
+    /**
+     * Đối soát lại số liệu dashboard với dữ liệu gốc ngay lập tức
+     */
+    @PostMapping("/dashboard/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileDashboard() {
+        dashboardMetricsService.reconcile();
+        return ResponseEntity.ok(Map.of("message", "Dashboard metrics reconciled"));
     }
 
     @GetMapping("/users")
@@ -235,9 +266,51 @@ public class AdminController {
     }
 
     @GetMapping("/orders")
-    public ResponseEntity<List<Order>> getAllOrders() {
-        List<Order> orders = orderRepository.findAll();
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<?> getAllOrders(@RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer size) {
+        // Luôn phân trang keyset (mới nhất trước, trang sau dùng nextCursor): không nạp cả lịch sử đơn
+        try {
+            return ResponseEntity.ok(orderQueryService.findPage(null, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Streams the orders created in [from, to) as CSV or NDJSON, optionally gzipped,
+     * for finance exports that are too large for {@code GET /admin/orders}.
+     */
+    @GetMapping("/orders/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Order.OrderStatus status,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        OrderExportService.Format exportFormat;
+        try {
+            exportFormat = OrderExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Specification<Order> filter = Specification.where(OrderSpecifications.createdBetween(from, to))
+                .and(OrderSpecifications.hasStatus(status));
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                orderExportService.export(filter, exportFormat, compressed);
+                compressed.finish();
+            } else {
+                orderExportService.export(filter, exportFormat, out);
+            }
+        };
+        String fileName = "orders-" + LocalDateTime.now().format(EXPORT_FILE_TIMESTAMP) + "." + exportFormat.getExtension()
+                + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
     }
 
     @PutMapping("/orders/{id}/status")
@@ -245,11 +318,27 @@ public class AdminController {
         try {
             Order updatedOrder = orderService.updateOrderStatus(id, status);
             return new ResponseEntity<>(updatedOrder, HttpStatus.OK);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    // Đổi trạng thái nhiều đơn trong một request; các chuyển đổi không hợp lệ được trả về trong "rejected"
+    @PostMapping("/orders/status")
+    public ResponseEntity<?> updateOrderStatuses(@Valid @RequestBody BulkStatusUpdateRequest request) {
+        if (request.getTransitions().size() > OrderService.MAX_BULK_TRANSITIONS) {
+            return ResponseEntity.badRequest().body(Map.of("message",
+                    "A request can contain at most " + OrderService.MAX_BULK_TRANSITIONS + " transitions"));
+        }
+        List<BulkStatusResult> rejected = orderService.transitionOrders(request.getTransitions());
+        Map<String, Object> response = new HashMap<>();
+        response.put("updated", request.getTransitions().size() - rejected.size());
+        response.put("rejected", rejected);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("/products")
     public ResponseEntity<List<Product>> getAllProducts() {
         List<Product> products = productRepository.findAll();
@@ -427,7 +516,7 @@ public class AdminController {
     @DeleteMapping("/products/{id}")
     public ResponseEntity<HttpStatus> deleteProduct(@PathVariable Long id) {
         try {
-            productRepository.deleteById(id);
+            productService.deleteProduct(id);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -474,6 +563,8 @@ public class AdminController {
             product.setName(name);
             product.setDescription(description);
             product.setPrice(price);
+            // SKU flash-sale bán từ counter trong bộ nhớ, không cho sửa thẳng tồn kho
+            hotSkuInventory.checkStockEdit(product, stock);
             product.setStock(stock);
             
             // Find category by name instead of ID
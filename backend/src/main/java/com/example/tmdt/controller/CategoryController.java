@@ -1,12 +1,15 @@
 package com.example.tmdt.controller;
 
 import com.example.tmdt.model.Category;
+import com.example.tmdt.repository.CategoryRepository;
 import com.example.tmdt.service.CategoryService;
+import com.example.tmdt.util.ConditionalGet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -18,20 +21,29 @@ import java.util.Map;
 public class CategoryController {
 
     private final CategoryService categoryService;
+    private final CategoryRepository categoryRepository;
 
     @Autowired
-    public CategoryController(CategoryService categoryService) {
+    public CategoryController(CategoryService categoryService, CategoryRepository categoryRepository) {
         this.categoryService = categoryService;
+        this.categoryRepository = categoryRepository;
     }
 
     @GetMapping("/categories")
-    public ResponseEntity<List<Category>> getAllCategories() {
+    public ResponseEntity<List<Category>> getAllCategories(WebRequest webRequest) {
+        if (ConditionalGet.isNotModified(webRequest, "categories", categoryRepository.findVersion())) {
+            return ConditionalGet.notModified();
+        }
         List<Category> categories = categoryService.getAllActiveCategories();
         return ResponseEntity.ok(categories);
     }
 
     @GetMapping("/categories/{id}")
-    public ResponseEntity<Category> getCategoryById(@PathVariable Long id) {
+    public ResponseEntity<Category> getCategoryById(@PathVariable Long id, WebRequest webRequest) {
+        // Category trả về kèm subCategories nên dùng version của toàn bộ bảng categories
+        if (ConditionalGet.isNotModified(webRequest, "category:" + id, categoryRepository.findVersion())) {
+            return ConditionalGet.notModified();
+        }
         Category category = categoryService.getCategoryById(id);
         return ResponseEntity.ok(category);
     }
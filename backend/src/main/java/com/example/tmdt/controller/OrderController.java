@@ -3,14 +3,20 @@ package com.example.tmdt.controller;
 import com.example.tmdt.model.Order;
 import com.example.tmdt.model.User;
 import com.example.tmdt.model.RefundRequest;
+import com.example.tmdt.payload.request.BatchOrderRequest;
 import com.example.tmdt.payload.request.OrderRequest;
 import com.example.tmdt.payload.request.RefundRequestDto;
+import com.example.tmdt.payload.response.BatchOrderResult;
 import com.example.tmdt.payload.response.MessageResponse;
 import com.example.tmdt.payload.response.OrderResponse;
+import com.example.tmdt.repository.OrderSpecifications;
+import com.example.tmdt.service.OrderQueryService;
 import com.example.tmdt.service.OrderService;
 import com.example.tmdt.service.RefundService;
 import com.example.tmdt.service.UserService;
+import com.example.tmdt.service.idempotency.IdempotencyService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -21,14 +27,12 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.Valid;
-import java.io.UnsupportedEncodingException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/orders")
@@ -37,32 +41,61 @@ public class OrderController {
     private final OrderService orderService;
     private final UserService userService;
     private final RefundService refundService;
+    private final IdempotencyService idempotencyService;
+    private final OrderQueryService orderQueryService;
 
     @Autowired
-    public OrderController(OrderService orderService, UserService userService, RefundService refundService) {
+    public OrderController(OrderService orderService, UserService userService, RefundService refundService,
+                           IdempotencyService idempotencyService, OrderQueryService orderQueryService) {
         this.orderService = orderService;
         this.userService = userService;
         this.refundService = refundService;
+        this.idempotencyService = idempotencyService;
+        this.orderQueryService = orderQueryService;
     }
     @PostMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<Order> createOrder(@RequestBody OrderRequest orderRequest) throws UnsupportedEncodingException {
+    public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         User user = userService.getUserByUsername(auth.getName());
-        return ResponseEntity.ok(orderService.createOrder(user, orderRequest));
+        // Client retry khi timeout: cùng key thì trả lại đơn đã tạo thay vì tạo đơn mới
+        return idempotencyService.execute(idempotencyKey, user.getId(), "orders", orderRequest,
+                () -> ResponseEntity.ok(orderService.createOrder(user, orderRequest)));
+    }
+
+    @PostMapping("/batch")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> createOrders(@Valid @RequestBody BatchOrderRequest batchRequest) {
+        if (batchRequest.getOrders().size() > OrderService.MAX_BATCH_ORDERS) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("A batch can contain at most " + OrderService.MAX_BATCH_ORDERS + " orders"));
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        User user = userService.getUserByUsername(auth.getName());
+        List<BatchOrderResult> results = orderService.createOrders(user, batchRequest.getOrders());
+
+        long created = results.stream().filter(result -> BatchOrderResult.CREATED.equals(result.getStatus())).count();
+        Map<String, Object> response = new HashMap<>();
+        response.put("results", results);
+        response.put("created", created);
+        response.put("rejected", results.size() - created);
+        return ResponseEntity.ok(response);
     }
 
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<Order>> getAllOrders() {
-        return ResponseEntity.ok(orderService.getAllOrders());
+    public ResponseEntity<?> getAllOrders(@RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer size) {
+        // Luôn phân trang: toàn bộ lịch sử đơn kèm item không nạp được trong một request
+        return orderPage(null, cursor, size);
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<Order> getOrderById(@PathVariable Long id) {
-        Order order = orderService.getOrderById(id);
+        Order order = orderService.getOrderDetail(id);
         
         // Check if current user is the owner of the order or an admin
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -76,10 +109,14 @@ public class OrderController {
 
     @GetMapping("/my-orders")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<List<Order>> getCurrentUserOrders() {
+    public ResponseEntity<?> getCurrentUserOrders(@RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) Integer size) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         User user = userService.getUserByUsername(auth.getName());
-        return ResponseEntity.ok(orderService.getUserOrders(user));
+        if (cursor == null && size == null) {
+            return ResponseEntity.ok(orderService.getUserOrders(user));
+        }
+        return orderPage(OrderSpecifications.ofUser(user.getId()), cursor, size);
     }
     
     @GetMapping("/summary")
@@ -87,49 +124,7 @@ public class OrderController {
     public ResponseEntity<Map<String, Object>> getOrderSummary() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         User user = userService.getUserByUsername(auth.getName());
-        List<Order> userOrders = orderService.getUserOrders(user);
-        
-        int totalOrders = userOrders.size();
-        
-        // Đếm số đơn hàng đang xử lý (chưa giao)
-        long pendingOrders = userOrders.stream()
-                .filter(o -> o.getStatus() != Order.OrderStatus.DELIVERED && 
-                             o.getStatus() != Order.OrderStatus.CANCELLED)
-                .count();
-        
-        // Đếm số đơn hàng đã giao
-        long deliveredOrders = userOrders.stream()
-                .filter(o -> o.getStatus() == Order.OrderStatus.DELIVERED)
-                .count();
-        
-        // Tính tổng tiền đã chi
-        double totalSpent = userOrders.stream()
-                .filter(o -> o.getStatus() == Order.OrderStatus.DELIVERED)
-                .mapToDouble(o -> o.getTotalAmount().doubleValue())
-                .sum();
-        
-        // Lấy 5 đơn hàng gần đây nhất
-        List<Map<String, Object>> recentOrders = userOrders.stream()
-                .sorted((o1, o2) -> o2.getCreatedAt().compareTo(o1.getCreatedAt()))
-                .limit(5)
-                .map(order -> {
-                    Map<String, Object> orderMap = new HashMap<>();
-                    orderMap.put("id", order.getId());
-                    orderMap.put("createdAt", order.getCreatedAt().toString());
-                    orderMap.put("status", order.getStatus().toString());
-                    orderMap.put("totalAmount", order.getTotalAmount().doubleValue());
-                    return orderMap;
-                })
-                .collect(Collectors.toList());
-        
-        Map<String, Object> response = new HashMap<>();
-        response.put("totalOrders", totalOrders);
-        response.put("pendingOrders", pendingOrders);
-        response.put("deliveredOrders", deliveredOrders);
-        response.put("totalSpent", totalSpent);
-        response.put("recentOrders", recentOrders);
-        
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(orderService.getOrderSummary(user.getId()));
     }
 
     @PutMapping("/{id}/status")
@@ -142,6 +137,8 @@ public class OrderController {
             return ResponseEntity.ok(orderService.updateOrderStatus(id, orderStatus));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
     }
 
@@ -155,13 +152,19 @@ public class OrderController {
 
     @GetMapping("/by-status")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<List<Order>> getOrdersByStatus(@RequestParam("status") String status) {
+    public ResponseEntity<?> getOrdersByStatus(@RequestParam("status") String status,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer size) {
+        Order.OrderStatus orderStatus;
         try {
-            Order.OrderStatus orderStatus = Order.OrderStatus.valueOf(status.toUpperCase());
-            return ResponseEntity.ok(orderService.getOrdersByStatus(orderStatus));
+            orderStatus = Order.OrderStatus.valueOf(status.toUpperCase());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
+        if (cursor == null && size == null) {
+            return ResponseEntity.ok(orderService.getOrdersByStatus(orderStatus));
+        }
+        return orderPage(OrderSpecifications.hasStatus(orderStatus), cursor, size);
     }
 
     @GetMapping("/by-date")
@@ -313,4 +316,16 @@ public class OrderController {
                     .body(new MessageResponse("Error retrieving refund status: " + e.getMessage()));
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Có cursor hoặc size thì trả về một trang keyset (mới nhất trước) kèm nextCursor
+     * thay cho cả danh sách.
+     */
+    private ResponseEntity<?> orderPage(Specification<Order> filter, String cursor, Integer size) {
+        try {
+            return ResponseEntity.ok(orderQueryService.findPage(filter, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+}
@@ -6,8 +6,11 @@ import com.example.tmdt.model.Order;
 import com.example.tmdt.model.User;
 import com.example.tmdt.payload.request.OrderRequest;
 import com.example.tmdt.service.OrderService;
+import com.example.tmdt.service.StockReservationService;
 import com.example.tmdt.service.UserService;
 import com.example.tmdt.service.VNPayService;
+import com.example.tmdt.service.idempotency.IdempotencyService;
+import com.example.tmdt.service.pricing.Quote;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,7 +20,6 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.UnsupportedEncodingException;
-import java.math.BigDecimal;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
@@ -26,23 +28,43 @@ import java.util.*;
 @RestController
 @RequestMapping
 public class PaymentController {
+    public static final String RESERVATION_TOKEN_HEADER = "X-Reservation-Token";
+    public static final String QUOTE_ID_HEADER = "X-Quote-Id";
     private final OrderService orderService;
     private final UserService userService;
     private final VNPayService vnpayService ;
+    private final StockReservationService stockReservationService;
+    private final IdempotencyService idempotencyService;
     @Autowired
-    public PaymentController(OrderService orderService, UserService userService, VNPayService vnpayService) {
+    public PaymentController(OrderService orderService, UserService userService, VNPayService vnpayService,
+                             StockReservationService stockReservationService, IdempotencyService idempotencyService) {
         this.orderService = orderService;
         this.userService = userService;
         this.vnpayService = vnpayService;
+        this.stockReservationService = stockReservationService;
+        this.idempotencyService = idempotencyService;
     }
     @PostMapping("/orders/pay")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<String> createPay(@RequestBody OrderRequest orderRequest) throws UnsupportedEncodingException {
+    public ResponseEntity<?> createPay(@RequestBody OrderRequest orderRequest,
+                                       @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         User user = userService.getUserByUsername(auth.getName());
-        BigDecimal amount = orderService.GetAmount(user, orderRequest);
-        String vnpay=vnpayService.create_payment(amount);
-        return ResponseEntity.ok(vnpay);
+        // Retry cùng key nhận lại đúng link thanh toán và token giữ hàng, không giữ hàng lần hai
+        return idempotencyService.execute(idempotencyKey, user.getId(), "orders/pay", orderRequest,
+                () -> createPay(user, orderRequest), RESERVATION_TOKEN_HEADER, QUOTE_ID_HEADER);
+    }
+
+    private ResponseEntity<String> createPay(User user, OrderRequest orderRequest) throws UnsupportedEncodingException {
+        Quote quote = orderService.quote(user, orderRequest);
+        // Giữ hàng trong lúc khách thanh toán; POST /orders gửi lại token để dùng phần hàng này
+        String reservationToken = stockReservationService.hold(user.getId(),
+                StockReservationService.quantitiesOf(orderRequest.getItems()));
+        String vnpay=vnpayService.create_payment(quote.getTotal());
+        return ResponseEntity.ok()
+                .header(RESERVATION_TOKEN_HEADER, reservationToken)
+                .header(QUOTE_ID_HEADER, quote.getId())
+                .body(vnpay);
     }
 
     @GetMapping("/PaySuccess")
@@ -7,30 +7,58 @@ import java.util.Optional;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.io.IOException;
+import javax.persistence.EntityNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import javax.annotation.PostConstruct;
 
 import com.example.tmdt.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 //import com.example.tmdt.model.ProductImage;
 import com.example.tmdt.payload.request.ReviewRequest;
 import com.example.tmdt.payload.response.MessageResponse;
+import com.example.tmdt.payload.response.PagedResponse;
+import com.example.tmdt.payload.response.ProductResponse;
+import com.example.tmdt.payload.response.ProductSummary;
+import com.example.tmdt.repository.CategoryRepository;
 import com.example.tmdt.repository.ProductRepository;
-import com.example.tmdt.repository.OrderRepository;
-import com.example.tmdt.repository.CouponRepository;
+import com.example.tmdt.repository.ReviewRepository;
+import com.example.tmdt.service.DailyCouponService;
+import com.example.tmdt.service.ProductQueryService;
+import com.example.tmdt.service.ProductSalesRollupService;
+import com.example.tmdt.service.ProductService;
 import com.example.tmdt.service.ReviewService;
 import com.example.tmdt.service.UserService;
+import com.example.tmdt.security.services.UserDetailsImpl;
+import com.example.tmdt.service.recommendation.CoPurchaseIndex;
+import com.example.tmdt.service.recommendation.RecommendationService;
+import com.example.tmdt.service.search.FullTextSearchResult;
+import com.example.tmdt.service.search.ProductFacets;
+import com.example.tmdt.service.search.ProductSearchCriteria;
+import com.example.tmdt.service.search.ProductSearchIndex;
+import com.example.tmdt.service.search.ProductSearchResult;
+import com.example.tmdt.service.search.ProductSuggester;
+import com.example.tmdt.service.search.ProductSuggestion;
+import com.example.tmdt.util.ConditionalGet;
+import com.example.tmdt.util.ResourceVersion;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -41,122 +69,275 @@ import java.util.Random;
 import java.util.Collections;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.stream.Stream;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
 @RequestMapping("/products")
 public class ProductController {
+
+    // Giới hạn số id cho /products/batch
+    private static final int MAX_BATCH_IDS = 100;
+
+    private static final String VIEW_SUMMARY = "summary";
+
     @Autowired
     private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
     
     @Autowired
     private ReviewService reviewService;
+
+    @Autowired
+    private ProductService productService;
     
     @Autowired
     private UserService userService;
     
     @Autowired
-    private OrderRepository orderRepository;
-    
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductQueryService productQueryService;
+
+    @Autowired
+    private ProductSuggester productSuggester;
+
+    @Autowired
+    private DailyCouponService dailyCouponService;
+
+    @Autowired
+    private ProductSalesRollupService productSalesRollupService;
+
+    @Autowired
+    private CoPurchaseIndex coPurchaseIndex;
+
+    @Autowired
+    private RecommendationService recommendationService;
+
     @Autowired
-    private CouponRepository couponRepository;
+    private ObjectMapper objectMapper;
+
+    // ObjectWriter dựng một lần và dùng lại: serializer đã được resolve sẵn cho kiểu cố định
+    private ObjectWriter summaryListWriter;
+    private ObjectWriter summaryPageWriter;
+
+    @PostConstruct
+    void initSummaryWriters() {
+        summaryListWriter = objectMapper.writerFor(new TypeReference<List<ProductSummary>>() { });
+        summaryPageWriter = objectMapper.writerFor(new TypeReference<PagedResponse<ProductSummary>>() { });
+    }
 
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        List<Product> products = productRepository.findAll();
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<?> getAllProducts(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) Integer minRating,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String view,
+            WebRequest webRequest) {
+        ProductSearchCriteria criteria = new ProductSearchCriteria();
+        criteria.setKeyword(keyword != null ? keyword : search);
+        criteria.setCategory(category);
+        criteria.setMinPrice(minPrice);
+        criteria.setMaxPrice(maxPrice);
+        criteria.setMinRating(minRating);
+        criteria.setInStock(inStock);
+        criteria.setSort(sort);
+        return listProducts(criteria, page, size, cursor, view, webRequest);
     }
-    private static LocalDate couponDate;
-    private static Set<Long> couponProductIds = new HashSet<>();
-    private static final int DISCOUNT_PCT = 10;
-
-    private void ensureTodayCoupons() {
-        LocalDate today = LocalDate.now();
-        if (!today.equals(couponDate)) {
-            couponDate = today;
-            // Random 10% product IDs mỗi ngày
-            List<Long> allIds = productRepository.findAll()
-                    .stream()
-                    .map(Product::getId)
-                    .collect(Collectors.toList());
-            int quota = Math.max(1, allIds.size() / 10);
-            Collections.shuffle(allIds, new Random());
-            couponProductIds = new HashSet<>(allIds.subList(0, quota));
+
+    /**
+     * Không có page/cursor thì trả về List như trước (size, nếu có, giới hạn số dòng),
+     * ngược lại trả về PagedResponse kèm nextCursor để đi tiếp các trang sâu.
+     * view=summary trả về ProductSummary thay cho entity Product.
+     */
+    private ResponseEntity<?> listProducts(ProductSearchCriteria criteria, Integer page, Integer size, String cursor,
+                                           String view, WebRequest webRequest) {
+        // ETag chung cho danh sách: số sản phẩm + updatedAt mới nhất (kèm danh mục vì Product chứa category)
+        if (ConditionalGet.isNotModified(webRequest, "products",
+                productRepository.findCatalogVersion(), categoryRepository.findVersion())) {
+            return ConditionalGet.notModified();
+        }
+        boolean summary = VIEW_SUMMARY.equals(view);
+        try {
+            if (page == null && (cursor == null || cursor.isEmpty())) {
+                return summary
+                        ? jsonBody(summaryListWriter, productQueryService.findAllSummaries(criteria, size))
+                        : ResponseEntity.ok(productQueryService.findAll(criteria, size));
+            }
+            criteria.setPage(page != null ? page : 0);
+            if (size != null) {
+                criteria.setSize(size);
+            }
+            return summary
+                    ? jsonBody(summaryPageWriter, productQueryService.findSummaryPage(criteria, cursor))
+                    : ResponseEntity.ok(productQueryService.findPage(criteria, cursor));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<byte[]> jsonBody(ObjectWriter writer, Object value) {
+        try {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(writer.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize response", e);
         }
     }
     // list of product IDs that hold today’s coupon
     @GetMapping("/daily-coupons")
     public ResponseEntity<?> getDailyCouponIds() {
-        ensureTodayCoupons();
-        return ResponseEntity.ok(couponProductIds);
+        return ResponseEntity.ok(dailyCouponService.getTodayProductIds());
     }
 
     // redeem / fetch the coupon for one product
     @PutMapping("/{id}/daily-coupon")
     public ResponseEntity<?> getDailyCoupon(@PathVariable Long id) {
-        ensureTodayCoupons();
-        int IsUser=0;
-        if (!couponProductIds.contains(id)) {
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
-        }
-        couponProductIds.remove(id);
-        // Truy vấn lấy bất kỳ coupon hợp lệ 
-        List<Coupon> coupons = couponRepository.findAllValidCoupons(LocalDateTime.now())
-                .stream()
-                .filter(c -> c.getDiscountType() == Coupon.DiscountType.PERCENTAGE)
-                .collect(Collectors.toList());
-
-        if (coupons.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
-        }
-        // Lấy user hiện tại
+        // Kiểm tra đăng nhập trước, để người chưa đăng nhập không làm mất coupon của sản phẩm
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || !auth.isAuthenticated() || "anonymousUser".equals(auth.getPrincipal())) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("message", "Bạn cần đăng nhập để nhận mã giảm giá"));
         }
         User user = userService.getUserByUsername(auth.getName());
-        List<Coupon> userCoupon = new ArrayList<>();
-        for (Coupon c : coupons) {
-            List<User> usersCoupon=c.getUsers();
-            if (!usersCoupon.contains(user)&& c.getIsActive() == true) {
-                userCoupon.add(c);
-            }
 
+        DailyCouponService.ClaimResult result = dailyCouponService.claim(id, user);
+        switch (result.getStatus()) {
+            case NOT_AVAILABLE:
+                return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+            case NO_COUPON_LEFT:
+                return ResponseEntity.status(HttpStatus.NO_CONTENT)
+                        .body(Map.of("message"," Hết Mã giảm giá dành cho bạn"));
+            default:
+                break;
         }
 
-        Collections.shuffle(userCoupon, new Random());
+        Coupon canUseCoupon = result.getCoupon();
         Map<String,Object> payload=new HashMap<>();
-        if (!userCoupon.isEmpty()) {
-            Coupon canUseCoupon = userCoupon.get(0);
-            canUseCoupon.getUsers().add(user);
-            couponRepository.save(canUseCoupon);
-            payload.put("couponCode",canUseCoupon.getCode());
-            payload.put("discountPct",canUseCoupon.getDiscountType());
-            payload.put("validDate",canUseCoupon.getEndDate().toLocalDate().toString());
-            // xử lý tiếp
-        } else {
-            return ResponseEntity.status(HttpStatus.NO_CONTENT)
-                    .body(Map.of("message"," Hết Mã giảm giá dành cho bạn"));
-        }
+        payload.put("couponCode",canUseCoupon.getCode());
+        payload.put("discountPct",canUseCoupon.getDiscountType());
+        payload.put("validDate",canUseCoupon.getEndDate().toLocalDate().toString());
 
         return ResponseEntity.ok(payload);
     }
 
 
     @GetMapping("/recommended")
-    public ResponseEntity<List<Product>> getRecommendedProducts(@RequestParam(defaultValue = "10") int limit) {
-        List<Product> recommendedProducts = productRepository.findTop10ByOrderByAverageRatingDesc();
-        int actualLimit = Math.min(limit, recommendedProducts.size());
-        return new ResponseEntity<>(recommendedProducts.subList(0, actualLimit), HttpStatus.OK);
+    public ResponseEntity<List<ProductResponse>> getRecommendedProducts(@RequestParam(defaultValue = "10") int limit) {
+        // Gợi ý theo người dùng nếu đã đăng nhập, ngược lại dùng bảng xếp hạng chung
+        Long userId = null;
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof UserDetailsImpl) {
+            userId = ((UserDetailsImpl) auth.getPrincipal()).getId();
+        }
+        List<Long> ids = recommendationService.recommend(userId, limit);
+        // Bản sao từ cache không có reviews: chỉ trả về DTO, không serialize entity
+        List<ProductResponse> recommended = new ArrayList<>(ids.size());
+        for (Product product : productService.getProductsByIds(ids)) {
+            recommended.add(new ProductResponse(product));
+        }
+        return new ResponseEntity<>(recommended, HttpStatus.OK);
+    }
+
+    /**
+     * Nhiều sản phẩm trong một request (giỏ hàng, wishlist, gợi ý), trả về theo đúng thứ tự ids
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<?> getProductsBatch(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_BATCH_IDS) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("At most " + MAX_BATCH_IDS + " ids can be requested at once"));
+        }
+        List<Product> products = productService.getProductsByIds(ids);
+
+        Set<Long> foundIds = new HashSet<>();
+        List<ProductResponse> content = new ArrayList<>(products.size());
+        for (Product product : products) {
+            foundIds.add(product.getId());
+            content.add(new ProductResponse(product));
+        }
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            if (!foundIds.contains(id)) {
+                missingIds.add(id);
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", content);
+        response.put("missingIds", missingIds);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Sản phẩm thường được mua cùng, bổ sung bằng sản phẩm bán chạy cùng danh mục nếu chưa đủ
+     */
+    @GetMapping("/{id}/related")
+    public ResponseEntity<?> getRelatedProducts(
+            @PathVariable Long id,
+            @RequestParam(required = false, defaultValue = "8") int limit) {
+        int actualLimit = Math.max(1, Math.min(limit, CoPurchaseIndex.MAX_NEIGHBOURS));
+        Product product;
+        try {
+            product = productService.getCachedProduct(id);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new MessageResponse("Product not found with id: " + id));
+        }
+
+        List<Long> relatedIds = new ArrayList<>();
+        for (long neighbourId : coPurchaseIndex.getNeighbours(id, actualLimit)) {
+            relatedIds.add(neighbourId);
+        }
+        // Bản sao từ cache không có reviews: chỉ trả về DTO, không serialize entity
+        List<ProductSummary> related = new ArrayList<>(actualLimit);
+        for (Product neighbour : productService.getProductsByIds(relatedIds)) {
+            related.add(ProductSummary.of(neighbour));
+        }
+
+        if (related.size() < actualLimit && product.getCategory() != null) {
+            Set<Long> seen = new HashSet<>(relatedIds);
+            // Lấy dư số sản phẩm đã có để vẫn đủ sau khi bỏ trùng
+            for (ProductSummary candidate : productRepository.findTopSummariesByCategory(
+                    product.getCategory().getId(), id, PageRequest.of(0, actualLimit + relatedIds.size()))) {
+                if (related.size() >= actualLimit) {
+                    break;
+                }
+                if (seen.add(candidate.getId())) {
+                    related.add(candidate);
+                }
+            }
+        }
+        return ResponseEntity.ok(related);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getProduct(@PathVariable Long id) {
+    public ResponseEntity<?> getProduct(@PathVariable Long id, WebRequest webRequest) {
+        // Kiểm tra If-None-Match / If-Modified-Since bằng truy vấn tổng hợp, chưa load entity
+        ResourceVersion productVersion = productRepository.findVersionById(id);
+        if (productVersion.getCount() > 0 && ConditionalGet.isNotModified(webRequest, "product:" + id,
+                productVersion,
+                categoryRepository.findVersion(),
+                reviewRepository.findVersionByProductId(id),
+                reviewRepository.findHelpfulVersionByProductId(id))) {
+            return ConditionalGet.notModified();
+        }
         try {
-            Product product = productRepository.findById(id)
-                    .orElseThrow(() -> new RuntimeException("Product not found"));
+            Product product = productService.getCachedProduct(id);
             
             // Tạo response tùy chỉnh thay vì trả về Product trực tiếp
             Map<String, Object> response = new HashMap<>();
@@ -179,9 +360,11 @@ public class ProductController {
             }
             
             // Tạo lại danh sách reviews một cách rõ ràng, đảm bảo mỗi review có đúng cấu trúc
+            // Bản sao lấy từ cache không có reviews, nên đọc reviews qua repository thay vì product.getReviews()
             List<Map<String, Object>> reviewsList = new ArrayList<>();
-            if (product.getReviews() != null) {
-                for (Review review : product.getReviews()) {
+            List<Review> reviews = reviewService.getAllProductReviews(product);
+            if (reviews != null) {
+                for (Review review : reviews) {
                     Map<String, Object> reviewMap = new HashMap<>();
                     int helpful  = reviewService.countHelpful(review);
                     int notHelp  = reviewService.countNotHelpful(review);
@@ -241,18 +424,23 @@ public class ProductController {
     }
 
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<Product>> getProductsByCategory(@PathVariable String category) {
+    public ResponseEntity<?> getProductsByCategory(
+            @PathVariable String category,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String view,
+            WebRequest webRequest) {
         try {
             // Log to debug
             System.out.println("Searching for category: " + category);
             
             // Find products by category name (case insensitive)
-            List<Product> products = productRepository.findByCategoryNameIgnoreCase(category);
-            
-            // Log results
-            System.out.println("Found " + products.size() + " products in category: " + category);
-            
-            return new ResponseEntity<>(products, HttpStatus.OK);
+            ProductSearchCriteria criteria = new ProductSearchCriteria();
+            criteria.setCategory(category);
+            criteria.setSort(sort);
+            return listProducts(criteria, page, size, cursor, view, webRequest);
         } catch (Exception e) {
             System.err.println("Error searching by category: " + category + ", error: " + e.getMessage());
             e.printStackTrace();
@@ -261,33 +449,27 @@ public class ProductController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<Product>> searchProducts(
+    public ResponseEntity<?> searchProducts(
             @RequestParam(required = false) String query,
-            @RequestParam(required = false) String category) {
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String view,
+            WebRequest webRequest) {
         try {
-            System.out.println("Search request - query: " + query + ", category: " + category);
-            
-            List<Product> products;
-            
-            if (category != null && !category.isEmpty()) {
-                // If category is provided, use it for filtering
-                if (query != null && !query.isEmpty()) {
-                    // Both category and query
-                    products = productRepository.findByCategoryNameIgnoreCaseAndNameContainingIgnoreCase(category, query);
-                } else {
-                    // Only category
-                    products = productRepository.findByCategoryNameIgnoreCase(category);
-                }
-            } else if (query != null && !query.isEmpty()) {
-                // Only query
-                products = productRepository.search(query);
-            } else {
-                // No filters, return all
-                products = productRepository.findAll();
-            }
-            
-            System.out.println("Found " + products.size() + " products in search");
-            return new ResponseEntity<>(products, HttpStatus.OK);
+            // Frontend gửi keyword/search thay vì query
+            String searchTerm = query != null ? query : (keyword != null ? keyword : search);
+            System.out.println("Search request - query: " + searchTerm + ", category: " + category);
+            
+            ProductSearchCriteria criteria = new ProductSearchCriteria();
+            criteria.setKeyword(searchTerm);
+            criteria.setCategory(category);
+            criteria.setSort(sort);
+            return listProducts(criteria, page, size, cursor, view, webRequest);
         } catch (Exception e) {
             System.err.println("Error in search: " + e.getMessage());
             e.printStackTrace();
@@ -313,93 +495,48 @@ public class ProductController {
             @RequestParam(required = false) Boolean inStock,
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "12") int size,
-            @RequestParam(required = false, defaultValue = "newest") String sort) {
+            @RequestParam(required = false, defaultValue = "newest") String sort,
+            @RequestParam(required = false) String view) {
         
+        if (!productSearchIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new MessageResponse("Search index is still loading, please try again shortly"));
+        }
+
         try {
             // Xử lý tham số keyword và search (ưu tiên keyword nếu cả hai đều có)
-            String searchTerm = keyword != null ? keyword : search;
-            
-            // Lấy tất cả sản phẩm để áp dụng bộ lọc
-            List<Product> allProducts = productRepository.findAll();
-            List<Product> filteredProducts = new ArrayList<>(allProducts);
-            
-            // Lọc theo category
-            if (category != null && !category.isEmpty() && !category.equalsIgnoreCase("all")) {
-                String categoryLower = category.toLowerCase();
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> p.getCategory() != null && 
-                                (p.getCategory().getName() != null && 
-                                p.getCategory().getName().toLowerCase().equals(categoryLower)))
-                        .collect(Collectors.toList());
-            }
-            
-            // Lọc theo searchTerm
-            if (searchTerm != null && !searchTerm.isEmpty()) {
-                String searchLower = searchTerm.toLowerCase();
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> (p.getName() != null && p.getName().toLowerCase().contains(searchLower)) ||
-                                (p.getDescription() != null && p.getDescription().toLowerCase().contains(searchLower)) ||
-                                (p.getCategory() != null && p.getCategory().getName() != null && 
-                                 p.getCategory().getName().toLowerCase().contains(searchLower)))
-                        .collect(Collectors.toList());
-            }
-            
-            // Lọc theo khoảng giá
-            if (minPrice != null) {
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> p.getPrice() >= minPrice)
-                        .collect(Collectors.toList());
-            }
-            
-            if (maxPrice != null) {
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> p.getPrice() <= maxPrice)
+            ProductSearchCriteria criteria = new ProductSearchCriteria();
+            criteria.setKeyword(keyword != null ? keyword : search);
+            criteria.setCategory(category);
+            criteria.setMinPrice(minPrice);
+            criteria.setMaxPrice(maxPrice);
+            criteria.setMinRating(minRating);
+            criteria.setInStock(inStock);
+            criteria.setSort(sort);
+            criteria.setPage(page);
+            criteria.setSize(size);
+
+            // Lọc, sắp xếp và phân trang trên index, chỉ lấy id của trang hiện tại
+            ProductSearchResult result = productSearchIndex.search(criteria);
+            int totalItems = result.getTotalElements();
+            int endIndex = Math.min(page * size + size, totalItems);
+
+            List<?> pagedProducts;
+            if (VIEW_SUMMARY.equals(view)) {
+                // Dạng rút gọn lấy thẳng từ snapshot trong index, không truy vấn DB
+                pagedProducts = productSearchIndex.getSnapshots(result.getProductIds()).stream()
+                        .map(ProductSummary::of)
                         .collect(Collectors.toList());
-            }
-            
-            // Lọc theo rating
-            if (minRating != null) {
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> p.getAverageRating() >= minRating)
-                        .collect(Collectors.toList());
-            }
-            
-            // Lọc theo tồn kho
-            if (inStock != null && inStock) {
-                filteredProducts = filteredProducts.stream()
-                        .filter(p -> p.getStock() > 0)
+            } else {
+                // Chỉ load từ DB các sản phẩm của trang, giữ đúng thứ tự của index
+                Map<Long, Product> productsById = productRepository.findAllById(result.getProductIds()).stream()
+                        .collect(Collectors.toMap(Product::getId, p -> p));
+                pagedProducts = result.getProductIds().stream()
+                        .map(productsById::get)
+                        .filter(p -> p != null)
                         .collect(Collectors.toList());
             }
             
-            // Sắp xếp sản phẩm
-            if (sort != null) {
-                switch (sort) {
-                    case "price_asc":
-                        filteredProducts.sort(Comparator.comparing(Product::getPrice));
-                        break;
-                    case "price_desc":
-                        filteredProducts.sort(Comparator.comparing(Product::getPrice).reversed());
-                        break;
-                    case "rating":
-                        filteredProducts.sort(Comparator.comparing(Product::getAverageRating).reversed());
-                        break;
-                    case "newest":
-                    default:
-                        // Giả sử ID cao hơn = sản phẩm mới hơn
-                        filteredProducts.sort(Comparator.comparing(Product::getId).reversed());
-                        break;
-                }
-            }
-            
-            // Phân trang kết quả
-            int totalItems = filteredProducts.size();
-            int startIndex = page * size;
-            int endIndex = Math.min(startIndex + size, totalItems);
-            
-            List<Product> pagedProducts = startIndex < endIndex 
-                    ? filteredProducts.subList(startIndex, endIndex) 
-                    : new ArrayList<>();
-            
             // Tạo đối tượng phản hồi phân trang
             Map<String, Object> response = new HashMap<>();
             response.put("content", pagedProducts);
@@ -419,6 +556,95 @@ public class ProductController {
         }
     }
 
+    /**
+     * Tìm kiếm toàn văn (không dấu, xếp hạng BM25, gõ thiếu/sai chính tả) kèm facet theo
+     * danh mục và khoảng giá. Trả lời hoàn toàn từ search index, không truy vấn MySQL.
+     */
+    @GetMapping("/search/fulltext")
+    public ResponseEntity<?> fullTextSearch(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false, defaultValue = "0") int page,
+            @RequestParam(required = false, defaultValue = "12") int size) {
+
+        if (!productSearchIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new MessageResponse("Search index is still loading, please try again shortly"));
+        }
+
+        FullTextSearchResult result = productSearchIndex.fullTextSearch(q, category, minPrice, maxPrice, page, size);
+        int totalItems = result.getTotalElements();
+
+        Map<String, Object> facets = new HashMap<>();
+        facets.put("category", result.getCategoryFacets());
+        facets.put("price", result.getPriceFacets());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("content", result.getHits());
+        response.put("totalElements", totalItems);
+        response.put("totalPages", (int) Math.ceil((double) totalItems / Math.max(1, size)));
+        response.put("size", size);
+        response.put("number", page);
+        response.put("first", page == 0);
+        response.put("last", (long) (page + 1) * size >= totalItems);
+        response.put("empty", result.getHits().isEmpty());
+        response.put("facets", facets);
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Số lượng sản phẩm theo danh mục, khoảng giá, mức rating và tồn kho cho bộ lọc hiện tại.
+     * Mỗi facet bỏ qua bộ lọc của chính nó; toàn bộ được đếm trên bitset của search index.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<?> getFacets(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) Integer minRating,
+            @RequestParam(required = false) Boolean inStock) {
+
+        if (!productSearchIndex.isReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new MessageResponse("Search index is still loading, please try again shortly"));
+        }
+
+        ProductSearchCriteria criteria = new ProductSearchCriteria();
+        criteria.setKeyword(keyword != null ? keyword : search);
+        criteria.setCategory(category);
+        criteria.setMinPrice(minPrice);
+        criteria.setMaxPrice(maxPrice);
+        criteria.setMinRating(minRating);
+        criteria.setInStock(inStock);
+        ProductFacets result = productSearchIndex.facets(criteria);
+
+        Map<String, Object> facets = new HashMap<>();
+        facets.put("category", result.getCategory());
+        facets.put("price", result.getPrice());
+        facets.put("rating", result.getRating());
+        facets.put("stock", result.getStock());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("totalElements", result.getTotalElements());
+        response.put("facets", facets);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Gợi ý khi gõ (type-ahead) cho ô tìm kiếm: tên sản phẩm và danh mục, ưu tiên bán chạy
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductSuggestion>> suggest(
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false, defaultValue = "5") int limit) {
+        return ResponseEntity.ok(productSuggester.suggest(prefix, limit));
+    }
+
     @GetMapping("/top-by-month")
     public ResponseEntity<List<Product>> getTopProductsByMonth(
             @RequestParam(defaultValue = "0") int month,
@@ -431,38 +657,19 @@ public class ProductController {
             int targetMonth = month > 0 ? month : (today.getMonthValue() == 1 ? 12 : today.getMonthValue() - 1);
             int targetYear = year > 0 ? year : (today.getMonthValue() == 1 ? today.getYear() - 1 : today.getYear());
             
-            // Tu1ea1o thu1eddi gian bu1eaft u0111u1ea7u vu00e0 ku1ebft thu00fac cho thu00e1ng
-            LocalDate startDate = LocalDate.of(targetYear, targetMonth, 1);
-            LocalDate endDate = startDate.plusMonths(1).minusDays(1);
+            // Đọc từ bảng tổng hợp product_sales_monthly thay vì quét toàn bộ đơn hàng trong tháng
+            List<Long> topIds = productSalesRollupService.findTopProductIds(targetYear, targetMonth, limit);
             
-            // Lu1ea5y tu1ea5t cu1ea3 u0111u01a1n hu00e0ng trong thu00e1ng u0111u00f3
-            List<Order> orders = orderRepository.findByCreatedAtBetween(
-                    startDate.atStartOfDay(),
-                    endDate.atTime(23, 59, 59));
-            
-            // Thu1ed1ng ku00ea su1ed1 lu01b0u1ee3ng bu00e1n theo su1ea3n phu1ea9m
-            Map<Long, Integer> productSalesCount = new HashMap<>();
-            
-            for (Order order : orders) {
-                if (order.getOrderItems() != null) {
-                    for (OrderItem item : order.getOrderItems()) {
-                        Long productId = item.getProduct().getId();
-                        int quantity = item.getQuantity();
-                        productSalesCount.put(productId, productSalesCount.getOrDefault(productId, 0) + quantity);
-                    }
-                }
+            Map<Long, Product> productsById = new HashMap<>();
+            for (Product product : productRepository.findAllById(topIds)) {
+                productsById.put(product.getId(), product);
             }
-            
-            // Su1eafp xu1ebfp cu00e1c su1ea3n phu1ea9m theo su1ed1 lu01b0u1ee3ng bu00e1n ra giu1ea3m du1ea7n
-            List<Map.Entry<Long, Integer>> sortedProducts = productSalesCount.entrySet().stream()
-                    .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
-                    .limit(limit)
-                    .collect(Collectors.toList());
-            
-            // Lu1ea5y thu00f4ng tin chi tiu1ebft cu1ee7a cu00e1c su1ea3n phu1ea9m
             List<Product> topProducts = new ArrayList<>();
-            for (Map.Entry<Long, Integer> entry : sortedProducts) {
-                productRepository.findById(entry.getKey()).ifPresent(topProducts::add);
+            for (Long productId : topIds) {
+                Product product = productsById.get(productId);
+                if (product != null) {
+                    topProducts.add(product);
+                }
             }
             
             return new ResponseEntity<>(topProducts, HttpStatus.OK);
@@ -554,14 +761,14 @@ public class ProductController {
             }
             
             // Get the product
-            Optional<Product> productData = productRepository.findById(id);
-            if (!productData.isPresent()) {
+            Product product;
+            try {
+                product = productService.getCachedProduct(id);
+            } catch (EntityNotFoundException e) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new MessageResponse("Product not found"));
             }
             
-            Product product = productData.get();
-            
             // Get all reviews for this user and product
             List<Review> reviews = reviewService.getUserReviewsForProduct(user, product);
             
@@ -604,14 +811,14 @@ public class ProductController {
             System.out.println("Fetching image for product ID: " + id);
 
             // Try to find the product
-            Optional<Product> productOpt = productRepository.findById(id);
-            if (!productOpt.isPresent()) {
+            Product product;
+            try {
+                product = productService.getCachedProduct(id);
+            } catch (EntityNotFoundException e) {
                 System.out.println("Product not found: " + id);
                 // Return default image if product not found
                 return serveDefaultImage();
             }
-
-            Product product = productOpt.get();
             String imageUrl = product.getImageUrl();
 
             // Check if product has an imageUrl
@@ -0,0 +1,24 @@
+package com.example.tmdt.event;
+
+/**
+ * A row was inserted ({@code delta} 1) or deleted ({@code delta} -1) in a table
+ * whose size is shown on the admin dashboard.
+ */
+public class EntityCountChangedEvent {
+
+    private final String counter;
+    private final int delta;
+
+    public EntityCountChangedEvent(String counter, int delta) {
+        this.counter = counter;
+        this.delta = delta;
+    }
+
+    public String getCounter() {
+        return counter;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.tmdt.event;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.model.DashboardCounter;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.model.User;
+
+/**
+ * JPA entity listener for the entities counted on the admin dashboard ({@link User},
+ * {@link Product}). Inserts and deletes are published as {@link EntityCountChangedEvent}s.
+ */
+@Component
+public class EntityCountListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    public void onPersist(Object entity) {
+        publish(entity, 1);
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        publish(entity, -1);
+    }
+
+    private void publish(Object entity, int delta) {
+        String counter = counterOf(entity);
+        if (counter != null) {
+            eventPublisher.publishEvent(new EntityCountChangedEvent(counter, delta));
+        }
+    }
+
+    private static String counterOf(Object entity) {
+        if (entity instanceof User) {
+            return DashboardCounter.USERS;
+        }
+        if (entity instanceof Product) {
+            return DashboardCounter.PRODUCTS;
+        }
+        return null;
+    }
+}
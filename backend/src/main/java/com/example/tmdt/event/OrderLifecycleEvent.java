@@ -0,0 +1,72 @@
+package com.example.tmdt.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OrderItem;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Payload of an order event in the outbox. It carries everything the consumers need
+ * (lines, amounts, old and new status), so they never depend on the order row still
+ * looking the way it did when the event was recorded.
+ */
+@Data
+@NoArgsConstructor
+public class OrderLifecycleEvent {
+
+    public enum Type {
+        ORDER_CREATED,
+        ORDER_CANCELLED,
+        ORDER_STATUS_CHANGED,
+        ORDER_REFUNDED,
+        ORDER_DELETED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Line {
+        private Long productId;
+        private Integer quantity;
+        private BigDecimal price;
+    }
+
+    private Type type;
+    private Long orderId;
+    private Long userId;
+    private Order.OrderStatus previousStatus;
+    private Order.OrderStatus status;
+    private String paymentStatus;
+    private String couponCode;
+    private BigDecimal totalAmount;
+    private LocalDateTime createdAt;
+    private List<Line> items = new ArrayList<>();
+    // false khi nơi gọi đã tự gửi thông báo riêng (ví dụ RefundService)
+    private boolean notifyUser = true;
+
+    public static OrderLifecycleEvent of(Type type, Order order, Order.OrderStatus previousStatus) {
+        OrderLifecycleEvent event = new OrderLifecycleEvent();
+        event.setType(type);
+        event.setOrderId(order.getId());
+        event.setUserId(order.getUserId());
+        event.setPreviousStatus(previousStatus);
+        event.setStatus(order.getStatus());
+        event.setPaymentStatus(order.getPaymentStatus());
+        event.setCouponCode(order.getCoupon() != null ? order.getCoupon().getCode() : null);
+        event.setTotalAmount(order.getTotalAmount());
+        event.setCreatedAt(order.getCreatedAt());
+        if (order.getOrderItems() != null) {
+            for (OrderItem item : order.getOrderItems()) {
+                event.getItems().add(new Line(item.getProduct().getId(), item.getQuantity(), item.getPrice()));
+            }
+        }
+        return event;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.tmdt.event;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OrderItem;
+
+/**
+ * Published by {@code OrderService.createOrder} for every new order. Listeners that
+ * maintain read models should use {@code @TransactionalEventListener} so they only
+ * see orders that were committed.
+ */
+public class OrderPlacedEvent {
+
+    private final Long orderId;
+    private final Long userId;
+    private final List<Long> productIds;
+    private final LocalDateTime createdAt;
+
+    public OrderPlacedEvent(Long orderId, Long userId, List<Long> productIds, LocalDateTime createdAt) {
+        this.orderId = orderId;
+        this.userId = userId;
+        this.productIds = Collections.unmodifiableList(productIds);
+        this.createdAt = createdAt;
+    }
+
+    public static OrderPlacedEvent of(Order order) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        for (OrderItem item : order.getOrderItems()) {
+            productIds.add(item.getProduct().getId());
+        }
+        return new OrderPlacedEvent(order.getId(), order.getUserId(), new ArrayList<>(productIds), order.getCreatedAt());
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Distinct ids of the products in the order.
+     */
+    public List<Long> getProductIds() {
+        return productIds;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.tmdt.event;
+
+import com.example.tmdt.model.Product;
+
+/**
+ * Published whenever a product row is inserted, updated or deleted.
+ * Listeners usually subscribe with {@code @TransactionalEventListener} so they
+ * only see changes that were actually committed.
+ */
+public class ProductChangedEvent {
+
+    private final Long productId;
+    private final ProductSnapshot snapshot;
+
+    private ProductChangedEvent(Long productId, ProductSnapshot snapshot) {
+        this.productId = productId;
+        this.snapshot = snapshot;
+    }
+
+    public static ProductChangedEvent saved(Product product) {
+        return new ProductChangedEvent(product.getId(), ProductSnapshot.of(product));
+    }
+
+    /**
+     * For writes that bypass the entity (bulk JPQL updates), built from a snapshot read after the update.
+     */
+    public static ProductChangedEvent saved(ProductSnapshot snapshot) {
+        return new ProductChangedEvent(snapshot.getId(), snapshot);
+    }
+
+    public static ProductChangedEvent deleted(Long productId) {
+        return new ProductChangedEvent(productId, null);
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public boolean isDeleted() {
+        return snapshot == null;
+    }
+
+    /**
+     * State of the product after the change, or {@code null} for deletions.
+     */
+    public ProductSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.tmdt.event;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.model.Product;
+
+/**
+ * JPA entity listener for {@link Product}. Hibernate resolves it through the
+ * Spring bean container, so it can hand changes to in-memory read models
+ * (search index, caches) as {@link ProductChangedEvent}s.
+ */
+@Component
+public class ProductEntityListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Product product) {
+        eventPublisher.publishEvent(ProductChangedEvent.saved(product));
+    }
+
+    @PostRemove
+    public void onRemove(Product product) {
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(product.getId()));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.tmdt.event;
+
+import com.example.tmdt.model.Product;
+
+/**
+ * Immutable copy of the product columns used by the in-memory read models.
+ * Built either from a managed entity or directly by a JPQL constructor
+ * expression, so rebuilding a read model never hydrates {@link Product} graphs.
+ */
+public class ProductSnapshot {
+
+    private final Long id;
+    private final String name;
+    private final String description;
+    private final Long categoryId;
+    private final String categoryName;
+    private final double price;
+    private final double discountPercentage;
+    private final double averageRating;
+    private final int stock;
+    private final int soldCount;
+    private final String imageUrl;
+
+    public ProductSnapshot(Long id, String name, String description, Long categoryId, String categoryName,
+                           Double price, Double discountPercentage, Double averageRating,
+                           Integer stock, Integer soldCount, String imageUrl) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.categoryId = categoryId;
+        this.categoryName = categoryName;
+        this.price = price != null ? price : 0.0;
+        this.discountPercentage = discountPercentage != null ? discountPercentage : 0.0;
+        this.averageRating = averageRating != null ? averageRating : 0.0;
+        this.stock = stock != null ? stock : 0;
+        this.soldCount = soldCount != null ? soldCount : 0;
+        this.imageUrl = imageUrl;
+    }
+
+    public static ProductSnapshot of(Product product) {
+        return new ProductSnapshot(
+                product.getId(),
+                product.getName(),
+                product.getDescription(),
+                product.getCategory() != null ? product.getCategory().getId() : null,
+                product.getCategory() != null ? product.getCategory().getName() : null,
+                product.getPrice(),
+                product.getDiscountPercentage(),
+                product.getAverageRating(),
+                product.getStock(),
+                product.getSoldCount(),
+                product.getImageUrl());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getDiscountPercentage() {
+        return discountPercentage;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public int getStock() {
+        return stock;
+    }
+
+    public int getSoldCount() {
+        return soldCount;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+}
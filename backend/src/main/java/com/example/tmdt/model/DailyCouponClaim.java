@@ -0,0 +1,43 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Records that the daily coupon of a product has been handed out on a given day.
+ * The unique key makes the claim atomic across all application nodes.
+ */
+@Entity
+@Table(name = "daily_coupon_claims", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"coupon_date", "product_id"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyCouponClaim {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "coupon_date", nullable = false)
+    private LocalDate couponDate;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+}
@@ -0,0 +1,31 @@
+package com.example.tmdt.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A running count shown on the admin dashboard, e.g. the number of users.
+ */
+@Entity
+@Table(name = "dashboard_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardCounter {
+
+    public static final String USERS = "users";
+    public static final String PRODUCTS = "products";
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    @Column(name = "counter_value", nullable = false)
+    private Long value;
+}
@@ -0,0 +1,32 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The node that holds the in-memory counter of a hot SKU. Only the owner takes
+ * units from the counter; it renews the lease while it runs, and another node may
+ * claim the SKU once the lease has run out.
+ */
+@Entity
+@Table(name = "hot_sku_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotSkuLease {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(length = 64)
+    private String owner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,68 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The outcome of a request sent with an {@code Idempotency-Key} header. The row is
+ * claimed before the request runs ({@code responseStatus} still null) and filled in
+ * afterwards, so a retry with the same key gets the stored response back. While the
+ * request runs, its node keeps renewing {@code leaseUntil}.
+ */
+@Entity
+@Table(name = "idempotency_keys", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"user_id", "scope", "idempotency_key"})
+}, indexes = {
+        @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // Endpoint dùng key, ví dụ "orders" hoặc "orders/pay"
+    @Column(nullable = false, length = 50)
+    private String scope;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    // SHA-256 của request body: cùng key nhưng khác nội dung là lỗi của client
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(name = "response_status")
+    private Integer responseStatus;
+
+    @Column(name = "response_content_type", length = 100)
+    private String responseContentType;
+
+    @Column(name = "response_body", columnDefinition = "MEDIUMTEXT")
+    private String responseBody;
+
+    // Header cần trả lại khi replay, ví dụ X-Reservation-Token, dạng JSON
+    @Column(name = "response_headers", length = 1000)
+    private String responseHeaders;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    // Node đang chạy request gia hạn mốc này định kỳ; quá hạn mà chưa có response là request đã chết
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,38 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A stock change of a hot SKU that is not in {@code products.stock} yet.
+ * Written in the same transaction as the order, applied to the product row
+ * and deleted by the write-behind flush.
+ */
+@Entity
+@Table(name = "inventory_journal", indexes = {
+        @Index(name = "idx_inventory_journal_product", columnList = "product_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryJournalEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // Âm khi giữ/bán hàng, dương khi trả lại
+    @Column(nullable = false)
+    private Integer delta;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
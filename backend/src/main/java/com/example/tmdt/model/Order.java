@@ -7,6 +7,7 @@ import java.util.List;
 
 import javax.persistence.*;
 
+import com.example.tmdt.config.IdGeneratorSeeder;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.AllArgsConstructor;
@@ -15,7 +16,27 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 @Entity
-@Table(name = "orders")
+// Chỉ mục cho phân trang keyset (created_at, id) của từng kiểu danh sách đơn
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_orders_user_created_at_id", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_orders_status_created_at_id", columnList = "status, created_at, id")
+})
+@NamedEntityGraphs({
+        // Đơn kèm các quan hệ được serialize, không kèm item: an toàn khi phân trang
+        @NamedEntityGraph(name = Order.GRAPH_HEADER, attributeNodes = {
+                @NamedAttributeNode("user"),
+                @NamedAttributeNode("coupon"),
+                @NamedAttributeNode("refundRequest")
+        }),
+        // Danh sách đơn của user, chi tiết đơn và danh sách admin: thêm item và sản phẩm
+        @NamedEntityGraph(name = Order.GRAPH_WITH_ITEMS, attributeNodes = {
+                @NamedAttributeNode("user"),
+                @NamedAttributeNode("coupon"),
+                @NamedAttributeNode("refundRequest"),
+                @NamedAttributeNode(value = "orderItems", subgraph = "items")
+        }, subgraphs = @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode("product")))
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,8 +45,15 @@ import lombok.ToString;
         generator = ObjectIdGenerators.PropertyGenerator.class,
         property = "id")
 public class Order {
+    public static final String GRAPH_HEADER = "Order.header";
+    public static final String GRAPH_WITH_ITEMS = "Order.withItems";
+
+    // Cấp id theo khối để Hibernate gộp INSERT thành JDBC batch (xem IdGeneratorSeeder)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_id_generator")
+    @TableGenerator(name = "order_id_generator", table = IdGeneratorSeeder.TABLE,
+            pkColumnName = "gen_name", valueColumnName = "next_val", pkColumnValue = "orders",
+            allocationSize = IdGeneratorSeeder.ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -3,6 +3,8 @@ package com.example.tmdt.model;
 import java.math.BigDecimal;
 
 import javax.persistence.*;
+
+import com.example.tmdt.config.IdGeneratorSeeder;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -24,8 +26,12 @@ import lombok.ToString;
         generator = ObjectIdGenerators.PropertyGenerator.class,
         property = "id")
 public class OrderItem {
+    // Cấp id theo khối để Hibernate gộp INSERT thành JDBC batch (xem IdGeneratorSeeder)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_item_id_generator")
+    @TableGenerator(name = "order_item_id_generator", table = IdGeneratorSeeder.TABLE,
+            pkColumnName = "gen_name", valueColumnName = "next_val", pkColumnValue = "order_items",
+            allocationSize = IdGeneratorSeeder.ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,40 @@
+package com.example.tmdt.model;
+
+import java.math.BigDecimal;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number and total amount of the orders created in one calendar month that are
+ * currently in {@code status}. {@code period} is the month as yyyymm, e.g. 202405.
+ */
+@Entity
+@Table(name = "order_stats_monthly", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"period", "status"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatsMonthly {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "period", nullable = false)
+    private Integer period;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 30)
+    private Order.OrderStatus status;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    @Column(name = "total_amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalAmount;
+}
@@ -0,0 +1,59 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An event written in the same transaction as the change it describes and delivered
+ * to its consumers after commit by {@code OutboxDispatcher}. {@code dispatchedAt}
+ * stays null until every consumer has handled it. An event that keeps failing is
+ * parked ({@code parkedAt} set) and no longer delivered; clearing {@code parkedAt}
+ * queues it again.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_events_dispatched_id", columnList = "dispatched_at, id"),
+        @Index(name = "idx_outbox_events_aggregate_id", columnList = "aggregate_id, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_type", nullable = false, length = 50)
+    private String eventType;
+
+    // Id của đơn hàng: các sự kiện cùng aggregate được giao theo đúng thứ tự
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "dispatched_at")
+    private LocalDateTime dispatchedAt;
+
+    @Column(name = "parked_at")
+    private LocalDateTime parkedAt;
+}
@@ -0,0 +1,36 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Marks that a consumer has handled an outbox event. Written in the consumer's own
+ * transaction, so a redelivered event is skipped instead of applied twice.
+ */
+@Entity
+@Table(name = "outbox_processed", uniqueConstraints = {
+        @UniqueConstraint(columnNames = {"event_id", "consumer"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_id", nullable = false)
+    private Long eventId;
+
+    @Column(nullable = false, length = 50)
+    private String consumer;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+}
@@ -13,6 +13,10 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.example.tmdt.event.EntityCountListener;
+import com.example.tmdt.event.ProductEntityListener;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
@@ -24,7 +28,13 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_price_id", columnList = "price, id"),
+        @Index(name = "idx_products_rating_id", columnList = "average_rating, id")
+})
+@EntityListeners({ProductEntityListener.class, EntityCountListener.class})
+// Chỉ ghi các cột thay đổi: cập nhật rating/review không ghi đè stock do write-behind vừa flush
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -80,6 +90,10 @@ public class Product {
     @Column(name = "discount_percentage")
     private Double discountPercentage = 0.0;
 
+    // Flash sale: tồn kho giữ trong bộ nhớ (HotSkuInventory), ghi xuống DB theo lô
+    @Column(name = "hot_sku")
+    private Boolean hotSku = false;
+
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnoreProperties("product")
     private List<Review> reviews = new ArrayList<>();
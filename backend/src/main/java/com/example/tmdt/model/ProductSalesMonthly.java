@@ -0,0 +1,41 @@
+package com.example.tmdt.model;
+
+import java.math.BigDecimal;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Units sold and gross item revenue of a product in one calendar month.
+ * {@code period} is the month as yyyymm, e.g. 202405.
+ */
+@Entity
+@Table(name = "product_sales_monthly", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"product_id", "period"})
+}, indexes = {
+    @Index(name = "idx_sales_monthly_period_quantity", columnList = "period, quantity")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSalesMonthly {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "period", nullable = false)
+    private Integer period;
+
+    @Column(name = "quantity", nullable = false)
+    private Long quantity;
+
+    @Column(name = "revenue", nullable = false, precision = 15, scale = 2)
+    private BigDecimal revenue;
+}
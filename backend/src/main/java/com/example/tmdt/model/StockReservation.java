@@ -0,0 +1,72 @@
+package com.example.tmdt.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.*;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock taken out of {@code products.stock} for a checkout that has not become an
+ * order yet (online payment in progress). A HELD reservation either becomes an order
+ * (COMMITTED) or gives its units back when it expires.
+ */
+@Entity
+@Table(name = "stock_reservations", indexes = {
+        @Index(name = "idx_stock_reservations_status_expires", columnList = "status, expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+
+    public enum Status {
+        HELD,
+        COMMITTED,
+        RELEASED,
+        EXPIRED,
+        // Thanh toán xong sau khi hold hết hạn và hàng đã bị bán mất: đơn vẫn được nhận, cần đối soát kho
+        OVERSOLD
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 36)
+    private String token;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "stock_reservation_items", joinColumns = @JoinColumn(name = "reservation_id"))
+    private List<Line> items = new ArrayList<>();
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Line {
+
+        @Column(name = "product_id", nullable = false)
+        private Long productId;
+
+        @Column(nullable = false)
+        private Integer quantity;
+    }
+}
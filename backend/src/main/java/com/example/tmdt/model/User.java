@@ -7,6 +7,8 @@ import java.util.HashSet;
 import java.util.List; // Add this import for List
 
 import javax.persistence.*;
+
+import com.example.tmdt.event.EntityCountListener;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
@@ -26,6 +28,7 @@ import lombok.ToString;
                 @UniqueConstraint(columnNames = "username"),
                 @UniqueConstraint(columnNames = "email")
         })
+@EntityListeners(EntityCountListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,16 @@
+package com.example.tmdt.payload.request;
+
+import java.util.List;
+
+import javax.validation.constraints.NotEmpty;
+
+import lombok.Data;
+
+/**
+ * Several orders placed in one request; each order is validated and accepted on its own.
+ */
+@Data
+public class BatchOrderRequest {
+    @NotEmpty(message = "Batch must contain at least one order")
+    private List<OrderRequest> orders;
+}
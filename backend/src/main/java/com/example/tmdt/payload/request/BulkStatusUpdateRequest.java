@@ -0,0 +1,28 @@
+package com.example.tmdt.payload.request;
+
+import java.util.List;
+
+import javax.validation.constraints.NotEmpty;
+
+import com.example.tmdt.model.Order.OrderStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Status changes for many orders at once; each one is checked on its own.
+ */
+@Data
+public class BulkStatusUpdateRequest {
+    @NotEmpty(message = "At least one transition is required")
+    private List<Transition> transitions;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Transition {
+        private Long orderId;
+        private OrderStatus status;
+    }
+}
@@ -26,5 +26,12 @@ public class OrderRequest {
     
     private String couponCode;
     
+    // Không còn dùng để tính tiền: tổng tiền luôn do server tính (PricingEngine)
     private Double total;
+
+    // Id báo giá trả về từ /orders/pay, để /orders tạo đơn đúng số tiền đã thanh toán
+    private String quoteId;
+
+    // Token giữ hàng trả về từ /orders/pay (thanh toán online)
+    private String reservationToken;
 } 
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.tmdt.payload.response;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of one order of a {@code /orders/batch} request, at the same index as in the request.
+ */
+@Data
+@AllArgsConstructor
+public class BatchOrderResult {
+
+    public static final String CREATED = "CREATED";
+    public static final String REJECTED = "REJECTED";
+
+    private int index;
+    private String status;
+    private Long orderId;
+    private BigDecimal totalAmount;
+    private String message;
+
+    public static BatchOrderResult created(int index, Long orderId, BigDecimal totalAmount) {
+        return new BatchOrderResult(index, CREATED, orderId, totalAmount, null);
+    }
+
+    public static BatchOrderResult rejected(int index, String message) {
+        return new BatchOrderResult(index, REJECTED, null, null, message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.tmdt.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A transition of a bulk status update that was not applied, at the same index as in the request.
+ */
+@Data
+@AllArgsConstructor
+public class BulkStatusResult {
+    private int index;
+    private Long orderId;
+    private String message;
+}
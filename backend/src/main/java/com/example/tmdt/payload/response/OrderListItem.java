@@ -0,0 +1,22 @@
+package com.example.tmdt.payload.response;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.example.tmdt.model.Order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * The columns of an order shown in short lists (dashboard, recent orders), read with
+ * a JPQL constructor expression so the order graph is never loaded.
+ */
+@Data
+@AllArgsConstructor
+public class OrderListItem {
+    private Long id;
+    private LocalDateTime createdAt;
+    private Order.OrderStatus status;
+    private BigDecimal totalAmount;
+}
@@ -16,4 +16,10 @@ public class PagedResponse<T> {
     private long totalElements;
     private int totalPages;
     private boolean last;
-} 
\ No newline at end of file
+    // Opaque keyset cursor for the next page, null on the last page or for offset-only listings
+    private String nextCursor;
+
+    public PagedResponse(List<T> content, int page, int size, long totalElements, int totalPages, boolean last) {
+        this(content, page, size, totalElements, totalPages, last, null);
+    }
+} 
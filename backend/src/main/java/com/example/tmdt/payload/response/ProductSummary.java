@@ -0,0 +1,73 @@
+package com.example.tmdt.payload.response;
+
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.model.Product;
+
+/**
+ * Flat list-view row of a product. Built by a JPQL constructor expression
+ * straight from the columns, so listings never load or serialize the entity graph.
+ */
+public class ProductSummary {
+
+    private final Long id;
+    private final String name;
+    private final Double price;
+    private final Double discountedPrice;
+    private final String imageUrl;
+    private final Double averageRating;
+    private final boolean inStock;
+
+    public ProductSummary(Long id, String name, Double price, Double discountPercentage,
+                          String imageUrl, Double averageRating, Integer stock) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        // Cùng công thức với Product.getDiscountedPrice()
+        this.discountedPrice = price != null && discountPercentage != null && discountPercentage > 0
+                ? price * (1 - discountPercentage / 100)
+                : price;
+        this.imageUrl = imageUrl;
+        this.averageRating = averageRating;
+        this.inStock = stock != null && stock > 0;
+    }
+
+    public static ProductSummary of(Product product) {
+        return new ProductSummary(product.getId(), product.getName(), product.getPrice(),
+                product.getDiscountPercentage(), product.getImageUrl(), product.getAverageRating(),
+                product.getStock());
+    }
+
+    public static ProductSummary of(ProductSnapshot snapshot) {
+        return new ProductSummary(snapshot.getId(), snapshot.getName(), snapshot.getPrice(),
+                snapshot.getDiscountPercentage(), snapshot.getImageUrl(), snapshot.getAverageRating(),
+                snapshot.getStock());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public Double getDiscountedPrice() {
+        return discountedPrice;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public Double getAverageRating() {
+        return averageRating;
+    }
+
+    public boolean isInStock() {
+        return inStock;
+    }
+}
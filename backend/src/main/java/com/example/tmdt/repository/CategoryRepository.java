@@ -1,6 +1,7 @@
 package com.example.tmdt.repository;
 
 import com.example.tmdt.model.Category;
+import com.example.tmdt.util.ResourceVersion;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -18,4 +19,7 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     List<Category> findAllActiveCategories();
     
     boolean existsByName(String name);
+
+    @Query("SELECT new com.example.tmdt.util.ResourceVersion(COUNT(c), MAX(c.updatedAt)) FROM Category c")
+    ResourceVersion findVersion();
 } 
\ No newline at end of file
@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.tmdt.model.Coupon;
@@ -35,4 +37,16 @@ public interface CouponRepository extends JpaRepository<Coupon, Long> {
     
     @Query("SELECT c FROM Coupon c WHERE c.endDate BETWEEN ?1 AND ?2 AND c.isActive = true")
     List<Coupon> findCouponsExpiringBetween(LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Counts one use of an active coupon that still has uses left, and disables it when
+     * this was its last use. Returns 0 when the coupon ran out or was disabled meanwhile.
+     */
+    // isActive được gán trước usedCount: MySQL tính các phép gán SET theo thứ tự và dùng giá trị mới
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Coupon c SET c.isActive = CASE WHEN c.type = 'ONE_TIME' "
+            + "OR c.maxUses <= (COALESCE(c.usedCount, 0) + 1) THEN false ELSE true END, "
+            + "c.usedCount = (COALESCE(c.usedCount, 0) + 1), c.updatedAt = :now "
+            + "WHERE c.id = :id AND c.isActive = true AND (c.maxUses IS NULL OR COALESCE(c.usedCount, 0) < c.maxUses)")
+    int claimUse(@Param("id") Long id, @Param("now") LocalDateTime now);
 } 
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.DailyCouponClaim;
+
+@Repository
+public interface DailyCouponClaimRepository extends JpaRepository<DailyCouponClaim, Long> {
+
+    @Query("SELECT c.productId FROM DailyCouponClaim c WHERE c.couponDate = :date")
+    List<Long> findClaimedProductIds(@Param("date") LocalDate date);
+
+    /**
+     * Inserts the claim unless the product was already claimed that day.
+     * Returns 1 if this call won the claim, 0 otherwise.
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO daily_coupon_claims (coupon_date, product_id, user_id, coupon_id, claimed_at) " +
+                   "VALUES (:date, :productId, :userId, :couponId, :claimedAt)", nativeQuery = true)
+    int tryClaim(@Param("date") LocalDate date,
+                 @Param("productId") Long productId,
+                 @Param("userId") Long userId,
+                 @Param("couponId") Long couponId,
+                 @Param("claimedAt") LocalDateTime claimedAt);
+}
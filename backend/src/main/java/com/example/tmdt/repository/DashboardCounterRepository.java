@@ -0,0 +1,28 @@
+package com.example.tmdt.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.DashboardCounter;
+
+@Repository
+public interface DashboardCounterRepository extends JpaRepository<DashboardCounter, String> {
+
+    @Modifying
+    @Query(value = "INSERT INTO dashboard_counters (name, counter_value) VALUES (:name, :delta) " +
+                   "ON DUPLICATE KEY UPDATE counter_value = counter_value + :delta", nativeQuery = true)
+    int add(@Param("name") String name, @Param("delta") long delta);
+
+    @Modifying
+    @Query(value = "INSERT INTO dashboard_counters (name, counter_value) VALUES (:name, :value) " +
+                   "ON DUPLICATE KEY UPDATE counter_value = :value", nativeQuery = true)
+    int set(@Param("name") String name, @Param("value") long value);
+
+    @Query(value = "SELECT counter_value FROM dashboard_counters WHERE name = :name FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockValue(@Param("name") String name);
+}
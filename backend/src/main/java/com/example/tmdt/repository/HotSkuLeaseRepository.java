@@ -0,0 +1,44 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.HotSkuLease;
+
+@Repository
+public interface HotSkuLeaseRepository extends JpaRepository<HotSkuLease, Long> {
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO hot_sku_leases (product_id) VALUES (:productId)", nativeQuery = true)
+    int createIfAbsent(@Param("productId") Long productId);
+
+    /**
+     * Makes {@code owner} the holder of the SKU if nobody holds it, it already does, or
+     * the holder's lease ran out. Returns 0 while another node holds a live lease.
+     */
+    @Modifying
+    @Query("UPDATE HotSkuLease l SET l.owner = :owner, l.leaseUntil = :leaseUntil " +
+           "WHERE l.productId = :productId AND (l.owner IS NULL OR l.owner = :owner OR l.leaseUntil < :now)")
+    int claim(@Param("productId") Long productId,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Extends a lease that {@code owner} still holds. Returns 0 if it was taken over.
+     */
+    @Modifying
+    @Query("UPDATE HotSkuLease l SET l.leaseUntil = :leaseUntil WHERE l.productId = :productId AND l.owner = :owner")
+    int renew(@Param("productId") Long productId,
+              @Param("owner") String owner,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Modifying
+    @Query("DELETE FROM HotSkuLease l WHERE l.productId = :productId")
+    int deleteByProductId(@Param("productId") Long productId);
+}
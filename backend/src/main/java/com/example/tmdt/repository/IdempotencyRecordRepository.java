@@ -0,0 +1,76 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.IdempotencyRecord;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByUserIdAndScopeAndIdempotencyKey(Long userId, String scope, String idempotencyKey);
+
+    /**
+     * Claims the key for a new execution. Returns 1 if this caller owns it, 0 if the
+     * key was already claimed (by a finished or still running request).
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO idempotency_keys " +
+                   "(user_id, scope, idempotency_key, request_hash, created_at, expires_at, lease_until) " +
+                   "VALUES (:userId, :scope, :key, :requestHash, :now, :expiresAt, :leaseUntil)", nativeQuery = true)
+    int claim(@Param("userId") Long userId,
+              @Param("scope") String scope,
+              @Param("key") String key,
+              @Param("requestHash") String requestHash,
+              @Param("now") LocalDateTime now,
+              @Param("expiresAt") LocalDateTime expiresAt,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Extends the lease of the unfinished keys still being executed by this node.
+     */
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.leaseUntil = :leaseUntil WHERE r.id IN :ids AND r.responseStatus IS NULL")
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Deletes an unfinished key whose owner stopped renewing its lease (or, for rows
+     * without a lease, that was claimed before {@code claimedBefore}), or that expired.
+     * Returns 0 if the owner is still alive or finished in the meantime.
+     */
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.id = :id AND r.responseStatus IS NULL " +
+           "AND (r.expiresAt < :now OR r.leaseUntil < :now " +
+           "OR (r.leaseUntil IS NULL AND r.createdAt < :claimedBefore))")
+    int deleteAbandoned(@Param("id") Long id,
+                        @Param("now") LocalDateTime now,
+                        @Param("claimedBefore") LocalDateTime claimedBefore);
+
+    /**
+     * Stores the response of the claimed key. Returns 0 if the key is no longer ours:
+     * it was taken over as abandoned and deleted, or completed by the new owner.
+     */
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.responseStatus = :status, r.responseContentType = :contentType, " +
+           "r.responseBody = :body, r.responseHeaders = :headers WHERE r.id = :id AND r.responseStatus IS NULL")
+    int complete(@Param("id") Long id,
+                 @Param("status") Integer status,
+                 @Param("contentType") String contentType,
+                 @Param("body") String body,
+                 @Param("headers") String headers);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.id = :id AND r.responseStatus IS NULL")
+    int deleteUnfinished(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,23 @@
+package com.example.tmdt.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.InventoryJournalEntry;
+
+@Repository
+public interface InventoryJournalRepository extends JpaRepository<InventoryJournalEntry, Long> {
+
+    @Query("SELECT e FROM InventoryJournalEntry e ORDER BY e.id")
+    List<InventoryJournalEntry> findOldest(Pageable pageable);
+
+    List<InventoryJournalEntry> findByProductId(Long productId);
+
+    @Query("SELECT COALESCE(SUM(e.delta), 0) FROM InventoryJournalEntry e WHERE e.productId = :productId")
+    long sumDeltaByProductId(@Param("productId") Long productId);
+}
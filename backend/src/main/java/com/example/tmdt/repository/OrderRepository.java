@@ -4,15 +4,23 @@ import com.example.tmdt.model.Order;
 import com.example.tmdt.model.Order.OrderStatus;
 import com.example.tmdt.model.OrderItem;
 import com.example.tmdt.model.User;
+import com.example.tmdt.payload.response.OrderListItem;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -28,8 +36,30 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     
     // Tìm đơn hàng theo User entity sắp xếp theo createdAt giảm dần
     List<Order> findByUserOrderByCreatedAtDesc(User user);
+
+    // Đơn của user kèm item, sản phẩm, coupon và yêu cầu hoàn tiền trong một truy vấn
+    @EntityGraph(Order.GRAPH_WITH_ITEMS)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Order> findDistinctByUserIdOrderByCreatedAtDesc(Long userId);
+
+    @EntityGraph(Order.GRAPH_WITH_ITEMS)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    Optional<Order> findDistinctWithItemsById(Long id);
+
+    @EntityGraph(Order.GRAPH_WITH_ITEMS)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Order> findDistinctWithItemsByIdIn(Collection<Long> ids);
+
+    // Tổng quan đơn của user: (status, số đơn, tổng tiền)
+    @Query("SELECT o.status, COUNT(o), SUM(o.totalAmount) FROM Order o WHERE o.userId = :userId GROUP BY o.status")
+    List<Object[]> sumTotalsByStatusForUser(@Param("userId") Long userId);
+
+    @Query("SELECT new com.example.tmdt.payload.response.OrderListItem(o.id, o.createdAt, o.status, o.totalAmount) " +
+           "FROM Order o WHERE o.userId = :userId ORDER BY o.createdAt DESC")
+    List<OrderListItem> findListItemsByUserId(@Param("userId") Long userId, Pageable pageable);
     
     // Tìm đơn hàng theo trạng thái
+    @EntityGraph(Order.GRAPH_HEADER)
     List<Order> findByStatus(OrderStatus status);
     
     // Tìm đơn hàng theo trạng thái và phân trang
@@ -40,15 +70,19 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     Page<Order> findByStatusForAdmin(@Param("status") OrderStatus status, Pageable pageable);
     
     // Tìm đơn hàng đã được gán cho shipper cụ thể
+    @EntityGraph(Order.GRAPH_HEADER)
     List<Order> findByShipperId(Long shipperId);
     
     // Tìm đơn hàng đã được gán cho shipper cụ thể và phân trang
+    @EntityGraph(Order.GRAPH_HEADER)
     Page<Order> findByShipperId(Long shipperId, Pageable pageable);
     
     // Tìm đơn hàng đã được gán cho shipper cụ thể, với trạng thái cụ thể và phân trang
+    @EntityGraph(Order.GRAPH_HEADER)
     Page<Order> findByShipperIdAndStatus(Long shipperId, OrderStatus status, Pageable pageable);
     
     // Tìm đơn hàng đã được gán cho shipper cụ thể, với trạng thái cụ thể
+    @EntityGraph(Order.GRAPH_HEADER)
     List<Order> findByShipperIdAndStatus(Long shipperId, OrderStatus status);
     
     // Tìm đơn hàng sẵn sàng cho shipper (đã được admin xác nhận, chưa được gán cho shipper)
@@ -60,6 +94,7 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findOrdersReadyToShip();
     
     // Tìm đơn hàng trong khoảng thời gian
+    @EntityGraph(Order.GRAPH_HEADER)
     List<Order> findByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
     
     // Thống kê đơn hàng theo trạng thái
@@ -71,14 +106,71 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findAllActiveShippingOrders();
     
     // Tìm đơn hàng sẵn sàng cho shipper (đã được admin xác nhận hoặc đánh dấu sẵn sàng giao hàng, chưa được gán cho shipper)
+    @EntityGraph(Order.GRAPH_HEADER)
     @Query("SELECT o FROM Order o WHERE (o.status = 'PROCESSING' OR o.status = 'CONFIRMED' OR o.status = 'READY_TO_SHIP') AND (o.shipperId IS NULL OR o.shipperId = 0)")
     Page<Order> findExpandedOrdersReadyToShip(Pageable pageable);
     
     // Tìm đơn hàng sẵn sàng cho shipper (đã được admin xác nhận hoặc đánh dấu sẵn sàng giao hàng, chưa được gán cho shipper)
+    @EntityGraph(Order.GRAPH_HEADER)
     @Query("SELECT o FROM Order o WHERE (o.status = 'PROCESSING' OR o.status = 'CONFIRMED' OR o.status = 'READY_TO_SHIP') AND (o.shipperId IS NULL OR o.shipperId = 0)")
     List<Order> findExpandedOrdersReadyToShip();
-    @Query("SELECT i, o FROM OrderItem i JOIN i.order o")
-    List<Object[]> findItemWithOrder();
+    // Các đơn mới nhất cho dashboard: (id, customerName, totalAmount, status, createdAt), theo chỉ mục (created_at, id)
+    @Query("SELECT o.id, u.fullName, o.totalAmount, o.status, o.createdAt FROM Order o LEFT JOIN o.user u " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Object[]> findRecentOrderRows(Pageable pageable);
+
+    // Các dòng hàng của nhiều đơn: (orderId, productId, quantity, price), không nạp entity
+    @Query("SELECT i.order.id, i.product.id, i.quantity, i.price FROM OrderItem i WHERE i.order.id IN :orderIds")
+    List<Object[]> findItemLinesByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+    // Trạng thái hiện tại của các đơn: (id, user_id, status, payment_status, total_amount, created_at).
+    // Khoá theo thứ tự id để hai lượt cập nhật hàng loạt không deadlock nhau
+    @Query(value = "SELECT id, user_id, status, payment_status, total_amount, created_at FROM orders " +
+                   "WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockStatusRows(@Param("ids") Collection<Long> ids);
+
+    // Chuyển trạng thái hàng loạt: chỉ các đơn còn ở một trong các trạng thái nguồn
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :to, o.paymentStatus = :paymentStatus, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.status IN :from")
+    int transitionAll(@Param("ids") Collection<Long> ids,
+                      @Param("from") Collection<OrderStatus> from,
+                      @Param("to") OrderStatus to,
+                      @Param("paymentStatus") String paymentStatus,
+                      @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :to, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.status IN :from")
+    int transitionStatus(@Param("ids") Collection<Long> ids,
+                         @Param("from") Collection<OrderStatus> from,
+                         @Param("to") OrderStatus to,
+                         @Param("now") LocalDateTime now);
+
+    // Như transitionStatus nhưng ghi luôn ngày giao thực tế, dùng cho đích DELIVERED (giống Order.updateStatus)
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :to, o.actualDeliveryDate = :now, o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.status IN :from")
+    int transitionDelivered(@Param("ids") Collection<Long> ids,
+                            @Param("from") Collection<OrderStatus> from,
+                            @Param("to") OrderStatus to,
+                            @Param("now") LocalDateTime now);
+
+    @Query("SELECT MAX(o.id) FROM Order o")
+    Long findMaxId();
+
+    // Cặp (orderId, productId) theo thứ tự đơn hàng, đọc dạng stream (fetch size MIN_VALUE = streaming của MySQL)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("SELECT i.order.id, i.product.id FROM OrderItem i " +
+           "WHERE i.order.id <= :maxOrderId AND i.order.status NOT IN :excludedStatuses ORDER BY i.order.id")
+    Stream<Object[]> streamOrderProductPairs(@Param("maxOrderId") Long maxOrderId,
+                                             @Param("excludedStatuses") Collection<OrderStatus> excludedStatuses);
+
+    // Tổng số lượng đã mua theo sản phẩm của một người dùng: (productId, quantity)
+    @Query("SELECT i.product.id, SUM(i.quantity) FROM OrderItem i " +
+           "WHERE i.order.userId = :userId AND i.order.status NOT IN :excludedStatuses GROUP BY i.product.id")
+    List<Object[]> sumPurchasedQuantitiesByUser(@Param("userId") Long userId,
+                                                @Param("excludedStatuses") Collection<OrderStatus> excludedStatuses);
 
 
 
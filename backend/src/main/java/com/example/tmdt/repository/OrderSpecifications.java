@@ -0,0 +1,52 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.criteria.Expression;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.example.tmdt.model.Order;
+
+/**
+ * Composable filters for {@link Order} listings. A {@code null} argument yields a
+ * no-op specification.
+ */
+public final class OrderSpecifications {
+
+    private OrderSpecifications() {
+    }
+
+    public static Specification<Order> ofUser(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("userId"), userId);
+    }
+
+    public static Specification<Order> hasStatus(Order.OrderStatus status) {
+        if (status == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    /**
+     * Orders created in {@code [from, to)}; either bound may be {@code null}.
+     */
+    public static Specification<Order> createdBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null && to == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Expression<LocalDateTime> createdAt = root.get("createdAt");
+            if (from == null) {
+                return cb.lessThan(createdAt, to);
+            }
+            if (to == null) {
+                return cb.greaterThanOrEqualTo(createdAt, from);
+            }
+            return cb.and(cb.greaterThanOrEqualTo(createdAt, from), cb.lessThan(createdAt, to));
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.tmdt.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.OrderStatsMonthly;
+
+@Repository
+public interface OrderStatsMonthlyRepository extends JpaRepository<OrderStatsMonthly, Long> {
+
+    List<OrderStatsMonthly> findByPeriod(Integer period);
+
+    // Tổng mọi tháng theo trạng thái: (status, orderCount, totalAmount)
+    @Query("SELECT s.status, SUM(s.orderCount), SUM(s.totalAmount) FROM OrderStatsMonthly s GROUP BY s.status")
+    List<Object[]> sumByStatus();
+
+    /**
+     * Adds the deltas to the (period, status) row, creating it if needed.
+     * Negative deltas move an order out of a status.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO order_stats_monthly (period, status, order_count, total_amount) " +
+                   "VALUES (:period, :status, :count, :amount) " +
+                   "ON DUPLICATE KEY UPDATE order_count = order_count + :count, total_amount = total_amount + :amount",
+           nativeQuery = true)
+    int addOrders(@Param("period") int period,
+                  @Param("status") String status,
+                  @Param("count") long count,
+                  @Param("amount") BigDecimal amount);
+
+    /**
+     * Overwrites the (period, status) row with values recomputed from the orders.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO order_stats_monthly (period, status, order_count, total_amount) " +
+                   "VALUES (:period, :status, :count, :amount) " +
+                   "ON DUPLICATE KEY UPDATE order_count = :count, total_amount = :amount",
+           nativeQuery = true)
+    int setOrders(@Param("period") int period,
+                  @Param("status") String status,
+                  @Param("count") long count,
+                  @Param("amount") BigDecimal amount);
+
+    // Khoá toàn bộ bảng (cả khoảng trống) để consumer không ghi xen vào lúc đối soát
+    @Query(value = "SELECT period, status, order_count, total_amount FROM order_stats_monthly FOR UPDATE",
+           nativeQuery = true)
+    List<Object[]> lockAll();
+
+    /**
+     * The same figures computed from the orders table: (period, status, count, amount).
+     */
+    @Query(value = "SELECT YEAR(created_at) * 100 + MONTH(created_at), status, COUNT(*), COALESCE(SUM(total_amount), 0) " +
+                   "FROM orders GROUP BY YEAR(created_at) * 100 + MONTH(created_at), status",
+           nativeQuery = true)
+    List<Object[]> aggregateFromOrders();
+}
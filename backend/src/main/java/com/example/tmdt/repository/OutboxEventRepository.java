@@ -0,0 +1,51 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.OutboxEvent;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Events due for delivery, oldest first. An event waits while an earlier event of
+     * the same order is backing off, so each order's events stay in sequence.
+     */
+    @Query("SELECT e FROM OutboxEvent e WHERE e.dispatchedAt IS NULL AND e.parkedAt IS NULL " +
+           "AND e.nextAttemptAt <= :now AND NOT EXISTS (SELECT p.id FROM OutboxEvent p " +
+           "WHERE p.aggregateId = e.aggregateId AND p.id < e.id AND p.dispatchedAt IS NULL " +
+           "AND p.parkedAt IS NULL AND p.nextAttemptAt > :now) ORDER BY e.id")
+    List<OutboxEvent> findPending(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Whether an event is still to be delivered, now or after its backoff.
+     */
+    boolean existsByDispatchedAtIsNullAndParkedAtIsNull();
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.dispatchedAt = :now WHERE e.id = :id")
+    int markDispatched(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, " +
+           "e.lastError = :error WHERE e.id = :id")
+    int markFailed(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.attempts = e.attempts + 1, e.parkedAt = :now, " +
+           "e.lastError = :error WHERE e.id = :id")
+    int markParked(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("error") String error);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.dispatchedAt < :before")
+    int deleteDispatchedBefore(@Param("before") LocalDateTime before);
+}
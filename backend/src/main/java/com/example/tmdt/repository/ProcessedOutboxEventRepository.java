@@ -0,0 +1,31 @@
+package com.example.tmdt.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.ProcessedOutboxEvent;
+
+@Repository
+public interface ProcessedOutboxEventRepository extends JpaRepository<ProcessedOutboxEvent, Long> {
+
+    /**
+     * Records that the consumer handled the event. Returns 1 the first time, 0 if
+     * it already had (the event is a redelivery).
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO outbox_processed (event_id, consumer, processed_at) " +
+                   "VALUES (:eventId, :consumer, :processedAt)", nativeQuery = true)
+    int markProcessed(@Param("eventId") Long eventId,
+                      @Param("consumer") String consumer,
+                      @Param("processedAt") LocalDateTime processedAt);
+
+    @Modifying
+    @Query(value = "DELETE p FROM outbox_processed p LEFT JOIN outbox_events e ON e.id = p.event_id " +
+                   "WHERE e.id IS NULL", nativeQuery = true)
+    int deleteOrphans();
+}
@@ -1,15 +1,21 @@
 package com.example.tmdt.repository;
 
+import com.example.tmdt.event.ProductSnapshot;
 import com.example.tmdt.model.Product;
+import com.example.tmdt.payload.response.ProductSummary;
+import com.example.tmdt.util.ResourceVersion;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
-import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
     List<Product> findByCategory(String category);
     
     @Query("SELECT p FROM Product p WHERE p.name LIKE %:query% OR p.description LIKE %:query%")
@@ -24,10 +30,13 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findTop10ByOrderBySoldCountDesc();
     
     List<Product> findByCategory_IdAndIdNot(Long categoryId, Long productId);
-    @Query("SELECT p FROM Product p WHERE p.id = :id")
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    Product findByIdWithLock(@Param("id") Long id);
-    
+
+    @Query("SELECT new com.example.tmdt.payload.response.ProductSummary(p.id, p.name, p.price, " +
+           "p.discountPercentage, p.imageUrl, p.averageRating, p.stock) " +
+           "FROM Product p WHERE p.category.id = :categoryId AND p.id <> :productId ORDER BY p.soldCount DESC, p.id")
+    List<ProductSummary> findTopSummariesByCategory(@Param("categoryId") Long categoryId,
+                                                    @Param("productId") Long productId, Pageable pageable);
+
     @Query("SELECT p FROM Product p WHERE p.category.name = :categoryName")
     List<Product> findByCategoryName(@Param("categoryName") String categoryName);
     
@@ -38,4 +47,78 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByCategoryNameIgnoreCaseAndNameContainingIgnoreCase(
             @Param("categoryName") String categoryName, 
             @Param("query") String query);
-} 
\ No newline at end of file
+
+    @Query("SELECT p.id FROM Product p WHERE p.createdAt IS NULL OR p.createdAt < :before ORDER BY p.id")
+    List<Long> findIdsCreatedBefore(@Param("before") LocalDateTime before);
+
+    @Query("SELECT new com.example.tmdt.event.ProductSnapshot(p.id, p.name, p.description, c.id, c.name, " +
+           "p.price, p.discountPercentage, p.averageRating, p.stock, p.soldCount, p.imageUrl) " +
+           "FROM Product p LEFT JOIN p.category c")
+    List<ProductSnapshot> findAllSnapshots();
+
+    @Query("SELECT new com.example.tmdt.event.ProductSnapshot(p.id, p.name, p.description, c.id, c.name, " +
+           "p.price, p.discountPercentage, p.averageRating, p.stock, p.soldCount, p.imageUrl) " +
+           "FROM Product p LEFT JOIN p.category c WHERE p.id IN :ids")
+    List<ProductSnapshot> findSnapshotsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.example.tmdt.event.ProductSnapshot(p.id, p.name, p.description, c.id, c.name, " +
+           "p.price, p.discountPercentage, p.averageRating, p.stock, p.soldCount, p.imageUrl) " +
+           "FROM Product p LEFT JOIN p.category c WHERE p.updatedAt > :since")
+    List<ProductSnapshot> findSnapshotsUpdatedAfter(@Param("since") LocalDateTime since);
+
+    @Query("SELECT p.id FROM Product p")
+    List<Long> findAllIds();
+
+    /**
+     * Takes {@code quantity} units only if that many are left. Returns 1 on success,
+     * 0 when the stock is insufficient, the product does not exist or is a hot SKU
+     * (whose stock is owned by {@code HotSkuInventory}).
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = p.stock - :quantity, p.updatedAt = :now " +
+           "WHERE p.id = :id AND p.stock >= :quantity AND (p.hotSku IS NULL OR p.hotSku = false)")
+    int decrementStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    /**
+     * Takes {@code quantity} units, or whatever is left if fewer remain (never below 0).
+     * Only for orders that are already paid for and must not be refused; the caller
+     * records the shortfall. Skips hot SKUs like {@link #decrementStock}.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = CASE WHEN p.stock >= :quantity THEN (p.stock - :quantity) ELSE 0 END, " +
+           "p.updatedAt = :now WHERE p.id = :id AND (p.hotSku IS NULL OR p.hotSku = false)")
+    int drainStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = p.stock + :quantity, p.updatedAt = :now " +
+           "WHERE p.id = :id AND (p.hotSku IS NULL OR p.hotSku = false)")
+    int incrementStock(@Param("id") Long id, @Param("quantity") int quantity, @Param("now") LocalDateTime now);
+
+    // Write-behind của hot SKU: áp tổng delta của journal, không kiểm tra flag
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.stock = p.stock + :delta, p.updatedAt = :now WHERE p.id = :id")
+    int applyStockDelta(@Param("id") Long id, @Param("delta") int delta, @Param("now") LocalDateTime now);
+
+    @Query("SELECT p.id FROM Product p WHERE p.hotSku = true")
+    List<Long> findHotSkuIds();
+
+    @Query("SELECT p.hotSku FROM Product p WHERE p.id = :id")
+    Boolean findHotSkuById(@Param("id") Long id);
+
+    @Query("SELECT p.stock FROM Product p WHERE p.id = :id")
+    Integer findStockById(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Product p SET p.hotSku = :hotSku, p.updatedAt = :now WHERE p.id = :id")
+    int updateHotSku(@Param("id") Long id, @Param("hotSku") boolean hotSku, @Param("now") LocalDateTime now);
+
+    // Validator cho conditional GET: số sản phẩm và thời điểm cập nhật mới nhất
+    @Query("SELECT new com.example.tmdt.util.ResourceVersion(COUNT(p), MAX(p.updatedAt)) FROM Product p")
+    ResourceVersion findCatalogVersion();
+
+    @Query("SELECT new com.example.tmdt.util.ResourceVersion(COUNT(p), MAX(p.updatedAt)) FROM Product p WHERE p.id = :id")
+    ResourceVersion findVersionById(@Param("id") Long id);
+
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category WHERE p.id IN :ids")
+    List<Product> findAllWithCategoryByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,56 @@
+package com.example.tmdt.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.tmdt.model.ProductSalesMonthly;
+
+@Repository
+public interface ProductSalesMonthlyRepository extends JpaRepository<ProductSalesMonthly, Long> {
+
+    @Query("SELECT s.productId FROM ProductSalesMonthly s WHERE s.period = :period AND s.quantity > 0 " +
+           "ORDER BY s.quantity DESC, s.productId ASC")
+    List<Long> findTopProductIds(@Param("period") int period, Pageable pageable);
+
+    @Query("SELECT s FROM ProductSalesMonthly s WHERE s.period = :period AND s.quantity > 0 " +
+           "ORDER BY s.quantity DESC, s.productId ASC")
+    List<ProductSalesMonthly> findTopByPeriod(@Param("period") int period, Pageable pageable);
+
+    /**
+     * Adds the deltas to the (product, period) row, creating it if needed.
+     * Negative deltas take back a cancelled or returned order.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_sales_monthly (product_id, period, quantity, revenue) " +
+                   "VALUES (:productId, :period, :quantity, :revenue) " +
+                   "ON DUPLICATE KEY UPDATE quantity = quantity + :quantity, revenue = revenue + :revenue",
+           nativeQuery = true)
+    int addSales(@Param("productId") Long productId,
+                 @Param("period") int period,
+                 @Param("quantity") long quantity,
+                 @Param("revenue") BigDecimal revenue);
+
+    @Modifying
+    @Query(value = "DELETE FROM product_sales_monthly", nativeQuery = true)
+    int deleteAllRows();
+
+    /**
+     * Rebuilds every row from the order history, skipping cancelled and returned orders.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_sales_monthly (product_id, period, quantity, revenue) " +
+                   "SELECT i.product_id, YEAR(o.created_at) * 100 + MONTH(o.created_at), " +
+                   "SUM(i.quantity), SUM(i.quantity * i.price) " +
+                   "FROM order_items i JOIN orders o ON o.id = i.order_id " +
+                   "WHERE o.status NOT IN ('CANCELLED', 'RETURNED') " +
+                   "GROUP BY i.product_id, YEAR(o.created_at) * 100 + MONTH(o.created_at)",
+           nativeQuery = true)
+    int backfillFromOrders();
+}
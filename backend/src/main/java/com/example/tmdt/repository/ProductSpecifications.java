@@ -0,0 +1,73 @@
+package com.example.tmdt.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.example.tmdt.model.Product;
+
+/**
+ * Composable filters for {@link Product} queries. Every method returns a
+ * specification that can be chained with {@code and(...)}; a {@code null}
+ * argument yields a no-op specification.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> inCategory(String categoryName) {
+        if (categoryName == null || categoryName.isEmpty() || categoryName.equalsIgnoreCase("all")) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(
+                cb.lower(root.get("category").get("name")), categoryName.toLowerCase());
+    }
+
+    public static Specification<Product> idIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    /**
+     * Substring match on name and description. Cannot use an index, so it is only
+     * used when the search index is not available.
+     */
+    public static Specification<Product> nameOrDescriptionContains(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        String pattern = "%" + keyword.trim().toLowerCase() + "%";
+        return (root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("name")), pattern),
+                cb.like(cb.lower(root.get("description")), pattern));
+    }
+
+    public static Specification<Product> priceBetween(Double minPrice, Double maxPrice) {
+        if (minPrice == null && maxPrice == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            if (minPrice == null) {
+                return cb.le(root.get("price"), maxPrice);
+            }
+            if (maxPrice == null) {
+                return cb.ge(root.get("price"), minPrice);
+            }
+            return cb.between(root.get("price"), minPrice, maxPrice);
+        };
+    }
+
+    public static Specification<Product> ratingAtLeast(Integer minRating) {
+        if (minRating == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.ge(root.get("averageRating"), minRating.doubleValue());
+    }
+
+    public static Specification<Product> inStock(Boolean inStock) {
+        if (!Boolean.TRUE.equals(inStock)) {
+            return null;
+        }
+        return (root, query, cb) -> cb.gt(root.get("stock"), 0);
+    }
+}
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import com.example.tmdt.model.Product;
 import com.example.tmdt.model.Review;
 import com.example.tmdt.model.User;
+import com.example.tmdt.util.ResourceVersion;
 
 @Repository
 public interface ReviewRepository extends JpaRepository<Review, Long> {
@@ -44,4 +45,11 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
      */
     List<Review> findByUserAndProductOrderByCreatedAtDesc(User user, Product product);
 
-} 
\ No newline at end of file
+    @Query("SELECT new com.example.tmdt.util.ResourceVersion(COUNT(r), MAX(r.updatedAt)) FROM Review r WHERE r.product.id = :productId")
+    ResourceVersion findVersionByProductId(@Param("productId") Long productId);
+
+    // Số lượt vote và số lượt "hữu ích" trên các review của sản phẩm
+    @Query("SELECT new com.example.tmdt.util.ResourceVersion(COUNT(h), SUM(CASE WHEN h.isHelpful = true THEN 1L ELSE 0L END)) " +
+           "FROM ReviewHelpful h WHERE h.review.product.id = :productId")
+    ResourceVersion findHelpfulVersionByProductId(@Param("productId") Long productId);
+}
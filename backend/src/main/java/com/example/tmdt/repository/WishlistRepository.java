@@ -4,6 +4,8 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.tmdt.model.Product;
@@ -24,4 +26,7 @@ public interface WishlistRepository extends JpaRepository<Wishlist, Long> {
     void deleteByUserAndProduct(User user, Product product);
     
     List<Wishlist> findByProduct(Product product);
+
+    @Query("SELECT w.product.id FROM Wishlist w WHERE w.user.id = :userId")
+    List<Long> findProductIdsByUserId(@Param("userId") Long userId);
 } 
\ No newline at end of file
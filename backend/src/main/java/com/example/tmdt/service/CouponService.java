@@ -3,6 +3,7 @@ package com.example.tmdt.service;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +11,7 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.tmdt.model.Coupon;
@@ -146,6 +148,19 @@ public class CouponService {
         return code.toString();
     }
     
+    /**
+     * Like {@link #verifyCoupon} but returns empty instead of throwing, so an invalid
+     * code does not mark the caller's transaction rollback-only.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Coupon> findValidCoupon(String code, User user, double orderAmount) {
+        try {
+            return Optional.ofNullable(verifyCoupon(code, user, orderAmount));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
     @Transactional
     public Coupon verifyCoupon(String code, User user, double orderAmount) {
         Coupon coupon = couponRepository.findByCode(code)
@@ -202,29 +217,13 @@ public class CouponService {
         return coupon;
     }
     
-    @Transactional
-    public void useCoupon(String code) {
-        Coupon coupon = couponRepository.findByCode(code)
-                .orElseThrow(() -> new RuntimeException("Invalid coupon code"));
-        
-        // Nếu là coupon dùng 1 lần thì deactivate
-        if (coupon.getType().equals("ONE_TIME")) {
-            coupon.setIsActive(false);
-            couponRepository.save(coupon);
-        }
-        
-        // Nếu có số lần sử dụng tối đa, cần cập nhật số lần đã sử dụng
-        if (coupon.getMaxUses() != null) {
-            int usedCount = coupon.getUsedCount() != null ? coupon.getUsedCount() : 0;
-            coupon.setUsedCount(usedCount + 1);
-            
-            // Nếu đã sử dụng đạt tới giới hạn, deactivate coupon
-            if (coupon.getMaxUses() <= (usedCount + 1)) {
-                coupon.setIsActive(false);
-            }
-            
-            couponRepository.save(coupon);
-        }
+    /**
+     * Counts one use of the coupon in the caller's order transaction. Returns false when
+     * the coupon ran out or was disabled since it was validated, e.g. by a concurrent order.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean claimUse(Coupon coupon) {
+        return couponRepository.claimUse(coupon.getId(), LocalDateTime.now()) == 1;
     }
     
     @Transactional
@@ -0,0 +1,214 @@
+package com.example.tmdt.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.tmdt.model.Coupon;
+import com.example.tmdt.model.User;
+import com.example.tmdt.repository.CouponRepository;
+import com.example.tmdt.repository.DailyCouponClaimRepository;
+import com.example.tmdt.repository.ProductRepository;
+
+/**
+ * Chooses the products that carry a coupon today and hands those coupons out.
+ *
+ * The selection is a seeded sample of product ids: the seed only depends on the
+ * date, so every node picks the same products without coordinating. Today's
+ * selection lives in an {@link AtomicReference} to a concurrent set and is
+ * replaced wholesale when the day changes. Claims are made atomic across nodes
+ * by the unique (date, product) key of {@code daily_coupon_claims}.
+ */
+@Service
+public class DailyCouponService {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyCouponService.class);
+
+    // 10% sản phẩm có coupon mỗi ngày
+    private static final int SAMPLE_PERCENT = 10;
+
+    public enum ClaimStatus {
+        CLAIMED,
+        NOT_AVAILABLE,
+        NO_COUPON_LEFT
+    }
+
+    public static class ClaimResult {
+        private final ClaimStatus status;
+        private final Coupon coupon;
+
+        private ClaimResult(ClaimStatus status, Coupon coupon) {
+            this.status = status;
+            this.coupon = coupon;
+        }
+
+        public ClaimStatus getStatus() {
+            return status;
+        }
+
+        public Coupon getCoupon() {
+            return coupon;
+        }
+    }
+
+    private static final class DailySelection {
+        final LocalDate date;
+        final Set<Long> remaining;
+
+        DailySelection(LocalDate date, Set<Long> remaining) {
+            this.date = date;
+            this.remaining = remaining;
+        }
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private DailyCouponClaimRepository dailyCouponClaimRepository;
+
+    // Mọi node phải dùng cùng salt và múi giờ để chọn cùng một tập sản phẩm
+    @Value("${app.daily-coupon.seed-salt:7046029254386353131}")
+    private long seedSalt;
+
+    @Value("${app.daily-coupon.zone:Asia/Ho_Chi_Minh}")
+    private String zone;
+
+    private final AtomicReference<DailySelection> selection = new AtomicReference<>();
+
+    /**
+     * Ids of today's coupon products that have not been claimed yet.
+     */
+    public Set<Long> getTodayProductIds() {
+        return Collections.unmodifiableSet(currentSelection().remaining);
+    }
+
+    /**
+     * Gives the user one of the coupons they do not own yet in exchange for today's
+     * coupon of the product. At most one caller, on any node, can claim a product per day.
+     */
+    @Transactional
+    public ClaimResult claim(Long productId, User user) {
+        DailySelection today = currentSelection();
+        if (!today.remaining.contains(productId)) {
+            return new ClaimResult(ClaimStatus.NOT_AVAILABLE, null);
+        }
+
+        List<Coupon> available = findAvailableCoupons(user);
+        if (available.isEmpty()) {
+            return new ClaimResult(ClaimStatus.NO_COUPON_LEFT, null);
+        }
+        Coupon coupon = available.get(new Random().nextInt(available.size()));
+
+        // Chặn nhanh trong node: chỉ một request vượt qua được remove()
+        if (!today.remaining.remove(productId)) {
+            return new ClaimResult(ClaimStatus.NOT_AVAILABLE, null);
+        }
+        // Trả lại sản phẩm vào tập nếu transaction không commit được
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED && selection.get() == today) {
+                    today.remaining.add(productId);
+                }
+            }
+        });
+
+        // Chặn giữa các node: unique key (coupon_date, product_id)
+        int claimed = dailyCouponClaimRepository.tryClaim(
+                today.date, productId, user.getId(), coupon.getId(), LocalDateTime.now());
+        if (claimed == 0) {
+            return new ClaimResult(ClaimStatus.NOT_AVAILABLE, null);
+        }
+
+        coupon.getUsers().add(user);
+        couponRepository.save(coupon);
+        return new ClaimResult(ClaimStatus.CLAIMED, coupon);
+    }
+
+    /**
+     * Drops products that other nodes have handed out since the selection was built.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void syncClaims() {
+        DailySelection current = selection.get();
+        if (current != null) {
+            current.remaining.removeAll(dailyCouponClaimRepository.findClaimedProductIds(current.date));
+        }
+    }
+
+    private DailySelection currentSelection() {
+        LocalDate today = LocalDate.now(ZoneId.of(zone));
+        DailySelection current = selection.get();
+        while (current == null || !current.date.equals(today)) {
+            DailySelection next = select(today);
+            if (selection.compareAndSet(current, next)) {
+                return next;
+            }
+            current = selection.get();
+        }
+        return current;
+    }
+
+    private DailySelection select(LocalDate date) {
+        // Chỉ lấy sản phẩm tạo trước đầu ngày để node khởi động muộn vẫn ra cùng kết quả
+        List<Long> ids = productRepository.findIdsCreatedBefore(date.atStartOfDay());
+        int quota = Math.max(1, ids.size() * SAMPLE_PERCENT / 100);
+
+        // Partial Fisher-Yates with a per-day seed: same catalog + same day = same sample on every node
+        SplittableRandom random = new SplittableRandom(date.toEpochDay() * 0x9E3779B97F4A7C15L ^ seedSalt);
+        Long[] sample = ids.toArray(new Long[0]);
+        int picked = Math.min(quota, sample.length);
+        for (int i = 0; i < picked; i++) {
+            int j = i + random.nextInt(sample.length - i);
+            Long tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+
+        Set<Long> remaining = ConcurrentHashMap.newKeySet(picked);
+        for (int i = 0; i < picked; i++) {
+            remaining.add(sample[i]);
+        }
+        remaining.removeAll(dailyCouponClaimRepository.findClaimedProductIds(date));
+        log.info("Daily coupon selection for {}: {} of {} products", date, remaining.size(), ids.size());
+        return new DailySelection(date, remaining);
+    }
+
+    private List<Coupon> findAvailableCoupons(User user) {
+        List<Coupon> coupons = couponRepository.findAllValidCoupons(LocalDateTime.now())
+                .stream()
+                .filter(c -> c.getDiscountType() == Coupon.DiscountType.PERCENTAGE)
+                .collect(Collectors.toList());
+
+        List<Coupon> userCoupons = new ArrayList<>();
+        for (Coupon c : coupons) {
+            if (!c.getUsers().contains(user) && Boolean.TRUE.equals(c.getIsActive())) {
+                userCoupons.add(c);
+            }
+        }
+        return userCoupons;
+    }
+}
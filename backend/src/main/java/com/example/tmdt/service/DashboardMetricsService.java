@@ -0,0 +1,287 @@
+package com.example.tmdt.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.tmdt.event.EntityCountChangedEvent;
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.model.DashboardCounter;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OrderStatsMonthly;
+import com.example.tmdt.model.ProductSalesMonthly;
+import com.example.tmdt.repository.DashboardCounterRepository;
+import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.repository.OrderStatsMonthlyRepository;
+import com.example.tmdt.repository.OutboxEventRepository;
+import com.example.tmdt.repository.ProductRepository;
+import com.example.tmdt.repository.ProductSalesMonthlyRepository;
+import com.example.tmdt.repository.UserRepository;
+
+/**
+ * Precomputed figures for the admin dashboard, so loading it never scans the order history.
+ *
+ * Orders are counted per creation month and current status in {@code order_stats_monthly},
+ * kept in step by the order events of the outbox; users and products are running counters
+ * bumped after each insert or delete commits. Best sellers come from {@code product_sales_monthly}.
+ * A scheduled reconciliation recomputes the figures from the source tables and corrects
+ * any drift, e.g. from writes that bypassed the events.
+ */
+@Service
+@Transactional
+public class DashboardMetricsService {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardMetricsService.class);
+
+    private static final int RECENT_ORDERS = 10;
+    private static final int TOP_PRODUCTS = 50;
+
+    private final OrderStatsMonthlyRepository statsRepository;
+    private final DashboardCounterRepository counterRepository;
+    private final ProductSalesMonthlyRepository salesRepository;
+    private final OrderRepository orderRepository;
+    private final UserRepository userRepository;
+    private final ProductRepository productRepository;
+    private final OutboxEventRepository outboxRepository;
+
+    @Autowired
+    public DashboardMetricsService(OrderStatsMonthlyRepository statsRepository,
+                                   DashboardCounterRepository counterRepository,
+                                   ProductSalesMonthlyRepository salesRepository,
+                                   OrderRepository orderRepository,
+                                   UserRepository userRepository,
+                                   ProductRepository productRepository,
+                                   OutboxEventRepository outboxRepository) {
+        this.statsRepository = statsRepository;
+        this.counterRepository = counterRepository;
+        this.salesRepository = salesRepository;
+        this.orderRepository = orderRepository;
+        this.userRepository = userRepository;
+        this.productRepository = productRepository;
+        this.outboxRepository = outboxRepository;
+    }
+
+    /**
+     * Applies an order event: a new order is counted under its status, a status change
+     * moves it to the new status, deleting it removes it.
+     */
+    public void record(OrderLifecycleEvent event) {
+        if (event.getCreatedAt() == null || event.getStatus() == null) {
+            return;
+        }
+        int period = ProductSalesRollupService.periodOf(event.getCreatedAt());
+        BigDecimal amount = event.getTotalAmount() != null ? event.getTotalAmount() : BigDecimal.ZERO;
+        switch (event.getType()) {
+            case ORDER_CREATED:
+                statsRepository.addOrders(period, event.getStatus().name(), 1, amount);
+                break;
+            case ORDER_DELETED:
+                statsRepository.addOrders(period, event.getStatus().name(), -1, amount.negate());
+                break;
+            default:
+                Order.OrderStatus from = event.getPreviousStatus();
+                Order.OrderStatus to = event.getStatus();
+                if (from == null || from == to) {
+                    break;
+                }
+                // Cập nhật theo thứ tự trạng thái để các consumer song song khóa dòng cùng một thứ tự
+                if (from.ordinal() < to.ordinal()) {
+                    statsRepository.addOrders(period, from.name(), -1, amount.negate());
+                    statsRepository.addOrders(period, to.name(), 1, amount);
+                } else {
+                    statsRepository.addOrders(period, to.name(), 1, amount);
+                    statsRepository.addOrders(period, from.name(), -1, amount.negate());
+                }
+                break;
+        }
+    }
+
+    @TransactionalEventListener
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onEntityCountChanged(EntityCountChangedEvent event) {
+        counterRepository.add(event.getCounter(), event.getDelta());
+    }
+
+    /**
+     * All-time totals, the figures of one month and the latest orders.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getSummary(int year, int month) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalUsers", counter(DashboardCounter.USERS));
+        summary.put("totalProducts", counter(DashboardCounter.PRODUCTS));
+
+        long totalOrders = 0;
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        Map<String, Long> ordersByStatus = new HashMap<>();
+        for (Object[] row : statsRepository.sumByStatus()) {
+            Order.OrderStatus status = (Order.OrderStatus) row[0];
+            long count = ((Number) row[1]).longValue();
+            ordersByStatus.put(status.name(), count);
+            totalOrders += count;
+            if (status == Order.OrderStatus.DELIVERED) {
+                totalRevenue = (BigDecimal) row[2];
+            }
+        }
+        summary.put("totalOrders", totalOrders);
+        summary.put("totalRevenue", totalRevenue);
+        summary.put("ordersByStatus", ordersByStatus);
+
+        int period = ProductSalesRollupService.periodOf(year, month);
+        long monthlyOrders = 0;
+        BigDecimal monthlyRevenue = BigDecimal.ZERO;
+        Map<String, Long> monthlyOrdersByStatus = new HashMap<>();
+        for (OrderStatsMonthly stats : statsRepository.findByPeriod(period)) {
+            monthlyOrdersByStatus.put(stats.getStatus().name(), stats.getOrderCount());
+            monthlyOrders += stats.getOrderCount();
+            if (stats.getStatus() == Order.OrderStatus.DELIVERED) {
+                monthlyRevenue = stats.getTotalAmount();
+            }
+        }
+        summary.put("year", year);
+        summary.put("month", month);
+        summary.put("monthlyOrders", monthlyOrders);
+        summary.put("monthlyRevenue", monthlyRevenue);
+        summary.put("monthlyOrdersByStatus", monthlyOrdersByStatus);
+        summary.put("topProducts", topProducts(period));
+        summary.put("recentOrders", recentOrders());
+        return summary;
+    }
+
+    /**
+     * Fills the figures from the source tables the first time the application starts
+     * against a database that does not have them yet.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void backfillIfEmpty() {
+        if (statsRepository.count() == 0 && counterRepository.count() == 0) {
+            // Sự kiện outbox còn tồn (nếu có) sẽ được lần đối soát sau sửa lại
+            int corrected = correctOrderStats() + correctCounters();
+            log.info("Backfilled dashboard metrics with {} rows", corrected);
+        }
+    }
+
+    /**
+     * Recomputes the figures and overwrites those that drifted. Order figures are only
+     * compared while no outbox event is pending; otherwise an event that is counted in
+     * the orders table but not applied yet would look like drift.
+     */
+    @Scheduled(cron = "${app.dashboard.reconcile-cron:0 */15 * * * *}")
+    public void reconcile() {
+        int corrected = correctCounters();
+        // Khóa bảng thống kê trước khi đọc: consumer chờ đến khi đối soát xong
+        statsRepository.lockAll();
+        if (outboxRepository.existsByDispatchedAtIsNullAndParkedAtIsNull()) {
+            log.debug("Outbox events pending, order figures are reconciled on a later run");
+        } else {
+            corrected += correctOrderStats();
+        }
+        if (corrected > 0) {
+            log.warn("Corrected {} drifted dashboard figures", corrected);
+        }
+    }
+
+    private int correctCounters() {
+        int corrected = 0;
+        corrected += correctCounter(DashboardCounter.USERS, userRepository.count());
+        corrected += correctCounter(DashboardCounter.PRODUCTS, productRepository.count());
+        return corrected;
+    }
+
+    private int correctCounter(String name, long actual) {
+        Long stored = counterRepository.lockValue(name).orElse(null);
+        if (stored != null && stored == actual) {
+            return 0;
+        }
+        counterRepository.set(name, actual);
+        return 1;
+    }
+
+    private int correctOrderStats() {
+        Map<String, OrderStatsMonthly> stored = new HashMap<>();
+        for (OrderStatsMonthly stats : statsRepository.findAll()) {
+            stored.put(stats.getPeriod() + "/" + stats.getStatus().name(), stats);
+        }
+        int corrected = 0;
+        for (Object[] row : statsRepository.aggregateFromOrders()) {
+            int period = ((Number) row[0]).intValue();
+            String status = (String) row[1];
+            long count = ((Number) row[2]).longValue();
+            BigDecimal amount = (BigDecimal) row[3];
+            OrderStatsMonthly current = stored.remove(period + "/" + status);
+            if (current == null || current.getOrderCount() != count || current.getTotalAmount().compareTo(amount) != 0) {
+                statsRepository.setOrders(period, status, count, amount);
+                corrected++;
+            }
+        }
+        // Dòng không còn đơn nào ứng với nó
+        for (OrderStatsMonthly leftover : stored.values()) {
+            if (leftover.getOrderCount() != 0 || leftover.getTotalAmount().signum() != 0) {
+                statsRepository.setOrders(leftover.getPeriod(), leftover.getStatus().name(), 0, BigDecimal.ZERO);
+                corrected++;
+            }
+        }
+        return corrected;
+    }
+
+    private long counter(String name) {
+        return counterRepository.findById(name).map(DashboardCounter::getValue).orElse(0L);
+    }
+
+    private List<Map<String, Object>> topProducts(int period) {
+        List<ProductSalesMonthly> sales = salesRepository.findTopByPeriod(period, PageRequest.of(0, TOP_PRODUCTS));
+        List<Long> productIds = new ArrayList<>(sales.size());
+        for (ProductSalesMonthly sale : sales) {
+            productIds.add(sale.getProductId());
+        }
+        Map<Long, ProductSnapshot> products = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (ProductSnapshot snapshot : productRepository.findSnapshotsByIdIn(productIds)) {
+                products.put(snapshot.getId(), snapshot);
+            }
+        }
+        List<Map<String, Object>> top = new ArrayList<>(sales.size());
+        for (ProductSalesMonthly sale : sales) {
+            ProductSnapshot product = products.get(sale.getProductId());
+            Map<String, Object> productMap = new HashMap<>();
+            productMap.put("id", sale.getProductId());
+            productMap.put("productName", product != null ? product.getName() : "Sản phẩm đã xóa");
+            productMap.put("category", product != null ? product.getCategoryName() : null);
+            productMap.put("imageUrl", product != null ? product.getImageUrl() : null);
+            productMap.put("quantity", sale.getQuantity());
+            productMap.put("revenue", sale.getRevenue());
+            top.add(productMap);
+        }
+        return top;
+    }
+
+    private List<Map<String, Object>> recentOrders() {
+        List<Map<String, Object>> recent = new ArrayList<>(RECENT_ORDERS);
+        for (Object[] row : orderRepository.findRecentOrderRows(PageRequest.of(0, RECENT_ORDERS))) {
+            Map<String, Object> orderMap = new HashMap<>();
+            orderMap.put("id", row[0]);
+            orderMap.put("customerName", row[1]);
+            orderMap.put("amount", row[2]);
+            orderMap.put("status", ((Order.OrderStatus) row[3]).name());
+            orderMap.put("date", ((LocalDateTime) row[4]).toString());
+            recent.add(orderMap);
+        }
+        return recent;
+    }
+}
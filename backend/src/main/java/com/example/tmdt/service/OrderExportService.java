@@ -0,0 +1,205 @@
+package com.example.tmdt.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+import org.hibernate.jpa.QueryHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.tmdt.model.Coupon;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OrderItem;
+import com.example.tmdt.model.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes orders as CSV or NDJSON straight from a forward-only cursor.
+ *
+ * The query selects a flat row per order (no entities, so nothing piles up in the
+ * persistence context) and MySQL streams the result set row by row, so memory stays
+ * the same whatever the size of the export. Rows come oldest first on {@code (created_at, id)}.
+ */
+@Service
+public class OrderExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderExportService.class);
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final String[] COLUMNS = {
+            "id", "created_at", "user_id", "username", "status", "payment_method", "payment_status",
+            "item_quantity", "coupon_code", "discount_amount", "shipping_fee", "total_amount"
+    };
+
+    // Integer.MIN_VALUE: MySQL Connector/J trả từng dòng thay vì nạp cả result set vào bộ nhớ
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OrderExportService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Writes every order matching {@code filter} to {@code out} and returns the number
+     * of orders written. The stream is flushed but not closed.
+     */
+    @Transactional(readOnly = true)
+    public long export(Specification<Order> filter, Format format, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        long rows;
+        try (Stream<Tuple> orders = stream(filter)) {
+            rows = format == Format.CSV ? writeCsv(orders.iterator(), writer) : writeNdjson(orders.iterator(), writer);
+        }
+        writer.flush();
+        log.info("Exported {} orders as {} in {} ms", rows, format, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private Stream<Tuple> stream(Specification<Order> filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Order> root = query.from(Order.class);
+        Join<Order, User> user = root.join("user", JoinType.LEFT);
+        Join<Order, Coupon> coupon = root.join("coupon", JoinType.LEFT);
+
+        Subquery<Long> quantity = query.subquery(Long.class);
+        Root<OrderItem> item = quantity.from(OrderItem.class);
+        quantity.select(cb.sumAsLong(item.get("quantity"))).where(cb.equal(item.get("order"), root));
+
+        Predicate predicate = Specification.where(filter).toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.multiselect(root.get("id"), root.get("createdAt"), root.get("userId"), user.get("username"),
+                        root.get("status"), root.get("paymentMethod"), root.get("paymentStatus"), quantity,
+                        coupon.get("code"), root.get("discountAmount"), root.get("shippingFee"), root.get("totalAmount"))
+                .orderBy(cb.asc(root.get("createdAt")), cb.asc(root.get("id")));
+        return entityManager.createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAMING_FETCH_SIZE)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream();
+    }
+
+    private long writeCsv(Iterator<Tuple> orders, Writer writer) throws IOException {
+        // BOM để Excel nhận đúng UTF-8 (tên tiếng Việt)
+        writer.write('\uFEFF');
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+        long rows = 0;
+        while (orders.hasNext()) {
+            Tuple order = orders.next();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(csvValue(order.get(i)));
+            }
+            writer.write("\r\n");
+            rows++;
+        }
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<Tuple> orders, Writer writer) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        // Writer do export() quản lý: generator không được đóng nó
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long rows = 0;
+        while (orders.hasNext()) {
+            Tuple order = orders.next();
+            generator.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                Object value = order.get(i);
+                generator.writeFieldName(COLUMNS[i]);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof BigDecimal) {
+                    generator.writeNumber((BigDecimal) value);
+                } else if (value instanceof Long) {
+                    generator.writeNumber((Long) value);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            rows++;
+        }
+        if (rows > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return rows;
+    }
+
+    private static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        String text = value.toString();
+        // Chặn CSV injection: ô bắt đầu bằng = + - @ bị Excel hiểu là công thức
+        if (!text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0) {
+            text = "'" + text;
+        }
+        if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+}
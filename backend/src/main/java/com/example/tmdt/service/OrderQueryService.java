@@ -0,0 +1,138 @@
+package com.example.tmdt.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.tmdt.model.Order;
+import com.example.tmdt.payload.response.PagedResponse;
+import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.util.CursorCodec;
+
+/**
+ * Keyset-paginated order listings, newest first on {@code (created_at, id)}.
+ *
+ * A page is read in two steps: the ids of the page are found with an index range seek
+ * after the cursor, then those orders are loaded with their items. Nothing is counted
+ * and nothing is skipped, so page 1000 costs the same as page 1; {@code totalElements}
+ * and {@code totalPages} are therefore reported as -1.
+ */
+@Service
+@Transactional(readOnly = true)
+public class OrderQueryService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final OrderRepository orderRepository;
+
+    @Autowired
+    public OrderQueryService(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    /**
+     * One page of the orders matching {@code filter}, starting right after {@code cursor}
+     * (or at the newest order when it is empty).
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public PagedResponse<Order> findPage(Specification<Order> filter, String cursor, Integer size) {
+        int pageSize = size != null ? Math.min(Math.max(1, size), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+        Specification<Order> pageSpec = Specification.where(filter);
+        if (cursor != null && !cursor.isEmpty()) {
+            pageSpec = pageSpec.and(after(cursor));
+        }
+
+        // Lấy thêm 1 dòng để biết còn trang sau hay không
+        List<Tuple> keys = fetchKeys(pageSpec, pageSize + 1);
+        boolean last = keys.size() <= pageSize;
+        if (!last) {
+            keys = keys.subList(0, pageSize);
+        }
+        List<Order> content = load(keys);
+
+        String nextCursor = null;
+        if (!last) {
+            Tuple lastKey = keys.get(keys.size() - 1);
+            nextCursor = CursorCodec.encode(lastKey.get(0, LocalDateTime.class), lastKey.get(1, Long.class));
+        }
+        return new PagedResponse<>(content, 0, pageSize, -1, -1, last, nextCursor);
+    }
+
+    private List<Tuple> fetchKeys(Specification<Order> spec, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Order> root = query.from(Order.class);
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.multiselect(root.get("createdAt"), root.get("id"))
+                .orderBy(cb.desc(root.get("createdAt")), cb.desc(root.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    // Nạp đơn kèm item theo id rồi sắp lại đúng thứ tự của trang
+    private List<Order> load(List<Tuple> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(keys.size());
+        for (Tuple key : keys) {
+            ids.add(key.get(1, Long.class));
+        }
+        Map<Long, Order> byId = new HashMap<>();
+        for (Order order : orderRepository.findDistinctWithItemsByIdIn(ids)) {
+            byId.put(order.getId(), order);
+        }
+        List<Order> content = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Order order = byId.get(id);
+            if (order != null) {
+                content.add(order);
+            }
+        }
+        return content;
+    }
+
+    private static Specification<Order> after(String cursor) {
+        String[] values = CursorCodec.decode(cursor, 2);
+        LocalDateTime lastCreatedAt;
+        Long lastId;
+        try {
+            lastCreatedAt = LocalDateTime.parse(values[0]);
+            lastId = Long.valueOf(values[1]);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return (root, query, cb) -> {
+            Expression<LocalDateTime> createdAt = root.get("createdAt");
+            Expression<Long> id = root.get("id");
+            return cb.or(cb.lessThan(createdAt, lastCreatedAt),
+                    cb.and(cb.equal(createdAt, lastCreatedAt), cb.lessThan(id, lastId)));
+        };
+    }
+}
@@ -1,66 +1,110 @@
 package com.example.tmdt.service;
 
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.event.OrderPlacedEvent;
+import com.example.tmdt.model.Coupon;
 import com.example.tmdt.model.Order;
 import com.example.tmdt.model.OrderItem;
 import com.example.tmdt.model.Product;
 import com.example.tmdt.model.User;
-import com.example.tmdt.model.Coupon;
 import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.service.outbox.OutboxService;
+import com.example.tmdt.service.pricing.PricingEngine;
+import com.example.tmdt.service.pricing.Quote;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
-import java.math.RoundingMode;
 import javax.persistence.EntityNotFoundException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
+import com.example.tmdt.payload.request.BulkStatusUpdateRequest;
 import com.example.tmdt.payload.request.OrderItemRequest;
 import com.example.tmdt.payload.request.OrderRequest;
+import com.example.tmdt.payload.response.BatchOrderResult;
+import com.example.tmdt.payload.response.BulkStatusResult;
+import com.example.tmdt.payload.response.OrderListItem;
 
 @Service
 @Transactional
 public class OrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+
+    public static final int MAX_BATCH_ORDERS = 50;
+    public static final int MAX_BULK_TRANSITIONS = 5000;
+
+    // Số lần phân bổ lại kho khi đơn khác lấy mất hàng giữa lúc đọc và lúc trừ
+    private static final int STOCK_ALLOCATION_ATTEMPTS = 3;
+
+    private static final int RECENT_ORDERS = 5;
     
     private final OrderRepository orderRepository;
     private final ProductService productService;
-    private final CouponService couponService;
-    private final NotificationService notificationService;
     private final VNPayService vnpayService;
     private final UserBalanceService userBalanceService;
+    private final OutboxService outboxService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final StockReservationService stockReservationService;
+    private final PricingEngine pricingEngine;
+    private final CouponService couponService;
     @Autowired
     public OrderService(
             OrderRepository orderRepository,
             ProductService productService,
-            CouponService couponService,
-            NotificationService notificationService, VNPayService vnPayService, UserBalanceService userBalanceService
+            VNPayService vnPayService, UserBalanceService userBalanceService,
+            OutboxService outboxService,
+            ApplicationEventPublisher eventPublisher,
+            StockReservationService stockReservationService,
+            PricingEngine pricingEngine,
+            CouponService couponService
     ) {
         this.orderRepository = orderRepository;
         this.productService = productService;
-        this.couponService = couponService;
-        this.notificationService = notificationService;
         this.vnpayService = vnPayService;
         this.userBalanceService = userBalanceService;
-    }
-    
-    public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+        this.outboxService = outboxService;
+        this.eventPublisher = eventPublisher;
+        this.stockReservationService = stockReservationService;
+        this.pricingEngine = pricingEngine;
+        this.couponService = couponService;
     }
     
     public Order getOrderById(Long id) {
         return orderRepository.findById(id)
             .orElseThrow(() -> new EntityNotFoundException("Order not found with id: " + id));
     }
+
+    /**
+     * The order with everything the detail view serializes, loaded in one query.
+     */
+    public Order getOrderDetail(Long id) {
+        return orderRepository.findDistinctWithItemsById(id)
+            .orElseThrow(() -> new EntityNotFoundException("Order not found with id: " + id));
+    }
     
     public List<Order> getUserOrders(User user) {
-        List<Order> orders = orderRepository.findByUserOrderByCreatedAtDesc(user);
+        List<Order> orders = orderRepository.findDistinctByUserIdOrderByCreatedAtDesc(user.getId());
 
         for (Order order : orders) {
             for (OrderItem item : order.getOrderItems()) {
@@ -73,246 +117,330 @@ public class OrderService {
         return orders;
     }
 
+    /**
+     * Order counts, amount spent and the latest orders of a user, computed with one
+     * aggregate query and one projection query instead of loading every order.
+     */
+    public Map<String, Object> getOrderSummary(Long userId) {
+        long totalOrders = 0;
+        long pendingOrders = 0;
+        long deliveredOrders = 0;
+        double totalSpent = 0;
+        for (Object[] row : orderRepository.sumTotalsByStatusForUser(userId)) {
+            Order.OrderStatus status = (Order.OrderStatus) row[0];
+            long count = ((Number) row[1]).longValue();
+            totalOrders += count;
+            // Đếm số đơn hàng đang xử lý (chưa giao)
+            if (status != Order.OrderStatus.DELIVERED && status != Order.OrderStatus.CANCELLED) {
+                pendingOrders += count;
+            }
+            // Đơn đã giao và tổng tiền đã chi
+            if (status == Order.OrderStatus.DELIVERED) {
+                deliveredOrders += count;
+                totalSpent += row[2] != null ? ((BigDecimal) row[2]).doubleValue() : 0;
+            }
+        }
+
+        // Lấy 5 đơn hàng gần đây nhất
+        List<Map<String, Object>> recentOrders = new ArrayList<>();
+        for (OrderListItem item : orderRepository.findListItemsByUserId(userId, PageRequest.of(0, RECENT_ORDERS))) {
+            Map<String, Object> orderMap = new HashMap<>();
+            orderMap.put("id", item.getId());
+            orderMap.put("createdAt", item.getCreatedAt().toString());
+            orderMap.put("status", item.getStatus().toString());
+            orderMap.put("totalAmount", item.getTotalAmount().doubleValue());
+            recentOrders.add(orderMap);
+        }
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("totalOrders", (int) totalOrders);
+        summary.put("pendingOrders", pendingOrders);
+        summary.put("deliveredOrders", deliveredOrders);
+        summary.put("totalSpent", totalSpent);
+        summary.put("recentOrders", recentOrders);
+        return summary;
+    }
+
+    // Trừ kho bằng UPDATE có điều kiện theo thứ tự productId nên hiếm khi deadlock; retry ngắn nếu có
     @Retryable(
-            value = {org.springframework.dao.CannotAcquireLockException.class},
+            value = {org.springframework.dao.PessimisticLockingFailureException.class},
             maxAttempts = 3,
-            backoff = @Backoff(delay = 1000)
+            backoff = @Backoff(delay = 50, multiplier = 2)
     )
-    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    @Transactional
     public Order createOrder(User user, OrderRequest orderRequest) throws UnsupportedEncodingException {
-        // Create new order
-        Order order = new Order();
-        order.setUser(user);
-        order.setStatus(Order.OrderStatus.PENDING); // Initially set as PENDING
-        order.setShippingAddress(orderRequest.getShippingAddress());
-        order.setPaymentMethod(orderRequest.getPaymentMethod());
-        order.setPhoneNumber(orderRequest.getPhoneNumber());
-        order.setRecipientName(orderRequest.getRecipientName());
-
-        // Calculate total and add items
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal total = BigDecimal.ZERO;
-
         // Kiểm tra null trước khi truy cập items
         if (orderRequest.getItems() == null) {
             throw new IllegalArgumentException("Order items cannot be null. Please provide at least one item.");
         }
+        // Dùng lại báo giá của /orders/pay nếu còn hạn, tổng tiền client gửi lên bị bỏ qua
+        Quote quote = pricingEngine.quote(user, orderRequest);
+        if (!claimCoupon(quote, orderRequest)) {
+            throw new RuntimeException("Coupon has reached its usage limit");
+        }
 
-        for (OrderItemRequest itemRequest : orderRequest.getItems()) {
-            Product product = productService.getProductByIdWithLock(itemRequest.getProductId());
+        // Dùng hàng đã giữ khi thanh toán online, nếu không thì trừ kho ngay
+        SortedMap<Long, Integer> quantities = StockReservationService.quantitiesOf(orderRequest.getItems());
+        if (!stockReservationService.commit(orderRequest.getReservationToken(), user.getId(), quantities,
+                isPaidOnline(orderRequest))) {
+            stockReservationService.reserve(quantities);
+        }
 
-            // Check if there's enough stock
-            if (product.getStock() < itemRequest.getQuantity()) {
-                throw new RuntimeException("Số lượng vượt quá giới hạn: " + product.getName());
-            }
+        Order order = buildOrder(user, orderRequest, quote);
 
-            // Reduce stock
-            product.setStock(product.getStock() - itemRequest.getQuantity());
-            productService.updateProduct(product.getId(), product);
+        boolean payFromBalance = isPaidFromBalance(order);
+        // Check if user has sufficient balance
+        if (payFromBalance && !userBalanceService.hasSufficientBalance(user, order.getTotalAmount())) {
+            throw new RuntimeException("Insufficient account balance to complete payment");
+        }
+        Order savedOrder = orderRepository.save(order);
+        completeOrder(user, savedOrder);
+        return savedOrder;
+    }
 
-            // Create order item
-            OrderItem orderItem = new OrderItem(product, itemRequest.getQuantity());
-            orderItem.setOrder(order);
-            orderItems.add(orderItem);
+    /**
+     * Creates several orders for one user in a single transaction (B2B / multi-cart checkout).
+     *
+     * Every line is validated in one pass and all products are loaded with one IN query.
+     * The stock of all accepted orders is then taken together in product-id order, and
+     * the orders and their items are inserted as JDBC batches. An order that cannot be
+     * placed is reported as rejected without affecting the others.
+     */
+    @Retryable(
+            value = {org.springframework.dao.PessimisticLockingFailureException.class},
+            maxAttempts = 3,
+            backoff = @Backoff(delay = 50, multiplier = 2)
+    )
+    @Transactional
+    public List<BatchOrderResult> createOrders(User user, List<OrderRequest> orderRequests) {
+        BatchOrderResult[] results = new BatchOrderResult[orderRequests.size()];
+
+        Set<Long> productIds = new HashSet<>();
+        for (OrderRequest orderRequest : orderRequests) {
+            if (orderRequest.getItems() != null) {
+                for (OrderItemRequest itemRequest : orderRequest.getItems()) {
+                    if (itemRequest.getProductId() != null) {
+                        productIds.add(itemRequest.getProductId());
+                    }
+                }
+            }
+        }
+        Map<Long, Product> products = productService.getProductMap(productIds);
+
+        Map<Integer, Order> orders = new LinkedHashMap<>();
+        Map<Integer, SortedMap<Long, Integer>> needStock = new LinkedHashMap<>();
+        BigDecimal balanceLeft = null;
+        for (int i = 0; i < orderRequests.size(); i++) {
+            OrderRequest orderRequest = orderRequests.get(i);
+            String problem = validateBatchOrder(orderRequest, products);
+            if (problem != null) {
+                results[i] = BatchOrderResult.rejected(i, problem);
+                continue;
+            }
+            // Giá lấy từ map sản phẩm đã nạp cho cả batch, không truy vấn lại theo từng đơn
+            Order order = buildOrder(user, orderRequest, pricingEngine.quote(user, orderRequest, products));
+            if (isPaidFromBalance(order)) {
+                // Số dư được kiểm tra cộng dồn cho cả batch
+                if (balanceLeft == null) {
+                    balanceLeft = userBalanceService.getUserBalance(user).getBalance();
+                }
+                if (balanceLeft.compareTo(order.getTotalAmount()) < 0) {
+                    results[i] = BatchOrderResult.rejected(i, "Insufficient account balance to complete payment");
+                    continue;
+                }
+                balanceLeft = balanceLeft.subtract(order.getTotalAmount());
+            }
+            SortedMap<Long, Integer> quantities = StockReservationService.quantitiesOf(orderRequest.getItems());
+            if (!stockReservationService.commit(orderRequest.getReservationToken(), user.getId(), quantities,
+                    isPaidOnline(orderRequest))) {
+                needStock.put(i, quantities);
+            }
+            orders.put(i, order);
+        }
 
-            // Add to total
-            total = total.add(BigDecimal.valueOf(product.getPrice()).multiply(new BigDecimal(itemRequest.getQuantity())));
+        for (Map.Entry<Integer, Long> shortage : allocateStock(needStock).entrySet()) {
+            orders.remove(shortage.getKey());
+            results[shortage.getKey()] = BatchOrderResult.rejected(shortage.getKey(),
+                    "Số lượng vượt quá giới hạn: " + products.get(shortage.getValue()).getName());
         }
 
-        order.setOrderItems(orderItems);
-        order.calculateTotal(); // Calculate subtotal before applying coupon discount
+        for (Map.Entry<Integer, Order> entry : new ArrayList<>(orders.entrySet())) {
+            Order order = entry.getValue();
+            // Kho của đơn đã được trừ: đơn hết lượt coupon trả lại kho và bị từ chối
+            if (order.getCoupon() != null && !claimCoupon(order.getCoupon(), orderRequests.get(entry.getKey()))) {
+                orders.remove(entry.getKey());
+                stockReservationService.release(StockReservationService.quantitiesOf(
+                        orderRequests.get(entry.getKey()).getItems()));
+                results[entry.getKey()] = BatchOrderResult.rejected(entry.getKey(), "Coupon has reached its usage limit");
+            }
+        }
 
-        // Apply coupon if provided
-        if (orderRequest.getCouponCode() != null && !orderRequest.getCouponCode().isEmpty()) {
-            try {
-                // Validate coupon - use the appropriate method from your CouponService
-                Coupon coupon = couponService.verifyCoupon(
-                    orderRequest.getCouponCode(),
-                    user,
-                    order.getTotalAmount().doubleValue()
-                );
-
-                if (coupon != null) {
-                    // Apply discount
-                    BigDecimal discountAmount;
-                    if ("PERCENTAGE".equals(coupon.getDiscountType())) {
-                        // Calculate percentage discount using BigDecimal operations
-                        BigDecimal hundred = new BigDecimal("100");
-                        BigDecimal percentage = coupon.getDiscountValue().divide(hundred, 6, BigDecimal.ROUND_HALF_UP);
-                        discountAmount = order.getTotalAmount().multiply(percentage);
-                    } else {
-                        // Fixed amount discount - already a BigDecimal, no conversion needed
-                        discountAmount = coupon.getDiscountValue();
-                    }
+        orderRepository.saveAll(orders.values());
+        for (Map.Entry<Integer, Order> entry : orders.entrySet()) {
+            Order savedOrder = entry.getValue();
+            completeOrder(user, savedOrder);
+            results[entry.getKey()] = BatchOrderResult.created(entry.getKey(), savedOrder.getId(), savedOrder.getTotalAmount());
+        }
+        return Arrays.asList(results);
+    }
 
-                    // Make sure discount doesn't exceed total
-                    if (discountAmount.compareTo(order.getTotalAmount()) > 0) {
-                        discountAmount = order.getTotalAmount();
+    /**
+     * Takes the combined stock of the orders in one pass in product-id order. Orders are
+     * served in request order from the stock read up front; if another checkout takes
+     * units between the read and the UPDATEs, the allocation is redone on fresh numbers.
+     * Returns the orders that did not get their stock, with a product that was short.
+     */
+    private Map<Integer, Long> allocateStock(Map<Integer, SortedMap<Long, Integer>> needStock) {
+        Map<Integer, Long> rejected = new HashMap<>();
+        Map<Integer, SortedMap<Long, Integer>> remaining = needStock;
+        for (int attempt = 0; attempt < STOCK_ALLOCATION_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            Set<Long> productIds = new HashSet<>();
+            remaining.values().forEach(quantities -> productIds.addAll(quantities.keySet()));
+            Map<Long, Integer> available = stockReservationService.availableStock(productIds);
+
+            SortedMap<Long, Integer> combined = new TreeMap<>();
+            Map<Integer, SortedMap<Long, Integer>> accepted = new LinkedHashMap<>();
+            for (Map.Entry<Integer, SortedMap<Long, Integer>> entry : remaining.entrySet()) {
+                Long shortProductId = null;
+                for (Map.Entry<Long, Integer> line : entry.getValue().entrySet()) {
+                    if (available.getOrDefault(line.getKey(), 0) < line.getValue()) {
+                        shortProductId = line.getKey();
+                        break;
                     }
-
-                    order.setCoupon(coupon);
-                    order.setDiscountAmount(discountAmount);
-                    order.calculateTotal(); // Recalculate total with discount
-                    
-                    // Không đánh dấu phiếu giảm giá ở đây - chỉ khi hoàn thành thanh toán
-                    // Phiếu giảm giá sẽ được đánh dấu đã sử dụng trong createOrder
                 }
-            } catch (Exception e) {
-                // If coupon validation fails, continue without applying coupon
-                System.out.println("Coupon validation failed: " + e.getMessage());
+                if (shortProductId != null) {
+                    rejected.put(entry.getKey(), shortProductId);
+                    continue;
+                }
+                entry.getValue().forEach((productId, quantity) -> {
+                    available.merge(productId, -quantity, Integer::sum);
+                    combined.merge(productId, quantity, Integer::sum);
+                });
+                accepted.put(entry.getKey(), entry.getValue());
+            }
+            if (combined.isEmpty() || stockReservationService.tryReserve(combined) == null) {
+                return rejected;
             }
+            remaining = accepted;
         }
+        remaining.forEach((index, quantities) -> rejected.put(index, quantities.firstKey()));
+        return rejected;
+    }
 
-        if (orderRequest.getTotal() != null) {
-            // Use the client-provided total that includes the discount
-            order.setTotalAmount(BigDecimal.valueOf(orderRequest.getTotal()).divide(new BigDecimal("1000"), 0, RoundingMode.HALF_UP)  // Chia 1000 và làm tròn số nguyên
-                    .multiply(new BigDecimal("1000")));
-        } else {
-            // If no client total is provided, calculate the total with discount
-            order.calculateTotal();
+    private static String validateBatchOrder(OrderRequest orderRequest, Map<Long, Product> products) {
+        if (orderRequest.getItems() == null || orderRequest.getItems().isEmpty()) {
+            return "Order items cannot be null. Please provide at least one item.";
         }
-        if ("account_balance".equals(orderRequest.getPaymentMethod())) {
-            // Check if user has sufficient balance
-            if (!userBalanceService.hasSufficientBalance(user, order.getTotalAmount())) {
-                throw new RuntimeException("Insufficient account balance to complete payment");
+        for (OrderItemRequest itemRequest : orderRequest.getItems()) {
+            if (itemRequest.getProductId() == null || itemRequest.getQuantity() == null || itemRequest.getQuantity() <= 0) {
+                return "Invalid order item: " + itemRequest;
             }
-
-            // Process payment using user's balance
-            try {
-                userBalanceService.processOrderPayment(user, order.getTotalAmount(), order.getId());
-                order.setPaymentStatus("PAID");
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to process payment: " + e.getMessage());
+            if (!products.containsKey(itemRequest.getProductId())) {
+                return "Product not found with id: " + itemRequest.getProductId();
             }
-        } else if ("credit".equals(orderRequest.getPaymentMethod())) {
-            // Para pagamento com cartão de crédito, definir status como PAID imediatamente
-            order.setPaymentStatus("PAID");
-        } else {
-            // For other payment methods like COD, set status as PROCESSING
-            order.setPaymentStatus("PROCESSING");
         }
-        // Save the order initially
-        Order savedOrder = orderRepository.save(order);
-
-        // Đánh dấu phiếu giảm giá đã sử dụng nếu đơn hàng đã được tạo thành công
-        if (orderRequest.getCouponCode() != null && !orderRequest.getCouponCode().isEmpty()) {
-            try {
-                couponService.useCoupon(orderRequest.getCouponCode());
-            } catch (Exception e) {
-                // Log lỗi nhưng không ảnh hưởng đến việc tạo đơn hàng
-                System.err.println("Error marking coupon as used: " + e.getMessage());
-            }
+        if (isBlank(orderRequest.getShippingAddress()) || isBlank(orderRequest.getPhoneNumber())
+                || isBlank(orderRequest.getRecipientName()) || isBlank(orderRequest.getPaymentMethod())) {
+            return "Shipping address, phone number, recipient name and payment method are required";
         }
+        return null;
+    }
 
-        // Update the status to READY_TO_SHIP after successful order creation
-        savedOrder.setStatus(Order.OrderStatus.READY_TO_SHIP);
-        savedOrder = orderRepository.save(savedOrder);
-
-        // Create notification for order success
-        String title = "Đặt hàng thành công";
-        String message = String.format("Đơn hàng #%d của bạn đã được xác nhận. Tổng tiền: %.2f VND. Cảm ơn bạn đã mua sắm!",
-                savedOrder.getId(), savedOrder.getTotalAmount().doubleValue());
-
-        Map<String, Object> additionalData = new HashMap<>();
-        additionalData.put("orderId", savedOrder.getId());
-        additionalData.put("totalAmount", savedOrder.getTotalAmount().doubleValue());
-        additionalData.put("status", Order.OrderStatus.READY_TO_SHIP.name());
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
 
-        notificationService.createNotificationForUser(
-            user,
-            title,
-            message,
-            "ORDER_STATUS_CHANGE",
-            additionalData
-        );
+    private static boolean isPaidFromBalance(Order order) {
+        return "account_balance".equals(order.getPaymentMethod());
+    }
 
-        return savedOrder;
+    // Đơn VNPay chỉ được tạo sau khi thanh toán thành công
+    private static boolean isPaidOnline(OrderRequest orderRequest) {
+        return "credit".equals(orderRequest.getPaymentMethod());
     }
-    @Transactional
-    public BigDecimal GetAmount(User user,OrderRequest orderRequest) {
 
-        Order order = new Order();
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal total = BigDecimal.ZERO;
+    private boolean claimCoupon(Quote quote, OrderRequest orderRequest) {
+        return quote.getCoupon() == null || claimCoupon(quote.getCoupon(), orderRequest);
+    }
 
-        // Kiểm tra null trước khi truy cập items
-        if (orderRequest.getItems() == null) {
-            throw new IllegalArgumentException("Order items cannot be null. Please provide at least one item.");
+    /**
+     * Counts the use of the order's coupon in the order transaction. Returns false when
+     * the coupon ran out meanwhile; an order paid online keeps its discount, since the
+     * discounted total was already charged, and is only logged.
+     */
+    private boolean claimCoupon(Coupon coupon, OrderRequest orderRequest) {
+        if (couponService.claimUse(coupon)) {
+            return true;
         }
+        if (isPaidOnline(orderRequest)) {
+            log.warn("Coupon {} ran out before its paid order was created; discount kept", coupon.getCode());
+            return true;
+        }
+        return false;
+    }
 
-        for (OrderItemRequest itemRequest : orderRequest.getItems()) {
-            Product product = productService.getProductById(itemRequest.getProductId());
-
-            // Check if there's enough stock
-            if (product.getStock() < itemRequest.getQuantity()) {
-                throw new RuntimeException("Số lượng vượt quá giới hạn: " + product.getName());
-            }
-
-            // Reduce stock
-            product.setStock(product.getStock() - itemRequest.getQuantity());
-            productService.updateProduct(product.getId(), product);
+    /**
+     * Builds the (unsaved) order with the items, coupon discount and total of the quote,
+     * and its payment status.
+     */
+    private Order buildOrder(User user, OrderRequest orderRequest, Quote quote) {
+        // Create new order
+        Order order = new Order();
+        order.setUser(user);
+        order.setShippingAddress(orderRequest.getShippingAddress());
+        order.setPaymentMethod(orderRequest.getPaymentMethod());
+        order.setPhoneNumber(orderRequest.getPhoneNumber());
+        order.setRecipientName(orderRequest.getRecipientName());
 
-            // Create order item
-            OrderItem orderItem = new OrderItem(product, itemRequest.getQuantity());
+        List<OrderItem> orderItems = new ArrayList<>(quote.getLines().size());
+        for (Quote.Line line : quote.getLines()) {
+            OrderItem orderItem = new OrderItem();
             orderItem.setOrder(order);
+            orderItem.setProduct(productService.getProductReference(line.getProductId()));
+            orderItem.setQuantity(line.getQuantity());
+            orderItem.setPrice(line.getUnitPrice());
+            orderItem.setProductName(line.getProductName());
+            orderItem.setProductImageUrl(line.getProductImageUrl());
             orderItems.add(orderItem);
-
-            // Add to total
-            total = total.add(BigDecimal.valueOf(product.getPrice()).multiply(new BigDecimal(itemRequest.getQuantity())));
         }
-
         order.setOrderItems(orderItems);
-        order.calculateTotal(); // Calculate subtotal before applying coupon discount
-
-        // Apply coupon if provided
-        if (orderRequest.getCouponCode() != null && !orderRequest.getCouponCode().isEmpty()) {
-            try {
-                // Validate coupon - use the appropriate method from your CouponService
-                Coupon coupon = couponService.verifyCoupon(
-                        orderRequest.getCouponCode(),
-                        user,
-                        order.getTotalAmount().doubleValue()
-                );
-
-                if (coupon != null) {
-                    // Apply discount
-                    BigDecimal discountAmount;
-                    if ("PERCENTAGE".equals(coupon.getDiscountType())) {
-                        // Calculate percentage discount using BigDecimal operations
-                        BigDecimal hundred = new BigDecimal("100");
-                        BigDecimal percentage = coupon.getDiscountValue().divide(hundred, 6, BigDecimal.ROUND_HALF_UP);
-                        discountAmount = order.getTotalAmount().multiply(percentage);
-                    } else {
-                        // Fixed amount discount - already a BigDecimal, no conversion needed
-                        discountAmount = coupon.getDiscountValue();
-                    }
+        order.setCoupon(quote.getCoupon());
+        order.setDiscountAmount(quote.getDiscountAmount());
+        order.setTotalAmount(quote.getTotal());
 
-                    // Make sure discount doesn't exceed total
-                    if (discountAmount.compareTo(order.getTotalAmount()) > 0) {
-                        discountAmount = order.getTotalAmount();
-                    }
+        if (isPaidFromBalance(order) || isPaidOnline(orderRequest)) {
+            order.setPaymentStatus("PAID");
+        } else {
+            // For other payment methods like COD, set status as PROCESSING
+            order.setPaymentStatus("PROCESSING");
+        }
+        // Đơn tạo thành công là sẵn sàng giao: lưu một lần với trạng thái cuối
+        order.setStatus(Order.OrderStatus.READY_TO_SHIP);
+        return order;
+    }
 
-                    order.setCoupon(coupon);
-                    order.setDiscountAmount(discountAmount);
-                    order.calculateTotal(); // Recalculate total with discount
-                }
+    private void completeOrder(User user, Order savedOrder) {
+        if (isPaidFromBalance(savedOrder)) {
+            // Trừ tiền phải cùng transaction với đơn hàng; cần id đơn để ghi giao dịch
+            try {
+                userBalanceService.processOrderPayment(user, savedOrder.getTotalAmount(), savedOrder.getId());
             } catch (Exception e) {
-                // If coupon validation fails, continue without applying coupon
-                System.out.println("Coupon validation failed: " + e.getMessage());
+                throw new RuntimeException("Failed to process payment: " + e.getMessage());
             }
         }
-        BigDecimal finalAmount;
-        if (orderRequest.getTotal() != null) {
-            // Use the client-provided total that includes the discount
-            finalAmount= BigDecimal.valueOf(orderRequest.getTotal());
-        } else {
-            // If no client total is provided, calculate the total with discount
-            finalAmount=order.calculateTotal();
-        }
-        BigDecimal rounded = finalAmount
-                .divide(new BigDecimal("1000"), 0, RoundingMode.HALF_UP)  // Chia 1000 và làm tròn số nguyên
-                .multiply(new BigDecimal("1000"));
-        return rounded;
+
+        // Thông báo và rollup doanh số chạy sau commit qua outbox
+        outboxService.record(OrderLifecycleEvent.Type.ORDER_CREATED, savedOrder, null);
+        // Các read model (co-purchase, ...) nhận sự kiện sau khi transaction commit
+        eventPublisher.publishEvent(OrderPlacedEvent.of(savedOrder));
+    }
+
+    /**
+     * Prices the cart for an online payment without touching stock or coupons.
+     */
+    @Transactional(readOnly = true)
+    public Quote quote(User user, OrderRequest orderRequest) {
+        return pricingEngine.quote(user, orderRequest);
     }
 
     @Transactional
@@ -325,7 +453,7 @@ public class OrderService {
         }
         
         // Check if order is in a state that can be cancelled
-        if (order.getStatus() != Order.OrderStatus.PENDING && order.getStatus() != Order.OrderStatus.PROCESSING) {
+        if (!OrderStatusTransitions.CUSTOMER.allows(order.getStatus(), Order.OrderStatus.CANCELLED)) {
             throw new RuntimeException("Cannot cancel order with status: " + order.getStatus());
         }
         
@@ -334,67 +462,156 @@ public class OrderService {
 //            userBalanceService.refundOrderPayment(user, order.getTotalAmount(), orderId);
 //        }
         
-        // Return items to stock
-        for (OrderItem item : order.getOrderItems()) {
-            Product product = item.getProduct();
-            product.setStock(product.getStock() + item.getQuantity());
-            productService.updateProduct(product.getId(), product);
-        }
-        
-        // Update order status
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        order.setUpdatedAt(LocalDateTime.now());
-        order.setPaymentStatus("CANCELLED");
-        
-        Order savedOrder = orderRepository.save(order);
-        
-        // Create notification for order cancellation
-        String title = "Đơn hàng đã bị hủy";
-        String message = String.format("Đơn hàng #%d của bạn đã bị hủy.", savedOrder.getId());
-        
-        Map<String, Object> additionalData = new HashMap<>();
-        additionalData.put("orderId", savedOrder.getId());
-        
-        notificationService.createNotificationForUser(
-            user, 
-            title, 
-            message, 
-            "ORDER_STATUS_CHANGE", 
-            additionalData
-        );
-        
-        return savedOrder;
+        return cancel(order);
     }
     
+    /**
+     * Admin status change, checked against {@link OrderStatusTransitions#ADMIN}.
+     * Setting the current status again is a no-op.
+     */
     @Transactional
     public Order updateOrderStatus(Long orderId, Order.OrderStatus newStatus) {
         Order order = getOrderById(orderId);
-        order.setStatus(newStatus);
+        Order.OrderStatus previousStatus = order.getStatus();
+        if (previousStatus == newStatus) {
+            return order;
+        }
+        OrderStatusTransitions.ADMIN.check(previousStatus, newStatus);
+        if (newStatus == Order.OrderStatus.CANCELLED) {
+            return cancel(order);
+        }
+        order.updateStatus(newStatus);
         
         Order savedOrder = orderRepository.save(order);
+        outboxService.record(OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED, savedOrder, previousStatus);
         
-        // Create notification for status update
-        String title = "Cập nhật trạng thái đơn hàng";
-        String message = String.format("Đơn hàng #%d của bạn đã được cập nhật trạng thái thành: %s", 
-                savedOrder.getId(), newStatus.toString());
+        return savedOrder;
+    }
+    
+    /**
+     * Applies many admin status changes in one transaction and returns the ones that were
+     * not applied. The orders are locked and read in a single query, checked against
+     * {@link OrderStatusTransitions#ADMIN}, then moved with one UPDATE per target status;
+     * an order already in the requested status is skipped without being reported, as in
+     * {@link #updateOrderStatus}. Cancelled orders give their stock back with one UPDATE
+     * per product. The customer notifications go to the outbox as one batch insert.
+     */
+    @Transactional
+    public List<BulkStatusResult> transitionOrders(List<BulkStatusUpdateRequest.Transition> transitions) {
+        List<BulkStatusResult> rejected = new ArrayList<>();
+        Map<Long, Integer> indexByOrder = new LinkedHashMap<>();
+        for (int i = 0; i < transitions.size(); i++) {
+            BulkStatusUpdateRequest.Transition transition = transitions.get(i);
+            if (transition == null || transition.getOrderId() == null || transition.getStatus() == null) {
+                rejected.add(new BulkStatusResult(i, transition != null ? transition.getOrderId() : null,
+                        "orderId and status are required"));
+            } else if (indexByOrder.putIfAbsent(transition.getOrderId(), i) != null) {
+                rejected.add(new BulkStatusResult(i, transition.getOrderId(), "Order appears more than once"));
+            }
+        }
+        if (indexByOrder.isEmpty()) {
+            return rejected;
+        }
+
+        // Kiểm tra theo bảng chuyển trạng thái, gom các đơn hợp lệ theo trạng thái đích
+        Map<Order.OrderStatus, Map<Long, OrderLifecycleEvent>> byTarget = new EnumMap<>(Order.OrderStatus.class);
+        Map<Long, OrderLifecycleEvent> accepted = new HashMap<>();
+        Set<Long> found = new HashSet<>();
+        for (Object[] row : orderRepository.lockStatusRows(indexByOrder.keySet())) {
+            Long orderId = ((Number) row[0]).longValue();
+            found.add(orderId);
+            int index = indexByOrder.get(orderId);
+            Order.OrderStatus from = Order.OrderStatus.valueOf((String) row[2]);
+            Order.OrderStatus to = transitions.get(index).getStatus();
+            if (from == to) {
+                // Giống updateOrderStatus: đã ở trạng thái đích thì bỏ qua, không tính là lỗi
+                continue;
+            }
+            if (!OrderStatusTransitions.ADMIN.allows(from, to)) {
+                rejected.add(new BulkStatusResult(index, orderId, "Invalid status transition from " + from + " to " + to));
+                continue;
+            }
+            boolean cancelled = to == Order.OrderStatus.CANCELLED;
+            OrderLifecycleEvent event = new OrderLifecycleEvent();
+            event.setType(cancelled ? OrderLifecycleEvent.Type.ORDER_CANCELLED : OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED);
+            event.setOrderId(orderId);
+            // Đơn cũ có thể không còn user_id, khi đó chỉ không gửi thông báo
+            event.setUserId(row[1] != null ? ((Number) row[1]).longValue() : null);
+            event.setPreviousStatus(from);
+            event.setStatus(to);
+            event.setPaymentStatus(cancelled ? "CANCELLED" : (String) row[3]);
+            event.setTotalAmount((BigDecimal) row[4]);
+            event.setCreatedAt(((Timestamp) row[5]).toLocalDateTime());
+            byTarget.computeIfAbsent(to, status -> new LinkedHashMap<>()).put(orderId, event);
+            accepted.put(orderId, event);
+        }
+        for (Map.Entry<Long, Integer> entry : indexByOrder.entrySet()) {
+            if (!found.contains(entry.getKey())) {
+                rejected.add(new BulkStatusResult(entry.getValue(), entry.getKey(), "Order not found"));
+            }
+        }
+        rejected.sort(Comparator.comparingInt(BulkStatusResult::getIndex));
+        if (accepted.isEmpty()) {
+            return rejected;
+        }
+
+        // Dòng hàng cho sales rollup; đơn bị hủy trả hàng về kho, gộp theo sản phẩm
+        SortedMap<Long, Integer> released = new TreeMap<>();
+        for (Object[] line : orderRepository.findItemLinesByOrderIdIn(accepted.keySet())) {
+            OrderLifecycleEvent event = accepted.get((Long) line[0]);
+            Long productId = (Long) line[1];
+            Integer quantity = (Integer) line[2];
+            event.getItems().add(new OrderLifecycleEvent.Line(productId, quantity, (BigDecimal) line[3]));
+            if (event.getStatus() == Order.OrderStatus.CANCELLED) {
+                released.merge(productId, quantity, Integer::sum);
+            }
+        }
+        if (!released.isEmpty()) {
+            stockReservationService.release(released);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<OrderLifecycleEvent> events = new ArrayList<>(accepted.size());
+        for (Map.Entry<Order.OrderStatus, Map<Long, OrderLifecycleEvent>> group : byTarget.entrySet()) {
+            Order.OrderStatus to = group.getKey();
+            Set<Long> ids = group.getValue().keySet();
+            Set<Order.OrderStatus> from = OrderStatusTransitions.ADMIN.sourcesOf(to);
+            if (to == Order.OrderStatus.CANCELLED) {
+                orderRepository.transitionAll(ids, from, to, "CANCELLED", now);
+            } else if (to == Order.OrderStatus.DELIVERED) {
+                orderRepository.transitionDelivered(ids, from, to, now);
+            } else {
+                orderRepository.transitionStatus(ids, from, to, now);
+            }
+            events.addAll(group.getValue().values());
+        }
+        outboxService.recordAll(events);
+        return rejected;
+    }
+    
+    private Order cancel(Order order) {
+        // Return items to stock
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        stockReservationService.release(quantities);
         
-        Map<String, Object> additionalData = new HashMap<>();
-        additionalData.put("orderId", savedOrder.getId());
-        additionalData.put("status", newStatus.toString());
+        // Update order status
+        Order.OrderStatus previousStatus = order.getStatus();
+        order.setStatus(Order.OrderStatus.CANCELLED);
+        order.setUpdatedAt(LocalDateTime.now());
+        order.setPaymentStatus("CANCELLED");
         
-        notificationService.createNotificationForUser(
-            savedOrder.getUser(), 
-            title, 
-            message, 
-            "ORDER_STATUS_CHANGE", 
-            additionalData
-        );
+        Order savedOrder = orderRepository.save(order);
+        outboxService.record(OrderLifecycleEvent.Type.ORDER_CANCELLED, savedOrder, previousStatus);
         
         return savedOrder;
     }
     
     public Order updatePaymentStatus(Long id, String paymentStatus) {
         Order order = getOrderById(id);
+        Order.OrderStatus previousStatus = order.getStatus();
         order.setPaymentStatus(paymentStatus);
         
         // If payment is completed, update order status to processing
@@ -402,11 +619,19 @@ public class OrderService {
             order.setStatus(Order.OrderStatus.PROCESSING);
         }
         
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        if (savedOrder.getStatus() != previousStatus) {
+            OrderLifecycleEvent event = OrderLifecycleEvent.of(OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED,
+                    savedOrder, previousStatus);
+            event.setNotifyUser(false);
+            outboxService.record(event);
+        }
+        return savedOrder;
     }
     
     public void deleteOrder(Long id) {
         Order order = getOrderById(id);
+        outboxService.record(OrderLifecycleEvent.Type.ORDER_DELETED, order, order.getStatus());
         orderRepository.delete(order);
     }
     
@@ -444,24 +669,7 @@ public class OrderService {
 
         order.setUpdatedAt(LocalDateTime.now());
         Order savedOrder = orderRepository.save(order);
-        
-        // Tạo thông báo hoàn tiền
-        String title = "Hoàn tiền thành công";
-        String message = String.format("Đơn hàng #%d đã được hoàn tiền thành công. Số tiền %s đã được hoàn vào tài khoản của bạn.", 
-                savedOrder.getId(), savedOrder.getTotalAmount().toString());
-        
-        Map<String, Object> additionalData = new HashMap<>();
-        additionalData.put("orderId", savedOrder.getId());
-        additionalData.put("amount", savedOrder.getTotalAmount().doubleValue());
-        additionalData.put("type", "REFUND");
-        
-        notificationService.createNotificationForUser(
-            order.getUser(), 
-            title, 
-            message, 
-            "ORDER_PAYMENT", 
-            additionalData
-        );
+        outboxService.record(OrderLifecycleEvent.Type.ORDER_REFUNDED, savedOrder, savedOrder.getStatus());
         
         return savedOrder;
     }
@@ -495,8 +703,8 @@ public class OrderService {
         Order order = getOrderById(orderId);
         
         // Check if order is in a state that can be assigned to a shipper
-        if (order.getStatus() != Order.OrderStatus.PROCESSING) {
-            throw new RuntimeException("Only orders with status PROCESSING can be assigned to shippers");
+        if (!OrderStatusTransitions.SHIPPER.allows(order.getStatus(), Order.OrderStatus.IN_TRANSIT)) {
+            throw new RuntimeException("Order cannot be assigned to a shipper in " + order.getStatus() + " status");
         }
         
         // Check if order is already assigned to another shipper
@@ -508,9 +716,15 @@ public class OrderService {
         order.assignShipper(shipperId);
         
         // Update status to IN_TRANSIT
+        Order.OrderStatus previousStatus = order.getStatus();
         order.updateStatus(Order.OrderStatus.IN_TRANSIT);
         
         // Save and return the updated order
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        OrderLifecycleEvent event = OrderLifecycleEvent.of(OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED,
+                savedOrder, previousStatus);
+        event.setNotifyUser(false);
+        outboxService.record(event);
+        return savedOrder;
     }
 }
\ No newline at end of file
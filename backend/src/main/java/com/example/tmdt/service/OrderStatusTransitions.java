@@ -0,0 +1,115 @@
+package com.example.tmdt.service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.tmdt.model.Order.OrderStatus;
+
+/**
+ * Which status changes an order may go through, per kind of caller.
+ *
+ * Each table maps a status to the statuses it may move to and keeps the reverse map,
+ * so a bulk update can put the allowed source statuses straight into its WHERE clause.
+ * A status missing from the table (CANCELLED, RETURNED, ...) cannot be left at all.
+ */
+public final class OrderStatusTransitions {
+
+    // Thứ tự của một đơn từ lúc đặt đến lúc hoàn tất
+    private static final OrderStatus[] DELIVERY_FLOW = {
+            OrderStatus.PENDING,
+            OrderStatus.CONFIRMED,
+            OrderStatus.PROCESSING,
+            OrderStatus.READY_TO_SHIP,
+            OrderStatus.PICKED_UP,
+            OrderStatus.IN_TRANSIT,
+            OrderStatus.ARRIVED_AT_STATION,
+            OrderStatus.OUT_FOR_DELIVERY,
+            OrderStatus.DELIVERED,
+            OrderStatus.COMPLETED
+    };
+
+    /**
+     * Admin: any step forward, back to transit from a station, cancel before pickup,
+     * return once the order reached the customer.
+     */
+    public static final OrderStatusTransitions ADMIN = admin();
+
+    /**
+     * Shipper: pick up an order that is ready, then move it along the delivery route.
+     */
+    public static final OrderStatusTransitions SHIPPER = new OrderStatusTransitions()
+            .allow(OrderStatus.CONFIRMED, OrderStatus.IN_TRANSIT)
+            .allow(OrderStatus.PROCESSING, OrderStatus.IN_TRANSIT)
+            .allow(OrderStatus.READY_TO_SHIP, OrderStatus.IN_TRANSIT)
+            .allow(OrderStatus.PICKED_UP, OrderStatus.IN_TRANSIT, OrderStatus.ARRIVED_AT_STATION)
+            .allow(OrderStatus.IN_TRANSIT, OrderStatus.ARRIVED_AT_STATION, OrderStatus.OUT_FOR_DELIVERY)
+            .allow(OrderStatus.ARRIVED_AT_STATION, OrderStatus.IN_TRANSIT, OrderStatus.OUT_FOR_DELIVERY)
+            .allow(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.DELIVERED, OrderStatus.RETURNED)
+            .allow(OrderStatus.DELIVERED, OrderStatus.COMPLETED);
+
+    /**
+     * Customer: cancel while the order has not been handed to the shop's process yet.
+     */
+    public static final OrderStatusTransitions CUSTOMER = new OrderStatusTransitions()
+            .allow(OrderStatus.PENDING, OrderStatus.CANCELLED)
+            .allow(OrderStatus.PROCESSING, OrderStatus.CANCELLED);
+
+    private final Map<OrderStatus, Set<OrderStatus>> targets = new EnumMap<>(OrderStatus.class);
+    private final Map<OrderStatus, Set<OrderStatus>> sources = new EnumMap<>(OrderStatus.class);
+
+    private OrderStatusTransitions() {
+    }
+
+    public boolean allows(OrderStatus from, OrderStatus to) {
+        Set<OrderStatus> allowed = targets.get(from);
+        return allowed != null && allowed.contains(to);
+    }
+
+    /**
+     * Throws {@link IllegalStateException} unless {@code from -> to} is in the table.
+     */
+    public void check(OrderStatus from, OrderStatus to) {
+        if (!allows(from, to)) {
+            throw new IllegalStateException("Invalid status transition from " + from + " to " + to);
+        }
+    }
+
+    public Set<OrderStatus> targetsOf(OrderStatus from) {
+        return Collections.unmodifiableSet(targets.getOrDefault(from, EnumSet.noneOf(OrderStatus.class)));
+    }
+
+    /**
+     * Statuses an order may be in to move to {@code to}.
+     */
+    public Set<OrderStatus> sourcesOf(OrderStatus to) {
+        return Collections.unmodifiableSet(sources.getOrDefault(to, EnumSet.noneOf(OrderStatus.class)));
+    }
+
+    private OrderStatusTransitions allow(OrderStatus from, OrderStatus... to) {
+        for (OrderStatus target : to) {
+            targets.computeIfAbsent(from, status -> EnumSet.noneOf(OrderStatus.class)).add(target);
+            sources.computeIfAbsent(target, status -> EnumSet.noneOf(OrderStatus.class)).add(from);
+        }
+        return this;
+    }
+
+    private static OrderStatusTransitions admin() {
+        OrderStatusTransitions table = new OrderStatusTransitions();
+        for (int i = 0; i < DELIVERY_FLOW.length; i++) {
+            for (int j = i + 1; j < DELIVERY_FLOW.length; j++) {
+                table.allow(DELIVERY_FLOW[i], DELIVERY_FLOW[j]);
+            }
+        }
+        table.allow(OrderStatus.ARRIVED_AT_STATION, OrderStatus.IN_TRANSIT);
+        for (OrderStatus status : EnumSet.range(OrderStatus.PENDING, OrderStatus.READY_TO_SHIP)) {
+            table.allow(status, OrderStatus.CANCELLED);
+        }
+        for (OrderStatus status : EnumSet.range(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.COMPLETED)) {
+            table.allow(status, OrderStatus.RETURNED);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.tmdt.service;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.tmdt.config.CacheConfig;
+import com.example.tmdt.event.ProductChangedEvent;
+
+/**
+ * Evicts a product from the cache once a write to it has committed. This also
+ * covers code that saves products through {@code ProductRepository} directly
+ * (admin endpoints, rating updates) instead of going through {@link ProductService}.
+ */
+@Component
+public class ProductCacheInvalidator {
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#event.productId")
+    public void onProductChanged(ProductChangedEvent event) {
+        // Việc xoá cache do @CacheEvict đảm nhận
+    }
+}
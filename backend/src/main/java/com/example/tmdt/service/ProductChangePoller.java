@@ -0,0 +1,107 @@
+package com.example.tmdt.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.repository.ProductRepository;
+
+/**
+ * Carries product writes made on other nodes to this node's read models (search
+ * index, suggestions, product cache). {@link ProductChangedEvent}s are only published
+ * on the node that did the write, so this poller reads the rows whose
+ * {@code updated_at} moved since the last poll and publishes them again here.
+ *
+ * Deletions leave no row behind: when the product count no longer matches the ids
+ * seen so far, the id lists are compared and the missing products published as deleted.
+ * Local writes come back once more through the poll, which the listeners tolerate.
+ */
+@Component
+public class ProductChangePoller {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductChangePoller.class);
+
+    // Đọc lùi thêm một khoảng: transaction commit muộn hơn updated_at của nó, và đồng hồ các node lệch nhau
+    private static final Duration OVERLAP = Duration.ofMinutes(1);
+
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Set<Long> knownIds = new HashSet<>();
+    private LocalDateTime lastPolledAt;
+
+    @Autowired
+    public ProductChangePoller(ProductRepository productRepository, ApplicationEventPublisher eventPublisher) {
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public synchronized void onApplicationStartup() {
+        if (lastPolledAt != null) {
+            return;
+        }
+        // Các read model tự nạp toàn bộ khi khởi động, chỉ cần theo dõi từ thời điểm này
+        lastPolledAt = LocalDateTime.now();
+        knownIds.addAll(productRepository.findAllIds());
+    }
+
+    @Scheduled(fixedDelayString = "${app.products.change-poll-ms:5000}")
+    public synchronized void pollChanges() {
+        if (lastPolledAt == null) {
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<ProductSnapshot> changed = productRepository.findSnapshotsUpdatedAfter(lastPolledAt.minus(OVERLAP));
+        for (ProductSnapshot snapshot : changed) {
+            knownIds.add(snapshot.getId());
+            eventPublisher.publishEvent(ProductChangedEvent.saved(snapshot));
+        }
+        lastPolledAt = startedAt;
+
+        if (productRepository.count() != knownIds.size()) {
+            reconcileIds();
+        }
+    }
+
+    private void reconcileIds() {
+        Set<Long> ids = new HashSet<>(productRepository.findAllIds());
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : knownIds) {
+            if (!ids.contains(id)) {
+                deleted.add(id);
+            }
+        }
+        List<Long> added = new ArrayList<>();
+        for (Long id : ids) {
+            if (!knownIds.contains(id)) {
+                added.add(id);
+            }
+        }
+        for (Long id : deleted) {
+            knownIds.remove(id);
+            eventPublisher.publishEvent(ProductChangedEvent.deleted(id));
+        }
+        if (!added.isEmpty()) {
+            for (ProductSnapshot snapshot : productRepository.findSnapshotsByIdIn(added)) {
+                knownIds.add(snapshot.getId());
+                eventPublisher.publishEvent(ProductChangedEvent.saved(snapshot));
+            }
+        }
+        log.debug("Product ids reconciled: {} deleted, {} added", deleted.size(), added.size());
+    }
+}
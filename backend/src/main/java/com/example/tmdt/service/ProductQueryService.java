@@ -0,0 +1,323 @@
+package com.example.tmdt.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.tmdt.model.Product;
+import com.example.tmdt.payload.response.PagedResponse;
+import com.example.tmdt.payload.response.ProductSummary;
+import com.example.tmdt.repository.ProductRepository;
+import com.example.tmdt.repository.ProductSpecifications;
+import com.example.tmdt.service.search.ProductSearchCriteria;
+import com.example.tmdt.service.search.ProductSearchIndex;
+import com.example.tmdt.util.CursorCodec;
+
+/**
+ * Pageable product listings evaluated by the database.
+ *
+ * Filters are composed as {@link Specification}s and the sort, LIMIT and OFFSET
+ * are pushed into the SQL. Shallow pages can be addressed by page number; deeper
+ * pages must follow the keyset cursor returned with every page, which turns the
+ * OFFSET scan into an index range seek on (sort key, id).
+ */
+@Service
+@Transactional(readOnly = true)
+public class ProductQueryService {
+
+    // Beyond this many skipped rows callers have to page with the cursor
+    public static final int MAX_OFFSET = 10_000;
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProductRepository productRepository;
+    private final ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    public ProductQueryService(ProductRepository productRepository, ProductSearchIndex productSearchIndex) {
+        this.productRepository = productRepository;
+        this.productSearchIndex = productSearchIndex;
+    }
+
+    /**
+     * One page of products. If {@code cursor} is given the page starts right after
+     * the row it points to and the page number in the criteria is only echoed back.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed, belongs to another
+     *         sort order, or the page is too deep for offset paging
+     */
+    public PagedResponse<Product> findPage(ProductSearchCriteria criteria, String cursor) {
+        return findPage(criteria, cursor, Projection.ENTITY);
+    }
+
+    /**
+     * Same as {@link #findPage} but selects {@link ProductSummary} rows instead of entities.
+     */
+    public PagedResponse<ProductSummary> findSummaryPage(ProductSearchCriteria criteria, String cursor) {
+        return findPage(criteria, cursor, Projection.SUMMARY);
+    }
+
+    /**
+     * Unpaged listing kept for the legacy list endpoints, optionally capped at {@code limit} rows.
+     * Keyword searches without an explicit sort come back in relevance order.
+     */
+    public List<Product> findAll(ProductSearchCriteria criteria, Integer limit) {
+        return findAll(criteria, limit, Projection.ENTITY);
+    }
+
+    public List<ProductSummary> findAllSummaries(ProductSearchCriteria criteria, Integer limit) {
+        return findAll(criteria, limit, Projection.SUMMARY);
+    }
+
+    private <T> PagedResponse<T> findPage(ProductSearchCriteria criteria, String cursor, Projection<T> projection) {
+        int size = Math.min(Math.max(1, criteria.getSize()), MAX_PAGE_SIZE);
+        int page = Math.max(0, criteria.getPage());
+        SortOrder sortOrder = SortOrder.from(criteria.getSort());
+
+        Specification<Product> filter = toSpecification(criteria, resolveKeyword(criteria));
+        if (filter == NO_MATCH) {
+            return new PagedResponse<>(Collections.emptyList(), page, size, 0, 0, true, null);
+        }
+
+        Specification<Product> pageSpec = filter;
+        int offset = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            pageSpec = filter.and(sortOrder.after(cursor));
+        } else {
+            long skipped = (long) page * size;
+            if (skipped > MAX_OFFSET) {
+                throw new IllegalArgumentException("Page is too deep, use the cursor from the previous page");
+            }
+            offset = (int) skipped;
+        }
+
+        // Lấy thêm 1 dòng để biết còn trang sau hay không
+        List<T> rows = fetch(pageSpec, sortOrder, offset, size + 1, projection);
+        boolean last = rows.size() <= size;
+        List<T> content = last ? rows : new ArrayList<>(rows.subList(0, size));
+
+        long totalElements = productRepository.count(filter);
+        int totalPages = (int) Math.ceil((double) totalElements / size);
+        String nextCursor = null;
+        if (!last) {
+            T lastRow = content.get(content.size() - 1);
+            nextCursor = sortOrder.cursorOf(projection.id.apply(lastRow),
+                    projection.price.apply(lastRow), projection.rating.apply(lastRow));
+        }
+
+        return new PagedResponse<>(content, page, size, totalElements, totalPages, last, nextCursor);
+    }
+
+    private <T> List<T> findAll(ProductSearchCriteria criteria, Integer limit, Projection<T> projection) {
+        List<Long> rankedIds = resolveKeyword(criteria);
+        Specification<Product> filter = toSpecification(criteria, rankedIds);
+        if (filter == NO_MATCH) {
+            return Collections.emptyList();
+        }
+        if (rankedIds != null && criteria.getSort() == null) {
+            // Không chỉ định sort: trả về theo độ liên quan (BM25) của search index
+            Map<Long, Integer> rankById = new HashMap<>();
+            for (int i = 0; i < rankedIds.size(); i++) {
+                rankById.put(rankedIds.get(i), i);
+            }
+            List<T> rows = fetch(filter, SortOrder.ID_ASC, 0, null, projection);
+            rows.sort(Comparator.comparing(row -> rankById.getOrDefault(projection.id.apply(row), Integer.MAX_VALUE)));
+            return limit != null && rows.size() > limit ? rows.subList(0, limit) : rows;
+        }
+        return fetch(filter, SortOrder.from(criteria.getSort()), 0, limit, projection);
+    }
+
+    private static final Specification<Product> NO_MATCH = (root, query, cb) -> cb.disjunction();
+
+    /**
+     * Product ids matching the keyword in relevance order, or {@code null} when there is
+     * no keyword or the search index is still loading.
+     */
+    private List<Long> resolveKeyword(ProductSearchCriteria criteria) {
+        return criteria.hasKeyword() ? productSearchIndex.findProductIdsByKeyword(criteria.getKeyword()) : null;
+    }
+
+    private Specification<Product> toSpecification(ProductSearchCriteria criteria, List<Long> keywordIds) {
+        Specification<Product> spec = Specification.where(ProductSpecifications.inCategory(criteria.getCategory()))
+                .and(ProductSpecifications.priceBetween(criteria.getMinPrice(), criteria.getMaxPrice()))
+                .and(ProductSpecifications.ratingAtLeast(criteria.getMinRating()))
+                .and(ProductSpecifications.inStock(criteria.getInStock()));
+
+        if (criteria.hasKeyword()) {
+            // Resolve the keyword on the search index so MySQL never runs a leading-wildcard LIKE
+            if (keywordIds == null) {
+                spec = spec.and(ProductSpecifications.nameOrDescriptionContains(criteria.getKeyword()));
+            } else if (keywordIds.isEmpty()) {
+                return NO_MATCH;
+            } else {
+                spec = spec.and(ProductSpecifications.idIn(keywordIds));
+            }
+        }
+        return spec;
+    }
+
+    private <T> List<T> fetch(Specification<Product> spec, SortOrder sortOrder, int offset, Integer limit,
+                              Projection<T> projection) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(projection.type);
+        Root<Product> root = query.from(Product.class);
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(projection.selection.apply(root, cb)).orderBy(sortOrder.orders(root, cb));
+
+        TypedQuery<T> typedQuery = entityManager.createQuery(query).setFirstResult(offset);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList();
+    }
+
+    /**
+     * What a listing selects: managed entities with their category, or flat summary rows
+     * built by a constructor expression. Also tells how to read the keyset of a row.
+     */
+    private static final class Projection<T> {
+
+        static final Projection<Product> ENTITY = new Projection<>(Product.class,
+                (root, cb) -> {
+                    root.fetch("category", JoinType.LEFT);
+                    return root;
+                },
+                Product::getId, Product::getPrice, Product::getAverageRating);
+
+        static final Projection<ProductSummary> SUMMARY = new Projection<>(ProductSummary.class,
+                (root, cb) -> cb.construct(ProductSummary.class,
+                        root.get("id"), root.get("name"), root.get("price"), root.get("discountPercentage"),
+                        root.get("imageUrl"), root.get("averageRating"), root.get("stock")),
+                ProductSummary::getId, ProductSummary::getPrice, ProductSummary::getAverageRating);
+
+        final Class<T> type;
+        final BiFunction<Root<Product>, CriteriaBuilder, Selection<T>> selection;
+        final Function<T, Long> id;
+        final Function<T, Double> price;
+        final Function<T, Double> rating;
+
+        Projection(Class<T> type, BiFunction<Root<Product>, CriteriaBuilder, Selection<T>> selection,
+                   Function<T, Long> id, Function<T, Double> price, Function<T, Double> rating) {
+            this.type = type;
+            this.selection = selection;
+            this.id = id;
+            this.price = price;
+            this.rating = rating;
+        }
+    }
+
+    /**
+     * Supported sort orders. Each one breaks ties on the id so the keyset is unique.
+     */
+    private enum SortOrder {
+        ID_ASC(null, false),
+        NEWEST(null, true),
+        PRICE_ASC("price", false),
+        PRICE_DESC("price", true),
+        RATING("averageRating", true);
+
+        private final String attribute;
+        private final boolean descending;
+
+        SortOrder(String attribute, boolean descending) {
+            this.attribute = attribute;
+            this.descending = descending;
+        }
+
+        static SortOrder from(String sort) {
+            if (sort == null) {
+                return ID_ASC;
+            }
+            switch (sort) {
+                case "price_asc":
+                    return PRICE_ASC;
+                case "price_desc":
+                    return PRICE_DESC;
+                case "rating":
+                    return RATING;
+                case "newest":
+                default:
+                    // Giả sử ID cao hơn = sản phẩm mới hơn
+                    return NEWEST;
+            }
+        }
+
+        private Expression<Double> key(Root<Product> root, CriteriaBuilder cb) {
+            // average_rating is nullable, treat missing ratings as 0 so the keyset stays total
+            return this == RATING
+                    ? cb.coalesce(root.<Double>get(attribute), 0.0)
+                    : root.<Double>get(attribute);
+        }
+
+        List<Order> orders(Root<Product> root, CriteriaBuilder cb) {
+            List<Order> orders = new ArrayList<>(2);
+            if (attribute != null) {
+                orders.add(descending ? cb.desc(key(root, cb)) : cb.asc(key(root, cb)));
+            }
+            orders.add(descending ? cb.desc(root.get("id")) : cb.asc(root.get("id")));
+            return orders;
+        }
+
+        String cursorOf(Long id, Double price, Double rating) {
+            if (attribute == null) {
+                return CursorCodec.encode(name(), id);
+            }
+            Double value = this == RATING ? rating : price;
+            return CursorCodec.encode(name(), value != null ? value : 0.0, id);
+        }
+
+        Specification<Product> after(String cursor) {
+            String[] values = CursorCodec.decode(cursor, attribute == null ? 2 : 3);
+            if (!name().equals(values[0])) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort order");
+            }
+            try {
+                Long lastId = Long.valueOf(values[values.length - 1]);
+                if (attribute == null) {
+                    return (root, query, cb) -> descending
+                            ? cb.lt(root.<Long>get("id"), lastId)
+                            : cb.gt(root.<Long>get("id"), lastId);
+                }
+                Double lastKey = Double.valueOf(values[1]);
+                return (root, query, cb) -> {
+                    Expression<Double> key = key(root, cb);
+                    Expression<Long> id = root.get("id");
+                    return descending
+                            ? cb.or(cb.lt(key, lastKey), cb.and(cb.equal(key, lastKey), cb.lt(id, lastId)))
+                            : cb.or(cb.gt(key, lastKey), cb.and(cb.equal(key, lastKey), cb.gt(id, lastId)));
+                };
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+}
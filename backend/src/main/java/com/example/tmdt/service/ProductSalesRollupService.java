@@ -0,0 +1,135 @@
+package com.example.tmdt.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.repository.ProductSalesMonthlyRepository;
+
+/**
+ * Keeps the {@code product_sales_monthly} rollup in step with the orders.
+ *
+ * An order counts towards the month it was created in for as long as it is not
+ * cancelled or returned. Updates arrive as order events from the outbox, in order
+ * per order and at most once each, shortly after the order change committed.
+ */
+@Service
+@Transactional
+public class ProductSalesRollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSalesRollupService.class);
+
+    private final ProductSalesMonthlyRepository salesRepository;
+
+    @Autowired
+    public ProductSalesRollupService(ProductSalesMonthlyRepository salesRepository) {
+        this.salesRepository = salesRepository;
+    }
+
+    public static int periodOf(int year, int month) {
+        return year * 100 + month;
+    }
+
+    public static int periodOf(LocalDateTime dateTime) {
+        return periodOf(dateTime.getYear(), dateTime.getMonthValue());
+    }
+
+    /**
+     * Best sellers of the month by units sold, most sold first.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> findTopProductIds(int year, int month, int limit) {
+        return salesRepository.findTopProductIds(periodOf(year, month), PageRequest.of(0, Math.max(1, limit)));
+    }
+
+    /**
+     * Applies an order event: a new order counts, CANCELLED and RETURNED take it out of
+     * the rollup, moving out of those states puts it back, deleting it removes it.
+     */
+    public void record(OrderLifecycleEvent event) {
+        switch (event.getType()) {
+            case ORDER_CREATED:
+                if (counts(event.getStatus())) {
+                    apply(event, 1);
+                }
+                break;
+            case ORDER_DELETED:
+                if (counts(event.getStatus())) {
+                    apply(event, -1);
+                }
+                break;
+            default:
+                boolean before = counts(event.getPreviousStatus());
+                boolean after = counts(event.getStatus());
+                if (before != after) {
+                    apply(event, after ? 1 : -1);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Fills the rollup from the order history the first time the application starts
+     * against a database that does not have it yet.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void backfillIfEmpty() {
+        if (salesRepository.count() == 0) {
+            backfill();
+        }
+    }
+
+    /**
+     * Drops the rollup and recomputes it from all orders in one GROUP BY.
+     */
+    public int rebuild() {
+        salesRepository.deleteAllRows();
+        return backfill();
+    }
+
+    private int backfill() {
+        long start = System.currentTimeMillis();
+        int rows = salesRepository.backfillFromOrders();
+        log.info("Backfilled product_sales_monthly with {} rows in {} ms", rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private void apply(OrderLifecycleEvent event, int sign) {
+        if (event.getItems() == null || event.getItems().isEmpty() || event.getCreatedAt() == null) {
+            return;
+        }
+        int period = periodOf(event.getCreatedAt());
+
+        // Gộp theo sản phẩm và cập nhật theo thứ tự id để các đơn đồng thời khóa dòng cùng một thứ tự
+        Map<Long, long[]> quantities = new TreeMap<>();
+        Map<Long, BigDecimal> revenues = new TreeMap<>();
+        for (OrderLifecycleEvent.Line item : event.getItems()) {
+            Long productId = item.getProductId();
+            quantities.computeIfAbsent(productId, id -> new long[1])[0] += item.getQuantity();
+            BigDecimal lineTotal = item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
+            revenues.merge(productId, lineTotal, BigDecimal::add);
+        }
+        for (Map.Entry<Long, long[]> entry : quantities.entrySet()) {
+            BigDecimal revenue = revenues.get(entry.getKey());
+            salesRepository.addSales(entry.getKey(), period, sign * entry.getValue()[0],
+                    sign < 0 ? revenue.negate() : revenue);
+        }
+    }
+
+    private static boolean counts(Order.OrderStatus status) {
+        return status != null && status != Order.OrderStatus.CANCELLED && status != Order.OrderStatus.RETURNED;
+    }
+}
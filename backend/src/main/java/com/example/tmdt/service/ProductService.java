@@ -1,24 +1,38 @@
 package com.example.tmdt.service;
 
+import com.example.tmdt.config.CacheConfig;
+import com.example.tmdt.model.Category;
 import com.example.tmdt.model.Product;
 import com.example.tmdt.repository.ProductRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Transactional
 public class ProductService {
     
     private final ProductRepository productRepository;
+    private final CacheManager cacheManager;
     
     @Autowired
-    public ProductService(ProductRepository productRepository) {
+    public ProductService(ProductRepository productRepository, CacheManager cacheManager) {
         this.productRepository = productRepository;
+        this.cacheManager = cacheManager;
     }
     
     public List<Product> getAllProducts() {
@@ -30,15 +44,154 @@ public class ProductService {
             .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + id));
     }
     
+    /**
+     * Reference to a product for associations (e.g. order items), without loading it.
+     */
+    public Product getProductReference(Long id) {
+        return productRepository.getReferenceById(id);
+    }
+
     // Alias for getProductById for compatibility
     public Product getProduct(Long id) {
         return getProductById(id);
     }
-    @Transactional(isolation = Isolation.REPEATABLE_READ)
-    public Product getProductByIdWithLock(Long id) {
-        return productRepository.findById(id)
-                .map(product -> productRepository.findByIdWithLock(id))
-                .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + id));
+
+    /**
+     * Read-only lookup served from the product cache. The cache keeps its own detached
+     * copy, which is never handed out: every call returns a fresh copy (category tree
+     * included), so callers cannot change what other requests see. The copy has no
+     * reviews; use {@link #getProductById} when the product is going to be changed.
+     */
+    @Transactional(readOnly = true)
+    public Product getCachedProduct(Long id) {
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        Product cached = cache != null ? cache.get(id, Product.class) : null;
+        if (cached == null) {
+            Product product = getProductById(id);
+            // Category được serialize kèm subCategories, load trước khi entity rời session
+            initializeCategory(product.getCategory());
+            cached = copyOf(product, new HashMap<>());
+            if (cache != null) {
+                cache.put(id, cached);
+            }
+        }
+        return copyOf(cached, new HashMap<>());
+    }
+
+    /**
+     * Bulk version of {@link #getCachedProduct}: products found in the cache are copied,
+     * the rest are loaded with their categories in one IN query and cached. The result follows
+     * the order of {@code ids}, without duplicates; ids that do not exist are skipped.
+     */
+    @Transactional(readOnly = true)
+    public List<Product> getProductsByIds(Collection<Long> ids) {
+        Cache cache = cacheManager.getCache(CacheConfig.PRODUCT_CACHE);
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        Map<Long, Product> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : requested) {
+            Product cached = cache != null ? cache.get(id, Product.class) : null;
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Set<Long> initializedCategories = new HashSet<>();
+            Map<Long, Category> copiedCategories = new HashMap<>();
+            for (Product product : productRepository.findAllWithCategoryByIdIn(misses)) {
+                Category category = product.getCategory();
+                if (category != null && initializedCategories.add(category.getId())) {
+                    initializeCategory(category);
+                }
+                Product cached = copyOf(product, copiedCategories);
+                found.put(product.getId(), cached);
+                if (cache != null) {
+                    cache.put(product.getId(), cached);
+                }
+            }
+        }
+
+        // Các sản phẩm cùng danh mục trong một lần gọi dùng chung một bản sao danh mục
+        Map<Long, Category> categories = new HashMap<>();
+        List<Product> products = new ArrayList<>(found.size());
+        for (Long id : requested) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(copyOf(product, categories));
+            }
+        }
+        return products;
+    }
+
+    private static Product copyOf(Product product, Map<Long, Category> categories) {
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setDescription(product.getDescription());
+        copy.setPrice(product.getPrice());
+        copy.setStock(product.getStock());
+        copy.setImageUrl(product.getImageUrl());
+        copy.setCategory(copyOf(product.getCategory(), categories));
+        copy.setAverageRating(product.getAverageRating());
+        copy.setReviewCount(product.getReviewCount());
+        copy.setSoldCount(product.getSoldCount());
+        copy.setIsFeatured(product.getIsFeatured());
+        copy.setDiscountPercentage(product.getDiscountPercentage());
+        copy.setHotSku(product.getHotSku());
+        copy.setCreatedAt(product.getCreatedAt());
+        copy.setUpdatedAt(product.getUpdatedAt());
+        return copy;
+    }
+
+    private static Category copyOf(Category category, Map<Long, Category> categories) {
+        if (category == null) {
+            return null;
+        }
+        Category copy = categories.get(category.getId());
+        if (copy != null) {
+            return copy;
+        }
+        copy = new Category();
+        copy.setId(category.getId());
+        copy.setName(category.getName());
+        copy.setDescription(category.getDescription());
+        copy.setImageUrl(category.getImageUrl());
+        copy.setIsActive(category.getIsActive());
+        copy.setDisplayOrder(category.getDisplayOrder());
+        copy.setCreatedAt(category.getCreatedAt());
+        copy.setUpdatedAt(category.getUpdatedAt());
+        categories.put(category.getId(), copy);
+        for (Category subCategory : category.getSubCategories()) {
+            copy.getSubCategories().add(copyOf(subCategory, categories));
+        }
+        return copy;
+    }
+
+    /**
+     * Managed products by id, loaded with one IN query; ids that do not exist are absent.
+     */
+    public Map<Long, Product> getProductMap(Collection<Long> ids) {
+        Map<Long, Product> products = new HashMap<>();
+        if (ids.isEmpty()) {
+            return products;
+        }
+        for (Product product : productRepository.findAllWithCategoryByIdIn(ids)) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+
+    private void initializeCategory(Category category) {
+        if (category == null) {
+            return;
+        }
+        Hibernate.initialize(category.getSubCategories());
+        for (Category subCategory : category.getSubCategories()) {
+            initializeCategory(subCategory);
+        }
     }
     public List<Product> getProductsByCategory(String category) {
         return productRepository.findByCategory(category);
@@ -52,6 +205,7 @@ public class ProductService {
         return productRepository.save(product);
     }
     
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
     public Product updateProduct(Long id, Product productDetails) {
         Product product = getProductById(id);
         
@@ -65,6 +219,7 @@ public class ProductService {
         return productRepository.save(product);
     }
     
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
     }
@@ -82,6 +237,7 @@ public class ProductService {
         return product.getStock() > 0;
     }
     
+    @CacheEvict(cacheNames = CacheConfig.PRODUCT_CACHE, key = "#id")
     public void updateProductStock(Long id, int quantity) {
         Product product = getProductById(id);
         if (product.getStock() < quantity) {
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.tmdt.event.OrderLifecycleEvent;
 import com.example.tmdt.model.Order;
 import com.example.tmdt.model.RefundRequest;
 import com.example.tmdt.model.Role;
@@ -23,6 +24,7 @@ import com.example.tmdt.repository.OrderRepository;
 import com.example.tmdt.repository.RefundRequestRepository;
 import com.example.tmdt.repository.UserRepository;
 import com.example.tmdt.exception.ResourceNotFoundException;
+import com.example.tmdt.service.outbox.OutboxService;
 
 import javax.persistence.EntityNotFoundException;
 
@@ -49,6 +51,9 @@ public class RefundService {
     
     @Autowired
     private UserRepository userRepository;
+
+    @Autowired
+    private OutboxService outboxService;
     
     /**
      * Create a new refund request
@@ -161,7 +166,13 @@ public class RefundService {
             }
             
             // Cập nhật trạng thái đơn hàng thành RETURNED
+            OrderStatus previousStatus = order.getStatus();
             order.setStatus(OrderStatus.RETURNED);
+            // RefundService tự gửi thông báo hoàn trả bên dưới
+            OrderLifecycleEvent event = OrderLifecycleEvent.of(OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED,
+                    order, previousStatus);
+            event.setNotifyUser(false);
+            outboxService.record(event);
         } else if (status == RefundRequest.RefundStatus.REJECTED) {
             order.setRefundStatus(Order.RefundStatus.REJECTED);
         } else if (status == RefundRequest.RefundStatus.COMPLETED) {
@@ -59,6 +59,10 @@ public class ReviewService {
         return reviews;
     }
     
+    public List<Review> getAllProductReviews(Product product) {
+        return reviewRepository.findByProduct(product);
+    }
+    
     public List<Review> getUserReviews(User user) {
         return reviewRepository.findByUserOrderByCreatedAtDesc(user);
     }
@@ -0,0 +1,307 @@
+package com.example.tmdt.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.model.StockReservation;
+import com.example.tmdt.payload.request.OrderItemRequest;
+import com.example.tmdt.repository.ProductRepository;
+import com.example.tmdt.repository.StockReservationRepository;
+import com.example.tmdt.service.inventory.HotSkuInventory;
+
+/**
+ * Takes stock out of and back into {@code products.stock} without locking rows up front.
+ *
+ * Every change is a single conditional {@code UPDATE}, so concurrent checkouts of the
+ * same SKU only queue on the row for the duration of that statement. Lines are always
+ * applied in product-id order, which keeps multi-item checkouts from deadlocking each
+ * other; if any line is short the exception rolls back the lines already taken.
+ *
+ * Online payments first {@link #hold} the stock and get a token back. Creating the
+ * order {@link #commit commits} the hold; holds that are never committed give their
+ * units back once they expire. Products in flash-sale mode skip the row entirely and
+ * go through {@link HotSkuInventory}.
+ */
+@Service
+@Transactional
+public class StockReservationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationService.class);
+
+    private static final int EXPIRY_BATCH_SIZE = 200;
+
+    private final ProductRepository productRepository;
+    private final StockReservationRepository reservationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final HotSkuInventory hotSkuInventory;
+    private final Duration holdTtl;
+
+    @Autowired
+    public StockReservationService(ProductRepository productRepository,
+                                   StockReservationRepository reservationRepository,
+                                   ApplicationEventPublisher eventPublisher,
+                                   HotSkuInventory hotSkuInventory,
+                                   @Value("${app.stock.reservation-ttl:15m}") Duration holdTtl) {
+        this.productRepository = productRepository;
+        this.reservationRepository = reservationRepository;
+        this.eventPublisher = eventPublisher;
+        this.hotSkuInventory = hotSkuInventory;
+        this.holdTtl = holdTtl;
+    }
+
+    /**
+     * Merges the order lines per product, sorted by product id (the lock order).
+     */
+    public static SortedMap<Long, Integer> quantitiesOf(List<OrderItemRequest> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Order items cannot be null. Please provide at least one item.");
+        }
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItemRequest item : items) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Invalid order item: " + item);
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    /**
+     * Takes all quantities or none: throws if any product is missing or short of stock.
+     * Hot SKUs are taken from {@link HotSkuInventory} instead of the product row.
+     */
+    public void reserve(SortedMap<Long, Integer> quantities) {
+        Long shortProductId = tryReserve(quantities);
+        if (shortProductId != null) {
+            Product product = productRepository.findById(shortProductId)
+                    .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + shortProductId));
+            throw new RuntimeException("Số lượng vượt quá giới hạn: " + product.getName());
+        }
+    }
+
+    /**
+     * Same as {@link #reserve} but without throwing, so the caller's transaction stays
+     * usable: returns {@code null} if everything was taken, otherwise the id of the first
+     * product that was short (or missing) after giving back the lines already taken.
+     */
+    public Long tryReserve(SortedMap<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> changed = new ArrayList<>(quantities.size());
+        SortedMap<Long, Integer> taken = new TreeMap<>();
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Long productId = line.getKey();
+            boolean reserved;
+            if (hotSkuInventory.isLoaded(productId)) {
+                reserved = hotSkuInventory.tryReserve(productId, line.getValue());
+            } else if (productRepository.decrementStock(productId, line.getValue(), now) == 1) {
+                reserved = true;
+                changed.add(productId);
+            } else {
+                // UPDATE bỏ qua hot SKU chưa nạp counter trên node này
+                reserved = hotSkuInventory.isFlagged(productId) && hotSkuInventory.tryReserve(productId, line.getValue());
+            }
+            if (!reserved) {
+                if (!taken.isEmpty()) {
+                    release(taken);
+                }
+                return productId;
+            }
+            taken.put(productId, line.getValue());
+        }
+        publishChanges(changed);
+        return null;
+    }
+
+    /**
+     * Units currently available per product, read from the hot-SKU counters where
+     * they exist and from {@code products.stock} otherwise. Missing products are absent.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, Integer> availableStock(Collection<Long> productIds) {
+        Map<Long, Integer> available = new HashMap<>();
+        for (ProductSnapshot snapshot : productRepository.findSnapshotsByIdIn(productIds)) {
+            Long hotAvailable = hotSkuInventory.available(snapshot.getId());
+            available.put(snapshot.getId(), hotAvailable != null ? hotAvailable.intValue() : snapshot.getStock());
+        }
+        return available;
+    }
+
+    /**
+     * Gives the quantities back, e.g. when an order is cancelled.
+     */
+    public void release(SortedMap<Long, Integer> quantities) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> changed = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Long productId = line.getKey();
+            if (hotSkuInventory.isLoaded(productId)) {
+                hotSkuInventory.release(productId, line.getValue());
+            } else if (productRepository.incrementStock(productId, line.getValue(), now) == 1) {
+                changed.add(productId);
+            } else if (hotSkuInventory.isFlagged(productId)) {
+                hotSkuInventory.release(productId, line.getValue());
+            }
+        }
+        publishChanges(changed);
+    }
+
+    /**
+     * Reserves the quantities for a checkout whose payment is still pending and
+     * returns the token to commit them with.
+     */
+    public String hold(Long userId, SortedMap<Long, Integer> quantities) {
+        reserve(quantities);
+
+        StockReservation reservation = new StockReservation();
+        reservation.setToken(UUID.randomUUID().toString());
+        reservation.setUserId(userId);
+        reservation.setStatus(StockReservation.Status.HELD);
+        List<StockReservation.Line> lines = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> lines.add(new StockReservation.Line(productId, quantity)));
+        reservation.setItems(lines);
+        reservation.setCreatedAt(LocalDateTime.now());
+        reservation.setExpiresAt(reservation.getCreatedAt().plus(holdTtl));
+        return reservationRepository.save(reservation).getToken();
+    }
+
+    /**
+     * Turns the user's hold into stock consumed by an order. Returns {@code false} when
+     * there is no usable hold (unknown, already used or for other quantities); the caller
+     * then has to {@link #reserve} instead.
+     *
+     * An expired hold is normally unusable too. When {@code paid} is set, though, the
+     * customer has already paid for it (the VNPay payment finished after
+     * {@code app.stock.reservation-ttl}), so the order must not be refused: the stock is
+     * taken again, and if some of it was sold in the meantime the remaining units are
+     * taken anyway and the hold is marked {@link StockReservation.Status#OVERSOLD} for
+     * stock reconciliation.
+     */
+    public boolean commit(String token, Long userId, SortedMap<Long, Integer> quantities, boolean paid) {
+        if (token == null || token.isEmpty()) {
+            return false;
+        }
+        StockReservation reservation = reservationRepository.findByToken(token).orElse(null);
+        if (reservation == null || !reservation.getUserId().equals(userId)) {
+            return false;
+        }
+        if (reservation.getStatus() == StockReservation.Status.EXPIRED && paid
+                && quantities.equals(quantitiesOf(reservation))) {
+            return recommitExpired(reservation, quantities);
+        }
+        if (reservation.getStatus() != StockReservation.Status.HELD) {
+            return false;
+        }
+        if (!quantities.equals(quantitiesOf(reservation))) {
+            // Giỏ hàng đã đổi sau khi giữ hàng: trả lại hàng đã giữ, đơn sẽ đặt lại từ đầu
+            releaseHold(reservation, StockReservation.Status.RELEASED);
+            return false;
+        }
+        // Job hết hạn có thể vừa trả hàng: chỉ một bên chuyển được trạng thái HELD
+        return reservationRepository.transition(reservation.getId(),
+                StockReservation.Status.HELD, StockReservation.Status.COMMITTED) == 1;
+    }
+
+    private boolean recommitExpired(StockReservation reservation, SortedMap<Long, Integer> quantities) {
+        // Chỉ một request thanh toán được dùng lại hold đã hết hạn
+        if (reservationRepository.transition(reservation.getId(),
+                StockReservation.Status.EXPIRED, StockReservation.Status.COMMITTED) == 0) {
+            return false;
+        }
+        if (tryReserve(quantities) == null) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> changed = new ArrayList<>(quantities.size());
+        for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+            Long productId = line.getKey();
+            if (hotSkuInventory.isLoaded(productId) || hotSkuInventory.isFlagged(productId)) {
+                hotSkuInventory.tryReserve(productId, line.getValue());
+            } else if (productRepository.drainStock(productId, line.getValue(), now) == 1) {
+                changed.add(productId);
+            }
+        }
+        publishChanges(changed);
+        reservationRepository.transition(reservation.getId(),
+                StockReservation.Status.COMMITTED, StockReservation.Status.OVERSOLD);
+        log.warn("Stock reservation {} was paid after it expired and stock ran short: {} needs reconciliation",
+                reservation.getId(), quantities);
+        return true;
+    }
+
+    /**
+     * Gives back the stock of holds whose payment did not complete in time. This is what
+     * cleans up abandoned VNPay checkouts: no order exists until the payment succeeds.
+     * The units of the whole batch are added up per product and returned with one
+     * UPDATE per product.
+     */
+    @Scheduled(fixedDelayString = "${app.stock.expiry-check-ms:60000}")
+    public void releaseExpiredHolds() {
+        List<Long> expired = reservationRepository.findIdsByStatusAndExpiresAtBefore(
+                StockReservation.Status.HELD, LocalDateTime.now(), PageRequest.of(0, EXPIRY_BATCH_SIZE));
+        int released = 0;
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (StockReservation reservation : reservationRepository.findAllById(expired)) {
+            // Chỉ hold còn HELD mới được trả hàng; commit cùng lúc thì bên kia thắng
+            if (reservationRepository.transition(reservation.getId(),
+                    StockReservation.Status.HELD, StockReservation.Status.EXPIRED) == 1) {
+                quantitiesOf(reservation).forEach((productId, quantity) -> quantities.merge(productId, quantity, Integer::sum));
+                released++;
+            }
+        }
+        if (!quantities.isEmpty()) {
+            release(quantities);
+        }
+        if (released > 0) {
+            log.info("Released {} expired stock reservations", released);
+        }
+    }
+
+    private boolean releaseHold(StockReservation reservation, StockReservation.Status to) {
+        if (reservationRepository.transition(reservation.getId(), StockReservation.Status.HELD, to) == 0) {
+            return false;
+        }
+        release(quantitiesOf(reservation));
+        return true;
+    }
+
+    private static SortedMap<Long, Integer> quantitiesOf(StockReservation reservation) {
+        SortedMap<Long, Integer> quantities = new TreeMap<>();
+        for (StockReservation.Line line : reservation.getItems()) {
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    // UPDATE hàng loạt không qua entity nên ProductEntityListener không chạy: tự phát sự kiện
+    private void publishChanges(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        for (ProductSnapshot snapshot : productRepository.findSnapshotsByIdIn(productIds)) {
+            eventPublisher.publishEvent(ProductChangedEvent.saved(snapshot));
+        }
+    }
+}
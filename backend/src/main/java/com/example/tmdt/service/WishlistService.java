@@ -3,6 +3,8 @@ package com.example.tmdt.service;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.persistence.EntityNotFoundException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,9 +16,9 @@ import com.example.tmdt.model.Product;
 import com.example.tmdt.model.User;
 import com.example.tmdt.model.Wishlist;
 import com.example.tmdt.repository.NotificationRepository;
-import com.example.tmdt.repository.ProductRepository;
 import com.example.tmdt.repository.UserRepository;
 import com.example.tmdt.repository.WishlistRepository;
+import com.example.tmdt.service.recommendation.RecommendationService;
 
 @Service
 public class WishlistService {
@@ -26,13 +28,16 @@ public class WishlistService {
     private WishlistRepository wishlistRepository;
     
     @Autowired
-    private ProductRepository productRepository;
+    private ProductService productService;
     
     @Autowired
     private UserRepository userRepository;
     
     @Autowired
     private NotificationRepository notificationRepository;
+
+    @Autowired
+    private RecommendationService recommendationService;
     
     public List<Wishlist> getWishlistByUser(User user) {
         return wishlistRepository.findByUserOrderByCreatedAtDesc(user);
@@ -52,8 +57,7 @@ public class WishlistService {
             throw new RuntimeException("User must be authenticated to add to wishlist");
         }
         
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+        Product product = productService.getCachedProduct(productId);
         
         if (wishlistRepository.existsByUserAndProduct(user, product)) {
             logger.info("Product {} already exists in wishlist for user {}", productId, user.getId());
@@ -65,7 +69,9 @@ public class WishlistService {
         wishlist.setProduct(product);
         
         logger.info("Saving wishlist entry: user={}, product={}", user.getId(), product.getId());
-        return wishlistRepository.save(wishlist);
+        Wishlist saved = wishlistRepository.save(wishlist);
+        recommendationService.refreshAfterCommit(user.getId());
+        return saved;
     }
     
     @Transactional
@@ -76,16 +82,17 @@ public class WishlistService {
             throw new RuntimeException("User must be authenticated to remove from wishlist");
         }
         
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+        Product product = productService.getCachedProduct(productId);
         
         wishlistRepository.deleteByUserAndProduct(user, product);
+        recommendationService.refreshAfterCommit(user.getId());
     }
     
     @Transactional
     public void clearWishlist(User user) {
         List<Wishlist> wishlist = wishlistRepository.findByUser(user);
         wishlistRepository.deleteAll(wishlist);
+        recommendationService.refreshAfterCommit(user.getId());
     }
     
     public boolean isInWishlist(User user, Long productId) {
@@ -95,9 +102,10 @@ public class WishlistService {
             return false;
         }
         
-        Product product = productRepository.findById(productId).orElse(null);
-        
-        if (product == null) {
+        Product product;
+        try {
+            product = productService.getCachedProduct(productId);
+        } catch (EntityNotFoundException e) {
             return false;
         }
         
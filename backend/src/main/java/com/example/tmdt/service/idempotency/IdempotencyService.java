@@ -0,0 +1,349 @@
+package com.example.tmdt.service.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.tmdt.model.IdempotencyRecord;
+import com.example.tmdt.payload.response.MessageResponse;
+import com.example.tmdt.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Runs a request at most once per {@code Idempotency-Key}, so client retries after a
+ * timeout get the first response back instead of creating a second order.
+ *
+ * The key is claimed in {@code idempotency_keys} before the action runs and the response
+ * is stored there afterwards, together with a fingerprint of the request body. Recent
+ * responses are also kept in a local cache. Duplicates that arrive while the first
+ * request is still running on this node wait for it and share its outcome; a duplicate
+ * of a request running on another node gets 409 and should retry later. Failed
+ * executions (exceptions and 5xx) give the key back so the client can retry.
+ *
+ * A claimed key carries a short lease that its node renews while the request runs, so
+ * a slow request keeps its key however long it takes; only a key whose lease ran out
+ * (the node died) is taken over by a retry.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final long IN_FLIGHT_WAIT_SECONDS = 30;
+    // Lease của key đang chạy; node gia hạn mỗi app.idempotency.heartbeat-ms (phải ngắn hơn nhiều)
+    private static final Duration LEASE = Duration.ofSeconds(30);
+    // Chỉ cho các dòng cũ chưa có lease_until
+    private static final Duration ABANDONED_AFTER = Duration.ofMinutes(5);
+
+    private final IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+
+    private final Cache<String, IdempotencyRecord> completed;
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+    // Id các key đang chạy trên node này, được gia hạn lease định kỳ
+    private final Set<Long> leased = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${app.idempotency.cache-size:2000}") long cacheSize) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        // Key phải được ghi nhận độc lập với transaction của request
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.ttl = ttl;
+        // Client thường retry trong vài phút; sau đó bản ghi trong DB vẫn trả lời được
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(10).compareTo(ttl) < 0 ? Duration.ofMinutes(10) : ttl)
+                .build();
+    }
+
+    /**
+     * Runs {@code action} unless a request with the same key was already handled for this
+     * user and scope, in which case the stored response is returned. Without a key the
+     * action simply runs. {@code replayedHeaders} are response headers to store and send
+     * again on replay.
+     */
+    public ResponseEntity<?> execute(String key, Long userId, String scope, Object request,
+                                     Callable<? extends ResponseEntity<?>> action, String... replayedHeaders) {
+        if (key == null || key.trim().isEmpty()) {
+            return call(action);
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters"));
+        }
+        String requestHash = fingerprint(request);
+        String cacheKey = userId + ":" + scope + ":" + key;
+
+        IdempotencyRecord cached = completed.getIfPresent(cacheKey);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+
+        CompletableFuture<IdempotencyRecord> mine = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            return awaitReplay(running, requestHash);
+        }
+        try {
+            return executeOnce(key, userId, scope, requestHash, cacheKey, mine, action, replayedHeaders);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Không có response để chia sẻ (409, 5xx): các request chờ nhận 409 và tự retry
+            mine.complete(null);
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.heartbeat-ms:10000}")
+    public void renewLeases() {
+        if (leased.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(leased);
+        transactionTemplate.executeWithoutResult(status ->
+                repository.renewLeases(ids, LocalDateTime.now().plus(LEASE)));
+    }
+
+    @Scheduled(cron = "${app.idempotency.purge-cron:0 15 * * * *}")
+    public void purgeExpired() {
+        Integer deleted = transactionTemplate.execute(status -> repository.deleteExpired(LocalDateTime.now()));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+
+    private ResponseEntity<?> executeOnce(String key, Long userId, String scope, String requestHash, String cacheKey,
+                                          CompletableFuture<IdempotencyRecord> mine,
+                                          Callable<? extends ResponseEntity<?>> action, String[] replayedHeaders) {
+        IdempotencyRecord claimed = claim(key, userId, scope, requestHash);
+        if (claimed.getResponseStatus() != null) {
+            completed.put(cacheKey, claimed);
+            mine.complete(claimed);
+            return replay(claimed, requestHash);
+        }
+        if (claimed.getId() == null) {
+            return inProgress();
+        }
+
+        ResponseEntity<?> response;
+        leased.add(claimed.getId());
+        try {
+            response = call(action);
+        } catch (RuntimeException e) {
+            release(claimed);
+            throw e;
+        } finally {
+            leased.remove(claimed.getId());
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            release(claimed);
+            return response;
+        }
+
+        if (!store(claimed, response, replayedHeaders)) {
+            // Key đã bị request khác tiếp quản: không ghi đè, không cache response này
+            log.warn("Idempotency key {} of user {} was taken over while its request was running; "
+                    + "the response was not stored", key, userId);
+            return response;
+        }
+        completed.put(cacheKey, claimed);
+        mine.complete(claimed);
+        return response;
+    }
+
+    /**
+     * Returns a fresh record (with id) owned by the caller, the finished record of an
+     * earlier request, or a record without id if the key is still held by a running request.
+     */
+    private IdempotencyRecord claim(String key, Long userId, String scope, String requestHash) {
+        return transactionTemplate.execute(status -> {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                LocalDateTime now = LocalDateTime.now();
+                boolean owned = repository.claim(userId, scope, key, requestHash, now, now.plus(ttl),
+                        now.plus(LEASE)) == 1;
+                IdempotencyRecord record = repository.findByUserIdAndScopeAndIdempotencyKey(userId, scope, key)
+                        .orElse(null);
+                if (record == null) {
+                    continue;
+                }
+                if (owned || record.getResponseStatus() != null) {
+                    return record;
+                }
+                if (isAbandoned(record, now)
+                        && repository.deleteAbandoned(record.getId(), now, now.minus(ABANDONED_AFTER)) == 1) {
+                    // Key hết hạn chưa bị dọn hoặc node giữ nó đã chết: coi như chưa từng dùng
+                    continue;
+                }
+                break;
+            }
+            return new IdempotencyRecord();
+        });
+    }
+
+    private static boolean isAbandoned(IdempotencyRecord record, LocalDateTime now) {
+        if (record.getExpiresAt().isBefore(now)) {
+            return true;
+        }
+        return record.getLeaseUntil() != null
+                ? record.getLeaseUntil().isBefore(now)
+                : record.getCreatedAt().isBefore(now.minus(ABANDONED_AFTER));
+    }
+
+    /**
+     * Fills the response into the claimed record. Returns {@code false} if the row is no
+     * longer ours (taken over as abandoned), in which case nothing is stored.
+     */
+    private boolean store(IdempotencyRecord record, ResponseEntity<?> response, String[] replayedHeaders) {
+        Object body = response.getBody();
+        String contentType;
+        String serializedBody;
+        if (body == null) {
+            contentType = null;
+            serializedBody = null;
+        } else if (body instanceof String) {
+            MediaType mediaType = response.getHeaders().getContentType();
+            contentType = mediaType != null ? mediaType.toString() : MediaType.TEXT_PLAIN_VALUE;
+            serializedBody = (String) body;
+        } else {
+            contentType = MediaType.APPLICATION_JSON_VALUE;
+            serializedBody = toJson(body);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : replayedHeaders) {
+            String value = response.getHeaders().getFirst(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+
+        record.setResponseStatus(response.getStatusCodeValue());
+        record.setResponseContentType(contentType);
+        record.setResponseBody(serializedBody);
+        record.setResponseHeaders(headers.isEmpty() ? null : toJson(headers));
+        Integer updated = transactionTemplate.execute(status -> repository.complete(record.getId(),
+                record.getResponseStatus(), contentType, serializedBody, record.getResponseHeaders()));
+        return updated != null && updated == 1;
+    }
+
+    private void release(IdempotencyRecord record) {
+        transactionTemplate.executeWithoutResult(status -> repository.deleteUnfinished(record.getId()));
+    }
+
+    private ResponseEntity<?> awaitReplay(CompletableFuture<IdempotencyRecord> running, String requestHash) {
+        IdempotencyRecord record;
+        try {
+            record = running.get(IN_FLIGHT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            return inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return inProgress();
+        }
+        return record != null ? replay(record, requestHash) : inProgress();
+    }
+
+    private ResponseEntity<?> replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new MessageResponse(HEADER + " was already used for a different request"));
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(record.getResponseStatus())
+                .header(REPLAYED_HEADER, "true");
+        if (record.getResponseHeaders() != null) {
+            try {
+                Map<String, String> headers = objectMapper.readValue(record.getResponseHeaders(),
+                        new TypeReference<Map<String, String>>() {});
+                headers.forEach(builder::header);
+            } catch (JsonProcessingException e) {
+                log.warn("Cannot read stored headers of idempotency key {}", record.getId(), e);
+            }
+        }
+        if (record.getResponseContentType() != null) {
+            builder.contentType(MediaType.parseMediaType(record.getResponseContentType()));
+        }
+        return builder.body(record.getResponseBody());
+    }
+
+    private static ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new MessageResponse("A request with this " + HEADER + " is still being processed"));
+    }
+
+    private static ResponseEntity<?> call(Callable<? extends ResponseEntity<?>> action) {
+        try {
+            return action.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(toJson(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
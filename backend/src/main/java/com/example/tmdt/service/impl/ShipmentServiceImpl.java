@@ -1,5 +1,6 @@
 package com.example.tmdt.service.impl;
 
+import com.example.tmdt.event.OrderLifecycleEvent;
 import com.example.tmdt.exception.ResourceNotFoundException;
 import com.example.tmdt.exception.OperationNotAllowedException;
 import com.example.tmdt.model.Order;
@@ -9,7 +10,9 @@ import com.example.tmdt.payload.request.StatusUpdateRequest;
 import com.example.tmdt.repository.OrderRepository;
 import com.example.tmdt.repository.ShipmentTrackingRepository;
 import com.example.tmdt.service.NotificationService;
+import com.example.tmdt.service.OrderStatusTransitions;
 import com.example.tmdt.service.ShipmentService;
+import com.example.tmdt.service.outbox.OutboxService;
 import com.example.tmdt.util.OrderStatusConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,9 @@ public class ShipmentServiceImpl implements ShipmentService {
     
     @Autowired
     private NotificationService notificationService;
+
+    @Autowired
+    private OutboxService outboxService;
     
     @Override
     public List<ShipmentTracking> getShipmentTrackingByOrderId(Long orderId) {
@@ -69,7 +75,9 @@ public class ShipmentServiceImpl implements ShipmentService {
         
         // Cập nhật trạng thái đơn hàng
         Order.OrderStatus internalNewStatus = statusUpdateRequest.getStatus();
+        Order.OrderStatus previousStatus = order.getStatus();
         order.updateStatus(internalNewStatus);
+        recordStatusChange(order, previousStatus);
         
         // Lưu lịch sử tracking
         ShipmentTracking tracking = new ShipmentTracking();
@@ -124,6 +132,7 @@ public class ShipmentServiceImpl implements ShipmentService {
     }
     
     @Override
+    @Transactional
     public Order acceptOrder(Long orderId, Long shipperId) {
         Optional<Order> orderOpt = orderRepository.findById(orderId);
         if (orderOpt.isEmpty()) {
@@ -139,12 +148,8 @@ public class ShipmentServiceImpl implements ShipmentService {
         
         // Check if order is in a valid state for assignment
         Order.OrderStatus currentStatus = order.getStatus();
-        if (currentStatus != Order.OrderStatus.PROCESSING) {
-            // Check if it's an expanded status that maps to PROCESSING
-            OrderStatus externalStatus = convertToExternalStatus(currentStatus);
-            if (externalStatus != OrderStatus.CONFIRMED && externalStatus != OrderStatus.READY_TO_SHIP && externalStatus != OrderStatus.PROCESSING) {
-                throw new OperationNotAllowedException("Order cannot be accepted in " + currentStatus + " status");
-            }
+        if (!OrderStatusTransitions.SHIPPER.allows(currentStatus, Order.OrderStatus.IN_TRANSIT)) {
+            throw new OperationNotAllowedException("Order cannot be accepted in " + currentStatus + " status");
         }
         
         // Set the shipper ID
@@ -152,6 +157,7 @@ public class ShipmentServiceImpl implements ShipmentService {
         
         // Update the status to IN_TRANSIT
         order.updateStatus(Order.OrderStatus.IN_TRANSIT);
+        recordStatusChange(order, currentStatus);
         
         // Save the order
         Order updatedOrder = orderRepository.save(order);
@@ -204,7 +210,9 @@ public class ShipmentServiceImpl implements ShipmentService {
         
         // Cập nhật trạng thái đơn hàng
         Order.OrderStatus internalNewStatus = convertToInternalStatus(newStatus);
+        Order.OrderStatus previousStatus = order.getStatus();
         order.updateStatus(internalNewStatus);
+        recordStatusChange(order, previousStatus);
         
         // Lưu lịch sử tracking
         ShipmentTracking tracking = new ShipmentTracking();
@@ -241,6 +249,14 @@ public class ShipmentServiceImpl implements ShipmentService {
         return shipmentTrackingRepository.findByOrderIdOrderByCreatedAtDesc(orderId);
     }
     
+    // Sự kiện cho rollup doanh số và dashboard; shipper đã tự gửi thông báo cho khách
+    private void recordStatusChange(Order order, Order.OrderStatus previousStatus) {
+        OrderLifecycleEvent event = OrderLifecycleEvent.of(OrderLifecycleEvent.Type.ORDER_STATUS_CHANGED,
+                order, previousStatus);
+        event.setNotifyUser(false);
+        outboxService.record(event);
+    }
+
     // Helper methods to handle OrderStatus conversions
     private OrderStatus convertToExternalStatus(Order.OrderStatus internalStatus) {
         return OrderStatus.valueOf(internalStatus.name());
@@ -269,44 +285,9 @@ public class ShipmentServiceImpl implements ShipmentService {
     }
     
     /**
-     * Kiểm tra tính hợp lệ của trạng thái mới
+     * Kiểm tra tính hợp lệ của trạng thái mới theo bảng chuyển trạng thái của shipper
      */
     private void validateStatusTransition(OrderStatus currentStatus, OrderStatus newStatus) {
-        // Định nghĩa các trạng thái hợp lệ tiếp theo dựa vào trạng thái hiện tại
-        switch (currentStatus) {
-            case PROCESSING:
-            case READY_TO_SHIP:
-                if (newStatus != OrderStatus.IN_TRANSIT) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            case PICKED_UP:
-                if (newStatus != OrderStatus.IN_TRANSIT && newStatus != OrderStatus.ARRIVED_AT_STATION) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            case IN_TRANSIT:
-                if (newStatus != OrderStatus.ARRIVED_AT_STATION && newStatus != OrderStatus.OUT_FOR_DELIVERY) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            case ARRIVED_AT_STATION:
-                if (newStatus != OrderStatus.IN_TRANSIT && newStatus != OrderStatus.OUT_FOR_DELIVERY) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            case OUT_FOR_DELIVERY:
-                if (newStatus != OrderStatus.DELIVERED && newStatus != OrderStatus.RETURNED) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            case DELIVERED:
-                if (newStatus != OrderStatus.COMPLETED) {
-                    throw new IllegalStateException("Invalid status transition from " + currentStatus + " to " + newStatus);
-                }
-                break;
-            default:
-                throw new IllegalStateException("Cannot update order with current status: " + currentStatus);
-        }
+        OrderStatusTransitions.SHIPPER.check(convertToInternalStatus(currentStatus), convertToInternalStatus(newStatus));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,310 @@
+package com.example.tmdt.service.inventory;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.exception.OperationNotAllowedException;
+import com.example.tmdt.model.InventoryJournalEntry;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.repository.HotSkuLeaseRepository;
+import com.example.tmdt.repository.InventoryJournalRepository;
+import com.example.tmdt.repository.ProductRepository;
+
+/**
+ * Stock of flash-sale ("hot") SKUs, kept in memory so checkouts do not queue on one product row.
+ *
+ * A reservation takes units from a {@link StripedCounter} without locking and appends a
+ * journal row in the caller's transaction; the units go back to the counter if that
+ * transaction rolls back. A scheduled flush folds committed journal rows into
+ * {@code products.stock} in batches. Because the journal commits with the order, the
+ * counter can always be rebuilt as {@code stock + sum(journal)} after a restart, so a
+ * crash never sells units twice.
+ *
+ * Each hot SKU has one owner node, recorded as a lease in {@code hot_sku_leases}. Only
+ * the owner loads a counter and takes units; other nodes reject checkouts of the SKU
+ * instead of keeping a second counter. The owner renews its leases on a schedule and
+ * stops using a counter whose lease it could not renew in time, and once a lease has
+ * run out another node may claim the SKU and rebuild the counter from the database.
+ * Units released on a non-owner node are journaled and reach the owner's counter
+ * when it is next rebuilt.
+ *
+ * The stock of a hot SKU cannot be edited directly (see {@link #checkStockEdit});
+ * turn the mode off first.
+ */
+@Component
+@Transactional
+public class HotSkuInventory {
+
+    private static final Logger log = LoggerFactory.getLogger(HotSkuInventory.class);
+
+    private static final int FLUSH_BATCH_SIZE = 5000;
+
+    private static final Duration LEASE = Duration.ofSeconds(30);
+    // Ngừng bán khi lease còn ít hơn khoảng này, phòng đồng hồ các node lệch nhau
+    private static final Duration LEASE_MARGIN = Duration.ofSeconds(5);
+
+    private final ProductRepository productRepository;
+    private final InventoryJournalRepository journalRepository;
+    private final HotSkuLeaseRepository leaseRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate loadTransaction;
+    private final TransactionTemplate leaseTransaction;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<Long, StripedCounter> counters = new ConcurrentHashMap<>();
+    // Hạn lease của các SKU node này đang giữ
+    private final Map<Long, LocalDateTime> leases = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HotSkuInventory(ProductRepository productRepository,
+                           InventoryJournalRepository journalRepository,
+                           HotSkuLeaseRepository leaseRepository,
+                           ApplicationEventPublisher eventPublisher,
+                           PlatformTransactionManager transactionManager) {
+        this.productRepository = productRepository;
+        this.journalRepository = journalRepository;
+        this.leaseRepository = leaseRepository;
+        this.eventPublisher = eventPublisher;
+        // Đọc tồn kho trong transaction riêng để không dùng snapshot cũ của transaction gọi vào
+        this.loadTransaction = new TransactionTemplate(transactionManager);
+        this.loadTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTransaction.setReadOnly(true);
+        // Lease phải commit ngay để node khác thấy, độc lập với transaction đặt hàng
+        this.leaseTransaction = new TransactionTemplate(transactionManager);
+        this.leaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onApplicationStartup() {
+        int loaded = 0;
+        for (Long productId : productRepository.findHotSkuIds()) {
+            try {
+                counterOf(productId);
+                loaded++;
+            } catch (HotSkuOwnedElsewhereException e) {
+                log.debug(e.getMessage());
+            }
+        }
+        if (loaded > 0) {
+            log.info("Loaded {} hot SKU counters", loaded);
+        }
+    }
+
+    /**
+     * Whether this node currently holds the counter of the product. A product flagged
+     * in the database but not loaded yet is reported as hot by {@link #isFlagged}.
+     */
+    public boolean isLoaded(Long productId) {
+        return counters.containsKey(productId);
+    }
+
+    public boolean isFlagged(Long productId) {
+        return Boolean.TRUE.equals(productRepository.findHotSkuById(productId));
+    }
+
+    /**
+     * Takes {@code quantity} units for the current transaction. Returns {@code false}
+     * if fewer are left; on rollback the units are given back.
+     *
+     * @throws HotSkuOwnedElsewhereException if another node holds the SKU
+     */
+    public boolean tryReserve(Long productId, int quantity) {
+        StripedCounter counter = counterOf(productId);
+        if (!counter.tryTake(quantity)) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    counter.add(quantity);
+                }
+            }
+        });
+        journal(productId, -quantity);
+        return true;
+    }
+
+    /**
+     * Gives units back once the current transaction commits.
+     */
+    public void release(Long productId, int quantity) {
+        StripedCounter counter;
+        try {
+            counter = counterOf(productId);
+        } catch (HotSkuOwnedElsewhereException e) {
+            // Chỉ ghi journal: node chủ thấy số này khi nạp lại counter
+            journal(productId, quantity);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                counter.add(quantity);
+            }
+        });
+        journal(productId, quantity);
+    }
+
+    /**
+     * Rejects a direct change of a hot SKU's stock: checkouts take from the in-memory
+     * counter, which a write to {@code products.stock} would not reach. Saving the
+     * current value unchanged is allowed.
+     */
+    public void checkStockEdit(Product product, Integer stock) {
+        if (Boolean.TRUE.equals(product.getHotSku()) && !Objects.equals(product.getStock(), stock)) {
+            throw new OperationNotAllowedException(
+                    "Stock of a hot SKU cannot be edited; turn hot SKU mode off first");
+        }
+    }
+
+    /**
+     * Units left according to the counter, or {@code null} if the product is not hot on this node.
+     */
+    public Long available(Long productId) {
+        StripedCounter counter = counters.get(productId);
+        return counter != null ? counter.sum() : null;
+    }
+
+    /**
+     * Write-behind: applies committed journal rows to {@code products.stock}, one
+     * UPDATE per product, and deletes them in the same transaction.
+     */
+    @Scheduled(fixedDelayString = "${app.inventory.hot-sku.flush-ms:1000}")
+    public void flush() {
+        List<InventoryJournalEntry> entries = journalRepository.findOldest(PageRequest.of(0, FLUSH_BATCH_SIZE));
+        if (!entries.isEmpty()) {
+            apply(entries);
+        }
+    }
+
+    public void enable(Long productId) {
+        if (productRepository.updateHotSku(productId, true, LocalDateTime.now()) == 0) {
+            throw new EntityNotFoundException("Product not found with id: " + productId);
+        }
+        // Counter được nạp khi có đơn đầu tiên: UPDATE trên đã chờ các đơn đang trừ kho bằng SQL commit xong
+    }
+
+    public void disable(Long productId) {
+        if (productRepository.updateHotSku(productId, false, LocalDateTime.now()) == 0) {
+            throw new EntityNotFoundException("Product not found with id: " + productId);
+        }
+        List<InventoryJournalEntry> entries = journalRepository.findByProductId(productId);
+        if (!entries.isEmpty()) {
+            apply(entries);
+        }
+        // Node chủ (nếu là node khác) bỏ counter ở lần gia hạn lease kế tiếp
+        leaseRepository.deleteByProductId(productId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                leases.remove(productId);
+                counters.remove(productId);
+            }
+        });
+    }
+
+    /**
+     * Extends the leases of the SKUs this node holds; a SKU whose lease was taken over
+     * or deleted (mode turned off) loses its counter here.
+     */
+    @Scheduled(fixedDelayString = "${app.inventory.hot-sku.lease-renew-ms:10000}")
+    public synchronized void renewLeases() {
+        for (Long productId : new ArrayList<>(leases.keySet())) {
+            LocalDateTime leaseUntil = LocalDateTime.now().plus(LEASE);
+            Integer renewed = leaseTransaction.execute(status -> leaseRepository.renew(productId, nodeId, leaseUntil));
+            if (renewed != null && renewed == 1) {
+                leases.put(productId, leaseUntil);
+            } else {
+                leases.remove(productId);
+                counters.remove(productId);
+                log.warn("Lost the lease of hot SKU {}, its counter was dropped", productId);
+            }
+        }
+    }
+
+    private void apply(List<InventoryJournalEntry> entries) {
+        Map<Long, Integer> deltas = new TreeMap<>();
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (InventoryJournalEntry entry : entries) {
+            deltas.merge(entry.getProductId(), entry.getDelta(), Integer::sum);
+            ids.add(entry.getId());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+            if (delta.getValue() != 0) {
+                productRepository.applyStockDelta(delta.getKey(), delta.getValue(), now);
+            }
+        }
+        journalRepository.deleteAllByIdInBatch(ids);
+        for (ProductSnapshot snapshot : productRepository.findSnapshotsByIdIn(deltas.keySet())) {
+            eventPublisher.publishEvent(ProductChangedEvent.saved(snapshot));
+        }
+        log.debug("Flushed {} journal entries for {} hot SKUs", ids.size(), deltas.size());
+    }
+
+    private void journal(Long productId, int delta) {
+        journalRepository.save(new InventoryJournalEntry(null, productId, delta, LocalDateTime.now()));
+    }
+
+    private StripedCounter counterOf(Long productId) {
+        LocalDateTime leaseUntil = leases.get(productId);
+        if (leaseUntil == null || !leaseUntil.isAfter(LocalDateTime.now().plus(LEASE_MARGIN))) {
+            claimLease(productId);
+        }
+        return counters.computeIfAbsent(productId, id -> loadTransaction.execute(status -> {
+            Integer stock = productRepository.findStockById(id);
+            if (stock == null) {
+                throw new EntityNotFoundException("Product not found with id: " + id);
+            }
+            return new StripedCounter(stock + journalRepository.sumDeltaByProductId(id));
+        }));
+    }
+
+    private synchronized void claimLease(Long productId) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime held = leases.get(productId);
+        if (held != null && held.isAfter(now.plus(LEASE_MARGIN))) {
+            return;
+        }
+        // Lease đã hết: node khác có thể đã bán SKU trong lúc đó, nên counter được nạp lại từ DB
+        counters.remove(productId);
+        leases.remove(productId);
+        LocalDateTime leaseUntil = now.plus(LEASE);
+        Boolean claimed = leaseTransaction.execute(status -> {
+            leaseRepository.createIfAbsent(productId);
+            return leaseRepository.claim(productId, nodeId, now, leaseUntil) == 1;
+        });
+        if (!Boolean.TRUE.equals(claimed)) {
+            throw new HotSkuOwnedElsewhereException(productId);
+        }
+        leases.put(productId, leaseUntil);
+    }
+}
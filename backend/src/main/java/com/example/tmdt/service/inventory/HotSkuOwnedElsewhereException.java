@@ -0,0 +1,11 @@
+package com.example.tmdt.service.inventory;
+
+/**
+ * Thrown when a hot SKU is taken on a node that does not hold its lease.
+ */
+public class HotSkuOwnedElsewhereException extends IllegalStateException {
+
+    public HotSkuOwnedElsewhereException(Long productId) {
+        super("Flash-sale stock of product " + productId + " is served by another node, please try again");
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tmdt.service.inventory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Non-negative stock count spread over several CAS cells, like a {@code LongAdder}
+ * that can also refuse to go below zero. Callers start on a random cell, so
+ * concurrent takes of the same SKU rarely retry on the same cache line.
+ *
+ * When the cells it visits do not hold enough, a take falls back to a slow path that
+ * collects every cell under a lock, so two partial takes racing for the last units
+ * cannot both give up while the stock would cover one of them.
+ */
+class StripedCounter {
+
+    // Mỗi cell cách nhau 8 long (64 byte) để tránh false sharing
+    private static final int PADDING = 8;
+
+    private final int stripes;
+    private final AtomicLongArray cells;
+
+    StripedCounter(long initial) {
+        this.stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        spread(Math.max(0, initial));
+    }
+
+    /**
+     * Takes {@code quantity} units, or nothing if fewer are left.
+     */
+    boolean tryTake(long quantity) {
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+        long remaining = quantity;
+        long[] taken = null;
+        for (int n = 0; n < stripes && remaining > 0; n++) {
+            int index = ((start + n) & (stripes - 1)) * PADDING;
+            long current;
+            long take;
+            do {
+                current = cells.get(index);
+                take = Math.min(current, remaining);
+            } while (take > 0 && !cells.compareAndSet(index, current, current - take));
+            if (take > 0) {
+                if (take == quantity) {
+                    return true;
+                }
+                if (taken == null) {
+                    taken = new long[stripes];
+                }
+                taken[(start + n) & (stripes - 1)] = take;
+                remaining -= take;
+            }
+        }
+        if (remaining == 0) {
+            return true;
+        }
+        // Không đủ hàng trên các cell đã đi qua: trả lại phần đã lấy rồi thử lại có khoá
+        if (taken != null) {
+            for (int i = 0; i < stripes; i++) {
+                if (taken[i] > 0) {
+                    cells.addAndGet(i * PADDING, taken[i]);
+                }
+            }
+        }
+        return tryTakeCollected(quantity);
+    }
+
+    /**
+     * Slow path: empties every cell, takes {@code quantity} from the total if it is
+     * enough, and spreads the rest back. Serialized, so partial takes that failed
+     * concurrently are retried one at a time against the whole count.
+     */
+    private synchronized boolean tryTakeCollected(long quantity) {
+        long total = 0;
+        for (int i = 0; i < stripes; i++) {
+            total += cells.getAndSet(i * PADDING, 0);
+        }
+        boolean enough = total >= quantity;
+        spread(enough ? total - quantity : total);
+        return enough;
+    }
+
+    private void spread(long units) {
+        long share = units / stripes;
+        for (int i = 0; i < stripes; i++) {
+            cells.addAndGet(i * PADDING, share);
+        }
+        cells.addAndGet(0, units - share * stripes);
+    }
+
+    void add(long quantity) {
+        cells.addAndGet(ThreadLocalRandom.current().nextInt(stripes) * PADDING, quantity);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
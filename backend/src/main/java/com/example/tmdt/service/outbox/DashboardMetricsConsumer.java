@@ -0,0 +1,31 @@
+package com.example.tmdt.service.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.service.DashboardMetricsService;
+
+/**
+ * Keeps the order figures of the admin dashboard in step with the order events.
+ */
+@Component
+public class DashboardMetricsConsumer implements OrderEventConsumer {
+
+    private final DashboardMetricsService dashboardMetricsService;
+
+    @Autowired
+    public DashboardMetricsConsumer(DashboardMetricsService dashboardMetricsService) {
+        this.dashboardMetricsService = dashboardMetricsService;
+    }
+
+    @Override
+    public String getName() {
+        return "dashboard-metrics";
+    }
+
+    @Override
+    public void handle(OrderLifecycleEvent event) {
+        dashboardMetricsService.record(event);
+    }
+}
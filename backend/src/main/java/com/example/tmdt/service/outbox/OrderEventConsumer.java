@@ -0,0 +1,19 @@
+package com.example.tmdt.service.outbox;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+
+/**
+ * Side effect of an order event, run by {@link OutboxDispatcher} after the order
+ * committed. Each call runs in its own transaction together with the
+ * "already processed" marker, so an event is applied at most once per consumer
+ * even though it can be delivered more than once.
+ */
+public interface OrderEventConsumer {
+
+    /**
+     * Stable key stored with the processed marker; never rename a deployed consumer.
+     */
+    String getName();
+
+    void handle(OrderLifecycleEvent event);
+}
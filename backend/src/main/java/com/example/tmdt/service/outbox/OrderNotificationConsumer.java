@@ -0,0 +1,80 @@
+package com.example.tmdt.service.outbox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.User;
+import com.example.tmdt.repository.UserRepository;
+import com.example.tmdt.service.NotificationService;
+
+/**
+ * Tells the customer about their order: placed, cancelled, status changes and refunds.
+ */
+@Component
+public class OrderNotificationConsumer implements OrderEventConsumer {
+
+    private final NotificationService notificationService;
+    private final UserRepository userRepository;
+
+    @Autowired
+    public OrderNotificationConsumer(NotificationService notificationService, UserRepository userRepository) {
+        this.notificationService = notificationService;
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public String getName() {
+        return "order-notification";
+    }
+
+    @Override
+    public void handle(OrderLifecycleEvent event) {
+        if (!event.isNotifyUser() || event.getType() == OrderLifecycleEvent.Type.ORDER_DELETED
+                || event.getUserId() == null) {
+            return;
+        }
+        User user = userRepository.findById(event.getUserId()).orElse(null);
+        if (user == null) {
+            return;
+        }
+
+        Map<String, Object> additionalData = new HashMap<>();
+        additionalData.put("orderId", event.getOrderId());
+        switch (event.getType()) {
+            case ORDER_CREATED:
+                additionalData.put("totalAmount", event.getTotalAmount().doubleValue());
+                additionalData.put("status", event.getStatus().name());
+                notificationService.createNotificationForUser(user, "Đặt hàng thành công",
+                        String.format("Đơn hàng #%d của bạn đã được xác nhận. Tổng tiền: %.2f VND. Cảm ơn bạn đã mua sắm!",
+                                event.getOrderId(), event.getTotalAmount().doubleValue()),
+                        "ORDER_STATUS_CHANGE", additionalData);
+                break;
+            case ORDER_CANCELLED:
+                notificationService.createNotificationForUser(user, "Đơn hàng đã bị hủy",
+                        String.format("Đơn hàng #%d của bạn đã bị hủy.", event.getOrderId()),
+                        "ORDER_STATUS_CHANGE", additionalData);
+                break;
+            case ORDER_STATUS_CHANGED:
+                additionalData.put("status", event.getStatus().toString());
+                notificationService.createNotificationForUser(user, "Cập nhật trạng thái đơn hàng",
+                        String.format("Đơn hàng #%d của bạn đã được cập nhật trạng thái thành: %s",
+                                event.getOrderId(), event.getStatus().toString()),
+                        "ORDER_STATUS_CHANGE", additionalData);
+                break;
+            case ORDER_REFUNDED:
+                additionalData.put("amount", event.getTotalAmount().doubleValue());
+                additionalData.put("type", "REFUND");
+                notificationService.createNotificationForUser(user, "Hoàn tiền thành công",
+                        String.format("Đơn hàng #%d đã được hoàn tiền thành công. Số tiền %s đã được hoàn vào tài khoản của bạn.",
+                                event.getOrderId(), event.getTotalAmount().toString()),
+                        "ORDER_PAYMENT", additionalData);
+                break;
+            default:
+                break;
+        }
+    }
+}
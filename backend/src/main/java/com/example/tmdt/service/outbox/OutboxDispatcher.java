@@ -0,0 +1,209 @@
+package com.example.tmdt.service.outbox;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.OutboxEvent;
+import com.example.tmdt.repository.OutboxEventRepository;
+import com.example.tmdt.repository.ProcessedOutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Delivers outbox events to every {@link OrderEventConsumer}, at least once.
+ *
+ * Pending events are read in batches and grouped by order; groups run in parallel on
+ * a bounded worker pool, or on the polling thread when the pool is full, while the
+ * events of one order are delivered strictly in order.
+ * An event is marked dispatched only after all consumers succeeded. A failure stops
+ * its order's group and schedules a retry with exponential backoff, and consumers that
+ * already handled it skip the redelivery through {@code outbox_processed}. After
+ * {@code app.outbox.max-attempts} failures the event is parked so it cannot hold up
+ * the events behind it; the order's later events are delivered without it.
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private static final int BATCH_SIZE = 200;
+    private static final long MAX_BACKOFF_SECONDS = 600;
+    private static final int KEEP_DISPATCHED_DAYS = 7;
+
+    private final OutboxEventRepository outboxRepository;
+    private final ProcessedOutboxEventRepository processedRepository;
+    private final List<OrderEventConsumer> consumers;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    private final ThreadPoolExecutor poller;
+    private final int maxAttempts;
+
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    private final AtomicBoolean rerun = new AtomicBoolean();
+
+    @Autowired
+    public OutboxDispatcher(OutboxEventRepository outboxRepository,
+                            ProcessedOutboxEventRepository processedRepository,
+                            List<OrderEventConsumer> consumers,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.outbox.workers:2}") int workerCount,
+                            @Value("${app.outbox.max-attempts:12}") int maxAttempts) {
+        this.outboxRepository = outboxRepository;
+        this.processedRepository = processedRepository;
+        this.consumers = consumers;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        int threads = Math.max(1, workerCount);
+        // Hàng đợi có giới hạn: khi đầy, poller tự giao nhóm sự kiện đó thay vì dồn cả batch vào bộ nhớ
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "outbox-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // Một lượt dispatch đang chờ là đủ: các lần wakeUp dồn lại bị bỏ qua
+        this.poller = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, "outbox-poller");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Asks for a dispatch round soon, e.g. right after an event was committed.
+     */
+    public void wakeUp() {
+        poller.execute(this::dispatchPending);
+    }
+
+    /**
+     * Safety net for missed wake-ups, retries and events committed by other nodes.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-ms:1000}")
+    public void dispatchPending() {
+        if (!dispatching.compareAndSet(false, true)) {
+            rerun.set(true);
+            return;
+        }
+        try {
+            boolean more;
+            do {
+                rerun.set(false);
+                more = dispatchBatch();
+            } while (more || rerun.get());
+        } catch (RuntimeException e) {
+            log.error("Outbox dispatch failed", e);
+        } finally {
+            dispatching.set(false);
+        }
+    }
+
+    @Scheduled(cron = "${app.outbox.purge-cron:0 0 4 * * *}")
+    public void purgeDispatched() {
+        Integer deleted = transactionTemplate.execute(status -> {
+            int events = outboxRepository.deleteDispatchedBefore(LocalDateTime.now().minusDays(KEEP_DISPATCHED_DAYS));
+            processedRepository.deleteOrphans();
+            return events;
+        });
+        log.info("Purged {} dispatched outbox events", deleted);
+    }
+
+    /**
+     * Returns true when a full batch was delivered and more may be waiting.
+     */
+    private boolean dispatchBatch() {
+        List<OutboxEvent> pending = outboxRepository.findPending(LocalDateTime.now(), PageRequest.of(0, BATCH_SIZE));
+        if (pending.isEmpty()) {
+            return false;
+        }
+        Map<Long, List<OutboxEvent>> byOrder = new LinkedHashMap<>();
+        for (OutboxEvent event : pending) {
+            byOrder.computeIfAbsent(event.getAggregateId(), id -> new ArrayList<>()).add(event);
+        }
+
+        List<CompletableFuture<Integer>> rounds = new ArrayList<>();
+        for (List<OutboxEvent> events : byOrder.values()) {
+            rounds.add(CompletableFuture.supplyAsync(() -> deliverInOrder(events), workers));
+        }
+        int delivered = 0;
+        for (CompletableFuture<Integer> round : rounds) {
+            delivered += round.join();
+        }
+        return delivered == pending.size() && pending.size() == BATCH_SIZE;
+    }
+
+    private int deliverInOrder(List<OutboxEvent> events) {
+        int delivered = 0;
+        for (OutboxEvent event : events) {
+            if (!deliver(event)) {
+                break;
+            }
+            delivered++;
+        }
+        return delivered;
+    }
+
+    private boolean deliver(OutboxEvent event) {
+        try {
+            OrderLifecycleEvent payload = objectMapper.readValue(event.getPayload(), OrderLifecycleEvent.class);
+            for (OrderEventConsumer consumer : consumers) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (processedRepository.markProcessed(event.getId(), consumer.getName(), LocalDateTime.now()) == 1) {
+                        consumer.handle(payload);
+                    }
+                });
+            }
+            transactionTemplate.executeWithoutResult(status ->
+                    outboxRepository.markDispatched(event.getId(), LocalDateTime.now()));
+            return true;
+        } catch (Exception e) {
+            int attempts = event.getAttempts() + 1;
+            String message = String.valueOf(e.getMessage());
+            String error = message.length() > 500 ? message.substring(0, 500) : message;
+            if (attempts >= maxAttempts) {
+                log.error("Outbox event {} ({}) parked after {} failed attempts: {}",
+                        event.getId(), event.getEventType(), attempts, message);
+                transactionTemplate.executeWithoutResult(status ->
+                        outboxRepository.markParked(event.getId(), LocalDateTime.now(), error));
+                return false;
+            }
+            long backoff = Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts, 20));
+            log.warn("Outbox event {} ({}) failed on attempt {}: {}", event.getId(), event.getEventType(), attempts, message);
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.markFailed(event.getId(),
+                    LocalDateTime.now().plusSeconds(backoff), error));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.tmdt.service.outbox;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OutboxEvent;
+import com.example.tmdt.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records order events in the outbox as part of the caller's transaction.
+ */
+@Service
+public class OutboxService {
+
+    private static final String INSERT_SQL = "INSERT INTO outbox_events " +
+            "(event_type, aggregate_id, payload, attempts, next_attempt_at, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final OutboxEventRepository outboxRepository;
+    private final OutboxDispatcher dispatcher;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public OutboxService(OutboxEventRepository outboxRepository, OutboxDispatcher dispatcher, ObjectMapper objectMapper,
+                         JdbcTemplate jdbcTemplate) {
+        this.outboxRepository = outboxRepository;
+        this.dispatcher = dispatcher;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OrderLifecycleEvent.Type type, Order order, Order.OrderStatus previousStatus) {
+        record(OrderLifecycleEvent.of(type, order, previousStatus));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OrderLifecycleEvent event) {
+        outboxRepository.save(toOutboxEvent(event));
+        wakeUpAfterCommit();
+    }
+
+    /**
+     * Records many events at once, e.g. from a bulk update, as one JDBC batch insert
+     * with a single wake-up after commit.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(List<OrderLifecycleEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (OrderLifecycleEvent event : events) {
+            OutboxEvent outboxEvent = toOutboxEvent(event);
+            rows.add(new Object[]{outboxEvent.getEventType(), outboxEvent.getAggregateId(), outboxEvent.getPayload(),
+                    outboxEvent.getAttempts(), Timestamp.valueOf(outboxEvent.getNextAttemptAt()),
+                    Timestamp.valueOf(outboxEvent.getCreatedAt())});
+        }
+        // Id IDENTITY khiến Hibernate không gộp INSERT: ghi thẳng bằng JDBC batch trên cùng kết nối/transaction
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        wakeUpAfterCommit();
+    }
+
+    private OutboxEvent toOutboxEvent(OrderLifecycleEvent event) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setEventType(event.getType().name());
+        outboxEvent.setAggregateId(event.getOrderId());
+        try {
+            outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize order event " + event.getType(), e);
+        }
+        outboxEvent.setCreatedAt(LocalDateTime.now());
+        outboxEvent.setNextAttemptAt(outboxEvent.getCreatedAt());
+        return outboxEvent;
+    }
+
+    private void wakeUpAfterCommit() {
+        // Giao ngay sau commit thay vì chờ lần poll kế tiếp
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatcher.wakeUp();
+            }
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.tmdt.service.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.service.ProductSalesRollupService;
+
+/**
+ * Keeps the monthly best-seller rollup in step with the order events.
+ */
+@Component
+public class SalesRollupConsumer implements OrderEventConsumer {
+
+    private final ProductSalesRollupService salesRollupService;
+
+    @Autowired
+    public SalesRollupConsumer(ProductSalesRollupService salesRollupService) {
+        this.salesRollupService = salesRollupService;
+    }
+
+    @Override
+    public String getName() {
+        return "sales-rollup";
+    }
+
+    @Override
+    public void handle(OrderLifecycleEvent event) {
+        salesRollupService.record(event);
+    }
+}
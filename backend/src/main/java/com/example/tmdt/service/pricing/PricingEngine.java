@@ -0,0 +1,157 @@
+package com.example.tmdt.service.pricing;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.tmdt.model.Coupon;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.model.User;
+import com.example.tmdt.payload.request.OrderRequest;
+import com.example.tmdt.service.CouponService;
+import com.example.tmdt.service.ProductService;
+import com.example.tmdt.service.StockReservationService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Prices a cart on the server: line totals from the products as stored in the database
+ * (not the product cache), the coupon discount and the total rounded to 1000 VND. The
+ * client-sent total is never used.
+ *
+ * Pricing has no side effects (no stock, no coupon usage), and the priced lines of every
+ * quote are kept for a short time under its id. {@code /orders/pay} returns that id and
+ * {@code /orders} sends it back, so the order is created at the prices that were paid
+ * without pricing the cart again. The coupon is not cached: it is validated again each
+ * time a quote is used.
+ */
+@Component
+public class PricingEngine {
+
+    private static final BigDecimal HUNDRED = new BigDecimal("100");
+    // Tổng tiền làm tròn đến 1000 VND
+    private static final BigDecimal ROUNDING_UNIT = new BigDecimal("1000");
+
+    private final ProductService productService;
+    private final CouponService couponService;
+    private final Duration quoteTtl;
+    private final Cache<String, Quote.Cart> carts;
+
+    @Autowired
+    public PricingEngine(ProductService productService,
+                         CouponService couponService,
+                         @Value("${app.pricing.quote-ttl:15m}") Duration quoteTtl) {
+        this.productService = productService;
+        this.couponService = couponService;
+        this.quoteTtl = quoteTtl;
+        this.carts = Caffeine.newBuilder()
+                .maximumSize(50_000)
+                .expireAfterWrite(quoteTtl)
+                .build();
+    }
+
+    /**
+     * The quote named by {@code request.quoteId} if it is still cached and was made for
+     * the same user, quantities and coupon; otherwise a fresh quote. Either way the
+     * coupon is validated again.
+     *
+     * @throws EntityNotFoundException if a product does not exist
+     */
+    public Quote quote(User user, OrderRequest request) {
+        return quote(user, request, null);
+    }
+
+    /**
+     * Like {@link #quote(User, OrderRequest)}, but a fresh quote is priced from
+     * {@code products} (already loaded by the caller, e.g. for a whole batch) instead of
+     * looking the products up again. A {@code null} map means look them up.
+     *
+     * @throws EntityNotFoundException if a product does not exist
+     */
+    public Quote quote(User user, OrderRequest request, Map<Long, Product> products) {
+        SortedMap<Long, Integer> quantities = StockReservationService.quantitiesOf(request.getItems());
+        String couponCode = normalize(request.getCouponCode());
+        Quote.Cart cart = null;
+        if (request.getQuoteId() != null) {
+            Quote.Cart cached = carts.getIfPresent(request.getQuoteId());
+            if (cached != null && cached.matches(user.getId(), quantities, couponCode)) {
+                cart = cached;
+            }
+        }
+        if (cart == null) {
+            cart = price(user, quantities, couponCode, products != null ? products : loadProducts(quantities.keySet()));
+            carts.put(cart.getId(), cart);
+        }
+        return applyCoupon(user, cart);
+    }
+
+    // Đọc thẳng từ DB, không qua cache sản phẩm: cache của node khác có thể còn giá cũ
+    private Map<Long, Product> loadProducts(Collection<Long> productIds) {
+        return productService.getProductMap(productIds);
+    }
+
+    private Quote.Cart price(User user, SortedMap<Long, Integer> quantities, String couponCode,
+                             Map<Long, Product> products) {
+        List<Quote.Line> lines = new ArrayList<>(quantities.size());
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null) {
+                throw new EntityNotFoundException("Product not found with id: " + entry.getKey());
+            }
+            Quote.Line line = new Quote.Line(product.getId(), product.getName(), product.getImageUrl(),
+                    BigDecimal.valueOf(product.getPrice()), entry.getValue());
+            lines.add(line);
+            subtotal = subtotal.add(line.getLineTotal());
+        }
+        return new Quote.Cart(UUID.randomUUID().toString(), user.getId(), quantities, couponCode, lines,
+                subtotal, LocalDateTime.now().plus(quoteTtl));
+    }
+
+    private Quote applyCoupon(User user, Quote.Cart cart) {
+        BigDecimal subtotal = cart.getSubtotal();
+        Coupon coupon = null;
+        BigDecimal discountAmount = BigDecimal.ZERO;
+        if (cart.getCouponCode() != null) {
+            // Mã không hợp lệ thì bỏ qua, không làm hỏng transaction của đơn hàng
+            coupon = couponService.findValidCoupon(cart.getCouponCode(), user, subtotal.doubleValue()).orElse(null);
+            if (coupon != null) {
+                discountAmount = discountOf(coupon, subtotal);
+            }
+        }
+
+        BigDecimal total = subtotal.subtract(discountAmount)
+                .divide(ROUNDING_UNIT, 0, RoundingMode.HALF_UP)
+                .multiply(ROUNDING_UNIT);
+        return new Quote(cart, coupon, discountAmount, total);
+    }
+
+    private static BigDecimal discountOf(Coupon coupon, BigDecimal subtotal) {
+        BigDecimal discountAmount;
+        if (coupon.getDiscountType() == Coupon.DiscountType.PERCENTAGE) {
+            BigDecimal percentage = coupon.getDiscountValue().divide(HUNDRED, 6, RoundingMode.HALF_UP);
+            discountAmount = subtotal.multiply(percentage);
+        } else {
+            discountAmount = coupon.getDiscountValue();
+        }
+        // Make sure discount doesn't exceed total
+        return discountAmount.compareTo(subtotal) > 0 ? subtotal : discountAmount;
+    }
+
+    private static String normalize(String couponCode) {
+        return couponCode == null || couponCode.trim().isEmpty() ? null : couponCode.trim();
+    }
+}
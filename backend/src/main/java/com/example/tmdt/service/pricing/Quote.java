@@ -0,0 +1,153 @@
+package com.example.tmdt.service.pricing;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+import com.example.tmdt.model.Coupon;
+
+/**
+ * Priced cart computed by {@link PricingEngine}: one line per product, the coupon
+ * discount and the rounded total. Immutable.
+ *
+ * Only the {@link Cart} part (lines, subtotal and coupon code) is kept between
+ * {@code /orders/pay} and the {@code /orders} call that follows it; the coupon is
+ * checked again and the discount recomputed every time the quote is used.
+ */
+public final class Quote {
+
+    private final Cart cart;
+    private final Coupon coupon;
+    private final BigDecimal discountAmount;
+    private final BigDecimal total;
+
+    Quote(Cart cart, Coupon coupon, BigDecimal discountAmount, BigDecimal total) {
+        this.cart = cart;
+        this.coupon = coupon;
+        this.discountAmount = discountAmount;
+        this.total = total;
+    }
+
+    public String getId() {
+        return cart.id;
+    }
+
+    public List<Line> getLines() {
+        return cart.lines;
+    }
+
+    public BigDecimal getSubtotal() {
+        return cart.subtotal;
+    }
+
+    /**
+     * The applied coupon, resolved in the current transaction, or {@code null} if none was valid.
+     */
+    public Coupon getCoupon() {
+        return coupon;
+    }
+
+    public BigDecimal getDiscountAmount() {
+        return discountAmount;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return cart.expiresAt;
+    }
+
+    /**
+     * The cacheable part of a quote: the quoted lines and the coupon code as sent, but no
+     * coupon entity, since a coupon can run out or be disabled before the quote is used.
+     */
+    static final class Cart {
+
+        private final String id;
+        private final Long userId;
+        private final SortedMap<Long, Integer> quantities;
+        private final String couponCode;
+        private final List<Line> lines;
+        private final BigDecimal subtotal;
+        private final LocalDateTime expiresAt;
+
+        Cart(String id, Long userId, SortedMap<Long, Integer> quantities, String couponCode, List<Line> lines,
+             BigDecimal subtotal, LocalDateTime expiresAt) {
+            this.id = id;
+            this.userId = userId;
+            this.quantities = Collections.unmodifiableSortedMap(quantities);
+            this.couponCode = couponCode;
+            this.lines = Collections.unmodifiableList(lines);
+            this.subtotal = subtotal;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Whether the cart was quoted for this user, these quantities and this coupon code.
+         */
+        boolean matches(Long userId, SortedMap<Long, Integer> quantities, String couponCode) {
+            return this.userId.equals(userId) && this.quantities.equals(quantities)
+                    && (this.couponCode == null ? couponCode == null : this.couponCode.equals(couponCode));
+        }
+
+        String getId() {
+            return id;
+        }
+
+        String getCouponCode() {
+            return couponCode;
+        }
+
+        BigDecimal getSubtotal() {
+            return subtotal;
+        }
+    }
+
+    /**
+     * A product of the cart with the price and name it was quoted at.
+     */
+    public static final class Line {
+
+        private final Long productId;
+        private final String productName;
+        private final String productImageUrl;
+        private final BigDecimal unitPrice;
+        private final int quantity;
+
+        Line(Long productId, String productName, String productImageUrl, BigDecimal unitPrice, int quantity) {
+            this.productId = productId;
+            this.productName = productName;
+            this.productImageUrl = productImageUrl;
+            this.unitPrice = unitPrice;
+            this.quantity = quantity;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public String getProductImageUrl() {
+            return productImageUrl;
+        }
+
+        public BigDecimal getUnitPrice() {
+            return unitPrice;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public BigDecimal getLineTotal() {
+            return unitPrice.multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.tmdt.service.recommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.tmdt.event.OrderPlacedEvent;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.repository.OrderRepository;
+
+/**
+ * Item-to-item "bought together" neighbours computed from order history.
+ *
+ * For every product we keep how many orders contained it and, per co-purchased
+ * product, how many orders contained both. Two products are scored by the cosine of
+ * their order sets, {@code both / sqrt(ordersA * ordersB)}, and each product keeps
+ * its best {@link #MAX_NEIGHBOURS} neighbours in primitive arrays for lookups.
+ *
+ * The history is streamed once at startup and again every night. New orders are
+ * folded in after commit and only re-rank the neighbours of the products they contain.
+ */
+@Component
+public class CoPurchaseIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CoPurchaseIndex.class);
+
+    public static final int MAX_NEIGHBOURS = 20;
+
+    // Đơn quá lớn (mua sỉ) sinh O(n²) cặp và không nói lên sản phẩm nào "đi cùng" nhau
+    private static final int MAX_ORDER_SIZE = 50;
+
+    private static final Set<Order.OrderStatus> EXCLUDED_STATUSES =
+            EnumSet.of(Order.OrderStatus.CANCELLED, Order.OrderStatus.RETURNED);
+
+    private final OrderRepository orderRepository;
+
+    // Guarded by this
+    private Map<Long, CoCounts> coCounts = new HashMap<>();
+    private Map<Long, Integer> orderCounts = new HashMap<>();
+    private boolean rebuilding;
+    private final List<OrderPlacedEvent> placedDuringRebuild = new ArrayList<>();
+
+    private volatile Map<Long, Neighbours> neighbours = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    @Autowired
+    public CoPurchaseIndex(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    @Transactional(readOnly = true)
+    public void onApplicationStartup() {
+        if (!ready) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(cron = "${app.related.rebuild-cron:0 30 3 * * *}")
+    @Transactional(readOnly = true)
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @TransactionalEventListener
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        long[] basket = toBasket(event.getProductIds());
+        synchronized (this) {
+            countOrder(coCounts, orderCounts, basket);
+            if (rebuilding) {
+                placedDuringRebuild.add(event);
+            }
+            if (basket.length < 2 || basket.length > MAX_ORDER_SIZE) {
+                return;
+            }
+            // Chỉ xếp hạng lại các sản phẩm trong đơn; điểm của sản phẩm khác sẽ đúng lại sau lần rebuild đêm
+            Map<Long, Neighbours> current = neighbours;
+            for (long productId : basket) {
+                current.put(productId, rank(productId, coCounts, orderCounts));
+            }
+        }
+    }
+
+    /**
+     * Ids of the products most often bought together with the given one, best first.
+     */
+    public long[] getNeighbours(Long productId, int limit) {
+        Neighbours entry = neighbours.get(productId);
+        if (entry == null) {
+            return new long[0];
+        }
+        return Arrays.copyOf(entry.ids, Math.min(limit, entry.ids.length));
+    }
+
+    /**
+     * Adds {@code weight * similarity} of every neighbour of the product to {@code scores}.
+     */
+    public void addNeighbourScores(Long productId, double weight, Map<Long, Double> scores) {
+        Neighbours entry = neighbours.get(productId);
+        if (entry == null) {
+            return;
+        }
+        for (int i = 0; i < entry.ids.length; i++) {
+            scores.merge(entry.ids[i], weight * entry.scores[i], Double::sum);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        Long maxOrderId = orderRepository.findMaxId();
+        long watermark = maxOrderId != null ? maxOrderId : 0L;
+        synchronized (this) {
+            rebuilding = true;
+            placedDuringRebuild.clear();
+        }
+
+        Map<Long, CoCounts> builtCoCounts = new HashMap<>();
+        Map<Long, Integer> builtOrderCounts = new HashMap<>();
+        int orders = 0;
+        try (Stream<Object[]> rows = orderRepository.streamOrderProductPairs(watermark, EXCLUDED_STATUSES)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            long[] basket = new long[16];
+            int basketSize = 0;
+            long currentOrderId = -1;
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                long orderId = ((Number) row[0]).longValue();
+                if (orderId != currentOrderId) {
+                    if (basketSize > 0) {
+                        countOrder(builtCoCounts, builtOrderCounts, distinct(basket, basketSize));
+                        orders++;
+                    }
+                    currentOrderId = orderId;
+                    basketSize = 0;
+                }
+                if (basketSize == basket.length) {
+                    basket = Arrays.copyOf(basket, basketSize * 2);
+                }
+                basket[basketSize++] = ((Number) row[1]).longValue();
+            }
+            if (basketSize > 0) {
+                countOrder(builtCoCounts, builtOrderCounts, distinct(basket, basketSize));
+                orders++;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                rebuilding = false;
+                placedDuringRebuild.clear();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            // Đơn hàng commit trong lúc đang đọc lịch sử: cộng lại những đơn nằm ngoài snapshot
+            for (OrderPlacedEvent event : placedDuringRebuild) {
+                if (event.getOrderId() != null && event.getOrderId() > watermark) {
+                    countOrder(builtCoCounts, builtOrderCounts, toBasket(event.getProductIds()));
+                }
+            }
+            placedDuringRebuild.clear();
+            rebuilding = false;
+
+            Map<Long, Neighbours> built = new ConcurrentHashMap<>();
+            for (Long productId : builtCoCounts.keySet()) {
+                Neighbours entry = rank(productId, builtCoCounts, builtOrderCounts);
+                if (entry.ids.length > 0) {
+                    built.put(productId, entry);
+                }
+            }
+            coCounts = builtCoCounts;
+            orderCounts = builtOrderCounts;
+            neighbours = built;
+        }
+        ready = true;
+        log.info("Co-purchase index built from {} orders, {} products with neighbours in {} ms",
+                orders, neighbours.size(), System.currentTimeMillis() - start);
+    }
+
+    private static void countOrder(Map<Long, CoCounts> coCounts, Map<Long, Integer> orderCounts, long[] basket) {
+        for (long productId : basket) {
+            orderCounts.merge(productId, 1, Integer::sum);
+        }
+        if (basket.length < 2 || basket.length > MAX_ORDER_SIZE) {
+            return;
+        }
+        for (int i = 0; i < basket.length; i++) {
+            CoCounts row = coCounts.computeIfAbsent(basket[i], id -> new CoCounts());
+            for (int j = 0; j < basket.length; j++) {
+                if (i != j) {
+                    row.increment(basket[j]);
+                }
+            }
+        }
+    }
+
+    private static Neighbours rank(long productId, Map<Long, CoCounts> coCounts, Map<Long, Integer> orderCounts) {
+        CoCounts row = coCounts.get(productId);
+        if (row == null || row.size == 0) {
+            return Neighbours.EMPTY;
+        }
+        double ordersOfProduct = orderCounts.getOrDefault(productId, 1);
+        float[] scores = new float[row.size];
+        Integer[] order = new Integer[row.size];
+        for (int i = 0; i < row.size; i++) {
+            double ordersOfOther = orderCounts.getOrDefault(row.ids[i], 1);
+            scores[i] = (float) (row.counts[i] / Math.sqrt(ordersOfProduct * ordersOfOther));
+            order[i] = i;
+        }
+        // Điểm giảm dần, hòa thì ưu tiên cặp mua chung nhiều hơn rồi tới id nhỏ hơn
+        Arrays.sort(order, (a, b) -> {
+            int byScore = Float.compare(scores[b], scores[a]);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byCount = Integer.compare(row.counts[b], row.counts[a]);
+            return byCount != 0 ? byCount : Long.compare(row.ids[a], row.ids[b]);
+        });
+
+        int n = Math.min(MAX_NEIGHBOURS, row.size);
+        long[] ids = new long[n];
+        float[] topScores = new float[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = row.ids[order[i]];
+            topScores[i] = scores[order[i]];
+        }
+        return new Neighbours(ids, topScores);
+    }
+
+    private static long[] toBasket(List<Long> productIds) {
+        long[] basket = new long[productIds.size()];
+        for (int i = 0; i < basket.length; i++) {
+            basket[i] = productIds.get(i);
+        }
+        return distinct(basket, basket.length);
+    }
+
+    private static long[] distinct(long[] values, int length) {
+        long[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * Immutable top neighbours of one product, best first.
+     */
+    private static final class Neighbours {
+
+        static final Neighbours EMPTY = new Neighbours(new long[0], new float[0]);
+
+        private final long[] ids;
+        private final float[] scores;
+
+        Neighbours(long[] ids, float[] scores) {
+            this.ids = ids;
+            this.scores = scores;
+        }
+    }
+
+    /**
+     * Co-purchase counts of one product: a sorted id array with parallel counts.
+     */
+    private static final class CoCounts {
+
+        long[] ids = new long[4];
+        int[] counts = new int[4];
+        int size;
+
+        void increment(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                counts[index]++;
+                return;
+            }
+            int insertAt = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            System.arraycopy(counts, insertAt, counts, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            counts[insertAt] = 1;
+            size++;
+        }
+    }
+}
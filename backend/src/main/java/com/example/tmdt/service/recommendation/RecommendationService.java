@@ -0,0 +1,292 @@
+package com.example.tmdt.service.recommendation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.tmdt.event.OrderPlacedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.repository.ProductRepository;
+import com.example.tmdt.repository.WishlistRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+
+/**
+ * Per-user product recommendations.
+ *
+ * A user's candidates blend three signals: products bought together with what
+ * they wishlisted or purchased ({@link CoPurchaseIndex}), and the best sellers
+ * of the categories those products belong to. The ranked ids are kept as a
+ * {@code long[]} per user in a bounded Caffeine cache that is refreshed in the
+ * background, so serving is one cache lookup. Users without a cached entry, and
+ * anonymous visitors, get the global popularity ranking until theirs is ready.
+ */
+@Service
+public class RecommendationService {
+
+    private static final Logger log = LoggerFactory.getLogger(RecommendationService.class);
+
+    public static final int MAX_RECOMMENDATIONS = 50;
+
+    private static final int GLOBAL_RANKING_SIZE = 200;
+    private static final int CATEGORY_CANDIDATES = 50;
+    private static final int TOP_CATEGORIES = 3;
+
+    // Trọng số của từng tín hiệu khi trộn điểm
+    private static final double WISHLIST_WEIGHT = 3.0;
+    private static final double PURCHASE_WEIGHT = 2.0;
+    private static final double CATEGORY_WEIGHT = 1.0;
+
+    private static final Set<Order.OrderStatus> EXCLUDED_STATUSES =
+            EnumSet.of(Order.OrderStatus.CANCELLED, Order.OrderStatus.RETURNED);
+
+    private final WishlistRepository wishlistRepository;
+    private final OrderRepository orderRepository;
+    private final ProductRepository productRepository;
+    private final CoPurchaseIndex coPurchaseIndex;
+
+    private final ExecutorService refreshExecutor;
+    private final LoadingCache<Long, long[]> userCandidates;
+
+    private volatile Rankings rankings = Rankings.EMPTY;
+
+    @Autowired
+    public RecommendationService(WishlistRepository wishlistRepository,
+                                 OrderRepository orderRepository,
+                                 ProductRepository productRepository,
+                                 CoPurchaseIndex coPurchaseIndex,
+                                 @Value("${app.recommendations.maximum-size:50000}") long maximumSize,
+                                 @Value("${app.recommendations.refresh-after-write:10m}") Duration refreshAfterWrite) {
+        this.wishlistRepository = wishlistRepository;
+        this.orderRepository = orderRepository;
+        this.productRepository = productRepository;
+        this.coPurchaseIndex = coPurchaseIndex;
+        this.refreshExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "recommendation-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.userCandidates = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(refreshAfterWrite)
+                .expireAfterAccess(refreshAfterWrite.multipliedBy(6))
+                .executor(refreshExecutor)
+                .build(this::computeCandidates);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onApplicationStartup() {
+        if (rankings == Rankings.EMPTY) {
+            refreshGlobalRanking();
+        }
+    }
+
+    /**
+     * Rebuilds the global and per-category popularity rankings from the product columns.
+     */
+    @Scheduled(fixedDelayString = "${app.recommendations.global-refresh-ms:300000}")
+    public void refreshGlobalRanking() {
+        rankings = Rankings.build(productRepository.findAllSnapshots());
+    }
+
+    /**
+     * Up to {@code limit} product ids for the user, best first. Never touches the
+     * database: a missing entry is scheduled for computation and the global ranking
+     * is served in the meantime.
+     */
+    public List<Long> recommend(Long userId, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_RECOMMENDATIONS));
+        long[] personal = null;
+        if (userId != null) {
+            personal = userCandidates.getIfPresent(userId);
+            if (personal == null) {
+                userCandidates.refresh(userId);
+            }
+        }
+
+        Set<Long> ids = new LinkedHashSet<>();
+        if (personal != null) {
+            for (int i = 0; i < personal.length && ids.size() < size; i++) {
+                ids.add(personal[i]);
+            }
+        }
+        long[] global = rankings.global;
+        for (int i = 0; i < global.length && ids.size() < size; i++) {
+            ids.add(global[i]);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Recomputes the user's candidates once the current transaction commits,
+     * e.g. after a wishlist change.
+     */
+    public void refreshAfterCommit(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userCandidates.refresh(userId);
+                }
+            });
+        } else {
+            userCandidates.refresh(userId);
+        }
+    }
+
+    @TransactionalEventListener
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        if (event.getUserId() != null) {
+            userCandidates.refresh(event.getUserId());
+        }
+    }
+
+    private long[] computeCandidates(Long userId) {
+        Map<Long, Double> seeds = new HashMap<>();
+        for (Long productId : wishlistRepository.findProductIdsByUserId(userId)) {
+            seeds.merge(productId, WISHLIST_WEIGHT, Double::sum);
+        }
+        for (Object[] row : orderRepository.sumPurchasedQuantitiesByUser(userId, EXCLUDED_STATUSES)) {
+            long quantity = ((Number) row[1]).longValue();
+            seeds.merge((Long) row[0], PURCHASE_WEIGHT * (1 + Math.log(Math.max(1, quantity))), Double::sum);
+        }
+        if (seeds.isEmpty()) {
+            return new long[0];
+        }
+
+        Rankings current = rankings;
+        Map<Long, Double> scores = new HashMap<>();
+        Map<Long, Double> categoryAffinity = new HashMap<>();
+        double totalAffinity = 0;
+        for (Map.Entry<Long, Double> seed : seeds.entrySet()) {
+            coPurchaseIndex.addNeighbourScores(seed.getKey(), seed.getValue(), scores);
+            Long categoryId = current.categoryByProduct.get(seed.getKey());
+            if (categoryId != null) {
+                categoryAffinity.merge(categoryId, seed.getValue(), Double::sum);
+                totalAffinity += seed.getValue();
+            }
+        }
+
+        // Danh mục yêu thích: sản phẩm bán chạy được cộng điểm theo thứ hạng và tỉ lệ quan tâm
+        List<Map.Entry<Long, Double>> categories = new ArrayList<>(categoryAffinity.entrySet());
+        categories.sort(Map.Entry.<Long, Double>comparingByValue().reversed());
+        for (int c = 0; c < categories.size() && c < TOP_CATEGORIES; c++) {
+            double share = categories.get(c).getValue() / totalAffinity;
+            long[] top = current.topByCategory.getOrDefault(categories.get(c).getKey(), new long[0]);
+            for (int i = 0; i < top.length; i++) {
+                scores.merge(top[i], CATEGORY_WEIGHT * share * (1 - (double) i / top.length), Double::sum);
+            }
+        }
+
+        // Không gợi ý lại sản phẩm đã mua/đã thích hoặc đã hết hàng
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            if (!seeds.containsKey(entry.getKey()) && current.inStock.contains(entry.getKey())) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed());
+
+        long[] candidates = new long[Math.min(MAX_RECOMMENDATIONS, ranked.size())];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = ranked.get(i).getKey();
+        }
+        return candidates;
+    }
+
+    /**
+     * Popularity rankings derived from product columns, replaced wholesale on refresh.
+     */
+    private static final class Rankings {
+
+        static final Rankings EMPTY = new Rankings(new long[0], Collections.emptyMap(),
+                Collections.emptyMap(), Collections.emptySet());
+
+        final long[] global;
+        final Map<Long, long[]> topByCategory;
+        final Map<Long, Long> categoryByProduct;
+        final Set<Long> inStock;
+
+        Rankings(long[] global, Map<Long, long[]> topByCategory, Map<Long, Long> categoryByProduct, Set<Long> inStock) {
+            this.global = global;
+            this.topByCategory = topByCategory;
+            this.categoryByProduct = categoryByProduct;
+            this.inStock = inStock;
+        }
+
+        static Rankings build(List<ProductSnapshot> snapshots) {
+            List<ProductSnapshot> available = new ArrayList<>();
+            Map<Long, Long> categoryByProduct = new HashMap<>();
+            Set<Long> inStock = new HashSet<>();
+            for (ProductSnapshot snapshot : snapshots) {
+                if (snapshot.getCategoryId() != null) {
+                    categoryByProduct.put(snapshot.getId(), snapshot.getCategoryId());
+                }
+                if (snapshot.getStock() > 0) {
+                    available.add(snapshot);
+                    inStock.add(snapshot.getId());
+                }
+            }
+            available.sort((a, b) -> Double.compare(popularity(b), popularity(a)));
+
+            long[] global = new long[Math.min(GLOBAL_RANKING_SIZE, available.size())];
+            Map<Long, List<Long>> byCategory = new HashMap<>();
+            for (int i = 0; i < available.size(); i++) {
+                ProductSnapshot snapshot = available.get(i);
+                if (i < global.length) {
+                    global[i] = snapshot.getId();
+                }
+                if (snapshot.getCategoryId() != null) {
+                    List<Long> top = byCategory.computeIfAbsent(snapshot.getCategoryId(), id -> new ArrayList<>());
+                    if (top.size() < CATEGORY_CANDIDATES) {
+                        top.add(snapshot.getId());
+                    }
+                }
+            }
+            Map<Long, long[]> topByCategory = new HashMap<>();
+            for (Map.Entry<Long, List<Long>> entry : byCategory.entrySet()) {
+                topByCategory.put(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).toArray());
+            }
+            log.debug("Recommendation rankings rebuilt: {} in stock, {} categories", inStock.size(), topByCategory.size());
+            return new Rankings(global, topByCategory, categoryByProduct, inStock);
+        }
+
+        // Bán chạy là chính, điểm đánh giá (0-5) để phân định các sản phẩm bán ngang nhau
+        private static double popularity(ProductSnapshot snapshot) {
+            return Math.log1p(snapshot.getSoldCount()) + snapshot.getAverageRating() / 5.0;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.tmdt.service.search;
+
+import java.util.List;
+import java.util.Map;
+
+import com.example.tmdt.event.ProductSnapshot;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of ranked full-text hits plus facet counts (value → number of matches).
+ */
+@Getter
+@AllArgsConstructor
+public class FullTextSearchResult {
+    private final List<ProductSnapshot> hits;
+    private final int totalElements;
+    private final Map<String, Integer> categoryFacets;
+    private final Map<String, Integer> priceFacets;
+}
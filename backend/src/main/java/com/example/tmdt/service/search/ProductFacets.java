@@ -0,0 +1,21 @@
+package com.example.tmdt.service.search;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Facet counts (value → number of matches) for a query. Each facet is counted
+ * with every filter applied except its own.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductFacets {
+    private final int totalElements;
+    private final Map<String, Integer> category;
+    private final Map<String, Integer> price;
+    // "4" → số sản phẩm có rating >= 4
+    private final Map<String, Integer> rating;
+    private final Map<String, Integer> stock;
+}
@@ -0,0 +1,27 @@
+package com.example.tmdt.service.search;
+
+import lombok.Data;
+
+/**
+ * Filters, sort and page accepted by the product search endpoints.
+ */
+@Data
+public class ProductSearchCriteria {
+    private String keyword;
+    private String category;
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer minRating;
+    private Boolean inStock;
+    private String sort = "newest";
+    private int page = 0;
+    private int size = 12;
+
+    public boolean hasCategory() {
+        return category != null && !category.isEmpty() && !category.equalsIgnoreCase("all");
+    }
+
+    public boolean hasKeyword() {
+        return keyword != null && !keyword.trim().isEmpty();
+    }
+}
@@ -0,0 +1,1028 @@
+package com.example.tmdt.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.repository.ProductRepository;
+
+/**
+ * In-memory product search engine.
+ *
+ * Every product gets a dense document id. Name, description and category terms
+ * (diacritic-folded by {@link TextAnalyzer}) are kept as bitset postings plus a
+ * per-document term frequency table for BM25 ranking, while price, rating and
+ * stock live in primitive columns. Price, rating and id orderings are kept as
+ * sorted doc-id permutations that are rebuilt lazily after a change touches them.
+ *
+ * Query terms match indexed terms exactly, by prefix, or within a small edit
+ * distance. The product snapshots are stored too, so full-text queries are
+ * answered without going to the database.
+ *
+ * The index is loaded once at startup and then kept current through
+ * {@link ProductChangedEvent}s published after each committed product write, on
+ * this node or, through {@code ProductChangePoller}, on another one. Documents of
+ * deleted products are dropped by compacting the index once they make up a large
+ * share of it.
+ */
+@Component
+public class ProductSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Name terms count twice towards term frequency, a cheap stand-in for field boosting
+    private static final int NAME_WEIGHT = 2;
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    private static final double PREFIX_MATCH_WEIGHT = 0.7;
+    private static final double ONE_EDIT_MATCH_WEIGHT = 0.5;
+    private static final double TWO_EDIT_MATCH_WEIGHT = 0.3;
+    private static final int MAX_TERM_EXPANSIONS = 64;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MIN_TWO_EDIT_LENGTH = 8;
+
+    // Upper bounds (VND) of the price facet buckets; the last bucket is open-ended
+    private static final double[] PRICE_BUCKET_BOUNDS = {1_000_000, 5_000_000, 10_000_000, 20_000_000};
+
+    private static final int MAX_RATING = 5;
+
+    // Below 1 match in this many docs, a page sorts the matches instead of walking the permutation
+    private static final int SPARSE_MATCH_RATIO = 16;
+
+    // Compact once deleted docs are at least this many and this share of all docs
+    private static final int COMPACT_MIN_DELETED = 256;
+    private static final double COMPACT_DELETED_SHARE = 0.25;
+
+    private final ProductRepository productRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Integer> docByProductId = new HashMap<>();
+    private final TreeMap<String, BitSet> postings = new TreeMap<>();
+    private final Map<String, BitSet> categoryDocs = new HashMap<>();
+    private final BitSet liveDocs = new BitSet();
+    private final BitSet inStockDocs = new BitSet();
+    // Facet bitsets: one per price bucket, and per rating floor (index k = rating >= k)
+    private final BitSet[] priceBucketDocs = newBitSets(PRICE_BUCKET_BOUNDS.length + 1);
+    private final BitSet[] ratingFloorDocs = newBitSets(MAX_RATING + 1);
+
+    private long[] productIds = new long[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private double[] ratings = new double[INITIAL_CAPACITY];
+    private int[] stocks = new int[INITIAL_CAPACITY];
+    private String[] categoryKeys = new String[INITIAL_CAPACITY];
+    private ProductSnapshot[] snapshots = new ProductSnapshot[INITIAL_CAPACITY];
+    // Sorted distinct terms of each document and their (weighted) frequencies
+    private String[][] docTerms = new String[INITIAL_CAPACITY][];
+    private int[][] docTermFreqs = new int[INITIAL_CAPACITY][];
+    private int[] docLengths = new int[INITIAL_CAPACITY];
+    private long totalDocLength;
+    private int maxDoc;
+
+    // Sorted columns, rebuilt on the next query after a price/rating/id change
+    private int[] docsByPrice = new int[0];
+    private double[] sortedPrices = new double[0];
+    private int[] docsByRating = new int[0];
+    private double[] sortedRatings = new double[0];
+    private int[] docsById = new int[0];
+    // Position of each doc in the permutation above, to sort a narrow match set by it
+    private int[] pricePositions = new int[0];
+    private int[] ratingPositions = new int[0];
+    private int[] idPositions = new int[0];
+    private boolean columnsDirty = true;
+
+    // Changes seen while a rebuild is loading from the database, replayed after the swap
+    private List<ProductChangedEvent> changesDuringRebuild;
+
+    // Reusable BM25 score buffers (scores, best per token), at most one per core is kept
+    private final BlockingQueue<double[][]> rankBuffers =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private volatile boolean ready;
+
+    @Autowired
+    public ProductSearchIndex(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onApplicationStartup() {
+        if (ready) {
+            return;
+        }
+        rebuild();
+    }
+
+    /**
+     * Drops the current index and reloads every product from the database. Changes
+     * committed while the products are being read are applied again after the swap,
+     * so the rebuilt index does not lose them.
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<ProductSnapshot> loaded;
+        try {
+            loaded = productRepository.findAllSnapshots();
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            clear();
+            for (ProductSnapshot snapshot : loaded) {
+                put(snapshot);
+            }
+            replayed = changesDuringRebuild.size();
+            for (ProductChangedEvent event : changesDuringRebuild) {
+                apply(event);
+            }
+            changesDuringRebuild = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Product search index built with {} products ({} changes replayed) in {} ms",
+                loaded.size(), replayed, System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            apply(event);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(ProductChangedEvent event) {
+        if (event.isDeleted()) {
+            remove(event.getProductId());
+            if (shouldCompact()) {
+                compact();
+            }
+        } else {
+            put(event.getSnapshot());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Resolves the criteria to the product ids of the requested page, in result order.
+     * Besides the column sorts, {@code sort=relevance} ranks keyword matches by BM25.
+     */
+    public ProductSearchResult search(ProductSearchCriteria criteria) {
+        checkReady();
+        readLockWithSortedColumns();
+        try {
+            BitSet matches = match(criteria);
+            int total = matches.cardinality();
+            int size = Math.max(1, criteria.getSize());
+            int offset = Math.max(0, criteria.getPage()) * size;
+
+            List<Long> page = new ArrayList<>(size);
+            if ("relevance".equals(criteria.getSort()) && criteria.hasKeyword()) {
+                int[] ranked = rank(matches, expand(criteria.getKeyword()));
+                for (int i = offset; i < ranked.length && page.size() < size; i++) {
+                    page.add(productIds[ranked[i]]);
+                }
+            } else {
+                page = collectPage(matches, total, criteria.getSort(), offset, size);
+            }
+            return new ProductSearchResult(page, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexed snapshots of the given products in the same order; unknown ids are skipped.
+     */
+    public List<ProductSnapshot> getSnapshots(List<Long> ids) {
+        checkReady();
+
+        lock.readLock().lock();
+        try {
+            List<ProductSnapshot> result = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Integer doc = docByProductId.get(id);
+                if (doc != null && liveDocs.get(doc)) {
+                    result.add(snapshots[doc]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the products matching every keyword token, best BM25 match first,
+     * or {@code null} while the index is loading.
+     */
+    public List<Long> findProductIdsByKeyword(String keyword) {
+        if (!ready) {
+            return null;
+        }
+        readLockWithSortedColumns();
+        try {
+            List<List<TermMatch>> expansions = expand(keyword);
+            BitSet matches = (BitSet) liveDocs.clone();
+            matchTerms(matches, expansions);
+            int[] ranked = rank(matches, expansions);
+            List<Long> ids = new ArrayList<>(ranked.length);
+            for (int doc : ranked) {
+                ids.add(productIds[doc]);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ranked full-text query answered entirely from the index, with facet counts.
+     * The category facet ignores the category filter and the price facet ignores
+     * the price filter, so each facet shows what selecting another value would return.
+     */
+    public FullTextSearchResult fullTextSearch(String query, String category,
+                                               Double minPrice, Double maxPrice, int page, int size) {
+        checkReady();
+        readLockWithSortedColumns();
+        try {
+            List<List<TermMatch>> expansions = expand(query);
+            BitSet base = (BitSet) liveDocs.clone();
+            matchTerms(base, expansions);
+
+            BitSet categoryFilter = null;
+            if (category != null && !category.isEmpty() && !category.equalsIgnoreCase("all")) {
+                BitSet docs = categoryDocs.get(category.toLowerCase(Locale.ROOT));
+                categoryFilter = docs != null ? docs : new BitSet();
+            }
+            BitSet priceFilter = null;
+            if (minPrice != null || maxPrice != null) {
+                priceFilter = rangeDocs(sortedPrices, docsByPrice,
+                        minPrice != null ? minPrice : Double.NEGATIVE_INFINITY,
+                        maxPrice != null ? maxPrice : Double.POSITIVE_INFINITY);
+            }
+
+            BitSet forCategoryFacet = (BitSet) base.clone();
+            if (priceFilter != null) {
+                forCategoryFacet.and(priceFilter);
+            }
+            BitSet forPriceFacet = (BitSet) base.clone();
+            if (categoryFilter != null) {
+                forPriceFacet.and(categoryFilter);
+            }
+            BitSet matches = (BitSet) forCategoryFacet.clone();
+            if (categoryFilter != null) {
+                matches.and(categoryFilter);
+            }
+
+            int[] ranked = expansions.isEmpty() ? newestFirst(matches) : rank(matches, expansions);
+            int pageSize = Math.max(1, size);
+            int offset = Math.max(0, page) * pageSize;
+            List<ProductSnapshot> hits = new ArrayList<>(pageSize);
+            for (int i = offset; i < ranked.length && hits.size() < pageSize; i++) {
+                hits.add(snapshots[ranked[i]]);
+            }
+
+            return new FullTextSearchResult(hits, ranked.length,
+                    categoryFacet(forCategoryFacet), priceFacet(forPriceFacet));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts for every category, price bucket, rating floor and stock state of the
+     * products matching the criteria. Every facet value is a bitset kept up to date
+     * with the index, so each count is a single AND over the other filters.
+     */
+    public ProductFacets facets(ProductSearchCriteria criteria) {
+        checkReady();
+        readLockWithSortedColumns();
+        try {
+            BitSet base = (BitSet) liveDocs.clone();
+            if (criteria.hasKeyword()) {
+                matchTerms(base, expand(criteria.getKeyword()));
+            }
+
+            BitSet categoryFilter = null;
+            if (criteria.hasCategory()) {
+                BitSet docs = categoryDocs.get(criteria.getCategory().toLowerCase(Locale.ROOT));
+                categoryFilter = docs != null ? docs : new BitSet();
+            }
+            BitSet priceFilter = null;
+            if (criteria.getMinPrice() != null || criteria.getMaxPrice() != null) {
+                priceFilter = rangeDocs(sortedPrices, docsByPrice,
+                        criteria.getMinPrice() != null ? criteria.getMinPrice() : Double.NEGATIVE_INFINITY,
+                        criteria.getMaxPrice() != null ? criteria.getMaxPrice() : Double.POSITIVE_INFINITY);
+            }
+            BitSet ratingFilter = null;
+            if (criteria.getMinRating() != null) {
+                int floor = criteria.getMinRating();
+                ratingFilter = floor <= 0 ? null
+                        : floor > MAX_RATING ? new BitSet() : ratingFloorDocs[floor];
+            }
+            BitSet stockFilter = Boolean.TRUE.equals(criteria.getInStock()) ? inStockDocs : null;
+
+            BitSet matches = intersect(base, categoryFilter, priceFilter, ratingFilter, stockFilter);
+            BitSet forCategory = intersect(base, null, priceFilter, ratingFilter, stockFilter);
+            BitSet forPrice = intersect(base, categoryFilter, null, ratingFilter, stockFilter);
+            BitSet forRating = intersect(base, categoryFilter, priceFilter, null, stockFilter);
+            BitSet forStock = intersect(base, categoryFilter, priceFilter, ratingFilter, null);
+
+            Map<String, Integer> rating = new LinkedHashMap<>();
+            for (int floor = MAX_RATING; floor >= 1; floor--) {
+                rating.put(String.valueOf(floor), intersectionCount(forRating, ratingFloorDocs[floor]));
+            }
+            int inStock = intersectionCount(forStock, inStockDocs);
+            Map<String, Integer> stock = new LinkedHashMap<>();
+            stock.put("inStock", inStock);
+            stock.put("outOfStock", forStock.cardinality() - inStock);
+
+            return new ProductFacets(matches.cardinality(), categoryFacet(forCategory), priceFacet(forPrice),
+                    rating, stock);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void checkReady() {
+        if (!ready) {
+            throw new IllegalStateException("Product search index is still loading");
+        }
+    }
+
+    // --------------------------------------------------------------- matching
+
+    /**
+     * An indexed term a query token resolved to, and how much a hit on it is worth.
+     */
+    private static class TermMatch {
+        final String term;
+        final double weight;
+
+        TermMatch(String term, double weight) {
+            this.term = term;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Resolves each query token to the indexed terms it matches: the exact term,
+     * terms it is a prefix of, and, when the token itself is not indexed, terms
+     * within one edit (two for long tokens) that share its first letter.
+     */
+    private List<List<TermMatch>> expand(String text) {
+        List<List<TermMatch>> expansions = new ArrayList<>();
+        for (String token : TextAnalyzer.tokenize(text)) {
+            List<TermMatch> matches = new ArrayList<>();
+            boolean exact = postings.containsKey(token);
+            if (exact) {
+                matches.add(new TermMatch(token, 1.0));
+            }
+
+            NavigableMap<String, BitSet> prefixed = postings.subMap(token, false, token + Character.MAX_VALUE, true);
+            for (String term : prefixed.keySet()) {
+                if (matches.size() >= MAX_TERM_EXPANSIONS) {
+                    break;
+                }
+                matches.add(new TermMatch(term, PREFIX_MATCH_WEIGHT));
+            }
+
+            if (!exact && token.length() >= MIN_FUZZY_LENGTH) {
+                int maxEdits = token.length() >= MIN_TWO_EDIT_LENGTH ? 2 : 1;
+                String first = token.substring(0, 1);
+                for (String term : postings.subMap(first, true, first + Character.MAX_VALUE, true).keySet()) {
+                    if (matches.size() >= MAX_TERM_EXPANSIONS) {
+                        break;
+                    }
+                    if (term.startsWith(token)) {
+                        continue;
+                    }
+                    int distance = TextAnalyzer.editDistance(token, term, maxEdits);
+                    if (distance <= maxEdits) {
+                        matches.add(new TermMatch(term, distance == 1 ? ONE_EDIT_MATCH_WEIGHT : TWO_EDIT_MATCH_WEIGHT));
+                    }
+                }
+            }
+            expansions.add(matches);
+        }
+        return expansions;
+    }
+
+    /**
+     * Keeps only the documents that match every query token.
+     */
+    private void matchTerms(BitSet matches, List<List<TermMatch>> expansions) {
+        for (List<TermMatch> tokenMatches : expansions) {
+            BitSet tokenDocs = new BitSet();
+            for (TermMatch match : tokenMatches) {
+                tokenDocs.or(postings.get(match.term));
+            }
+            matches.and(tokenDocs);
+            if (matches.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private BitSet match(ProductSearchCriteria criteria) {
+        BitSet matches = (BitSet) liveDocs.clone();
+
+        if (criteria.hasCategory()) {
+            BitSet docs = categoryDocs.get(criteria.getCategory().toLowerCase(Locale.ROOT));
+            if (docs == null) {
+                return new BitSet();
+            }
+            matches.and(docs);
+        }
+
+        if (criteria.hasKeyword()) {
+            matchTerms(matches, expand(criteria.getKeyword()));
+        }
+
+        if (criteria.getMinPrice() != null || criteria.getMaxPrice() != null) {
+            double min = criteria.getMinPrice() != null ? criteria.getMinPrice() : Double.NEGATIVE_INFINITY;
+            double max = criteria.getMaxPrice() != null ? criteria.getMaxPrice() : Double.POSITIVE_INFINITY;
+            matches.and(rangeDocs(sortedPrices, docsByPrice, min, max));
+        }
+
+        if (criteria.getMinRating() != null) {
+            matches.and(rangeDocs(sortedRatings, docsByRating, criteria.getMinRating(), Double.POSITIVE_INFINITY));
+        }
+
+        if (Boolean.TRUE.equals(criteria.getInStock())) {
+            matches.and(inStockDocs);
+        }
+        return matches;
+    }
+
+    private static BitSet rangeDocs(double[] sortedKeys, int[] docs, double min, double max) {
+        BitSet result = new BitSet();
+        int from = lowerBound(sortedKeys, min);
+        for (int i = from; i < sortedKeys.length && sortedKeys[i] <= max; i++) {
+            result.set(docs[i]);
+        }
+        return result;
+    }
+
+    private static int lowerBound(double[] sortedKeys, double key) {
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedKeys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ---------------------------------------------------------------- ranking
+
+    /**
+     * Matching documents ordered by BM25 score, ties broken by newest product first.
+     * Each token contributes the score of its best matching term, scaled by how
+     * loosely that term matched.
+     */
+    private int[] rank(BitSet matches, List<List<TermMatch>> expansions) {
+        int liveCount = liveDocs.cardinality();
+        double averageLength = liveCount > 0 ? (double) totalDocLength / liveCount : 1.0;
+        double[][] buffers = rankBuffers.poll();
+        if (buffers == null || buffers[0].length < maxDoc) {
+            buffers = new double[][] {new double[maxDoc], new double[maxDoc]};
+        }
+        try {
+            return rank(matches, expansions, liveCount, averageLength, buffers[0], buffers[1]);
+        } finally {
+            rankBuffers.offer(buffers);
+        }
+    }
+
+    private int[] rank(BitSet matches, List<List<TermMatch>> expansions, int liveCount, double averageLength,
+                       double[] scores, double[] tokenBest) {
+        // Chỉ đọc/ghi ô của doc khớp, nên chỉ cần xoá các ô đó thay vì cả mảng
+        for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+            scores[doc] = 0.0;
+        }
+
+        for (List<TermMatch> tokenMatches : expansions) {
+            for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+                tokenBest[doc] = 0.0;
+            }
+            for (TermMatch match : tokenMatches) {
+                BitSet termDocs = postings.get(match.term);
+                int docFreq = termDocs.cardinality();
+                double idf = Math.log(1 + (liveCount - docFreq + 0.5) / (docFreq + 0.5));
+                for (int doc = termDocs.nextSetBit(0); doc >= 0; doc = termDocs.nextSetBit(doc + 1)) {
+                    if (!matches.get(doc)) {
+                        continue;
+                    }
+                    int tf = termFrequency(doc, match.term);
+                    double norm = BM25_K1 * (1 - BM25_B + BM25_B * docLengths[doc] / averageLength);
+                    double score = match.weight * idf * tf * (BM25_K1 + 1) / (tf + norm);
+                    if (score > tokenBest[doc]) {
+                        tokenBest[doc] = score;
+                    }
+                }
+            }
+            for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+                scores[doc] += tokenBest[doc];
+            }
+        }
+
+        // docsById is ascending by id, so a stable sort keeps ids ascending within equal scores
+        int[] docs = filter(docsById, matches);
+        sortDocs(docs, scores);
+        reverse(docs);
+        return docs;
+    }
+
+    private int[] newestFirst(BitSet matches) {
+        int[] docs = filter(docsById, matches);
+        reverse(docs);
+        return docs;
+    }
+
+    private int termFrequency(int doc, String term) {
+        int index = Arrays.binarySearch(docTerms[doc], term);
+        return index >= 0 ? docTermFreqs[doc][index] : 0;
+    }
+
+    private static int[] filter(int[] order, BitSet matches) {
+        int[] docs = new int[matches.cardinality()];
+        int n = 0;
+        for (int doc : order) {
+            if (matches.get(doc)) {
+                docs[n++] = doc;
+            }
+        }
+        return docs;
+    }
+
+    private static void reverse(int[] docs) {
+        for (int i = 0, j = docs.length - 1; i < j; i++, j--) {
+            int tmp = docs[i];
+            docs[i] = docs[j];
+            docs[j] = tmp;
+        }
+    }
+
+    /**
+     * Products {@code offset .. offset + size} of the {@code total} matches in sort order.
+     * Broad matches walk the sorted permutation until the page is filled; narrow ones
+     * sort just the matching docs by their position in it, so a page never costs a
+     * full pass over the index.
+     */
+    private List<Long> collectPage(BitSet matches, int total, String sort, int offset, int size) {
+        List<Long> page = new ArrayList<>(size);
+        if (offset >= total) {
+            return page;
+        }
+
+        int[] order;
+        int[] positions;
+        boolean descending;
+        switch (sort != null ? sort : "newest") {
+            case "price_asc":
+                order = docsByPrice;
+                positions = pricePositions;
+                descending = false;
+                break;
+            case "price_desc":
+                order = docsByPrice;
+                positions = pricePositions;
+                descending = true;
+                break;
+            case "rating":
+                order = docsByRating;
+                positions = ratingPositions;
+                descending = true;
+                break;
+            case "newest":
+            default:
+                // Higher id = newer product
+                order = docsById;
+                positions = idPositions;
+                descending = true;
+                break;
+        }
+        int end = Math.min(total, offset + size);
+
+        if ((long) total * SPARSE_MATCH_RATIO < order.length) {
+            int[] matched = new int[total];
+            int n = 0;
+            for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+                matched[n++] = descending ? order.length - 1 - positions[doc] : positions[doc];
+            }
+            Arrays.sort(matched);
+            for (int i = offset; i < end; i++) {
+                int position = matched[i];
+                page.add(productIds[order[descending ? order.length - 1 - position : position]]);
+            }
+            return page;
+        }
+
+        int seen = 0;
+        for (int i = 0; i < order.length && seen < end; i++) {
+            int doc = order[descending ? order.length - 1 - i : i];
+            if (!matches.get(doc)) {
+                continue;
+            }
+            if (seen++ >= offset) {
+                page.add(productIds[doc]);
+            }
+        }
+        return page;
+    }
+
+    // ----------------------------------------------------------------- facets
+
+    private Map<String, Integer> categoryFacet(BitSet docs) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (BitSet categoryMembers : categoryDocs.values()) {
+            int count = intersectionCount(docs, categoryMembers);
+            if (count > 0) {
+                counts.put(snapshots[categoryMembers.nextSetBit(0)].getCategoryName(), count);
+            }
+        }
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+
+    private Map<String, Integer> priceFacet(BitSet docs) {
+        Map<String, Integer> facet = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < priceBucketDocs.length; bucket++) {
+            int count = intersectionCount(docs, priceBucketDocs[bucket]);
+            if (count > 0) {
+                facet.put(priceBucketLabel(bucket), count);
+            }
+        }
+        return facet;
+    }
+
+    private static int priceBucket(double price) {
+        int bucket = 0;
+        while (bucket < PRICE_BUCKET_BOUNDS.length && price >= PRICE_BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static BitSet intersect(BitSet base, BitSet... filters) {
+        BitSet result = (BitSet) base.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b) {
+        BitSet both = (BitSet) a.clone();
+        both.and(b);
+        return both.cardinality();
+    }
+
+    private static BitSet[] newBitSets(int count) {
+        BitSet[] bitSets = new BitSet[count];
+        for (int i = 0; i < count; i++) {
+            bitSets[i] = new BitSet();
+        }
+        return bitSets;
+    }
+
+    private static String priceBucketLabel(int bucket) {
+        long lower = bucket == 0 ? 0 : (long) PRICE_BUCKET_BOUNDS[bucket - 1];
+        if (bucket == PRICE_BUCKET_BOUNDS.length) {
+            return lower + "+";
+        }
+        return lower + "-" + (long) PRICE_BUCKET_BOUNDS[bucket];
+    }
+
+    // ---------------------------------------------------------------- writes
+
+    private void put(ProductSnapshot snapshot) {
+        Integer doc = docByProductId.get(snapshot.getId());
+        if (doc == null) {
+            doc = maxDoc++;
+            ensureCapacity(maxDoc);
+            docByProductId.put(snapshot.getId(), doc);
+            productIds[doc] = snapshot.getId();
+            columnsDirty = true;
+        } else {
+            unindexTerms(doc);
+            if (prices[doc] != snapshot.getPrice() || ratings[doc] != snapshot.getAverageRating()) {
+                columnsDirty = true;
+            }
+        }
+
+        snapshots[doc] = snapshot;
+        prices[doc] = snapshot.getPrice();
+        ratings[doc] = snapshot.getAverageRating();
+        stocks[doc] = snapshot.getStock();
+        liveDocs.set(doc);
+        inStockDocs.set(doc, snapshot.getStock() > 0);
+        clearFacetDocs(doc);
+        priceBucketDocs[priceBucket(snapshot.getPrice())].set(doc);
+        for (int floor = 1; floor <= MAX_RATING && snapshot.getAverageRating() >= floor; floor++) {
+            ratingFloorDocs[floor].set(doc);
+        }
+
+        String categoryKey = snapshot.getCategoryName() != null
+                ? snapshot.getCategoryName().toLowerCase(Locale.ROOT) : null;
+        categoryKeys[doc] = categoryKey;
+        if (categoryKey != null) {
+            categoryDocs.computeIfAbsent(categoryKey, k -> new BitSet()).set(doc);
+        }
+
+        TreeMap<String, Integer> frequencies = new TreeMap<>();
+        for (String term : TextAnalyzer.tokenize(snapshot.getName())) {
+            frequencies.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : TextAnalyzer.tokenize(snapshot.getDescription())) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        for (String term : TextAnalyzer.tokenize(snapshot.getCategoryName())) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+
+        String[] terms = new String[frequencies.size()];
+        int[] freqs = new int[frequencies.size()];
+        int length = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            terms[i] = entry.getKey();
+            freqs[i] = entry.getValue();
+            length += entry.getValue();
+            postings.computeIfAbsent(entry.getKey(), k -> new BitSet()).set(doc);
+            i++;
+        }
+        docTerms[doc] = terms;
+        docTermFreqs[doc] = freqs;
+        docLengths[doc] = length;
+        totalDocLength += length;
+    }
+
+    private void remove(Long productId) {
+        Integer doc = docByProductId.remove(productId);
+        if (doc == null) {
+            return;
+        }
+        unindexTerms(doc);
+        snapshots[doc] = null;
+        liveDocs.clear(doc);
+        inStockDocs.clear(doc);
+        clearFacetDocs(doc);
+    }
+
+    private boolean shouldCompact() {
+        int deleted = maxDoc - docByProductId.size();
+        return deleted >= COMPACT_MIN_DELETED && deleted >= maxDoc * COMPACT_DELETED_SHARE;
+    }
+
+    /**
+     * Re-adds the live documents under dense ids, dropping the slots of deleted products.
+     */
+    private void compact() {
+        List<ProductSnapshot> live = new ArrayList<>(docByProductId.size());
+        for (int doc = liveDocs.nextSetBit(0); doc >= 0; doc = liveDocs.nextSetBit(doc + 1)) {
+            live.add(snapshots[doc]);
+        }
+        int before = maxDoc;
+        clear();
+        for (ProductSnapshot snapshot : live) {
+            put(snapshot);
+        }
+        log.debug("Product search index compacted from {} to {} docs", before, maxDoc);
+    }
+
+    private void clearFacetDocs(int doc) {
+        for (BitSet docs : priceBucketDocs) {
+            docs.clear(doc);
+        }
+        for (BitSet docs : ratingFloorDocs) {
+            docs.clear(doc);
+        }
+    }
+
+    private void unindexTerms(int doc) {
+        String[] terms = docTerms[doc];
+        if (terms != null) {
+            for (String term : terms) {
+                BitSet termDocs = postings.get(term);
+                if (termDocs != null) {
+                    termDocs.clear(doc);
+                    if (termDocs.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            docTerms[doc] = null;
+            docTermFreqs[doc] = null;
+            totalDocLength -= docLengths[doc];
+            docLengths[doc] = 0;
+        }
+        String categoryKey = categoryKeys[doc];
+        if (categoryKey != null) {
+            BitSet docs = categoryDocs.get(categoryKey);
+            if (docs != null) {
+                docs.clear(doc);
+                if (docs.isEmpty()) {
+                    categoryDocs.remove(categoryKey);
+                }
+            }
+            categoryKeys[doc] = null;
+        }
+    }
+
+    private void clear() {
+        docByProductId.clear();
+        postings.clear();
+        categoryDocs.clear();
+        liveDocs.clear();
+        inStockDocs.clear();
+        for (BitSet docs : priceBucketDocs) {
+            docs.clear();
+        }
+        for (BitSet docs : ratingFloorDocs) {
+            docs.clear();
+        }
+        productIds = new long[INITIAL_CAPACITY];
+        prices = new double[INITIAL_CAPACITY];
+        ratings = new double[INITIAL_CAPACITY];
+        stocks = new int[INITIAL_CAPACITY];
+        categoryKeys = new String[INITIAL_CAPACITY];
+        snapshots = new ProductSnapshot[INITIAL_CAPACITY];
+        docTerms = new String[INITIAL_CAPACITY][];
+        docTermFreqs = new int[INITIAL_CAPACITY][];
+        docLengths = new int[INITIAL_CAPACITY];
+        totalDocLength = 0;
+        maxDoc = 0;
+        columnsDirty = true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= productIds.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, productIds.length * 2);
+        productIds = Arrays.copyOf(productIds, newLength);
+        prices = Arrays.copyOf(prices, newLength);
+        ratings = Arrays.copyOf(ratings, newLength);
+        stocks = Arrays.copyOf(stocks, newLength);
+        categoryKeys = Arrays.copyOf(categoryKeys, newLength);
+        snapshots = Arrays.copyOf(snapshots, newLength);
+        docTerms = Arrays.copyOf(docTerms, newLength);
+        docTermFreqs = Arrays.copyOf(docTermFreqs, newLength);
+        docLengths = Arrays.copyOf(docLengths, newLength);
+    }
+
+    // -------------------------------------------------------- sorted columns
+
+    /**
+     * Takes the read lock with the sorted columns up to date; the caller unlocks it.
+     * A rebuild downgrades the write lock to the read lock before releasing it, so
+     * no writer can change the postings between the rebuild and the query.
+     */
+    private void readLockWithSortedColumns() {
+        lock.readLock().lock();
+        if (!columnsDirty) {
+            return;
+        }
+        lock.readLock().unlock();
+
+        lock.writeLock().lock();
+        try {
+            if (columnsDirty) {
+                rebuildSortedColumns();
+            }
+            lock.readLock().lock();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuildSortedColumns() {
+        docsByPrice = sortDocs(allDocs(), prices);
+        sortedPrices = gather(prices, docsByPrice);
+        pricePositions = positionsOf(docsByPrice);
+        docsByRating = sortDocs(allDocs(), ratings);
+        sortedRatings = gather(ratings, docsByRating);
+        ratingPositions = positionsOf(docsByRating);
+
+        double[] ids = new double[maxDoc];
+        for (int doc = 0; doc < maxDoc; doc++) {
+            ids[doc] = productIds[doc];
+        }
+        docsById = sortDocs(allDocs(), ids);
+        idPositions = positionsOf(docsById);
+        columnsDirty = false;
+    }
+
+    private static int[] positionsOf(int[] order) {
+        int[] positions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            positions[order[i]] = i;
+        }
+        return positions;
+    }
+
+    private int[] allDocs() {
+        int[] docs = new int[maxDoc];
+        for (int i = 0; i < maxDoc; i++) {
+            docs[i] = i;
+        }
+        return docs;
+    }
+
+    private static double[] gather(double[] column, int[] docs) {
+        double[] values = new double[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            values[i] = column[docs[i]];
+        }
+        return values;
+    }
+
+    /**
+     * Stable in-place merge sort of doc ids by a primitive key column, without boxing.
+     */
+    private static int[] sortDocs(int[] docs, double[] keys) {
+        int length = docs.length;
+        int[] buffer = new int[length];
+        for (int width = 1; width < length; width <<= 1) {
+            for (int low = 0; low < length - width; low += width << 1) {
+                int mid = low + width;
+                int high = Math.min(low + (width << 1), length);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    buffer[k++] = keys[docs[j]] < keys[docs[i]] ? docs[j++] : docs[i++];
+                }
+                while (i < mid) {
+                    buffer[k++] = docs[i++];
+                }
+                while (j < high) {
+                    buffer[k++] = docs[j++];
+                }
+                System.arraycopy(buffer, low, docs, low, high - low);
+            }
+        }
+        return docs;
+    }
+}
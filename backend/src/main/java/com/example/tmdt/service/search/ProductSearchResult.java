@@ -0,0 +1,16 @@
+package com.example.tmdt.service.search;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of product ids in result order plus the total number of matches.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSearchResult {
+    private final List<Long> productIds;
+    private final int totalElements;
+}
@@ -0,0 +1,150 @@
+package com.example.tmdt.service.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.repository.ProductRepository;
+
+/**
+ * Type-ahead completions for product and category names, weighted by units sold.
+ *
+ * Lookups hit an immutable {@link SuggestionTrie} that is swapped in atomically.
+ * Product changes only update the snapshot map and mark the trie dirty; a
+ * background job rebuilds it from memory, so a burst of admin edits costs one
+ * rebuild and readers never wait.
+ */
+@Component
+public class ProductSuggester {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSuggester.class);
+
+    public static final int MAX_SUGGESTIONS = 10;
+
+    // Also index name suffixes starting at the first few words, so "pro max" completes "iPhone 14 Pro Max"
+    private static final int MAX_WORD_STARTS = 6;
+
+    private final ProductRepository productRepository;
+
+    private final Map<Long, ProductSnapshot> products = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private volatile SuggestionTrie trie = SuggestionTrie.EMPTY;
+    private volatile boolean ready;
+
+    @Autowired
+    public ProductSuggester(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onApplicationStartup() {
+        if (ready) {
+            return;
+        }
+        for (ProductSnapshot snapshot : productRepository.findAllSnapshots()) {
+            products.put(snapshot.getId(), snapshot);
+        }
+        rebuild();
+        ready = true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isDeleted()) {
+            if (products.remove(event.getProductId()) != null) {
+                dirty.set(true);
+            }
+            return;
+        }
+        ProductSnapshot previous = products.put(event.getProductId(), event.getSnapshot());
+        if (previous == null || affectsSuggestions(previous, event.getSnapshot())) {
+            dirty.set(true);
+        }
+    }
+
+    @Scheduled(fixedDelay = 2000)
+    public void rebuildIfDirty() {
+        if (ready && dirty.compareAndSet(true, false)) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Up to {@code limit} completions for the prefix, most popular first.
+     */
+    public List<ProductSuggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return trie.complete(key, Math.max(1, Math.min(limit, MAX_SUGGESTIONS)));
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        List<ProductSuggestion> entries = new ArrayList<>();
+        List<List<String>> keys = new ArrayList<>();
+        Map<Long, String> categoryNames = new HashMap<>();
+        Map<Long, Long> categorySales = new HashMap<>();
+
+        for (ProductSnapshot product : products.values()) {
+            if (product.getName() == null) {
+                continue;
+            }
+            entries.add(new ProductSuggestion(ProductSuggestion.TYPE_PRODUCT, product.getId(), product.getName(),
+                    product.getImageUrl(), product.getPrice(), product.getSoldCount()));
+            keys.add(keysOf(product.getName()));
+
+            if (product.getCategoryId() != null && product.getCategoryName() != null) {
+                categoryNames.put(product.getCategoryId(), product.getCategoryName());
+                categorySales.merge(product.getCategoryId(), (long) product.getSoldCount(), Long::sum);
+            }
+        }
+        for (Map.Entry<Long, String> category : categoryNames.entrySet()) {
+            entries.add(new ProductSuggestion(ProductSuggestion.TYPE_CATEGORY, category.getKey(), category.getValue(),
+                    null, null, categorySales.get(category.getKey())));
+            keys.add(keysOf(category.getValue()));
+        }
+
+        trie = SuggestionTrie.build(entries, keys, MAX_SUGGESTIONS);
+        log.debug("Suggestion trie rebuilt with {} entries in {} µs", entries.size(), (System.nanoTime() - start) / 1000);
+    }
+
+    private static List<String> keysOf(String name) {
+        List<String> tokens = TextAnalyzer.tokenize(name);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < tokens.size() && i < MAX_WORD_STARTS; i++) {
+            keys.add(String.join(" ", tokens.subList(i, tokens.size())));
+        }
+        return keys;
+    }
+
+    private static String normalize(String prefix) {
+        return prefix == null ? "" : String.join(" ", TextAnalyzer.tokenize(prefix));
+    }
+
+    private static boolean affectsSuggestions(ProductSnapshot previous, ProductSnapshot current) {
+        return !Objects.equals(previous.getName(), current.getName())
+                || !Objects.equals(previous.getCategoryId(), current.getCategoryId())
+                || !Objects.equals(previous.getCategoryName(), current.getCategoryName())
+                || !Objects.equals(previous.getImageUrl(), current.getImageUrl())
+                || previous.getSoldCount() != current.getSoldCount()
+                || previous.getPrice() != current.getPrice();
+    }
+}
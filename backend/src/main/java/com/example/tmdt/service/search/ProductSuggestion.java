@@ -0,0 +1,22 @@
+package com.example.tmdt.service.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One type-ahead completion: either a product or a category.
+ * For categories {@code id} is the category id and there is no price or image.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSuggestion {
+    public static final String TYPE_PRODUCT = "product";
+    public static final String TYPE_CATEGORY = "category";
+
+    private final String type;
+    private final Long id;
+    private final String name;
+    private final String imageUrl;
+    private final Double price;
+    private final long weight;
+}
@@ -0,0 +1,171 @@
+package com.example.tmdt.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable compressed (radix) trie over suggestion keys. Every node stores the
+ * best {@code k} entries of its whole subtree, so a lookup is a walk down the
+ * prefix followed by returning a precomputed list.
+ */
+final class SuggestionTrie {
+
+    static final SuggestionTrie EMPTY = new SuggestionTrie(new Node("", new char[0], new Node[0], new int[0]),
+            new ProductSuggestion[0]);
+
+    private static final class Node {
+        final String label;
+        final char[] childKeys;
+        final Node[] children;
+        final int[] top;
+
+        Node(String label, char[] childKeys, Node[] children, int[] top) {
+            this.label = label;
+            this.childKeys = childKeys;
+            this.children = children;
+            this.top = top;
+        }
+
+        Node child(char c) {
+            int index = Arrays.binarySearch(childKeys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class Key {
+        final String text;
+        final int entry;
+
+        Key(String text, int entry) {
+            this.text = text;
+            this.entry = entry;
+        }
+    }
+
+    private final Node root;
+    private final ProductSuggestion[] entries;
+
+    private SuggestionTrie(Node root, ProductSuggestion[] entries) {
+        this.root = root;
+        this.entries = entries;
+    }
+
+    /**
+     * Builds a trie where {@code keys.get(i)} are the lookup keys of {@code entries.get(i)}.
+     */
+    static SuggestionTrie build(List<ProductSuggestion> entries, List<List<String>> keys, int k) {
+        List<Key> sorted = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            for (String key : keys.get(i)) {
+                if (!key.isEmpty()) {
+                    sorted.add(new Key(key, i));
+                }
+            }
+        }
+        sorted.sort(Comparator.comparing((Key key) -> key.text));
+
+        ProductSuggestion[] entryArray = entries.toArray(new ProductSuggestion[0]);
+        Builder builder = new Builder(sorted.toArray(new Key[0]), entryArray, k);
+        return new SuggestionTrie(builder.build(0, sorted.size(), 0, true), entryArray);
+    }
+
+    /**
+     * Best entries whose key starts with the (already folded) prefix, best first.
+     */
+    List<ProductSuggestion> complete(String prefix, int limit) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            Node child = node.child(prefix.charAt(pos));
+            if (child == null) {
+                return new ArrayList<>();
+            }
+            int n = Math.min(child.label.length(), prefix.length() - pos);
+            if (!prefix.regionMatches(pos, child.label, 0, n)) {
+                return new ArrayList<>();
+            }
+            pos += n;
+            node = child;
+        }
+
+        int count = Math.min(limit, node.top.length);
+        List<ProductSuggestion> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(entries[node.top[i]]);
+        }
+        return result;
+    }
+
+    private static final class Builder {
+        private final Key[] keys;
+        private final ProductSuggestion[] entries;
+        private final int k;
+
+        Builder(Key[] keys, ProductSuggestion[] entries, int k) {
+            this.keys = keys;
+            this.entries = entries;
+            this.k = k;
+        }
+
+        /**
+         * Builds the node for sorted keys [lo, hi), which all share their first {@code depth} characters.
+         */
+        Node build(int lo, int hi, int depth, boolean isRoot) {
+            int end = isRoot ? 0 : commonPrefixLength(keys[lo].text, keys[hi - 1].text);
+            String label = isRoot ? "" : keys[lo].text.substring(depth, end);
+
+            Set<Integer> candidates = new LinkedHashSet<>();
+            int i = lo;
+            // Shorter keys sort first, so keys ending at this node come before the children
+            while (i < hi && keys[i].text.length() == end) {
+                candidates.add(keys[i].entry);
+                i++;
+            }
+
+            List<Character> childKeys = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+            while (i < hi) {
+                char c = keys[i].text.charAt(end);
+                int j = i;
+                while (j < hi && keys[j].text.charAt(end) == c) {
+                    j++;
+                }
+                Node child = build(i, j, end, false);
+                childKeys.add(c);
+                children.add(child);
+                for (int entry : child.top) {
+                    candidates.add(entry);
+                }
+                i = j;
+            }
+
+            char[] childKeyArray = new char[childKeys.size()];
+            for (int c = 0; c < childKeyArray.length; c++) {
+                childKeyArray[c] = childKeys.get(c);
+            }
+            return new Node(label, childKeyArray, children.toArray(new Node[0]), top(candidates));
+        }
+
+        private int[] top(Set<Integer> candidates) {
+            return candidates.stream()
+                    .sorted(Comparator.comparingLong((Integer entry) -> entries[entry].getWeight()).reversed()
+                            .thenComparing(entry -> entry))
+                    .limit(k)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        private static int commonPrefixLength(String a, String b) {
+            int max = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < max && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.tmdt.util;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Honours If-None-Match / If-Modified-Since for read endpoints.
+ *
+ * Usage: compute a {@link ResourceVersion} with an aggregate query, then
+ * {@code if (ConditionalGet.isNotModified(request, versions...)) return ConditionalGet.notModified();}
+ * before loading anything else. ETag and Last-Modified are added to the response either
+ * way, together with {@code Cache-Control: no-cache} so clients always revalidate
+ * instead of guessing a freshness lifetime from Last-Modified.
+ */
+public final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    public static boolean isNotModified(WebRequest request, String resource, ResourceVersion... versions) {
+        String eTag = ResourceVersion.eTag(resource, versions);
+        long lastModified = ResourceVersion.lastModifiedMillis(versions);
+        boolean notModified = lastModified > 0
+                ? request.checkNotModified(eTag, lastModified)
+                : request.checkNotModified(eTag);
+
+        if (request instanceof ServletWebRequest) {
+            HttpServletResponse response = ((ServletWebRequest) request).getResponse();
+            if (response != null) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            }
+        }
+        return notModified;
+    }
+
+    public static <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    }
+}
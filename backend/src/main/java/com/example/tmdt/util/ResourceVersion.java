@@ -0,0 +1,68 @@
+package com.example.tmdt.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * Cheap fingerprint of a set of rows: how many there are, an optional checksum and
+ * the latest update time. Built by JPQL aggregate queries, so conditional GETs can be
+ * answered without loading the entities themselves.
+ */
+public class ResourceVersion {
+
+    private final long count;
+    private final long checksum;
+    private final LocalDateTime lastModified;
+
+    public ResourceVersion(Long count, LocalDateTime lastModified) {
+        this(count, 0L, lastModified);
+    }
+
+    public ResourceVersion(Long count, Long checksum) {
+        this(count, checksum, null);
+    }
+
+    public ResourceVersion(Long count, Long checksum, LocalDateTime lastModified) {
+        this.count = count != null ? count : 0L;
+        this.checksum = checksum != null ? checksum : 0L;
+        this.lastModified = lastModified;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Strong ETag (quoted) over the resource name and all the given versions.
+     */
+    public static String eTag(String resource, ResourceVersion... versions) {
+        StringBuilder raw = new StringBuilder(resource);
+        for (ResourceVersion version : versions) {
+            raw.append('|').append(version.count)
+                    .append(':').append(version.checksum)
+                    .append(':').append(version.lastModified != null ? version.lastModified.toString() : "");
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(raw.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Latest update time of the given versions in epoch millis, or -1 if none has one.
+     */
+    public static long lastModifiedMillis(ResourceVersion... versions) {
+        long latest = -1;
+        for (ResourceVersion version : versions) {
+            if (version.lastModified != null) {
+                latest = Math.max(latest,
+                        version.lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+        }
+        return latest;
+    }
+}
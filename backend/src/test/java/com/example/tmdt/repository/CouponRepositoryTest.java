@@ -0,0 +1,76 @@
+package com.example.tmdt.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import com.example.tmdt.model.Coupon;
+
+@DataJpaTest
+class CouponRepositoryTest {
+
+    @Autowired
+    private CouponRepository couponRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void lastUseIsClaimedOnceAndDisablesTheCoupon() {
+        Long id = save("LIMITED", null, 2, 1).getId();
+
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isEqualTo(1);
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isZero();
+
+        Coupon coupon = reload(id);
+        assertThat(coupon.getUsedCount()).isEqualTo(2);
+        assertThat(coupon.getIsActive()).isFalse();
+    }
+
+    @Test
+    void unlimitedCouponStaysActive() {
+        Long id = save("OPEN", null, null, 0).getId();
+
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isEqualTo(1);
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isEqualTo(1);
+
+        Coupon coupon = reload(id);
+        assertThat(coupon.getUsedCount()).isEqualTo(2);
+        assertThat(coupon.getIsActive()).isTrue();
+    }
+
+    @Test
+    void oneTimeCouponCanBeClaimedOnlyOnce() {
+        Long id = save("ONCE", "ONE_TIME", null, 0).getId();
+
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isEqualTo(1);
+        assertThat(couponRepository.claimUse(id, LocalDateTime.now())).isZero();
+        assertThat(reload(id).getIsActive()).isFalse();
+    }
+
+    private Coupon save(String code, String type, Integer maxUses, int usedCount) {
+        Coupon coupon = new Coupon();
+        coupon.setCode(code);
+        coupon.setDescription(code);
+        coupon.setType(type);
+        coupon.setDiscountType(Coupon.DiscountType.FIXED_AMOUNT);
+        coupon.setDiscountValue(BigDecimal.TEN);
+        coupon.setMinPurchaseAmount(BigDecimal.ZERO);
+        coupon.setMaxUses(maxUses);
+        coupon.setUsedCount(usedCount);
+        coupon.setStartDate(LocalDateTime.now().minusDays(1));
+        coupon.setEndDate(LocalDateTime.now().plusDays(1));
+        return entityManager.persistFlushFind(coupon);
+    }
+
+    private Coupon reload(Long id) {
+        entityManager.clear();
+        return entityManager.find(Coupon.class, id);
+    }
+}
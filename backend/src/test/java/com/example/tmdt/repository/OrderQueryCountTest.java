@@ -0,0 +1,157 @@
+package com.example.tmdt.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import com.example.tmdt.model.Category;
+import com.example.tmdt.model.Order;
+import com.example.tmdt.model.OrderItem;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.model.User;
+import com.example.tmdt.payload.response.PagedResponse;
+import com.example.tmdt.service.OrderQueryService;
+
+/**
+ * Guards the order listings against N+1 regressions: each read must issue a fixed
+ * number of statements no matter how many orders, items or products it returns.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(OrderQueryService.class)
+class OrderQueryCountTest {
+
+    private static final int ORDERS = 5;
+    private static final int ITEMS_PER_ORDER = 3;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderQueryService orderQueryService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        Category category = new Category();
+        category.setName("Phones");
+        entityManager.persist(category);
+
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+            Product product = new Product();
+            product.setName("Product " + i);
+            product.setPrice(100.0 + i);
+            product.setStock(10);
+            product.setCategory(category);
+            products.add(entityManager.persist(product));
+        }
+
+        User user = entityManager.persist(new User("buyer", "buyer@example.com", "secret", "Buyer"));
+        userId = user.getId();
+
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUserId(userId);
+            order.setTotalAmount(BigDecimal.valueOf(300 + i));
+            order.setShippingAddress("1 Main St");
+            order.setPhoneNumber("0900000000");
+            order.setRecipientName("Buyer");
+            for (Product product : products) {
+                OrderItem item = new OrderItem();
+                item.setOrder(order);
+                item.setProduct(product);
+                item.setQuantity(1);
+                item.setPrice(BigDecimal.valueOf(product.getPrice()));
+                order.getOrderItems().add(item);
+            }
+            entityManager.persist(order);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        statistics().clear();
+    }
+
+    @Test
+    void myOrdersLoadItemsAndProductsInOneStatement() {
+        List<Order> orders = orderRepository.findDistinctByUserIdOrderByCreatedAtDesc(userId);
+
+        assertThat(orders).hasSize(ORDERS);
+        for (Order order : orders) {
+            assertThat(order.getOrderItems()).hasSize(ITEMS_PER_ORDER);
+            order.getOrderItems().forEach(item -> item.getProduct().getName());
+        }
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keysetPageCostsTheSameWhateverItsSize() {
+        PagedResponse<Order> small = orderQueryService.findPage(null, null, 2);
+        touchItems(small.getContent());
+        long smallPageStatements = statistics().getPrepareStatementCount();
+
+        entityManager.clear();
+        statistics().clear();
+        PagedResponse<Order> large = orderQueryService.findPage(null, null, ORDERS);
+        touchItems(large.getContent());
+
+        assertThat(small.getContent()).hasSize(2);
+        assertThat(small.getNextCursor()).isNotNull();
+        assertThat(large.getContent()).hasSize(ORDERS);
+        assertThat(smallPageStatements).isEqualTo(2);
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(smallPageStatements);
+    }
+
+    @Test
+    void nextKeysetPageStartsAfterTheCursor() {
+        PagedResponse<Order> first = orderQueryService.findPage(null, null, 3);
+        PagedResponse<Order> second = orderQueryService.findPage(null, first.getNextCursor(), 3);
+
+        assertThat(second.getContent()).hasSize(ORDERS - 3);
+        assertThat(second.getNextCursor()).isNull();
+        List<Long> firstIds = new ArrayList<>();
+        first.getContent().forEach(order -> firstIds.add(order.getId()));
+        assertThat(second.getContent()).extracting(Order::getId).doesNotContainAnyElementsOf(firstIds);
+    }
+
+    @Test
+    void summaryProjectionsIssueOneStatementEach() {
+        assertThat(orderRepository.sumTotalsByStatusForUser(userId)).hasSize(1);
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(1);
+
+        statistics().clear();
+        assertThat(orderRepository.findListItemsByUserId(userId, PageRequest.of(0, 10))).hasSize(ORDERS);
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    private static void touchItems(List<Order> orders) {
+        for (Order order : orders) {
+            assertThat(order.getOrderItems()).hasSize(ITEMS_PER_ORDER);
+            order.getOrderItems().forEach(item -> item.getProduct().getName());
+        }
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+}
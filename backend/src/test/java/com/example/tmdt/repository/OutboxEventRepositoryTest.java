@@ -0,0 +1,68 @@
+package com.example.tmdt.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import com.example.tmdt.model.OutboxEvent;
+
+@DataJpaTest
+class OutboxEventRepositoryTest {
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void findPendingSkipsEventsBackingOffAndTheEventsQueuedBehindThem() {
+        LocalDateTime now = LocalDateTime.now();
+        Long due = save(100L, now.minusSeconds(5), null, null).getId();
+        Long backingOff = save(200L, now.plusMinutes(5), null, null).getId();
+        Long behindBackingOff = save(200L, now.minusSeconds(5), null, null).getId();
+        Long otherOrder = save(300L, now.minusSeconds(1), null, null).getId();
+        save(400L, now.minusSeconds(5), now, null);
+        Long behindDispatched = save(400L, now.minusSeconds(5), null, null).getId();
+        save(500L, now.minusSeconds(5), null, now);
+        Long behindParked = save(500L, now.minusSeconds(5), null, null).getId();
+
+        List<Long> pending = outboxRepository.findPending(now, PageRequest.of(0, 10)).stream()
+                .map(OutboxEvent::getId)
+                .collect(Collectors.toList());
+
+        assertThat(pending).containsExactly(due, otherOrder, behindDispatched, behindParked);
+        assertThat(pending).doesNotContain(backingOff, behindBackingOff);
+    }
+
+    @Test
+    void parkedEventsDoNotCountAsPending() {
+        save(100L, LocalDateTime.now(), null, LocalDateTime.now());
+        assertThat(outboxRepository.existsByDispatchedAtIsNullAndParkedAtIsNull()).isFalse();
+
+        save(100L, LocalDateTime.now().plusMinutes(5), null, null);
+        assertThat(outboxRepository.existsByDispatchedAtIsNullAndParkedAtIsNull()).isTrue();
+    }
+
+    private OutboxEvent save(Long orderId, LocalDateTime nextAttemptAt,
+                             LocalDateTime dispatchedAt, LocalDateTime parkedAt) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType("ORDER_CREATED");
+        event.setAggregateId(orderId);
+        event.setPayload("{}");
+        event.setAttempts(0);
+        event.setNextAttemptAt(nextAttemptAt);
+        event.setCreatedAt(LocalDateTime.now());
+        event.setDispatchedAt(dispatchedAt);
+        event.setParkedAt(parkedAt);
+        return entityManager.persistAndFlush(event);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.tmdt.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.Order.OrderStatus;
+import com.example.tmdt.payload.request.BulkStatusUpdateRequest.Transition;
+import com.example.tmdt.payload.response.BulkStatusResult;
+import com.example.tmdt.repository.OrderRepository;
+import com.example.tmdt.service.outbox.OutboxService;
+import com.example.tmdt.service.pricing.PricingEngine;
+
+class OrderServiceBulkTransitionTest {
+
+    private static final Timestamp CREATED_AT = Timestamp.valueOf(LocalDateTime.of(2026, 1, 1, 10, 0));
+
+    private OrderRepository orderRepository;
+    private OutboxService outboxService;
+    private StockReservationService stockReservationService;
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        outboxService = mock(OutboxService.class);
+        stockReservationService = mock(StockReservationService.class);
+        orderService = new OrderService(orderRepository, mock(ProductService.class), mock(VNPayService.class),
+                mock(UserBalanceService.class), outboxService, mock(ApplicationEventPublisher.class),
+                stockReservationService, mock(PricingEngine.class), mock(CouponService.class));
+    }
+
+    @Test
+    void reportsEachRejectedEntryByItsIndex() {
+        when(orderRepository.lockStatusRows(anyCollection())).thenReturn(Arrays.asList(
+                row(1L, 10L, OrderStatus.PROCESSING),
+                row(2L, 10L, OrderStatus.DELIVERED)));
+
+        List<BulkStatusResult> rejected = orderService.transitionOrders(Arrays.asList(
+                new Transition(1L, OrderStatus.IN_TRANSIT),
+                new Transition(2L, OrderStatus.PROCESSING),
+                new Transition(null, OrderStatus.PROCESSING),
+                new Transition(1L, OrderStatus.DELIVERED),
+                new Transition(3L, OrderStatus.PROCESSING)));
+
+        assertThat(rejected).extracting(BulkStatusResult::getIndex).containsExactly(1, 2, 3, 4);
+        assertThat(rejected.get(0).getMessage()).isEqualTo("Invalid status transition from DELIVERED to PROCESSING");
+        assertThat(rejected.get(1).getMessage()).isEqualTo("orderId and status are required");
+        assertThat(rejected.get(2).getMessage()).isEqualTo("Order appears more than once");
+        assertThat(rejected.get(3).getMessage()).isEqualTo("Order not found");
+        verify(orderRepository).transitionStatus(eq(Collections.singleton(1L)),
+                eq(OrderStatusTransitions.ADMIN.sourcesOf(OrderStatus.IN_TRANSIT)), eq(OrderStatus.IN_TRANSIT), any());
+    }
+
+    @Test
+    void orderAlreadyInTheTargetStatusIsSkippedWithoutBeingRejected() {
+        when(orderRepository.lockStatusRows(anyCollection())).thenReturn(Collections.singletonList(
+                row(1L, 10L, OrderStatus.IN_TRANSIT)));
+
+        List<BulkStatusResult> rejected = orderService.transitionOrders(Collections.singletonList(
+                new Transition(1L, OrderStatus.IN_TRANSIT)));
+
+        assertThat(rejected).isEmpty();
+        verify(orderRepository, never()).transitionStatus(anyCollection(), anyCollection(), any(), any());
+        verify(outboxService, never()).recordAll(any());
+    }
+
+    @Test
+    void orderWithoutUserIsStillTransitioned() {
+        when(orderRepository.lockStatusRows(anyCollection())).thenReturn(Arrays.asList(
+                row(1L, null, OrderStatus.PROCESSING),
+                row(2L, 20L, OrderStatus.PROCESSING)));
+
+        List<BulkStatusResult> rejected = orderService.transitionOrders(Arrays.asList(
+                new Transition(1L, OrderStatus.READY_TO_SHIP),
+                new Transition(2L, OrderStatus.READY_TO_SHIP)));
+
+        assertThat(rejected).isEmpty();
+        List<OrderLifecycleEvent> events = recordedEvents();
+        assertThat(events).extracting(OrderLifecycleEvent::getOrderId).containsExactly(1L, 2L);
+        assertThat(events).extracting(OrderLifecycleEvent::getUserId).containsExactly(null, 20L);
+    }
+
+    @Test
+    void cancelledOrdersGiveTheirStockBackInOneRelease() {
+        when(orderRepository.lockStatusRows(anyCollection())).thenReturn(Arrays.asList(
+                row(1L, 10L, OrderStatus.PENDING),
+                row(2L, 10L, OrderStatus.CONFIRMED)));
+        when(orderRepository.findItemLinesByOrderIdIn(anyCollection())).thenReturn(Arrays.asList(
+                line(1L, 100L, 2),
+                line(2L, 100L, 3),
+                line(2L, 200L, 1)));
+
+        orderService.transitionOrders(Arrays.asList(
+                new Transition(1L, OrderStatus.CANCELLED),
+                new Transition(2L, OrderStatus.CANCELLED)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<SortedMap<Long, Integer>> released = ArgumentCaptor.forClass(SortedMap.class);
+        verify(stockReservationService).release(released.capture());
+        assertThat(released.getValue()).containsEntry(100L, 5).containsEntry(200L, 1).hasSize(2);
+        verify(orderRepository).transitionAll(any(), any(), eq(OrderStatus.CANCELLED), eq("CANCELLED"), any());
+        assertThat(recordedEvents()).extracting(OrderLifecycleEvent::getType)
+                .containsOnly(OrderLifecycleEvent.Type.ORDER_CANCELLED);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OrderLifecycleEvent> recordedEvents() {
+        ArgumentCaptor<List<OrderLifecycleEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(outboxService).recordAll(events.capture());
+        return new ArrayList<>(events.getValue());
+    }
+
+    // (id, user_id, status, payment_status, total_amount, created_at) như lockStatusRows
+    private static Object[] row(Long id, Long userId, OrderStatus status) {
+        return new Object[] {id, userId, status.name(), "PAID", new BigDecimal("100000"), CREATED_AT};
+    }
+
+    private static Object[] line(Long orderId, Long productId, int quantity) {
+        return new Object[] {orderId, productId, quantity, new BigDecimal("50000")};
+    }
+}
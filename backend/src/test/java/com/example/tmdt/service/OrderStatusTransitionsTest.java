@@ -0,0 +1,59 @@
+package com.example.tmdt.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.tmdt.model.Order.OrderStatus;
+
+class OrderStatusTransitionsTest {
+
+    @Test
+    void adminMovesForwardButNotBack() {
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.PENDING, OrderStatus.DELIVERED)).isTrue();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.READY_TO_SHIP, OrderStatus.IN_TRANSIT)).isTrue();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.DELIVERED, OrderStatus.PROCESSING)).isFalse();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.ARRIVED_AT_STATION, OrderStatus.IN_TRANSIT)).isTrue();
+    }
+
+    @Test
+    void adminCancelsOnlyBeforePickupAndReturnsOnlyAfterDelivery() {
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.READY_TO_SHIP, OrderStatus.CANCELLED)).isTrue();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.PICKED_UP, OrderStatus.CANCELLED)).isFalse();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.RETURNED)).isTrue();
+        assertThat(OrderStatusTransitions.ADMIN.allows(OrderStatus.IN_TRANSIT, OrderStatus.RETURNED)).isFalse();
+    }
+
+    @Test
+    void finalStatusesCannotBeLeft() {
+        assertThat(OrderStatusTransitions.ADMIN.targetsOf(OrderStatus.CANCELLED)).isEmpty();
+        assertThat(OrderStatusTransitions.ADMIN.targetsOf(OrderStatus.RETURNED)).isEmpty();
+        assertThat(OrderStatusTransitions.SHIPPER.targetsOf(OrderStatus.COMPLETED)).isEmpty();
+    }
+
+    @Test
+    void sourcesAreTheReverseOfTargets() {
+        for (OrderStatus to : OrderStatus.values()) {
+            for (OrderStatus from : OrderStatusTransitions.ADMIN.sourcesOf(to)) {
+                assertThat(OrderStatusTransitions.ADMIN.targetsOf(from)).contains(to);
+            }
+        }
+        assertThat(OrderStatusTransitions.CUSTOMER.sourcesOf(OrderStatus.CANCELLED))
+                .containsExactlyInAnyOrder(OrderStatus.PENDING, OrderStatus.PROCESSING);
+    }
+
+    @Test
+    void shipperFollowsTheDeliveryRoute() {
+        assertThat(OrderStatusTransitions.SHIPPER.allows(OrderStatus.READY_TO_SHIP, OrderStatus.IN_TRANSIT)).isTrue();
+        assertThat(OrderStatusTransitions.SHIPPER.allows(OrderStatus.OUT_FOR_DELIVERY, OrderStatus.DELIVERED)).isTrue();
+        assertThat(OrderStatusTransitions.SHIPPER.allows(OrderStatus.READY_TO_SHIP, OrderStatus.CANCELLED)).isFalse();
+    }
+
+    @Test
+    void checkRejectsTransitionsOutsideTheTable() {
+        assertThatThrownBy(() -> OrderStatusTransitions.CUSTOMER.check(OrderStatus.IN_TRANSIT, OrderStatus.CANCELLED))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("IN_TRANSIT");
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.tmdt.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.repository.ProductRepository;
+
+class ProductChangePollerTest {
+
+    private ProductRepository productRepository;
+    private List<ProductChangedEvent> published;
+    private ProductChangePoller poller;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        published = new ArrayList<>();
+        poller = new ProductChangePoller(productRepository, event -> published.add((ProductChangedEvent) event));
+        when(productRepository.findAllIds()).thenReturn(Arrays.asList(1L, 2L));
+        poller.onApplicationStartup();
+    }
+
+    @Test
+    void productsChangedElsewhereArePublishedHere() {
+        when(productRepository.findSnapshotsUpdatedAfter(any())).thenReturn(Collections.singletonList(snapshot(2L)));
+        when(productRepository.count()).thenReturn(2L);
+
+        poller.pollChanges();
+
+        assertThat(published).extracting(ProductChangedEvent::getProductId).containsExactly(2L);
+        assertThat(published.get(0).isDeleted()).isFalse();
+    }
+
+    @Test
+    void productsDeletedElsewhereArePublishedAsDeleted() {
+        when(productRepository.findSnapshotsUpdatedAfter(any())).thenReturn(Collections.emptyList());
+        when(productRepository.count()).thenReturn(1L);
+        when(productRepository.findAllIds()).thenReturn(Collections.singletonList(2L));
+
+        poller.pollChanges();
+
+        assertThat(published).extracting(ProductChangedEvent::getProductId).containsExactly(1L);
+        assertThat(published.get(0).isDeleted()).isTrue();
+    }
+
+    private static ProductSnapshot snapshot(Long id) {
+        return new ProductSnapshot(id, "Phone", null, 1L, "Electronics", 100_000.0, 0.0, 4.0, 10, 0, null);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.tmdt.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import com.example.tmdt.config.CacheConfig;
+import com.example.tmdt.model.Category;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.repository.ProductRepository;
+
+class ProductServiceCacheTest {
+
+    private static final Long PRODUCT_ID = 7L;
+
+    private ProductRepository productRepository;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        productService = new ProductService(productRepository, new CaffeineCacheManager(CacheConfig.PRODUCT_CACHE));
+
+        Category phones = new Category();
+        phones.setId(1L);
+        phones.setName("Phones");
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setName("Phone");
+        product.setPrice(100_000.0);
+        product.setStock(5);
+        product.setCategory(phones);
+        when(productRepository.findById(PRODUCT_ID)).thenReturn(Optional.of(product));
+        when(productRepository.findAllWithCategoryByIdIn(any())).thenReturn(Collections.singletonList(product));
+    }
+
+    @Test
+    void everyReadGetsItsOwnCopyOfTheCachedProduct() {
+        Product first = productService.getCachedProduct(PRODUCT_ID);
+        first.setPrice(1.0);
+        first.getCategory().setName("Changed");
+
+        Product second = productService.getCachedProduct(PRODUCT_ID);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getPrice()).isEqualTo(100_000.0);
+        assertThat(second.getCategory().getName()).isEqualTo("Phones");
+        verify(productRepository, times(1)).findById(PRODUCT_ID);
+    }
+
+    @Test
+    void batchReadCopiesCachedProductsToo() {
+        List<Product> first = productService.getProductsByIds(Arrays.asList(PRODUCT_ID, 99L));
+        first.get(0).setStock(0);
+
+        List<Product> second = productService.getProductsByIds(Collections.singletonList(PRODUCT_ID));
+
+        assertThat(first).hasSize(1);
+        assertThat(second.get(0).getStock()).isEqualTo(5);
+        assertThat(productService.getCachedProduct(PRODUCT_ID).getStock()).isEqualTo(5);
+        verify(productRepository, times(1)).findAllWithCategoryByIdIn(any());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.tmdt.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.example.tmdt.model.StockReservation;
+import com.example.tmdt.repository.ProductRepository;
+import com.example.tmdt.repository.StockReservationRepository;
+import com.example.tmdt.service.inventory.HotSkuInventory;
+
+class StockReservationServiceTest {
+
+    private static final String TOKEN = "token";
+    private static final Long USER_ID = 1L;
+    private static final Long RESERVATION_ID = 9L;
+    private static final Long PRODUCT_ID = 42L;
+
+    private ProductRepository productRepository;
+    private StockReservationRepository reservationRepository;
+    private StockReservationService service;
+    private SortedMap<Long, Integer> quantities;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        reservationRepository = mock(StockReservationRepository.class);
+        service = new StockReservationService(productRepository, reservationRepository,
+                mock(ApplicationEventPublisher.class), mock(HotSkuInventory.class), Duration.ofMinutes(15));
+        quantities = new TreeMap<>(Collections.singletonMap(PRODUCT_ID, 2));
+        when(productRepository.findSnapshotsByIdIn(any())).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    void expiredHoldIsNotUsedForAnUnpaidOrder() {
+        reservation(StockReservation.Status.EXPIRED);
+
+        assertThat(service.commit(TOKEN, USER_ID, quantities, false)).isFalse();
+        verify(reservationRepository, never()).transition(anyLong(), any(), any());
+    }
+
+    @Test
+    void paidOrderTakesTheStockOfItsExpiredHoldAgain() {
+        reservation(StockReservation.Status.EXPIRED);
+        when(reservationRepository.transition(RESERVATION_ID, StockReservation.Status.EXPIRED,
+                StockReservation.Status.COMMITTED)).thenReturn(1);
+        when(productRepository.decrementStock(eq(PRODUCT_ID), eq(2), any())).thenReturn(1);
+
+        assertThat(service.commit(TOKEN, USER_ID, quantities, true)).isTrue();
+        verify(productRepository, never()).drainStock(anyLong(), anyInt(), any());
+        verify(reservationRepository, never()).transition(RESERVATION_ID, StockReservation.Status.COMMITTED,
+                StockReservation.Status.OVERSOLD);
+    }
+
+    @Test
+    void paidOrderIsAcceptedAndFlaggedWhenItsExpiredHoldWasSoldMeanwhile() {
+        reservation(StockReservation.Status.EXPIRED);
+        when(reservationRepository.transition(RESERVATION_ID, StockReservation.Status.EXPIRED,
+                StockReservation.Status.COMMITTED)).thenReturn(1);
+        when(productRepository.decrementStock(eq(PRODUCT_ID), eq(2), any())).thenReturn(0);
+        when(productRepository.drainStock(eq(PRODUCT_ID), eq(2), any())).thenReturn(1);
+
+        assertThat(service.commit(TOKEN, USER_ID, quantities, true)).isTrue();
+        verify(productRepository).drainStock(eq(PRODUCT_ID), eq(2), any());
+        verify(reservationRepository).transition(RESERVATION_ID, StockReservation.Status.COMMITTED,
+                StockReservation.Status.OVERSOLD);
+    }
+
+    @Test
+    void expiredHoldIsRecommittedOnlyOnce() {
+        reservation(StockReservation.Status.EXPIRED);
+        when(reservationRepository.transition(RESERVATION_ID, StockReservation.Status.EXPIRED,
+                StockReservation.Status.COMMITTED)).thenReturn(0);
+
+        assertThat(service.commit(TOKEN, USER_ID, quantities, true)).isFalse();
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt(), any());
+    }
+
+    private void reservation(StockReservation.Status status) {
+        StockReservation reservation = new StockReservation();
+        reservation.setId(RESERVATION_ID);
+        reservation.setToken(TOKEN);
+        reservation.setUserId(USER_ID);
+        reservation.setStatus(status);
+        reservation.setItems(Collections.singletonList(new StockReservation.Line(PRODUCT_ID, 2)));
+        reservation.setCreatedAt(LocalDateTime.now().minusMinutes(20));
+        reservation.setExpiresAt(LocalDateTime.now().minusMinutes(5));
+        when(reservationRepository.findByToken(TOKEN)).thenReturn(Optional.of(reservation));
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.tmdt.service.idempotency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.example.tmdt.model.IdempotencyRecord;
+import com.example.tmdt.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class IdempotencyServiceTest {
+
+    private static final Long USER_ID = 7L;
+    private static final String SCOPE = "orders";
+
+    // Bảng idempotency_keys giả lập, dùng chung giữa các "node"
+    private final Map<String, IdempotencyRecord> table = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private IdempotencyRecordRepository repository;
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(IdempotencyRecordRepository.class);
+        when(repository.claim(anyLong(), anyString(), anyString(), anyString(), any(), any(), any())).thenAnswer(call -> {
+            IdempotencyRecord record = new IdempotencyRecord(null, call.getArgument(0), call.getArgument(1),
+                    call.getArgument(2), call.getArgument(3), null, null, null, null,
+                    call.getArgument(4), call.getArgument(5), call.getArgument(6));
+            if (table.putIfAbsent(rowKey(record.getUserId(), record.getScope(), record.getIdempotencyKey()), record) != null) {
+                return 0;
+            }
+            record.setId(ids.incrementAndGet());
+            return 1;
+        });
+        when(repository.findByUserIdAndScopeAndIdempotencyKey(anyLong(), anyString(), anyString())).thenAnswer(call ->
+                Optional.ofNullable(table.get(rowKey(call.getArgument(0), call.getArgument(1), call.getArgument(2))))
+                        .map(IdempotencyServiceTest::copy));
+        when(repository.complete(anyLong(), anyInt(), any(), any(), any())).thenAnswer(call -> {
+            IdempotencyRecord record = byId(call.getArgument(0));
+            if (record == null || record.getResponseStatus() != null) {
+                return 0;
+            }
+            record.setResponseStatus(call.getArgument(1));
+            record.setResponseContentType(call.getArgument(2));
+            record.setResponseBody(call.getArgument(3));
+            record.setResponseHeaders(call.getArgument(4));
+            return 1;
+        });
+        when(repository.deleteUnfinished(anyLong())).thenAnswer(call -> {
+            IdempotencyRecord record = byId(call.getArgument(0));
+            return record != null && record.getResponseStatus() == null
+                    && table.values().remove(record) ? 1 : 0;
+        });
+        when(repository.deleteAbandoned(anyLong(), any(), any())).thenAnswer(call -> {
+            IdempotencyRecord record = byId(call.getArgument(0));
+            LocalDateTime now = call.getArgument(1);
+            boolean abandoned = record != null && record.getResponseStatus() == null
+                    && (record.getExpiresAt().isBefore(now)
+                    || (record.getLeaseUntil() != null ? record.getLeaseUntil().isBefore(now)
+                    : record.getCreatedAt().isBefore(call.getArgument(2))));
+            return abandoned && table.values().remove(record) ? 1 : 0;
+        });
+        when(repository.renewLeases(any(), any())).thenAnswer(call -> {
+            int renewed = 0;
+            for (Long id : call.<Collection<Long>>getArgument(0)) {
+                IdempotencyRecord record = byId(id);
+                if (record != null && record.getResponseStatus() == null) {
+                    record.setLeaseUntil(call.getArgument(1));
+                    renewed++;
+                }
+            }
+            return renewed;
+        });
+        service = newNode();
+    }
+
+    @Test
+    void runsTheActionOnceAndReplaysItsResponse() {
+        ResponseEntity<?> first = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+        ResponseEntity<?> second = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(executions).hasValue(1);
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(first.getHeaders().containsKey(IdempotencyService.REPLAYED_HEADER)).isFalse();
+        assertThat(second.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(second.getBody()).isEqualTo("{\"orderId\":1}");
+    }
+
+    @Test
+    void replaysFromTheDatabaseOnAnotherNode() {
+        service.execute("k1", USER_ID, SCOPE, request("A"), this::created, "X-Reservation-Token");
+
+        ResponseEntity<?> replayed = newNode().execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(executions).hasValue(1);
+        assertThat(replayed.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(replayed.getHeaders().getFirst("X-Reservation-Token")).isEqualTo("token-1");
+    }
+
+    @Test
+    void rejectsTheSameKeyWithADifferentBody() {
+        service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        ResponseEntity<?> local = service.execute("k1", USER_ID, SCOPE, request("B"), this::created);
+        ResponseEntity<?> remote = newNode().execute("k1", USER_ID, SCOPE, request("B"), this::created);
+
+        assertThat(executions).hasValue(1);
+        assertThat(local.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(remote.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    void keysAreScopedPerUserAndEndpoint() {
+        service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+        service.execute("k1", USER_ID + 1, SCOPE, request("A"), this::created);
+        service.execute("k1", USER_ID, "orders/pay", request("A"), this::created);
+
+        assertThat(executions).hasValue(3);
+    }
+
+    @Test
+    void failedExecutionsGiveTheKeyBack() {
+        assertThatThrownBy(() -> service.execute("k1", USER_ID, SCOPE, request("A"), () -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException("out of stock");
+        })).isInstanceOf(IllegalStateException.class);
+        ResponseEntity<?> serverError = service.execute("k2", USER_ID, SCOPE, request("A"), () -> {
+            executions.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("boom");
+        });
+
+        assertThat(serverError.getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+        assertThat(table).isEmpty();
+        ResponseEntity<?> retried = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+        assertThat(retried.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(executions).hasValue(3);
+    }
+
+    @Test
+    void keyHeldByARunningRequestOnAnotherNodeIsAConflict() {
+        table.put(rowKey(USER_ID, SCOPE, "k1"), new IdempotencyRecord(99L, USER_ID, SCOPE, "k1", "hash",
+                null, null, null, null, LocalDateTime.now(), LocalDateTime.now().plusHours(1),
+                LocalDateTime.now().plusSeconds(30)));
+
+        ResponseEntity<?> response = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(executions).hasValue(0);
+    }
+
+    @Test
+    void claimWhoseLeaseRanOutIsTakenOver() {
+        table.put(rowKey(USER_ID, SCOPE, "k1"), new IdempotencyRecord(99L, USER_ID, SCOPE, "k1", "hash",
+                null, null, null, null, LocalDateTime.now().minusMinutes(1), LocalDateTime.now().plusHours(1),
+                LocalDateTime.now().minusSeconds(1)));
+
+        ResponseEntity<?> response = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void slowRequestKeepsItsKeyWhileItsLeaseIsRenewed() {
+        // Chạy đã một giờ nhưng node vẫn gia hạn lease: không phải key bị bỏ dở
+        table.put(rowKey(USER_ID, SCOPE, "k1"), new IdempotencyRecord(99L, USER_ID, SCOPE, "k1", "hash",
+                null, null, null, null, LocalDateTime.now().minusHours(1), LocalDateTime.now().plusHours(1),
+                LocalDateTime.now().plusSeconds(20)));
+
+        ResponseEntity<?> response = newNode().execute("k1", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(executions).hasValue(0);
+    }
+
+    @Test
+    void runningRequestsRenewTheirLease() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResponseEntity<?>> running = pool.submit(() -> service.execute("k1", USER_ID, SCOPE, request("A"), () -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return created();
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            IdempotencyRecord record = table.get(rowKey(USER_ID, SCOPE, "k1"));
+            record.setLeaseUntil(LocalDateTime.now().minusSeconds(1));
+
+            service.renewLeases();
+
+            assertThat(record.getLeaseUntil()).isAfter(LocalDateTime.now());
+            release.countDown();
+            assertThat(running.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void responseOfARequestWhoseKeyWasTakenOverIsNotStored() {
+        ResponseEntity<?> original = service.execute("k1", USER_ID, SCOPE, request("A"), () -> {
+            // Node khác coi key là bỏ dở, xoá và chạy lại request trong lúc request này còn chạy
+            table.clear();
+            newNode().execute("k1", USER_ID, SCOPE, request("A"), this::created, "X-Reservation-Token");
+            return created();
+        }, "X-Reservation-Token");
+
+        assertThat(original.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        ResponseEntity<?> replayed = service.execute("k1", USER_ID, SCOPE, request("A"), this::created);
+        assertThat(replayed.getHeaders().getFirst("X-Reservation-Token")).isEqualTo("token-1");
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirstRequestAndShareItsResponse() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseEntity<?>> first = pool.submit(() -> service.execute("k1", USER_ID, SCOPE, request("A"), () -> {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return created();
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ResponseEntity<?>> duplicate = pool.submit(() ->
+                    service.execute("k1", USER_ID, SCOPE, request("A"), this::created));
+            Thread.sleep(100);
+            assertThat(duplicate.isDone()).isFalse();
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.CREATED);
+            ResponseEntity<?> replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertThat(replayed.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+            assertThat(replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+            assertThat(executions).hasValue(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void withoutAKeyTheActionAlwaysRuns() {
+        service.execute(null, USER_ID, SCOPE, request("A"), this::created);
+        service.execute(" ", USER_ID, SCOPE, request("A"), this::created);
+
+        assertThat(executions).hasValue(2);
+        assertThat(table).isEmpty();
+    }
+
+    private IdempotencyService newNode() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return new IdempotencyService(repository, new ObjectMapper(), transactionManager, Duration.ofHours(24), 100);
+    }
+
+    private ResponseEntity<?> created() {
+        int execution = executions.incrementAndGet();
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header("X-Reservation-Token", "token-" + execution)
+                .body(Map.of("orderId", execution));
+    }
+
+    private static Map<String, String> request(String item) {
+        return Map.of("item", item);
+    }
+
+    private IdempotencyRecord byId(Long id) {
+        return table.values().stream().filter(record -> id.equals(record.getId())).findFirst().orElse(null);
+    }
+
+    private static String rowKey(Long userId, String scope, String key) {
+        return userId + ":" + scope + ":" + key;
+    }
+
+    private static IdempotencyRecord copy(IdempotencyRecord record) {
+        return new IdempotencyRecord(record.getId(), record.getUserId(), record.getScope(), record.getIdempotencyKey(),
+                record.getRequestHash(), record.getResponseStatus(), record.getResponseContentType(),
+                record.getResponseBody(), record.getResponseHeaders(), record.getCreatedAt(), record.getExpiresAt(),
+                record.getLeaseUntil());
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.tmdt.service.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import javax.persistence.EntityNotFoundException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.example.tmdt.exception.OperationNotAllowedException;
+import com.example.tmdt.model.InventoryJournalEntry;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.repository.HotSkuLeaseRepository;
+import com.example.tmdt.repository.InventoryJournalRepository;
+import com.example.tmdt.repository.ProductRepository;
+
+class HotSkuInventoryTest {
+
+    private static final Long PRODUCT_ID = 42L;
+
+    private ProductRepository productRepository;
+    private InventoryJournalRepository journalRepository;
+    private HotSkuLeaseRepository leaseRepository;
+    private HotSkuInventory inventory;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        journalRepository = mock(InventoryJournalRepository.class);
+        leaseRepository = mock(HotSkuLeaseRepository.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        inventory = new HotSkuInventory(productRepository, journalRepository, leaseRepository,
+                mock(ApplicationEventPublisher.class), transactionManager);
+
+        // Node này giành được lease của mọi SKU
+        when(leaseRepository.claim(any(), anyString(), any(), any())).thenReturn(1);
+        when(leaseRepository.renew(any(), anyString(), any())).thenReturn(1);
+
+        // Tồn kho trong bảng là 10, journal còn -3 chưa flush
+        when(productRepository.findStockById(PRODUCT_ID)).thenReturn(10);
+        when(journalRepository.sumDeltaByProductId(PRODUCT_ID)).thenReturn(-3L);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void counterStartsFromStockPlusUnflushedJournal() {
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isFalse();
+        assertThat(inventory.available(PRODUCT_ID)).isNull();
+
+        assertThat(inventory.tryReserve(PRODUCT_ID, 7)).isTrue();
+
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isTrue();
+        assertThat(inventory.available(PRODUCT_ID)).isZero();
+    }
+
+    @Test
+    void reservationIsJournaledAndKeptOnCommit() {
+        assertThat(inventory.tryReserve(PRODUCT_ID, 2)).isTrue();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        ArgumentCaptor<InventoryJournalEntry> entry = ArgumentCaptor.forClass(InventoryJournalEntry.class);
+        verify(journalRepository).save(entry.capture());
+        assertThat(entry.getValue().getProductId()).isEqualTo(PRODUCT_ID);
+        assertThat(entry.getValue().getDelta()).isEqualTo(-2);
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(5);
+    }
+
+    @Test
+    void rolledBackReservationGivesTheUnitsBack() {
+        assertThat(inventory.tryReserve(PRODUCT_ID, 4)).isTrue();
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(3);
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(7);
+    }
+
+    @Test
+    void shortReservationTakesNothingAndWritesNoJournal() {
+        assertThat(inventory.tryReserve(PRODUCT_ID, 8)).isFalse();
+
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(7);
+        verify(journalRepository, never()).save(any());
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).isEmpty();
+    }
+
+    @Test
+    void releasedUnitsComeBackOnlyAfterCommit() {
+        inventory.release(PRODUCT_ID, 5);
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(7);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(inventory.available(PRODUCT_ID)).isEqualTo(12);
+        verify(journalRepository, times(1)).save(any());
+    }
+
+    @Test
+    void unknownProductIsNotLoaded() {
+        when(productRepository.findStockById(99L)).thenReturn(null);
+
+        assertThatThrownBy(() -> inventory.tryReserve(99L, 1)).isInstanceOf(EntityNotFoundException.class);
+        assertThat(inventory.isLoaded(99L)).isFalse();
+    }
+
+    @Test
+    void skuLeasedByAnotherNodeIsRejectedWithoutLoadingACounter() {
+        when(leaseRepository.claim(eq(PRODUCT_ID), anyString(), any(), any())).thenReturn(0);
+
+        assertThatThrownBy(() -> inventory.tryReserve(PRODUCT_ID, 1)).isInstanceOf(HotSkuOwnedElsewhereException.class);
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isFalse();
+        verify(productRepository, never()).findStockById(PRODUCT_ID);
+        verify(journalRepository, never()).save(any());
+    }
+
+    @Test
+    void releaseOnANonOwnerNodeIsOnlyJournaled() {
+        when(leaseRepository.claim(eq(PRODUCT_ID), anyString(), any(), any())).thenReturn(0);
+
+        inventory.release(PRODUCT_ID, 2);
+
+        verify(journalRepository).save(any());
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isFalse();
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).isEmpty();
+    }
+
+    @Test
+    void counterIsDroppedWhenItsLeaseCannotBeRenewed() {
+        assertThat(inventory.tryReserve(PRODUCT_ID, 1)).isTrue();
+        inventory.renewLeases();
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isTrue();
+
+        when(leaseRepository.renew(eq(PRODUCT_ID), anyString(), any())).thenReturn(0);
+        inventory.renewLeases();
+
+        assertThat(inventory.isLoaded(PRODUCT_ID)).isFalse();
+        // Lấy lại lease thì counter được nạp lại từ DB, không dùng số cũ
+        assertThat(inventory.tryReserve(PRODUCT_ID, 1)).isTrue();
+        verify(leaseRepository, times(2)).claim(eq(PRODUCT_ID), anyString(), any(), any());
+        verify(productRepository, times(2)).findStockById(PRODUCT_ID);
+    }
+
+    @Test
+    void stockOfAHotSkuCannotBeEditedDirectly() {
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setStock(10);
+        product.setHotSku(true);
+
+        inventory.checkStockEdit(product, 10);
+        assertThatThrownBy(() -> inventory.checkStockEdit(product, 20))
+                .isInstanceOf(OperationNotAllowedException.class);
+
+        product.setHotSku(false);
+        inventory.checkStockEdit(product, 20);
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        }
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+    }
+}
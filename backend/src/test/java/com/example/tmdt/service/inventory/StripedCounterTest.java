@@ -0,0 +1,132 @@
+package com.example.tmdt.service.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class StripedCounterTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void startsWithTheInitialStockSpreadOverTheCells() {
+        assertThat(new StripedCounter(1001).sum()).isEqualTo(1001);
+        assertThat(new StripedCounter(0).sum()).isZero();
+        assertThat(new StripedCounter(-5).sum()).isZero();
+    }
+
+    @Test
+    void takesAcrossCellsButNeverMoreThanIsLeft() {
+        StripedCounter counter = new StripedCounter(10);
+
+        assertThat(counter.tryTake(11)).isFalse();
+        assertThat(counter.sum()).isEqualTo(10);
+        // 10 đơn vị nằm rải trên nhiều cell: lấy hết trong một lần vẫn phải được
+        assertThat(counter.tryTake(10)).isTrue();
+        assertThat(counter.sum()).isZero();
+        assertThat(counter.tryTake(1)).isFalse();
+
+        counter.add(3);
+        assertThat(counter.tryTake(3)).isTrue();
+        assertThat(counter.sum()).isZero();
+    }
+
+    @Test
+    void concurrentTakesNeverSellMoreThanTheStock() throws Exception {
+        int stock = 10_000;
+        StripedCounter counter = new StripedCounter(stock);
+        List<Long> sold = runConcurrently(() -> {
+            long units = 0;
+            int quantity;
+            while (true) {
+                quantity = ThreadLocalRandom.current().nextInt(1, 4);
+                if (!counter.tryTake(quantity)) {
+                    // Có thể vẫn còn ít hơn quantity: thử nốt với 1 đơn vị
+                    if (!counter.tryTake(1)) {
+                        return units;
+                    }
+                    quantity = 1;
+                }
+                units += quantity;
+            }
+        });
+
+        assertThat(sold.stream().mapToLong(Long::longValue).sum()).isEqualTo(stock);
+        assertThat(counter.sum()).isZero();
+    }
+
+    @Test
+    void concurrentTakesAndReturnsKeepTheCountConsistent() throws Exception {
+        int stock = 500;
+        StripedCounter counter = new StripedCounter(stock);
+        List<Long> held = runConcurrently(() -> {
+            long units = 0;
+            for (int i = 0; i < 20_000; i++) {
+                int quantity = ThreadLocalRandom.current().nextInt(1, 6);
+                if (counter.tryTake(quantity)) {
+                    units += quantity;
+                }
+                // Trả lại một phần như đơn bị hủy
+                if (units > 0 && ThreadLocalRandom.current().nextBoolean()) {
+                    long back = ThreadLocalRandom.current().nextLong(1, units + 1);
+                    counter.add(back);
+                    units -= back;
+                }
+            }
+            return units;
+        });
+
+        assertThat(counter.sum() + held.stream().mapToLong(Long::longValue).sum()).isEqualTo(stock);
+    }
+
+    @Test
+    void racingPartialTakesDoNotBothFailWhileTheStockCoversOne() throws Exception {
+        // Mỗi lần lấy lớn hơn phần của một cell nên phải gom từ nhiều cell
+        int quantity = 7;
+        for (int round = 0; round < 200; round++) {
+            StripedCounter counter = new StripedCounter(quantity * THREADS);
+            List<Long> sold = runConcurrently(() -> {
+                long units = 0;
+                while (counter.tryTake(quantity)) {
+                    units += quantity;
+                }
+                return units;
+            });
+
+            assertThat(sold.stream().mapToLong(Long::longValue).sum()).isEqualTo(quantity * THREADS);
+            assertThat(counter.sum()).isZero();
+        }
+    }
+
+    private static List<Long> runConcurrently(Callable<Long> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<Long> results = new ArrayList<>();
+            for (Future<Long> future : futures) {
+                results.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.tmdt.service.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.example.tmdt.event.OrderLifecycleEvent;
+import com.example.tmdt.model.OutboxEvent;
+import com.example.tmdt.repository.OutboxEventRepository;
+import com.example.tmdt.repository.ProcessedOutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class OutboxDispatcherTest {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private OutboxEventRepository outboxRepository;
+    private ProcessedOutboxEventRepository processedRepository;
+    private RecordingConsumer notifications;
+    private RecordingConsumer coupons;
+    private OutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository = mock(OutboxEventRepository.class);
+        processedRepository = mock(ProcessedOutboxEventRepository.class);
+        when(processedRepository.markProcessed(anyLong(), anyString(), any())).thenReturn(1);
+        notifications = new RecordingConsumer("notifications");
+        coupons = new RecordingConsumer("coupons");
+        dispatcher = new OutboxDispatcher(outboxRepository, processedRepository,
+                Arrays.asList(notifications, coupons), objectMapper, transactionManager(), 2, MAX_ATTEMPTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void deliversEventToEveryConsumerAndMarksItDispatched() throws Exception {
+        pending(event(1L, 100L, 0));
+
+        dispatcher.dispatchPending();
+
+        assertThat(notifications.orderIds).containsExactly(100L);
+        assertThat(coupons.orderIds).containsExactly(100L);
+        verify(outboxRepository).markDispatched(eq(1L), any());
+        verify(outboxRepository, never()).markFailed(anyLong(), any(), any());
+    }
+
+    @Test
+    void failureSchedulesRetryAndHoldsBackLaterEventsOfTheSameOrder() throws Exception {
+        OutboxEvent failing = event(1L, 100L, 0);
+        OutboxEvent sameOrder = event(2L, 100L, 0);
+        OutboxEvent otherOrder = event(3L, 200L, 0);
+        coupons.failingEventIds.add(1L);
+        pending(failing, sameOrder, otherOrder);
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.dispatchPending();
+
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).markFailed(eq(1L), nextAttempt.capture(), eq("consumer failed"));
+        // Lần thử đầu: chờ 2^1 giây
+        assertThat(nextAttempt.getValue()).isCloseTo(before.plusSeconds(2), within(1, ChronoUnit.SECONDS));
+        verify(outboxRepository, never()).markDispatched(eq(1L), any());
+        verify(outboxRepository, never()).markDispatched(eq(2L), any());
+        verify(outboxRepository).markDispatched(eq(3L), any());
+        assertThat(notifications.eventIds).doesNotContain(2L);
+        assertThat(coupons.eventIds).contains(3L);
+    }
+
+    @Test
+    void backoffDoublesPerAttemptUpToTheCap() throws Exception {
+        coupons.failingEventIds.add(1L);
+        coupons.failingEventIds.add(2L);
+        pending(event(1L, 100L, 3), event(2L, 200L, 1000));
+
+        LocalDateTime before = LocalDateTime.now();
+        OutboxDispatcher neverParks = new OutboxDispatcher(outboxRepository, processedRepository,
+                Collections.singletonList(coupons), objectMapper, transactionManager(), 1, Integer.MAX_VALUE);
+        try {
+            neverParks.dispatchPending();
+        } finally {
+            neverParks.shutdown();
+        }
+
+        ArgumentCaptor<LocalDateTime> fourthAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).markFailed(eq(1L), fourthAttempt.capture(), any());
+        assertThat(fourthAttempt.getValue()).isCloseTo(before.plusSeconds(16), within(1, ChronoUnit.SECONDS));
+        ArgumentCaptor<LocalDateTime> capped = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxRepository).markFailed(eq(2L), capped.capture(), any());
+        assertThat(capped.getValue()).isCloseTo(before.plusSeconds(600), within(1, ChronoUnit.SECONDS));
+    }
+
+    @Test
+    void redeliverySkipsConsumersThatAlreadyHandledTheEvent() throws Exception {
+        when(processedRepository.markProcessed(eq(1L), eq("notifications"), any())).thenReturn(0);
+        pending(event(1L, 100L, 2));
+
+        dispatcher.dispatchPending();
+
+        assertThat(notifications.eventIds).isEmpty();
+        assertThat(coupons.eventIds).containsExactly(1L);
+        verify(outboxRepository).markDispatched(eq(1L), any());
+    }
+
+    @Test
+    void eventIsParkedOnItsLastAttempt() throws Exception {
+        coupons.failingEventIds.add(1L);
+        pending(event(1L, 100L, MAX_ATTEMPTS - 1));
+
+        dispatcher.dispatchPending();
+
+        verify(outboxRepository).markParked(eq(1L), any(), eq("consumer failed"));
+        verify(outboxRepository, never()).markFailed(anyLong(), any(), any());
+        verify(outboxRepository, never()).markDispatched(anyLong(), any());
+    }
+
+    @Test
+    void unreadablePayloadIsRetriedWithoutCallingConsumers() throws Exception {
+        OutboxEvent broken = event(1L, 100L, 0);
+        broken.setPayload("{not json");
+        when(outboxRepository.findPending(any(), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(broken), Collections.emptyList());
+
+        dispatcher.dispatchPending();
+
+        assertThat(notifications.eventIds).isEmpty();
+        verify(outboxRepository).markFailed(eq(1L), any(), any());
+    }
+
+    private void pending(OutboxEvent... events) {
+        when(outboxRepository.findPending(any(), any(Pageable.class)))
+                .thenReturn(Arrays.asList(events), Collections.emptyList());
+    }
+
+    private OutboxEvent event(Long id, Long orderId, int attempts) throws Exception {
+        OrderLifecycleEvent payload = new OrderLifecycleEvent();
+        payload.setType(OrderLifecycleEvent.Type.ORDER_CREATED);
+        payload.setOrderId(orderId);
+        // Mang id của sự kiện trong couponCode để consumer ghi lại đã nhận sự kiện nào
+        payload.setCouponCode(String.valueOf(id));
+
+        OutboxEvent event = new OutboxEvent();
+        event.setId(id);
+        event.setEventType(payload.getType().name());
+        event.setAggregateId(orderId);
+        event.setPayload(objectMapper.writeValueAsString(payload));
+        event.setAttempts(attempts);
+        event.setNextAttemptAt(LocalDateTime.now());
+        event.setCreatedAt(LocalDateTime.now());
+        return event;
+    }
+
+    private static PlatformTransactionManager transactionManager() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        return transactionManager;
+    }
+
+    private static class RecordingConsumer implements OrderEventConsumer {
+
+        private final String name;
+        private final List<Long> eventIds = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        private final Set<Long> failingEventIds = Collections.synchronizedSet(new HashSet<>());
+
+        RecordingConsumer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void handle(OrderLifecycleEvent event) {
+            Long eventId = Long.valueOf(event.getCouponCode());
+            if (failingEventIds.contains(eventId)) {
+                throw new IllegalStateException("consumer failed");
+            }
+            eventIds.add(eventId);
+            orderIds.add(event.getOrderId());
+        }
+    }
+}
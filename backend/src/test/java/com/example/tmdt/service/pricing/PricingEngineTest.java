@@ -0,0 +1,113 @@
+package com.example.tmdt.service.pricing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.tmdt.model.Coupon;
+import com.example.tmdt.model.Product;
+import com.example.tmdt.model.User;
+import com.example.tmdt.payload.request.OrderItemRequest;
+import com.example.tmdt.payload.request.OrderRequest;
+import com.example.tmdt.service.CouponService;
+import com.example.tmdt.service.ProductService;
+
+class PricingEngineTest {
+
+    private static final Long PRODUCT_ID = 7L;
+
+    private ProductService productService;
+    private CouponService couponService;
+    private PricingEngine pricingEngine;
+    private User user;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        productService = mock(ProductService.class);
+        couponService = mock(CouponService.class);
+        pricingEngine = new PricingEngine(productService, couponService, Duration.ofMinutes(15));
+
+        user = new User("buyer", "buyer@example.com", "secret", "Buyer");
+        user.setId(1L);
+        product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setName("Phone");
+        product.setPrice(100_000.0);
+        when(productService.getProductMap(any())).thenReturn(Collections.singletonMap(PRODUCT_ID, product));
+    }
+
+    @Test
+    void reusedQuoteKeepsItsPricesButRevalidatesTheCoupon() {
+        when(couponService.findValidCoupon(eq("SALE10"), eq(user), anyDouble()))
+                .thenReturn(Optional.of(percentCoupon("SALE10", 10)))
+                .thenReturn(Optional.empty());
+        Quote first = pricingEngine.quote(user, request(2, "SALE10", null));
+
+        // Giá sản phẩm đổi sau khi báo giá: đơn vẫn theo giá đã báo
+        product.setPrice(150_000.0);
+        Quote reused = pricingEngine.quote(user, request(2, "SALE10", first.getId()));
+
+        assertThat(first.getTotal()).isEqualByComparingTo("180000");
+        assertThat(reused.getId()).isEqualTo(first.getId());
+        assertThat(reused.getSubtotal()).isEqualByComparingTo("200000");
+        assertThat(reused.getCoupon()).isNull();
+        assertThat(reused.getDiscountAmount()).isEqualByComparingTo("0");
+        assertThat(reused.getTotal()).isEqualByComparingTo("200000");
+        verify(productService, times(1)).getProductMap(any());
+        verify(couponService, times(2)).findValidCoupon(eq("SALE10"), eq(user), anyDouble());
+    }
+
+    @Test
+    void quoteIsNotReusedForADifferentCart() {
+        Quote first = pricingEngine.quote(user, request(1, null, null));
+        Quote other = pricingEngine.quote(user, request(3, null, first.getId()));
+
+        assertThat(other.getId()).isNotEqualTo(first.getId());
+        assertThat(other.getTotal()).isEqualByComparingTo("300000");
+    }
+
+    @Test
+    void batchPricingUsesTheProductsItIsGiven() {
+        Map<Long, Product> products = Collections.singletonMap(PRODUCT_ID, product);
+
+        Quote quote = pricingEngine.quote(user, request(1, null, null), products);
+
+        assertThat(quote.getTotal()).isEqualByComparingTo("100000");
+        verify(productService, never()).getProductMap(any());
+    }
+
+    private static OrderRequest request(int quantity, String couponCode, String quoteId) {
+        OrderItemRequest item = new OrderItemRequest();
+        item.setProductId(PRODUCT_ID);
+        item.setQuantity(quantity);
+        OrderRequest request = new OrderRequest();
+        request.setItems(Collections.singletonList(item));
+        request.setCouponCode(couponCode);
+        request.setQuoteId(quoteId);
+        return request;
+    }
+
+    private static Coupon percentCoupon(String code, int percent) {
+        Coupon coupon = new Coupon();
+        coupon.setCode(code);
+        coupon.setDiscountType(Coupon.DiscountType.PERCENTAGE);
+        coupon.setDiscountValue(BigDecimal.valueOf(percent));
+        return coupon;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.tmdt.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.tmdt.event.ProductChangedEvent;
+import com.example.tmdt.event.ProductSnapshot;
+import com.example.tmdt.repository.ProductRepository;
+
+class ProductSearchIndexTest {
+
+    private ProductRepository productRepository;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        index = new ProductSearchIndex(productRepository);
+    }
+
+    @Test
+    void changeCommittedWhileRebuildingIsNotLost() {
+        when(productRepository.findAllSnapshots()).thenAnswer(invocation -> {
+            // Sản phẩm 2 được sửa sau khi truy vấn đã đọc bản cũ của nó
+            index.onProductChanged(ProductChangedEvent.saved(snapshot(2L, "Galaxy phone")));
+            return Arrays.asList(snapshot(1L, "iPhone"), snapshot(2L, "Nokia phone"));
+        });
+
+        index.rebuild();
+
+        assertThat(index.findProductIdsByKeyword("galaxy")).containsExactly(2L);
+        assertThat(index.findProductIdsByKeyword("nokia")).isEmpty();
+    }
+
+    @Test
+    void deletedProductsAreCompactedAway() {
+        List<ProductSnapshot> products = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            products.add(snapshot(id, id % 2 == 0 ? "Laptop " + id : "Phone " + id));
+        }
+        when(productRepository.findAllSnapshots()).thenReturn(products);
+        index.rebuild();
+
+        for (long id = 1; id <= 400; id++) {
+            index.onProductChanged(ProductChangedEvent.deleted(id));
+        }
+
+        assertThat(index.findProductIdsByKeyword("laptop")).hasSize(300).doesNotContain(400L).contains(1000L);
+        assertThat(index.findProductIdsByKeyword("phone")).hasSize(300).doesNotContain(399L).contains(999L);
+        assertThat(index.getSnapshots(Arrays.asList(1L, 401L, 1000L)))
+                .extracting(ProductSnapshot::getId).containsExactly(401L, 1000L);
+    }
+
+    @Test
+    void repeatedQueriesRankTheSame() {
+        when(productRepository.findAllSnapshots()).thenReturn(Arrays.asList(
+                snapshot(1L, "phone case"), snapshot(2L, "phone phone"), snapshot(3L, "case")));
+        index.rebuild();
+
+        List<Long> first = index.findProductIdsByKeyword("phone");
+        index.findProductIdsByKeyword("case");
+
+        assertThat(index.findProductIdsByKeyword("phone")).isEqualTo(first).containsExactly(2L, 1L);
+    }
+
+    private static ProductSnapshot snapshot(Long id, String name) {
+        return new ProductSnapshot(id, name, null, 1L, "Electronics", 100_000.0, 0.0, 4.0, 10, 0, null);
+    }
+}
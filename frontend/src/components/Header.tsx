@@ -219,6 +219,10 @@ const Header: React.FC = () => {
 
   const handleSuggestionClick = (suggestion: any) => {
     setShowSuggestions(false);
+    if (suggestion.type === 'category') {
+      navigate(`/products?category=${encodeURIComponent(suggestion.name)}`);
+      return;
+    }
     navigate(`/products/${suggestion.id}`);
   };
   
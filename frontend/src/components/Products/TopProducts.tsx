@@ -30,6 +30,7 @@ interface TopProductsProps {
   useMonthlyStats?: boolean; // thêm tham số để lựa chọn top rating hoặc top selling
   month?: number; // tham số tháng (không bắt buộc)
   year?: number; // tham số năm (không bắt buộc)
+  relatedToProductId?: string; // lấy sản phẩm thường được mua cùng sản phẩm này
 }
 
 const TopProducts: React.FC<TopProductsProps> = ({ 
@@ -37,7 +38,8 @@ const TopProducts: React.FC<TopProductsProps> = ({
   maxItems = 8,
   useMonthlyStats = false,
   month,
-  year
+  year,
+  relatedToProductId
 }) => {
   const [products, setProducts] = useState<Product[]>([]);
   const [loading, setLoading] = useState(true);
@@ -60,7 +62,9 @@ const TopProducts: React.FC<TopProductsProps> = ({
         setLoading(true);
         
         let response;
-        if (useMonthlyStats) {
+        if (relatedToProductId) {
+          response = await ProductService.getRelatedProducts(relatedToProductId, maxItems);
+        } else if (useMonthlyStats) {
           // Lấy sản phẩm bán chạy theo tháng
           response = await ProductService.getTopProductsByMonth(currentMonth, currentYear, maxItems);
           console.log(`Sản phẩm bán chạy tháng ${currentMonth}/${currentYear}:`, response.data);
@@ -91,7 +95,7 @@ const TopProducts: React.FC<TopProductsProps> = ({
     };
 
     fetchTopProducts();
-  }, [maxItems, useMonthlyStats, currentMonth, currentYear]);
+  }, [maxItems, useMonthlyStats, currentMonth, currentYear, relatedToProductId]);
 
   const handleProductClick = (productId: string) => {
     navigate(`/products/${productId}`);
@@ -1,4 +1,5 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
+import { v4 as uuidv4 } from 'uuid';
 import { useNavigate } from 'react-router-dom';
 import {
   Box,
@@ -315,6 +316,9 @@ const Checkout: React.FC = (): JSX.Element => {
     return `${deliveryInfo.address}, ${deliveryInfo.city}, ${deliveryInfo.zipCode}`;
   };
 
+  // Một key cho mỗi lần đặt hàng: bấm lại sau lỗi mạng không tạo thêm đơn
+  const idempotencyKey = useRef<string>(uuidv4());
+
   const handlePlaceOrder = async () => {
     try {
       setIsSubmitting(true);
@@ -334,7 +338,8 @@ const Checkout: React.FC = (): JSX.Element => {
       };
       
       if (paymentMethod === 'cod' || paymentMethod === 'account_balance') {
-        const response = await OrderService.createOrder(orderData);
+        const response = await OrderService.createOrder(orderData, idempotencyKey.current);
+        idempotencyKey.current = uuidv4();
         console.log("refreshHeaderNotifications đang chạy...");
         try {
           refreshHeaderNotifications();
@@ -347,7 +352,14 @@ const Checkout: React.FC = (): JSX.Element => {
       } else if (paymentMethod === 'credit') {
         const paymentData = { ...orderData };
         localStorage.setItem('pendingOrder', JSON.stringify(paymentData));
-        const respon = await OrderService.createPay(paymentData);
+        const respon = await OrderService.createPay(paymentData, idempotencyKey.current);
+        // Hàng được giữ trong lúc thanh toán, gửi lại token khi tạo đơn
+        // Báo giá cũng được gửi lại để đơn hàng có đúng số tiền đã thanh toán
+        const reservationToken = respon.headers['x-reservation-token'];
+        const quoteId = respon.headers['x-quote-id'];
+        if (reservationToken || quoteId) {
+          localStorage.setItem('pendingOrder', JSON.stringify({ ...paymentData, reservationToken, quoteId }));
+        }
         const paymentUrl = respon.data;
         window.location.href = paymentUrl;
       }
@@ -40,7 +40,8 @@ const PaySuccess: React.FC = () => {
         if (paymentStatus === '00' && pendingOrder && !orderAlreadyCreated) {
           const orderData = JSON.parse(pendingOrder);
 
-          const response = await OrderService.createOrder(orderData);
+          // Token giữ hàng là duy nhất cho mỗi lần thanh toán nên dùng luôn làm idempotency key
+          const response = await OrderService.createOrder(orderData, orderData.reservationToken);
 
           setHasCreatedOrder(true);
           setOrderId(response.data.id.toString());
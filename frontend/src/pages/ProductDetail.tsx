@@ -1297,7 +1297,7 @@ const ProductDetail: React.FC = () => {
 
       {/* Related Products */}
       <Box mt={6}>
-        <TopProducts title="Sản Phẩm Tương Tự" maxItems={4} />
+        <TopProducts title="Sản Phẩm Tương Tự" maxItems={4} relatedToProductId={productId} />
       </Box>
 
       {/* Snackbar for notifications */}
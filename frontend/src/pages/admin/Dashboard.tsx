@@ -136,28 +136,29 @@ interface ProductData {
   [key: string]: any; // Cho phép các trường khác
 }
 
-// Định nghĩa interface cho dữ liệu dashboard
+// Định nghĩa interface cho dữ liệu dashboard (số liệu tổng hợp sẵn ở backend)
 interface DashboardApiResponse {
   totalUsers: number;
   totalOrders: number;
   totalProducts: number;
   totalRevenue: number;
-  totalOrderItem: totalOrderItem[];
+  ordersByStatus: Record<string, number>;
+  monthlyOrders: number;
+  monthlyRevenue: number;
+  monthlyOrdersByStatus: Record<string, number>;
+  topProducts: MonthlyProductSales[];
   recentOrders: OrderData[];
-  productPerformance: ProductData[];
   [key: string]: any; // Cho phép các trường khác
 }
 
-interface totalOrderItem {
-  id: string;
-  date?: string;
+// Doanh số một sản phẩm trong tháng
+interface MonthlyProductSales {
+  id: number;
   productName?: string;
-  orderId?: string;
   category?: string;
   imageUrl?: string;
-  stock?: number;
   quantity?: number;
-  [key: string]: any;
+  revenue?: number;
 }
 
 // Interface cho sản phẩm bán chạy
@@ -179,8 +180,7 @@ const AdminDashboard: React.FC = () => {
     recentOrders: [],
     topProducts: [],
     stats: {},
-    salesData: [],
-    totalOrderItem: []
+    salesData: []
   });
   console.log("dashboardData",dashboardData);
   const [notifications, setNotifications] = useState<Notification[]>([]);
@@ -233,115 +233,43 @@ const AdminDashboard: React.FC = () => {
       setLoading(true);
       setError(null);
       
-      console.log("Fetching dashboard data...");
-      console.log(`Filters: Month ${selectedMonth}, Year ${selectedYear}`);
+      // Backend trả về số liệu đã tổng hợp sẵn cho tháng được chọn
+      const dashboardResponse = await AdminService.getDashboardStats(selectedYear, selectedMonth) as DashboardApiResponse;
       
-      // Lấy dữ liệu từ backend qua endpoint /admin/dashboard
-      const dashboardResponse = await AdminService.getDashboardStats() as DashboardApiResponse;
-      
-      console.log("Dashboard response:", dashboardResponse);
-      console.log("abc",dashboardResponse.totalOrderItem)
-      // Lấy danh sách đơn hàng
-      let recentOrders: OrderData[] = Array.isArray(dashboardResponse.recentOrders) 
+      const recentOrders: OrderData[] = Array.isArray(dashboardResponse.recentOrders) 
         ? dashboardResponse.recentOrders 
         : [];
         
-      // Lấy danh sách sản phẩm bán chạy
-      const topProducts: totalOrderItem[] = Array.isArray(dashboardResponse.totalOrderItem) 
-        ? dashboardResponse.totalOrderItem
+      // Sản phẩm bán chạy trong tháng, đã sắp xếp theo số lượng bán giảm dần
+      const topProducts: MonthlyProductSales[] = Array.isArray(dashboardResponse.topProducts) 
+        ? dashboardResponse.topProducts
         : [];
-        // Bước 1: Lọc sản phẩm theo tháng
-      const filteredOrdersItem = topProducts.filter((orderItem: totalOrderItem) => {
-        if (!orderItem.date) return false;
-
-        const orderDate = new Date(orderItem.date);
-          return (
-             orderDate.getMonth() + 1 === selectedMonth &&
-              orderDate.getFullYear() === selectedYear
-          );
-        });
-
-// Bước 2: Nhóm theo productName và cộng quantity
-      const productSalesMap: Record<string, { quantity: number; category?: string; imageUrl?: string }> = {};
-
-      filteredOrdersItem.forEach((item) => {
-        const name = item.productName ?? 'Unknown';
-        const quantity = item.quantity ?? 0;
-        
-        if (!productSalesMap[name]) {
-          productSalesMap[name] = {
-            quantity: 0,
-            category: item.category,
-            imageUrl: item.imageUrl
-          };
-        }
-        productSalesMap[name].quantity += quantity;
-      });
-
-// Bước 3: Chuyển sang mảng và sắp xếp theo số lượng bán giảm dần
-      const saleByProduct: TopProductSales[] = Object.entries(productSalesMap)
-        .map(([productName, data]) => ({
-          productName,
-          quantitySold: data.quantity,
-          category: data.category,
-          imageUrl: data.imageUrl
-        }))
-        .sort((a, b) => b.quantitySold - a.quantitySold);
-
-      console.log(`Sản phẩm bán trong ${selectedMonth}/${selectedYear}:`, saleByProduct);
+      const saleByProduct: TopProductSales[] = topProducts.map((product) => ({
+        productName: product.productName ?? 'Unknown',
+        quantitySold: product.quantity ?? 0,
+        category: product.category,
+        imageUrl: product.imageUrl
+      }));
       
-      // Cập nhật state cho sản phẩm bán chạy
       setTopProductsData(saleByProduct);
       setCurrentPage(1); // Reset về trang đầu khi thay đổi bộ lọc
       
-      // console.log("Raw data:", { recentOrders, topProducts });
-      
-      // Lọc đơn hàng theo tháng/năm được chọn
-      const filteredOrders: OrderData[] = recentOrders.filter((order: OrderData) => {
-        if (!order.date) return false;
-        
-        const orderDate = new Date(order.date);
-        return orderDate.getMonth() + 1 === selectedMonth && 
-               orderDate.getFullYear() === selectedYear;
-      });
+      // Doanh thu từ các đơn hàng đã giao (DELIVERED) trong tháng đã chọn
+      const monthlyRevenue = safeParseFloat(dashboardResponse.monthlyRevenue);
+      setFilteredDeliveredRevenue(monthlyRevenue);
       
-      console.log(`Filtered orders for ${selectedMonth}/${selectedYear}:`, filteredOrders);
-      
-      // Tính tổng số đơn hàng theo bộ lọc
-      const totalFilteredOrders = filteredOrders.length;
-      
-      // Tính toán doanh thu từ các đơn hàng đã giao (DELIVERED) trong tháng đã chọn
-      let filteredRevenue = 0;
-      
-      // Chỉ tính doanh thu từ đơn hàng đã giao (DELIVERED)
-      const deliveredOrders: OrderData[] = filteredOrders.filter((order: OrderData) => 
-        order.status && order.status.toUpperCase() === 'DELIVERED');
-        
-      console.log(`Delivered orders for ${selectedMonth}/${selectedYear}:`, deliveredOrders);
-      
-      // Tính tổng doanh thu từ đơn hàng đã giao
-      filteredRevenue = deliveredOrders.reduce((total: number, order: OrderData) => {
-        return total + safeParseFloat(order.amount);
-      }, 0);
-      
-      console.log(`Revenue for ${selectedMonth}/${selectedYear}:`, filteredRevenue);
-      
-      // Cập nhật revenue hiển thị
-      setFilteredDeliveredRevenue(filteredRevenue);
-      
-      // Dữ liệu cơ bản từ API - hiển thị dữ liệu đã lọc thay vì tổng số
       const stats = {
-        totalOrders: totalFilteredOrders, // Chỉ đếm đơn hàng trong tháng đã lọc
+        totalOrders: dashboardResponse.monthlyOrders || 0, // Chỉ đếm đơn hàng trong tháng đã lọc
         totalUsers: dashboardResponse.totalUsers || 0,
         totalProducts: dashboardResponse.totalProducts || 0,
-        totalRevenue: filteredRevenue // Chỉ hiển thị doanh thu trong tháng đã lọc
+        totalRevenue: monthlyRevenue // Chỉ hiển thị doanh thu trong tháng đã lọc
       };
       
       // Tạo dữ liệu cho biểu đồ doanh thu
       const monthlyData = [
         {
           month: `T${selectedMonth}`,
-          sales: filteredRevenue,
+          sales: monthlyRevenue,
           date: `${selectedMonth.toString().padStart(2, '0')}/${selectedYear}`
         }
       ];
@@ -349,16 +277,11 @@ const AdminDashboard: React.FC = () => {
       setFilteredSalesData(monthlyData);
       
       // Tạo dữ liệu cho biểu đồ trạng thái đơn hàng
-      if (filteredOrders.length > 0) {
-        const statusCounts: Record<string, number> = {};
-        
-        filteredOrders.forEach((order: OrderData) => {
-          const status = order.status?.toUpperCase() || 'UNKNOWN';
-          statusCounts[status] = (statusCounts[status] || 0) + 1;
-        });
-        
-        const statusData = Object.entries(statusCounts).map(([name, value]) => ({ name, value }));
-        setOrderStatusData(statusData);
+      const statusCounts = Object.entries(dashboardResponse.monthlyOrdersByStatus || {})
+        .filter(([, value]) => value > 0)
+        .map(([name, value]) => ({ name, value }));
+      if (statusCounts.length > 0) {
+        setOrderStatusData(statusCounts);
       } else {
         // Nếu không có đơn hàng nào cho tháng này, sử dụng dữ liệu trống
         setOrderStatusData([
@@ -371,7 +294,7 @@ const AdminDashboard: React.FC = () => {
       // Cập nhật dữ liệu dashboard
       setDashboardData({
         stats,
-        recentOrders: filteredOrders,
+        recentOrders,
         topProducts,
         salesData: monthlyData
       });
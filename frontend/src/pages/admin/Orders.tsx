@@ -41,6 +41,8 @@ import { format, parse, isValid, startOfMonth, endOfMonth } from 'date-fns';
 import AdminService from '../../services/AdminService';
 import { formatCurrency } from '../../utils/formatters';
 
+const ORDER_PAGE_SIZE = 100;
+
 interface Order {
   id: string;
   userId: string;
@@ -87,6 +89,9 @@ const AdminOrders: React.FC = () => {
   const [itemsPerPage] = useState(10);
   const [paginatedOrders, setPaginatedOrders] = useState<any[]>([]);
   const [totalPages, setTotalPages] = useState(0);
+  // Backend trả đơn theo trang keyset (mới nhất trước): nextCursor để tải các đơn cũ hơn
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
+  const [loadingMore, setLoadingMore] = useState(false);
 
   // Hàm dịch trạng thái đơn hàng
   const getStatusTranslation = (status: string): string => {
@@ -149,10 +154,14 @@ const AdminOrders: React.FC = () => {
     setCurrentPage(value);
   };
 
-  const fetchOrders = async () => {
+  const fetchOrders = async (cursor?: string) => {
     try {
-      setLoading(true);
-      const response = await AdminService.getAllOrders();
+      if (cursor) {
+        setLoadingMore(true);
+      } else {
+        setLoading(true);
+      }
+      const response = await AdminService.getAllOrders({ size: ORDER_PAGE_SIZE, cursor });
       
       console.log('Raw response from AdminService:', response);
       
@@ -276,8 +285,10 @@ const AdminOrders: React.FC = () => {
           })
         );
         
-        setOrders(ordersWithRefundStatus);
-        setFilteredOrders(ordersWithRefundStatus); // Initially set filtered orders to all orders
+        const allOrders = cursor ? [...orders, ...ordersWithRefundStatus] : ordersWithRefundStatus;
+        setOrders(allOrders);
+        setFilteredOrders(allOrders); // Initially set filtered orders to all orders
+        setNextCursor(response.data.nextCursor || null);
       } else {
         console.warn('No data in response:', response);
         setOrders([]);
@@ -288,10 +299,14 @@ const AdminOrders: React.FC = () => {
     } catch (err: any) {
       console.error('Error fetching orders:', err);
       setError(err.response?.data?.message || 'Không thể tải danh sách đơn hàng');
-      setOrders([]);
-      setFilteredOrders([]);
+      if (!cursor) {
+        setOrders([]);
+        setFilteredOrders([]);
+        setNextCursor(null);
+      }
     } finally {
       setLoading(false);
+      setLoadingMore(false);
     }
   };
 
@@ -778,6 +793,14 @@ const AdminOrders: React.FC = () => {
         </Box>
       )}
 
+      {nextCursor && (
+        <Box sx={{ display: 'flex', justifyContent: 'center', mt: 2 }}>
+          <Button variant="outlined" onClick={() => fetchOrders(nextCursor)} disabled={loadingMore}>
+            {loadingMore ? 'Đang tải...' : 'Tải thêm đơn hàng cũ hơn'}
+          </Button>
+        </Box>
+      )}
+
       {/* Order Details Dialog */}
       <Dialog open={openDialog} onClose={handleCloseDialog} maxWidth="md" fullWidth>
         {selectedOrder && (
@@ -26,10 +26,10 @@ class AdminService {
   //   }
   // }
 
-  async getDashboardStats() {
+  async getDashboardStats(year?: number, month?: number) {
     try {
       console.log('Fetching dashboard stats');
-      const response = await api.get('/admin/dashboard');
+      const response = await api.get('/admin/dashboard', { params: { year, month } });
       console.log('Dashboard stats response:', response.data);
       return response.data;
     } catch (error: any) {
@@ -2,6 +2,9 @@ import api from './api';
 import { API_URL } from '../config';
 import { Order, OrderData, OrderSummary } from '../types/order';
 
+const idempotencyHeaders = (idempotencyKey?: string) =>
+  idempotencyKey ? { headers: { 'Idempotency-Key': idempotencyKey } } : undefined;
+
 // Create a named instance before exporting
 const OrderService = {
   getOrders() {
@@ -12,11 +15,12 @@ const OrderService = {
     return api.get<Order>(`/orders/${id}`);
   },
 
-  createOrder(orderData: OrderData) {
-    return api.post<Order>(`/orders`, orderData);
+  // Gửi lại cùng idempotencyKey khi retry để server trả về kết quả cũ thay vì tạo đơn mới
+  createOrder(orderData: OrderData, idempotencyKey?: string) {
+    return api.post<Order>(`/orders`, orderData, idempotencyHeaders(idempotencyKey));
   },
-  createPay(orderData: OrderData) {
-    return api.post<string>(`/orders/pay`, orderData);
+  createPay(orderData: OrderData, idempotencyKey?: string) {
+    return api.post<string>(`/orders/pay`, orderData, idempotencyHeaders(idempotencyKey));
   },
   cancelOrder(id: string | number) {
     return api.put(`/orders/${id}/cancel`, {});
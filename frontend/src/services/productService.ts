@@ -38,6 +38,13 @@ const ProductService = {
     return api.get<Product>(`${API_URL}/products/${id}`);
   },
 
+  // Lấy nhiều sản phẩm trong một request: { content, missingIds }
+  getProductsByIds(ids: Array<string | number>) {
+    return api.get(`${API_URL}/products/batch`, {
+      params: { ids: ids.join(',') }
+    });
+  },
+
 
   searchProductsSafe(params: Record<string, string>) {
     console.log('Searching products with params:', params);
@@ -105,12 +112,16 @@ const ProductService = {
   },
 
   // Phương thức để lấy gợi ý tìm kiếm
+  // Đếm số sản phẩm theo danh mục / khoảng giá / rating / tồn kho cho bộ lọc hiện tại
+  getFacets(params: Record<string, string | number | boolean>) {
+    return api.get(`${API_URL}/products/facets`, { params });
+  },
+
   getSearchSuggestions(term: string) {
-    return api.get(`${API_URL}/products/search`, {
+    return api.get(`${API_URL}/products/suggest`, {
       params: { 
-        keyword: term,
-        size: 5,  
-        autocomplete: true
+        prefix: term,
+        limit: 5
       }
     }).catch(() => {
 
@@ -152,6 +163,11 @@ const ProductService = {
     return api.get<Product[]>(`${API_URL}/products/top?limit=${limit}`);
   },
 
+  // Sản phẩm thường được mua cùng sản phẩm đang xem
+  getRelatedProducts(productId: string, limit: number = 8) {
+    return api.get<Product[]>(`${API_URL}/products/${productId}/related?limit=${limit}`);
+  },
+
   // Lấy sản phẩm bán chạy nhất theo tháng và năm
   getTopProductsByMonth(month?: number, year?: number, limit: number = 10) {
     // Nếu không có tháng, lấy tháng trước
@@ -66,6 +66,8 @@ export interface OrderData {
   recipientName: string;
   couponCode?: string;
   total?: number;
+  reservationToken?: string;
+  quoteId?: string;
 }
 
 export interface OrderSummary {